@@ -0,0 +1,40 @@
+-- ============================================
+-- 交卷写入路径优化 - 数据库迁移脚本
+-- 日期: 2026-10-18
+-- 功能: 错题本「学生 + 题目 + 未掌握」唯一约束（支持批量 upsert）、学生累计计数表（成就判定不再全量聚合）
+-- ============================================
+
+-- 1. 清理重复的未掌握错题（同一学生同一题只保留最早的一条）
+DELETE w1 FROM biz_wrong_record w1
+JOIN biz_wrong_record w2
+  ON w1.student_id = w2.student_id
+ AND w1.question_id = w2.question_id
+ AND w1.is_mastered = 0
+ AND w2.is_mastered = 0
+ AND w1.id > w2.id;
+
+-- 2. 未掌握标记：未掌握为 1，已掌握为 NULL（唯一索引不约束 NULL，已掌握的历史记录可以有多条）
+ALTER TABLE biz_wrong_record
+ADD COLUMN unmastered_flag TINYINT GENERATED ALWAYS AS (CASE WHEN is_mastered = 0 THEN 1 END) VIRTUAL COMMENT '未掌握标记（生成列）',
+ADD UNIQUE INDEX uk_student_question_unmastered (student_id, question_id, unmastered_flag) COMMENT '每名学生每道题最多一条未掌握错题';
+
+-- 3. 学生累计计数表
+CREATE TABLE IF NOT EXISTS biz_student_counter (
+  student_id BIGINT NOT NULL COMMENT '学生ID',
+  perfect_paper_count INT NOT NULL DEFAULT 0 COMMENT '满分试卷数',
+  answered_question_count INT NOT NULL DEFAULT 0 COMMENT '考试累计作答题数',
+  update_time DATETIME NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+  PRIMARY KEY (student_id)
+) ENGINE = InnoDB CHARACTER SET = utf8mb4 COLLATE = utf8mb4_unicode_ci COMMENT = '学生累计计数（成就判定）';
+
+-- 4. 用历史成绩回填（与原先的实时聚合口径一致）
+INSERT INTO biz_student_counter (student_id, perfect_paper_count, answered_question_count)
+SELECT student_id,
+       SUM(CASE WHEN score = total_score AND total_score > 0 THEN 1 ELSE 0 END),
+       COALESCE(SUM(JSON_LENGTH(user_answers)), 0)
+FROM biz_exam_result
+WHERE student_id IS NOT NULL
+GROUP BY student_id
+ON DUPLICATE KEY UPDATE
+  perfect_paper_count = VALUES(perfect_paper_count),
+  answered_question_count = VALUES(answered_question_count);
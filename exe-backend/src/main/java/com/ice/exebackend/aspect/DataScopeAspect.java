@@ -1,10 +1,9 @@
 package com.ice.exebackend.aspect;
 
 import com.ice.exebackend.annotation.DataScope;
-import com.ice.exebackend.annotation.DataScopeType;
 import com.ice.exebackend.context.DataScopeContext;
-import com.ice.exebackend.entity.SysUser;
-import com.ice.exebackend.service.SysUserService;
+import com.ice.exebackend.context.UserDataScope;
+import com.ice.exebackend.service.DataScopeService;
 import org.aspectj.lang.JoinPoint;
 import org.aspectj.lang.annotation.After;
 import org.aspectj.lang.annotation.Aspect;
@@ -22,10 +21,9 @@ import org.springframework.stereotype.Component;
  *
  * 工作原理:
  * 1. @Before: 方法执行前，从SecurityContext获取当前用户信息
- * 2. 判断用户角色，如果是管理员则不添加过滤条件
- * 3. 如果是普通教师，根据DataScopeType生成SQL过滤条件
- * 4. 将过滤条件存入ThreadLocal，供Service层使用
- * 5. @After: 方法执行后，清除ThreadLocal，防止内存泄漏
+ * 2. 判断用户角色，从 DataScopeService 取缓存的权限范围（用户ID、负责的班级和学生）
+ * 3. 将权限范围和注解中的过滤方式存入ThreadLocal，供Service层通过 DataScopeUtils 转换为查询条件
+ * 4. @After: 方法执行后，清除ThreadLocal，防止内存泄漏
  */
 @Aspect
 @Component
@@ -34,7 +32,7 @@ public class DataScopeAspect {
     private static final Logger logger = LoggerFactory.getLogger(DataScopeAspect.class);
 
     @Autowired
-    private SysUserService sysUserService;
+    private DataScopeService dataScopeService;
 
     /**
      * 方法执行前：设置数据权限过滤条件
@@ -49,40 +47,23 @@ public class DataScopeAspect {
                 return;
             }
 
-            // 2. 获取用户信息
+            // 2. 判断是否为管理员（ADMIN或SUPER_ADMIN）
             String username = authentication.getName();
-            SysUser user = sysUserService.lambdaQuery()
-                    .eq(SysUser::getUsername, username)
-                    .one();
-
-            if (user == null) {
-                logger.warn("数据权限拦截：未找到用户 {}", username);
-                return;
-            }
-
-            // 3. 判断是否为管理员（ADMIN或SUPER_ADMIN）
             boolean isAdmin = authentication.getAuthorities().stream()
                     .anyMatch(auth -> "ROLE_ADMIN".equals(auth.getAuthority())
                             || "ROLE_SUPER_ADMIN".equals(auth.getAuthority()));
 
-            // 4. 创建数据权限信息对象
-            DataScopeContext.DataScopeInfo info = new DataScopeContext.DataScopeInfo();
-            info.setUserId(user.getId());
-            info.setAdmin(isAdmin);
-
-            // 5. 如果不是管理员，添加数据权限过滤条件
-            if (!isAdmin) {
-                String sqlCondition = buildSqlCondition(dataScope, user.getId());
-                info.setSqlCondition(sqlCondition);
-                logger.debug("数据权限拦截：用户 {} (ID: {}) 应用数据权限过滤: {}",
-                        username, user.getId(), sqlCondition);
-            } else {
-                logger.debug("数据权限拦截：用户 {} (ID: {}) 是管理员，不应用数据权限过滤",
-                        username, user.getId());
+            // 3. 取权限范围（按用户缓存，班级成员变更时失效）
+            UserDataScope scope = dataScopeService.resolve(username, isAdmin);
+            if (scope == null) {
+                logger.warn("数据权限拦截：未找到用户 {}", username);
+                return;
             }
 
-            // 6. 存入ThreadLocal
-            DataScopeContext.set(info);
+            // 4. 存入ThreadLocal
+            DataScopeContext.set(new DataScopeContext.DataScopeInfo(scope, dataScope.value(), dataScope.tableAlias()));
+            logger.debug("数据权限拦截：用户 {} (ID: {}) 管理员: {}, 过滤方式: {}",
+                    username, scope.getUserId(), isAdmin, dataScope.value());
 
         } catch (Exception e) {
             logger.error("数据权限拦截异常", e);
@@ -96,50 +77,4 @@ public class DataScopeAspect {
     public void doAfter(JoinPoint point, DataScope dataScope) {
         DataScopeContext.clear();
     }
-
-    /**
-     * 根据数据权限类型构建SQL过滤条件
-     *
-     * @param dataScope 数据权限注解
-     * @param userId    用户ID
-     * @return SQL WHERE条件
-     */
-    private String buildSqlCondition(DataScope dataScope, Long userId) {
-        DataScopeType type = dataScope.value();
-        String tableAlias = dataScope.tableAlias();
-        String prefix = tableAlias.isEmpty() ? "" : tableAlias + ".";
-
-        switch (type) {
-            case TEACHER_CLASS:
-                // 教师班级权限：只能查看自己负责的班级
-                return prefix + "teacher_id = " + userId;
-
-            case TEACHER_STUDENT:
-                // 教师学生权限：只能查看自己班级的学生
-                return prefix + "id IN (" +
-                        "SELECT cs.student_id FROM biz_class_student cs " +
-                        "INNER JOIN biz_class c ON cs.class_id = c.id " +
-                        "WHERE c.teacher_id = " + userId + ")";
-
-            case TEACHER_EXAM:
-                // 教师考试权限：只能查看自己班级学生的考试成绩
-                return prefix + "student_id IN (" +
-                        "SELECT cs.student_id FROM biz_class_student cs " +
-                        "INNER JOIN biz_class c ON cs.class_id = c.id " +
-                        "WHERE c.teacher_id = " + userId + ")";
-
-            case TEACHER_COURSE:
-                // 教师课程权限：只能查看自己创建的课程
-                // 根据实际表结构调整字段名（可能是teacher_id或creator_id）
-                return prefix + "teacher_id = " + userId;
-
-            case ALL:
-                // 全部权限：无过滤条件
-                return "";
-
-            default:
-                logger.warn("未知的数据权限类型: {}", type);
-                return "";
-        }
-    }
 }
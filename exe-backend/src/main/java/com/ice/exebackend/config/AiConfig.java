@@ -49,6 +49,26 @@ public class AiConfig {
      */
     private TimeoutConfig timeout = new TimeoutConfig();
 
+    /**
+     * 线程池配置
+     */
+    private ExecutorConfig executor = new ExecutorConfig();
+
+    /**
+     * 大文本知识点提取配置
+     */
+    private ExtractConfig extract = new ExtractConfig();
+
+    /**
+     * 相同请求合并配置
+     */
+    private SingleFlightConfig singleFlight = new SingleFlightConfig();
+
+    /**
+     * 断路器配置（每个提供商独立熔断）
+     */
+    private CircuitBreakerConfig circuitBreaker = new CircuitBreakerConfig();
+
     // Getters and Setters
     public boolean isEnabled() {
         return enabled;
@@ -106,6 +126,38 @@ public class AiConfig {
         this.timeout = timeout;
     }
 
+    public ExecutorConfig getExecutor() {
+        return executor;
+    }
+
+    public void setExecutor(ExecutorConfig executor) {
+        this.executor = executor;
+    }
+
+    public ExtractConfig getExtract() {
+        return extract;
+    }
+
+    public void setExtract(ExtractConfig extract) {
+        this.extract = extract;
+    }
+
+    public SingleFlightConfig getSingleFlight() {
+        return singleFlight;
+    }
+
+    public void setSingleFlight(SingleFlightConfig singleFlight) {
+        this.singleFlight = singleFlight;
+    }
+
+    public CircuitBreakerConfig getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public void setCircuitBreaker(CircuitBreakerConfig circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
     /**
      * AI提供商配置
      */
@@ -140,6 +192,11 @@ public class AiConfig {
          */
         private int priority = 999;
 
+        /**
+         * 服务端 API Key（可选）。请求的提供商熔断或失败时，只会切换到配置了 Key 的提供商
+         */
+        private String apiKey;
+
         // Getters and Setters
         public String getUrl() {
             return url;
@@ -188,6 +245,14 @@ public class AiConfig {
         public void setPriority(int priority) {
             this.priority = priority;
         }
+
+        public String getApiKey() {
+            return apiKey;
+        }
+
+        public void setApiKey(String apiKey) {
+            this.apiKey = apiKey;
+        }
     }
 
     /**
@@ -209,6 +274,26 @@ public class AiConfig {
          */
         private String keyPrefix = "ai:cache:";
 
+        /**
+         * 错题分析 / 主观题批改响应缓存：本机最多保留的条目数（超出按成本感知 LFU 淘汰）
+         */
+        private int maxLocalEntries = 5000;
+
+        /**
+         * 同一道题最多保留的不同作答条目数
+         */
+        private int maxEntriesPerQuestion = 64;
+
+        /**
+         * 错题分析作答相似度阈值（字符二元组 Dice 系数），达到即复用已有响应；大于 1 时只做精确匹配。批改始终只做精确匹配
+         */
+        private double similarityThreshold = 0.9;
+
+        /**
+         * 参与相似匹配的最短作答长度（规范化后），更短的作答只做精确匹配
+         */
+        private int similarityMinLength = 20;
+
         // Getters and Setters
         public boolean isEnabled() {
             return enabled;
@@ -233,6 +318,38 @@ public class AiConfig {
         public void setKeyPrefix(String keyPrefix) {
             this.keyPrefix = keyPrefix;
         }
+
+        public int getMaxLocalEntries() {
+            return maxLocalEntries;
+        }
+
+        public void setMaxLocalEntries(int maxLocalEntries) {
+            this.maxLocalEntries = maxLocalEntries;
+        }
+
+        public int getMaxEntriesPerQuestion() {
+            return maxEntriesPerQuestion;
+        }
+
+        public void setMaxEntriesPerQuestion(int maxEntriesPerQuestion) {
+            this.maxEntriesPerQuestion = maxEntriesPerQuestion;
+        }
+
+        public double getSimilarityThreshold() {
+            return similarityThreshold;
+        }
+
+        public void setSimilarityThreshold(double similarityThreshold) {
+            this.similarityThreshold = similarityThreshold;
+        }
+
+        public int getSimilarityMinLength() {
+            return similarityMinLength;
+        }
+
+        public void setSimilarityMinLength(int similarityMinLength) {
+            this.similarityMinLength = similarityMinLength;
+        }
     }
 
     /**
@@ -303,10 +420,25 @@ public class AiConfig {
         private boolean enabled = true;
 
         /**
-         * 全局最大并发数
+         * 全局最大并发数（自适应调整时为上限）
          */
         private int maxConcurrent = 10;
 
+        /**
+         * 是否根据 AI 响应延迟自适应调整全局并发数
+         */
+        private boolean adaptive = true;
+
+        /**
+         * 自适应调整时的全局并发下限
+         */
+        private int minConcurrent = 2;
+
+        /**
+         * 可容忍的延迟倍数：最近一次响应延迟超过长期平均延迟的该倍数时开始收缩并发
+         */
+        private double latencyTolerance = 2.0;
+
         /**
          * 单用户最大并发数
          */
@@ -339,6 +471,30 @@ public class AiConfig {
             this.maxConcurrent = maxConcurrent;
         }
 
+        public boolean isAdaptive() {
+            return adaptive;
+        }
+
+        public void setAdaptive(boolean adaptive) {
+            this.adaptive = adaptive;
+        }
+
+        public int getMinConcurrent() {
+            return minConcurrent;
+        }
+
+        public void setMinConcurrent(int minConcurrent) {
+            this.minConcurrent = minConcurrent;
+        }
+
+        public double getLatencyTolerance() {
+            return latencyTolerance;
+        }
+
+        public void setLatencyTolerance(double latencyTolerance) {
+            this.latencyTolerance = latencyTolerance;
+        }
+
         public int getMaxPerUser() {
             return maxPerUser;
         }
@@ -444,4 +600,236 @@ public class AiConfig {
                 providers.get(defaultProvider)
         );
     }
+
+    /**
+     * 线程池配置
+     */
+    public static class ExecutorConfig {
+        /**
+         * HTTP 客户端异步回调线程数（响应解析、流式数据块推送都在这些线程上执行）
+         */
+        private int httpThreads = 8;
+
+        /**
+         * 流式请求准备阶段（限流、组装提示词）的线程数
+         */
+        private int streamThreads = 16;
+
+        /**
+         * 流式请求排队上限，超过后直接返回「系统繁忙」
+         */
+        private int streamQueueCapacity = 200;
+
+        // Getters and Setters
+        public int getHttpThreads() {
+            return httpThreads;
+        }
+
+        public void setHttpThreads(int httpThreads) {
+            this.httpThreads = httpThreads;
+        }
+
+        public int getStreamThreads() {
+            return streamThreads;
+        }
+
+        public void setStreamThreads(int streamThreads) {
+            this.streamThreads = streamThreads;
+        }
+
+        public int getStreamQueueCapacity() {
+            return streamQueueCapacity;
+        }
+
+        public void setStreamQueueCapacity(int streamQueueCapacity) {
+            this.streamQueueCapacity = streamQueueCapacity;
+        }
+    }
+
+    /**
+     * 大文本知识点提取配置（分块并行提取，再合并相似知识点）
+     */
+    public static class ExtractConfig {
+        /**
+         * 每块字符数
+         */
+        private int chunkSize = 6000;
+
+        /**
+         * 相邻块重叠字符数
+         */
+        private int chunkOverlap = 200;
+
+        /**
+         * 单次提取最多同时处理的块数（受全局并发许可约束，拿不到许可时降低并行度）
+         */
+        private int parallelism = 4;
+
+        /**
+         * 知识点名称相似度阈值（字符二元组 Dice 系数），达到即视为同一知识点
+         */
+        private double similarityThreshold = 0.8;
+
+        // Getters and Setters
+        public int getChunkSize() {
+            return chunkSize;
+        }
+
+        public void setChunkSize(int chunkSize) {
+            this.chunkSize = chunkSize;
+        }
+
+        public int getChunkOverlap() {
+            return chunkOverlap;
+        }
+
+        public void setChunkOverlap(int chunkOverlap) {
+            this.chunkOverlap = chunkOverlap;
+        }
+
+        public int getParallelism() {
+            return parallelism;
+        }
+
+        public void setParallelism(int parallelism) {
+            this.parallelism = parallelism;
+        }
+
+        public double getSimilarityThreshold() {
+            return similarityThreshold;
+        }
+
+        public void setSimilarityThreshold(double similarityThreshold) {
+            this.similarityThreshold = similarityThreshold;
+        }
+    }
+
+    /**
+     * 相同请求合并配置（同一缓存键的并发 AI 调用只发一次）
+     */
+    public static class SingleFlightConfig {
+        /**
+         * 是否启用
+         */
+        private boolean enabled = true;
+
+        /**
+         * 跨节点调用锁的有效期（秒），应大于单次 AI 调用（含重试）的最长耗时
+         */
+        private int lockSeconds = 120;
+
+        /**
+         * 其他节点正在调用时最多等待的时间（秒），超时后自行调用
+         */
+        private int waitSeconds = 60;
+
+        // Getters and Setters
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getLockSeconds() {
+            return lockSeconds;
+        }
+
+        public void setLockSeconds(int lockSeconds) {
+            this.lockSeconds = lockSeconds;
+        }
+
+        public int getWaitSeconds() {
+            return waitSeconds;
+        }
+
+        public void setWaitSeconds(int waitSeconds) {
+            this.waitSeconds = waitSeconds;
+        }
+    }
+
+    /**
+     * 断路器配置（按滑动窗口内的失败率熔断）
+     */
+    public static class CircuitBreakerConfig {
+        /**
+         * 统计失败率的滑动窗口（秒）
+         */
+        private int windowSeconds = 60;
+
+        /**
+         * 窗口内调用次数达到该值才计算失败率，避免少量调用误判
+         */
+        private int minimumCalls = 10;
+
+        /**
+         * 失败率阈值（0~1），达到即熔断
+         */
+        private double failureRateThreshold = 0.5;
+
+        /**
+         * 熔断持续时间（秒），之后进入半开状态试探
+         */
+        private int openSeconds = 60;
+
+        /**
+         * 半开状态最多放行的试探请求数
+         */
+        private int halfOpenMaxAttempts = 5;
+
+        /**
+         * 半开状态成功次数达到该值即恢复
+         */
+        private int halfOpenSuccessThreshold = 3;
+
+        // Getters and Setters
+        public int getWindowSeconds() {
+            return windowSeconds;
+        }
+
+        public void setWindowSeconds(int windowSeconds) {
+            this.windowSeconds = windowSeconds;
+        }
+
+        public int getMinimumCalls() {
+            return minimumCalls;
+        }
+
+        public void setMinimumCalls(int minimumCalls) {
+            this.minimumCalls = minimumCalls;
+        }
+
+        public double getFailureRateThreshold() {
+            return failureRateThreshold;
+        }
+
+        public void setFailureRateThreshold(double failureRateThreshold) {
+            this.failureRateThreshold = failureRateThreshold;
+        }
+
+        public int getOpenSeconds() {
+            return openSeconds;
+        }
+
+        public void setOpenSeconds(int openSeconds) {
+            this.openSeconds = openSeconds;
+        }
+
+        public int getHalfOpenMaxAttempts() {
+            return halfOpenMaxAttempts;
+        }
+
+        public void setHalfOpenMaxAttempts(int halfOpenMaxAttempts) {
+            this.halfOpenMaxAttempts = halfOpenMaxAttempts;
+        }
+
+        public int getHalfOpenSuccessThreshold() {
+            return halfOpenSuccessThreshold;
+        }
+
+        public void setHalfOpenSuccessThreshold(int halfOpenSuccessThreshold) {
+            this.halfOpenSuccessThreshold = halfOpenSuccessThreshold;
+        }
+    }
 }
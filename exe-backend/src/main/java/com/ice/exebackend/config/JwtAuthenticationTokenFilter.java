@@ -1,6 +1,6 @@
 package com.ice.exebackend.config;
 
-import com.ice.exebackend.utils.JwtUtil;
+import com.ice.exebackend.service.AuthenticationCacheService;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -16,10 +16,15 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.util.regex.Pattern;
 
 @Component
 public class JwtAuthenticationTokenFilter extends OncePerRequestFilter {
 
+    // 学生端API路径（严格匹配，防止路径遍历绕过）
+    private static final Pattern STUDENT_API = Pattern.compile("^/api/v1/student/.*$");
+    private static final Pattern PRACTICE_API = Pattern.compile("^/api/v1/questions/practice(/.*)?$");
+
     /**
      * 【修改第1处】
      * 注入两个 UserDetailsService 实例，
@@ -34,7 +39,7 @@ public class JwtAuthenticationTokenFilter extends OncePerRequestFilter {
     private UserDetailsService studentUserDetailsService;
 
     @Autowired
-    private JwtUtil jwtUtil;
+    private AuthenticationCacheService authenticationCache;
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
@@ -47,12 +52,11 @@ public class JwtAuthenticationTokenFilter extends OncePerRequestFilter {
             String authToken = authHeader.substring(bearer.length());
 
             try {
-                // "username" 此时既可能是管理员用户名，也可能是学生学号
-                String username = jwtUtil.getUsernameFromToken(authToken);
-
-                if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
+                // 验证结果按 Token 缓存到过期为止；"username" 此时既可能是管理员用户名，也可能是学生学号
+                AuthenticationCacheService.VerifiedToken verified = authenticationCache.verify(authToken);
 
-                    UserDetails userDetails;
+                if (verified != null && SecurityContextHolder.getContext().getAuthentication() == null) {
+                    String username = verified.getUsername();
 
                     /**
                      * 【修改第2处 - 安全加固版】
@@ -64,21 +68,17 @@ public class JwtAuthenticationTokenFilter extends OncePerRequestFilter {
                      * 安全加固：使用正则表达式精确匹配，防止路径遍历攻击
                      */
                     String requestURI = request.getRequestURI();
+                    boolean isStudentApi = STUDENT_API.matcher(requestURI).matches() ||
+                                          PRACTICE_API.matcher(requestURI).matches();
 
-                    // 使用严格的正则表达式匹配，防止绕过
-                    boolean isStudentApi = requestURI.matches("^/api/v1/student/.*$") ||
-                                          requestURI.matches("^/api/v1/questions/practice(/.*)?$");
-
-                    if (isStudentApi) {
-                        // 如果是学生端的API请求，则使用学生认证服务
-                        userDetails = this.studentUserDetailsService.loadUserByUsername(username);
-                    } else {
-                        // 否则，默认使用管理后台的认证服务
-                        userDetails = this.adminUserDetailsService.loadUserByUsername(username);
-                    }
+                    // 登录主体（含权限、角色）走本机缓存，角色 / 权限变更时失效
+                    UserDetails userDetails = isStudentApi
+                            ? authenticationCache.principal(AuthenticationCacheService.REALM_STUDENT, username,
+                                    this.studentUserDetailsService::loadUserByUsername)
+                            : authenticationCache.principal(AuthenticationCacheService.REALM_ADMIN, username,
+                                    this.adminUserDetailsService::loadUserByUsername);
 
-                    // 后续的Token验证和上下文设置逻辑保持不变
-                    if (jwtUtil.validateToken(authToken, userDetails)) {
+                    if (username.equals(userDetails.getUsername())) {
                         UsernamePasswordAuthenticationToken authentication =
                                 new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
                         authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
@@ -1,5 +1,6 @@
 package com.ice.exebackend.config;
 
+import com.ice.exebackend.service.StudentIdentityCache;
 import com.ice.exebackend.utils.JwtUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.server.ServerHttpRequest;
@@ -19,6 +20,9 @@ public class JwtHandshakeInterceptor implements HandshakeInterceptor {
     @Autowired
     private JwtUtil jwtUtil;
 
+    @Autowired
+    private StudentIdentityCache studentIdentityCache;
+
     @Override
     public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
                                    WebSocketHandler wsHandler, Map<String, Object> attributes) {
@@ -49,6 +53,11 @@ public class JwtHandshakeInterceptor implements HandshakeInterceptor {
                         }
 
                         attributes.put("userType", userType); // 存入 session 属性
+
+                        // 学生：握手时一次性解析身份（ID、积分、段位），后续对战消息直接读 Session 属性
+                        if ("STUDENT".equals(userType)) {
+                            studentIdentityCache.resolveForHandshake(username, attributes);
+                        }
                         return true;
                     }
                 } catch (Exception e) {
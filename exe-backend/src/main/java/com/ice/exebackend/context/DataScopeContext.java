@@ -1,12 +1,14 @@
 package com.ice.exebackend.context;
 
+import com.ice.exebackend.annotation.DataScopeType;
+
 /**
  * 数据权限上下文（基于 ThreadLocal）
  * 用于在请求处理过程中传递数据权限信息
  *
  * 工作流程:
  * 1. AOP拦截器在方法执行前将权限信息存入ThreadLocal
- * 2. Service层从ThreadLocal获取权限信息，构建SQL过滤条件
+ * 2. Service层通过 DataScopeUtils 把权限范围转换为查询条件
  * 3. AOP拦截器在方法执行后清除ThreadLocal，防止内存泄漏
  */
 public class DataScopeContext {
@@ -35,57 +37,48 @@ public class DataScopeContext {
     }
 
     /**
-     * 数据权限信息类
+     * 数据权限信息类：当前用户的权限范围 + 本次调用的过滤方式
      */
     public static class DataScopeInfo {
         /**
-         * 当前用户ID
+         * 当前用户的权限范围（缓存的共享对象）
          */
-        private Long userId;
+        private final UserDataScope scope;
 
         /**
-         * 是否为管理员（管理员可以查看所有数据）
+         * 过滤方式（来自 @DataScope 注解）
          */
-        private boolean isAdmin;
+        private final DataScopeType type;
 
         /**
-         * SQL过滤条件（用于WHERE子句）
-         * 例如: "teacher_id = 123" 或 "id IN (SELECT ...)"
+         * 表别名，为空表示不使用别名
          */
-        private String sqlCondition;
+        private final String tableAlias;
 
-        public DataScopeInfo() {
+        public DataScopeInfo(UserDataScope scope, DataScopeType type, String tableAlias) {
+            this.scope = scope;
+            this.type = type;
+            this.tableAlias = tableAlias != null ? tableAlias : "";
         }
 
-        public DataScopeInfo(Long userId, boolean isAdmin, String sqlCondition) {
-            this.userId = userId;
-            this.isAdmin = isAdmin;
-            this.sqlCondition = sqlCondition;
+        public UserDataScope getScope() {
+            return scope;
         }
 
-        // Getters and Setters
-        public Long getUserId() {
-            return userId;
+        public DataScopeType getType() {
+            return type;
         }
 
-        public void setUserId(Long userId) {
-            this.userId = userId;
-        }
-
-        public boolean isAdmin() {
-            return isAdmin;
+        public String getTableAlias() {
+            return tableAlias;
         }
 
-        public void setAdmin(boolean admin) {
-            isAdmin = admin;
-        }
-
-        public String getSqlCondition() {
-            return sqlCondition;
+        public Long getUserId() {
+            return scope.getUserId();
         }
 
-        public void setSqlCondition(String sqlCondition) {
-            this.sqlCondition = sqlCondition;
+        public boolean isAdmin() {
+            return scope.isAdmin();
         }
     }
 }
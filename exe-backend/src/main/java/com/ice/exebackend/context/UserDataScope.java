@@ -0,0 +1,50 @@
+package com.ice.exebackend.context;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * 某个用户解析好的数据权限范围（不可变，可跨请求缓存）
+ *
+ * 管理员不受限制，不加载可见集合；教师的可见范围是自己负责的班级及这些班级中的学生。
+ */
+public final class UserDataScope {
+
+    private final Long userId;
+    private final boolean admin;
+    private final Set<Long> classIds;
+    private final Set<Long> studentIds;
+
+    private UserDataScope(Long userId, boolean admin, Set<Long> classIds, Set<Long> studentIds) {
+        this.userId = userId;
+        this.admin = admin;
+        this.classIds = classIds;
+        this.studentIds = studentIds;
+    }
+
+    public static UserDataScope admin(Long userId) {
+        return new UserDataScope(userId, true, Collections.emptySet(), Collections.emptySet());
+    }
+
+    public static UserDataScope teacher(Long userId, Set<Long> classIds, Set<Long> studentIds) {
+        return new UserDataScope(userId, false, Set.copyOf(classIds), Set.copyOf(studentIds));
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public boolean isAdmin() {
+        return admin;
+    }
+
+    /** 负责的班级ID（管理员为空集合） */
+    public Set<Long> getClassIds() {
+        return classIds;
+    }
+
+    /** 负责班级中的学生ID（管理员为空集合） */
+    public Set<Long> getStudentIds() {
+        return studentIds;
+    }
+}
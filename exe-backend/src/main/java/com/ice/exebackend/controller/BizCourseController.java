@@ -56,7 +56,7 @@ public class BizCourseController {
     @PreAuthorize("hasAuthority('sys:course:edit')")
     @Log(title = "课程管理", businessType = BusinessType.INSERT) // 创建/更新课程
     public Result save(@RequestBody BizCourse course) {
-        courseService.saveOrUpdate(course);
+        courseService.saveCourse(course);
         return Result.suc(course.getId());
     }
 
@@ -83,8 +83,7 @@ public class BizCourseController {
     @PreAuthorize("hasAuthority('sys:course:edit')")
     @Log(title = "课程管理", businessType = BusinessType.DELETE) // 删除课程
     public Result deleteCourse(@PathVariable Long id) {
-        courseService.removeById(id);
-        resourceMapper.delete(new QueryWrapper<BizCourseResource>().eq("course_id", id));
+        courseService.deleteCourse(id);
         return Result.suc();
     }
 }
\ No newline at end of file
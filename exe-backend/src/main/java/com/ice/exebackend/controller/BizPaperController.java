@@ -189,10 +189,7 @@ public class BizPaperController {
     @PreAuthorize("hasAuthority('sys:paper:update')")
     @Log(title = "试卷管理", businessType = BusinessType.UPDATE) // 状态变更
     public Result updatePaperStatus(@PathVariable Long id, @RequestParam Integer status) {
-        BizPaper paper = new BizPaper();
-        paper.setId(id);
-        paper.setStatus(status);
-        boolean success = paperService.updateById(paper);
+        boolean success = paperService.updatePaperStatus(id, status);
 
         // 清除缓存
         if (success) {
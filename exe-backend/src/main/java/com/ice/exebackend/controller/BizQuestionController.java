@@ -7,9 +7,10 @@ import com.ice.exebackend.common.Result;
 import com.ice.exebackend.dto.*;
 import com.ice.exebackend.entity.BizQuestion;
 import com.ice.exebackend.service.BizQuestionService;
+import com.ice.exebackend.service.FullTextSearchService;
+import com.ice.exebackend.service.QuestionDuplicateService;
 import com.ice.exebackend.utils.BatchOperationValidator;  // 新增
 import jakarta.servlet.http.HttpServletResponse;
-import org.apache.commons.text.similarity.LevenshteinDistance;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -63,6 +64,12 @@ public class BizQuestionController {
     @Autowired
     private SysUserService sysUserService;
 
+    @Autowired
+    private FullTextSearchService fullTextSearchService;
+
+    @Autowired
+    private QuestionDuplicateService questionDuplicateService;
+
     // 3. 定义缓存键常量
     private static final String DASHBOARD_CACHE_KEY = "dashboard:stats:all";
 
@@ -103,7 +110,7 @@ public class BizQuestionController {
         }
         // ✅ 新增：题干内容模糊搜索
         if (StringUtils.hasText(content)) {
-            queryWrapper.like("content", content);
+            fullTextSearchService.filterQuestionContent(queryWrapper, content);
         }
         queryWrapper.orderByDesc("id");
         questionService.page(page, queryWrapper);
@@ -125,22 +132,23 @@ public class BizQuestionController {
         if (!StringUtils.hasText(content) || subjectId == null) {
             return Result.suc(Collections.emptyList());
         }
-        List<BizQuestion> candidates = questionService.lambdaQuery()
-                .eq(BizQuestion::getSubjectId, subjectId)
-                .ne(currentId != null, BizQuestion::getId, currentId)
-                .select(BizQuestion::getId, BizQuestion::getContent)
-                .list();
-        // 【修改点】使用 getDefaultInstance() 替代 new LevenshteinDistance()
-        LevenshteinDistance distance = LevenshteinDistance.getDefaultInstance();
-        List<BizQuestion> similarQuestions = candidates.stream()
-                .filter(q -> {
-                    double similarity = 1.0 - (double) distance.apply(content, q.getContent()) / Math.max(content.length(), q.getContent().length());
-                    return similarity > 0.8;
-                })
-                .collect(Collectors.toList());
+        // 查重索引只给出少量候选，编辑距离只在候选上计算
+        List<BizQuestion> similarQuestions = questionDuplicateService.findSimilar(subjectId.longValue(), content, currentId);
         return Result.suc(similarQuestions);
     }
 
+    /**
+     * 科目内全部重复题报告
+     */
+    @GetMapping("/duplicates")
+    public Result getDuplicateReport(@RequestParam Long subjectId) {
+        List<QuestionDuplicateService.DuplicateGroup> groups = questionDuplicateService.findDuplicatesInSubject(subjectId);
+        if (groups == null) {
+            return Result.fail("查重索引正在构建，请稍后再试");
+        }
+        return Result.suc(groups);
+    }
+
     @GetMapping("/export")
     @PreAuthorize("hasAuthority('sys:question:list')") // ✅ 添加权限控制
     @Log(title = "题库管理", businessType = BusinessType.EXPORT) // 导出
@@ -8,6 +8,7 @@ import com.ice.exebackend.common.Result;
 import com.ice.exebackend.dto.StudentExportDTO;
 import com.ice.exebackend.entity.BizStudent;
 import com.ice.exebackend.enums.BusinessType;
+import com.ice.exebackend.service.AuthenticationCacheService;
 import com.ice.exebackend.service.BizStudentService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -67,6 +68,9 @@ public class BizStudentController {
     @Autowired
     private PasswordEncoder passwordEncoder;
 
+    @Autowired
+    private AuthenticationCacheService authenticationCacheService;
+
     // 3. 定义缓存键常量
     private static final String DASHBOARD_CACHE_KEY = "dashboard:stats:all";
 
@@ -181,10 +185,15 @@ public class BizStudentController {
             @Parameter(description = "学生ID", required = true) @PathVariable Long id,
             @RequestBody BizStudent student) {
         student.setId(id);
+        BizStudent before = studentService.getById(id);
         boolean success = studentService.updateById(student);
         if (success) {
             // 4. 数据变更成功后，删除缓存
             redisTemplate.delete(DASHBOARD_CACHE_KEY);
+            // 学号（登录名）可能被修改，新旧学号的登录主体都要失效
+            if (before != null) {
+                authenticationCacheService.evictStudents(java.util.Arrays.asList(before.getStudentNo(), student.getStudentNo()));
+            }
         }
         return success ? Result.suc() : Result.fail();
     }
@@ -230,10 +239,14 @@ public class BizStudentController {
         }
 
         // 5. 如果没有关联数据，则执行删除
+        BizStudent student = studentService.getById(id);
         boolean success = studentService.removeById(id);
         if (success) {
             // 6. 数据变更成功后，删除缓存
             redisTemplate.delete(DASHBOARD_CACHE_KEY);
+            if (student != null) {
+                authenticationCacheService.evictStudents(java.util.Collections.singletonList(student.getStudentNo()));
+            }
         }
         return success ? Result.suc() : Result.fail();
     }
@@ -272,8 +285,12 @@ public class BizStudentController {
 
         // 删除可以删除的学生
         if (!canDeleteIds.isEmpty()) {
+            List<String> studentNos = studentService.listByIds(canDeleteIds).stream()
+                    .map(BizStudent::getStudentNo)
+                    .collect(Collectors.toList());
             studentService.removeByIds(canDeleteIds);
             redisTemplate.delete(DASHBOARD_CACHE_KEY);
+            authenticationCacheService.evictStudents(studentNos);
         }
 
         // 返回结果
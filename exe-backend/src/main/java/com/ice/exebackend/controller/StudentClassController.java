@@ -3,9 +3,11 @@ package com.ice.exebackend.controller;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.ice.exebackend.common.Result;
 import com.ice.exebackend.entity.*;
+import com.ice.exebackend.event.ClassMembershipChangedEvent;
 import com.ice.exebackend.mapper.*;
 import com.ice.exebackend.service.BizStudentService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
@@ -27,6 +29,7 @@ public class StudentClassController {
     @Autowired private BizPaperMapper paperMapper;
     // 【新增】注入考试结果 Mapper，用于检查是否已完成
     @Autowired private BizExamResultMapper examResultMapper;
+    @Autowired private ApplicationEventPublisher eventPublisher;
 
     private Long getCurrentStudentId(Authentication auth) {
         String studentNo = auth.getName();
@@ -56,6 +59,9 @@ public class StudentClassController {
         relation.setStudentId(studentId);
         relation.setCreateTime(LocalDateTime.now());
         classStudentMapper.insert(relation);
+        // 班级负责教师的可见学生发生变化
+        eventPublisher.publishEvent(new ClassMembershipChangedEvent(this,
+                Collections.singletonList(bizClass.getTeacherId())));
 
         return Result.suc("加入成功");
     }
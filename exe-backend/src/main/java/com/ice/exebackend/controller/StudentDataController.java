@@ -15,11 +15,11 @@ import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import com.ice.exebackend.mapper.BizQuestionMapper;
+import com.ice.exebackend.utils.CompiledAnswerKey;
 
 import java.time.LocalDateTime;
 import com.ice.exebackend.entity.BizExamResult;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.core.JsonProcessingException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.time.format.DateTimeFormatter;
@@ -60,6 +60,9 @@ public class StudentDataController {
     @Autowired
     private BizQuestionMapper questionMapper;
 
+    @Autowired
+    private PracticeSamplingService practiceSamplingService;
+
     @Autowired
     private BizLearningActivityService learningActivityService;
 
@@ -79,9 +82,18 @@ public class StudentDataController {
     @Autowired
     private BizExamResultService examResultService;
 
+    @Autowired
+    private ExamSubmissionService examSubmissionService;
+
+    @Autowired
+    private ExamSubmissionQueue examSubmissionQueue;
+
     @Autowired
     private AiService aiService;
 
+    @Autowired
+    private CollaborativeFilteringEngine cfEngine;
+
     @Value("${file.upload-dir}")
     private String uploadDir;
 
@@ -215,13 +227,15 @@ public class StudentDataController {
             return Result.fail("科目不存在");
         }
 
-        List<BizQuestion> questions;
-        QueryWrapper<BizQuestion> baseQueryWrapper = new QueryWrapper<>();
-        baseQueryWrapper.inSql("subject_id", "SELECT id FROM biz_subject WHERE name = '" + subject.getName() + "'");
-        if (StringUtils.hasText(grade)) {
-            baseQueryWrapper.eq("grade", grade);
-        }
+        // 同名科目（不同年级各建一个科目）的题目一起参与抽题
+        List<Long> subjectIds = subjectService.lambdaQuery()
+                .select(BizSubject::getId)
+                .eq(BizSubject::getName, subject.getName())
+                .list().stream()
+                .map(BizSubject::getId)
+                .collect(Collectors.toList());
 
+        List<BizQuestion> questions;
         if ("smart".equalsIgnoreCase(mode)) {
             List<Long> wrongKpIds = questionMapper.selectWrongKnowledgePointIds(student.getId(), subjectId);
             List<Long> questionIds = new ArrayList<>();
@@ -230,25 +244,18 @@ public class StudentDataController {
             }
             int remainingNeeded = 10 - questionIds.size();
             if (remainingNeeded > 0) {
-                QueryWrapper<BizQuestion> remainingQuery = new QueryWrapper<>();
-                remainingQuery.inSql("subject_id", "SELECT id FROM biz_subject WHERE name = '" + subject.getName() + "'");
-                if (StringUtils.hasText(grade)) {
-                    remainingQuery.eq("grade", grade);
-                }
-                if (!questionIds.isEmpty()) {
-                    remainingQuery.notIn("id", questionIds);
-                }
-                remainingQuery.last("ORDER BY RAND() LIMIT " + remainingNeeded);
-                List<BizQuestion> remainingQuestions = questionService.list(remainingQuery);
-                questions = remainingQuestions;
+                List<Long> remainingIds = practiceSamplingService.sample(
+                        subjectIds, grade, remainingNeeded, student.getId(), questionIds);
+                questions = listInOrder(remainingIds);
                 questions.addAll(questionService.listByIds(questionIds));
             } else {
                 questions = questionService.listByIds(questionIds);
             }
         } else {
-            baseQueryWrapper.last("ORDER BY RAND() LIMIT 10");
-            questions = questionService.list(baseQueryWrapper);
+            questions = listInOrder(practiceSamplingService.sample(subjectIds, grade, 10, student.getId(), null));
         }
+        practiceSamplingService.recordSeen(student.getId(),
+                questions.stream().map(BizQuestion::getId).collect(Collectors.toList()));
 
         questions.forEach(q -> {
             q.setAnswer(null);
@@ -258,6 +265,21 @@ public class StudentDataController {
         return Result.suc(questions);
     }
 
+    /**
+     * 按 ID 批量取题并保持给定顺序（不存在的跳过）
+     */
+    private List<BizQuestion> listInOrder(List<Long> ids) {
+        if (ids.isEmpty()) return new ArrayList<>();
+        Map<Long, BizQuestion> byId = questionService.listByIds(ids).stream()
+                .collect(Collectors.toMap(BizQuestion::getId, q -> q));
+        List<BizQuestion> result = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            BizQuestion q = byId.get(id);
+            if (q != null) result.add(q);
+        }
+        return result;
+    }
+
     @PostMapping("/submit-practice")
     @PreAuthorize("hasAuthority('ROLE_STUDENT')")
     public Result submitPractice(@RequestBody PracticeSubmissionDTO submission, Authentication authentication) {
@@ -277,6 +299,8 @@ public class StudentDataController {
 
         PracticeResultDTO resultDTO = new PracticeResultDTO();
         List<PracticeResultDTO.AnswerResult> answerResults = new ArrayList<>();
+        Map<Long, Boolean> correctness = new java.util.HashMap<>();
+        List<BizWrongRecord> wrongRecords = new ArrayList<>();
         int correctCount = 0;
 
         for (Long questionId : questionIds) {
@@ -290,13 +314,13 @@ public class StudentDataController {
 
             // 【修复】判断题需要格式转换
             if (question.getQuestionType() == 4) {
-                String normalizedUserAns = normalizeJudgmentAnswer(userAnswer);
-                String normalizedDbAns = normalizeJudgmentAnswer(question.getAnswer());
+                String normalizedUserAns = CompiledAnswerKey.normalizeJudgmentAnswer(userAnswer);
+                String normalizedDbAns = CompiledAnswerKey.normalizeJudgmentAnswer(question.getAnswer());
                 isCorrect = normalizedUserAns.equalsIgnoreCase(normalizedDbAns);
             } else if (question.getQuestionType() == 2) {
                 // 多选题需要排序比较
-                String sortedUser = sortString(userAnswer != null ? userAnswer : "");
-                String sortedDb = sortString(question.getAnswer());
+                String sortedUser = CompiledAnswerKey.sortString(userAnswer != null ? userAnswer : "");
+                String sortedDb = CompiledAnswerKey.sortString(question.getAnswer());
                 isCorrect = sortedUser.equalsIgnoreCase(sortedDb);
             } else {
                 // 其他题型：单选、填空、主观题
@@ -311,19 +335,17 @@ public class StudentDataController {
                 wrongRecord.setQuestionId(questionId);
                 wrongRecord.setWrongAnswer(userAnswer);
                 wrongRecord.setWrongReason("在线练习错误");
-                if (wrongRecordService.lambdaQuery()
-                        .eq(BizWrongRecord::getStudentId, student.getId())
-                        .eq(BizWrongRecord::getQuestionId, questionId)
-                        .eq(BizWrongRecord::getIsMastered, 0)
-                        .count() == 0) {
-                    wrongRecordService.save(wrongRecord);
-                }
+                wrongRecord.setCreateTime(LocalDateTime.now());
+                wrongRecords.add(wrongRecord);
             }
             answerResult.setQuestion(question);
             answerResult.setUserAnswer(userAnswer);
             answerResult.setCorrect(isCorrect);
             answerResults.add(answerResult);
+            correctness.put(questionId, isCorrect);
         }
+        wrongRecordService.addUnmasteredBatch(wrongRecords);
+        cfEngine.recordAnswers(student.getId(), correctness);
 
         // 记录学习活动（使用新的recordActivity方法）
         Integer practiceDuration = submission.getDuration() != null ? submission.getDuration() : 600; // 默认10分钟
@@ -492,213 +514,33 @@ public class StudentDataController {
         String studentNo = authentication.getName();
         BizStudent student = studentService.lambdaQuery().eq(BizStudent::getStudentNo, studentNo).one();
 
-        com.ice.exebackend.dto.PaperDTO paper = paperService.getPaperWithQuestionsById(paperId);
-        if (paper == null) return Result.fail("试卷不存在");
-
         String aiKey = request.getHeader("X-Ai-Api-Key");
         String aiProvider = request.getHeader("X-Ai-Provider");
 
-        int totalScore = 0;
-        int studentScore = 0;
-        List<PracticeResultDTO.AnswerResult> results = new ArrayList<>();
-        Map<Long, Map<String, Object>> analysisResultMap = new java.util.HashMap<>();
-
-        if (paper.getPaperType() != null && paper.getPaperType() == 2) {
-            totalScore = paper.getTotalScore() != null ? paper.getTotalScore() : 100;
-            studentScore = 0;
-        } else {
-            List<Long> allQIds = new ArrayList<>(submission.getAnswers().keySet());
-            if (paper.getGroups() != null) {
-                paper.getGroups().forEach(g -> g.getQuestions().forEach(pq -> allQIds.add(pq.getQuestionId())));
-            }
-
-            if (!allQIds.isEmpty()) {
-                List<BizQuestion> dbQuestions = questionService.listByIds(allQIds);
-                Map<Long, BizQuestion> dbQMap = dbQuestions.stream().collect(Collectors.toMap(BizQuestion::getId, q -> q));
-
-                if (paper.getGroups() != null) {
-                    for (com.ice.exebackend.dto.PaperDTO.PaperGroupDTO group : paper.getGroups()) {
-                        for (com.ice.exebackend.entity.BizPaperQuestion pq : group.getQuestions()) {
-                            BizQuestion q = dbQMap.get(pq.getQuestionId());
-                            if (q == null) continue;
-
-                            totalScore += pq.getScore();
-                            String userAns = submission.getAnswers().get(pq.getQuestionId());
-
-                            boolean isCorrect = false;
-                            int awardedScore = 0;
-
-                            if (userAns != null && q.getAnswer() != null) {
-                                if (q.getQuestionType() == 5) {
-                                    if (StringUtils.hasText(aiKey) && StringUtils.hasText(userAns)) {
-                                        try {
-                                            AiGradingResult aiResult = aiService.gradeSubjectiveQuestion(
-                                                    aiKey, aiProvider,
-                                                    q.getContent(), q.getAnswer(), userAns, pq.getScore()
-                                            );
-
-                                            awardedScore = aiResult.getScore();
-                                            isCorrect = awardedScore >= (pq.getScore() * 0.6);
-
-                                            String feedback = aiResult.getFeedback();
-                                            if (aiResult.getReason() != null) {
-                                                feedback += "\n(扣分原因: " + aiResult.getReason() + ")";
-                                            }
-                                            String aiComment = "\n\n【AI 智能点评】\n" + feedback;
-                                            q.setDescription((q.getDescription() == null ? "" : q.getDescription()) + aiComment);
-
-                                            Map<String, Object> detail = new java.util.HashMap<>();
-                                            detail.put("score", awardedScore);
-                                            detail.put("feedback", feedback);
-                                            analysisResultMap.put(q.getId(), detail);
-
-                                        } catch (Exception e) {
-                                            logger.error("AI 批改失败", e);
-                                            awardedScore = 0;
-                                            isCorrect = false;
-                                            q.setDescription((q.getDescription() == null ? "" : q.getDescription()) + "\n\n(AI 服务连接超时或异常，未能完成批改)");
-                                        }
-                                    } else {
-                                        awardedScore = 0;
-                                        isCorrect = false;
-                                    }
-                                }
-                                else if (q.getQuestionType() == 2) {
-                                    String sortedUser = sortString(userAns);
-                                    String sortedDb = sortString(q.getAnswer());
-                                    isCorrect = sortedUser.equalsIgnoreCase(sortedDb);
-                                    if(isCorrect) awardedScore = pq.getScore();
-                                } else if (q.getQuestionType() == 4) {
-                                    // 【修复】判断题：前端发送T/F，数据库存储"正确"/"错误"，需要转换
-                                    String normalizedUserAns = normalizeJudgmentAnswer(userAns);
-                                    String normalizedDbAns = normalizeJudgmentAnswer(q.getAnswer());
-                                    isCorrect = normalizedUserAns.equalsIgnoreCase(normalizedDbAns);
-                                    if(isCorrect) awardedScore = pq.getScore();
-                                } else {
-                                    isCorrect = userAns.trim().equalsIgnoreCase(q.getAnswer().trim());
-                                    if(isCorrect) awardedScore = pq.getScore();
-                                }
-                            }
-
-                            studentScore += awardedScore;
-
-                            // 【新增】自动记录错题到错题本
-                            if (!isCorrect) {
-                                // 检查该错题是否已存在（避免重复记录）
-                                long existingCount = wrongRecordService.lambdaQuery()
-                                        .eq(BizWrongRecord::getStudentId, student.getId())
-                                        .eq(BizWrongRecord::getQuestionId, pq.getQuestionId())
-                                        .eq(BizWrongRecord::getIsMastered, 0)
-                                        .count();
-
-                                if (existingCount == 0) {
-                                    BizWrongRecord wrongRecord = new BizWrongRecord();
-                                    wrongRecord.setStudentId(student.getId());
-                                    wrongRecord.setQuestionId(pq.getQuestionId());
-                                    wrongRecord.setWrongAnswer(userAns);
-                                    wrongRecord.setWrongReason("模拟考试《" + paper.getName() + "》中答错");
-                                    wrongRecord.setCreateTime(LocalDateTime.now());
-                                    wrongRecordService.save(wrongRecord);
-                                }
-                            }
-
-                            PracticeResultDTO.AnswerResult res = new PracticeResultDTO.AnswerResult();
-                            res.setQuestion(q);
-                            res.setUserAnswer(userAns);
-                            res.setCorrect(isCorrect);
-                            res.setEarnedScore(awardedScore);
-                            results.add(res);
-                        }
-                    }
-                }
-            }
-        }
-
-        BizExamResult examResult = new BizExamResult();
-        examResult.setStudentId(student.getId());
-        examResult.setPaperId(paperId);
-        examResult.setPaperName(paper.getName());
-        examResult.setScore(studentScore);
-        examResult.setTotalScore(totalScore);
-        examResult.setViolationCount(submission.getViolationCount() != null ? submission.getViolationCount() : 0);
-
-        try {
-            Map<Long, String> finalAnswers = submission.getAnswers() != null ? submission.getAnswers() : Map.of();
-            examResult.setUserAnswers(objectMapper.writeValueAsString(finalAnswers));
-
-            if (!analysisResultMap.isEmpty()) {
-                examResult.setResultDetails(objectMapper.writeValueAsString(analysisResultMap));
-            }
-        } catch (JsonProcessingException e) {
-            logger.error("JSON序列化失败", e);
-            examResult.setUserAnswers("{}");
-        }
-
-        examResult.setCreateTime(LocalDateTime.now());
-        // 【优化】状态管理规范化：学生提交后设为"待批改"状态
-        examResult.setStatus(1);  // 1=待批改（学生已提交，教师未批阅）
-        // 【优化】保存AI自动评分作为原始分数
-        examResult.setOriginalScore(studentScore);
-        examResultService.save(examResult);
-
-        // 【修改】删除灵根经验结算逻辑
-        // if (totalScore > 0 && studentScore >= totalScore * 0.6) {
-        //     BizSubject subject = subjectService.getById(paper.getSubjectId());
-        //     if (subject != null) {
-        //         int spiritExp = (int) (studentScore * 0.5);
-        //         cultivationService.addSpiritRootExp(student.getId(), subject.getName(), spiritExp);
-        //         logger.info("学生 {} 通过考试 {} 获得 {} 灵根经验 ({})",
-        //                 student.getName(), paper.getName(), spiritExp, subject.getName());
-        //     }
-        // }
-
-        // 记录学习活动（使用新的recordActivity方法）
-        Integer examDuration = submission.getDuration() != null ? submission.getDuration() : 1800; // 默认30分钟
-        learningActivityService.recordActivity(
-            student.getId(),
-            "EXAM",
-            examDuration,
-            paper.getSubjectId(),
-            examResult.getId(),
-            "参加了模拟考试《" + paper.getName() + "》，得分：" + studentScore + "/" + totalScore
-        );
-
-        student.setPoints((student.getPoints() == null ? 0 : student.getPoints()) + 10);
-        studentService.updateById(student);
-
-        List<BizAchievement> unlockedList = new ArrayList<>();
-
-        if (studentScore >= totalScore && totalScore > 0) {
-            long perfectCount = examResultService.count(new QueryWrapper<BizExamResult>()
-                    .eq("student_id", student.getId())
-                    .apply("score = total_score")
-                    .gt("total_score", 0));
-
-            unlockedList.addAll(achievementService.checkAndAward(student.getId(), "PERFECT_PAPER", (int)perfectCount));
+        // 集中交卷时先落盘排队、立即返回回执，判分结果通过轮询或 EXAM_SUBMIT_RESULT 消息获取
+        if (examSubmissionQueue.shouldQueue()) {
+            String receiptId = examSubmissionQueue.enqueue(student, submission, paperId, aiKey, aiProvider);
+            return Result.suc(Map.of("queued", true, "receiptId", receiptId));
         }
-
         try {
-            Map<String, Object> map = examResultService.getMap(new QueryWrapper<BizExamResult>()
-                    .select("SUM(JSON_LENGTH(user_answers)) as total")
-                    .eq("student_id", student.getId()));
-
-            if (map != null && map.get("total") != null) {
-                int totalQuestions = ((Number) map.get("total")).intValue();
-                unlockedList.addAll(achievementService.checkAndAward(student.getId(), "TOTAL_QUESTIONS", totalQuestions));
-            }
-        } catch (Exception e) {
-            logger.warn("统计刷题数失败，可能是数据库版本不支持 JSON_LENGTH: {}", e.getMessage());
+            return Result.suc(examSubmissionQueue.runSync(
+                    () -> examSubmissionService.submit(student, submission, paperId, aiKey, aiProvider)));
+        } catch (IllegalArgumentException e) {
+            return Result.fail(e.getMessage());
         }
+    }
 
-        Map<String, Object> resMap = new java.util.HashMap<>();
-        resMap.put("score", studentScore);
-        resMap.put("totalScore", totalScore);
-        resMap.put("details", results);
-        if(!unlockedList.isEmpty()) {
-            resMap.put("newAchievements", unlockedList);
+    /**
+     * 查询排队交卷的处理结果
+     */
+    @GetMapping("/exam/submit/{receiptId}")
+    @PreAuthorize("hasAuthority('ROLE_STUDENT')")
+    public Result getExamSubmitReceipt(@PathVariable String receiptId, Authentication authentication) {
+        Map<String, Object> receipt = examSubmissionQueue.getReceipt(receiptId);
+        if (receipt == null || !authentication.getName().equals(receipt.get("studentNo"))) {
+            return Result.fail("回执不存在或已过期");
         }
-
-        return Result.suc(resMap);
+        return Result.suc(receipt);
     }
 
     @GetMapping("/history")
@@ -777,36 +619,6 @@ public class StudentDataController {
         return Result.suc(Map.of("examResult", result, "paper", paper));
     }
 
-    private String sortString(String input) {
-        if (!StringUtils.hasText(input)) return "";
-        return java.util.Arrays.stream(input.split(","))
-                .map(String::trim)
-                .sorted()
-                .collect(Collectors.joining(","));
-    }
-
-    /**
-     * 标准化判断题答案格式
-     * 支持多种格式：T/F、true/false、正确/错误、对/错
-     * 统一转换为 T 或 F 进行比较
-     */
-    private String normalizeJudgmentAnswer(String answer) {
-        if (!StringUtils.hasText(answer)) return "";
-
-        String trimmed = answer.trim().toLowerCase();
-
-        // T/F 格式
-        if ("t".equals(trimmed) || "true".equals(trimmed) || "正确".equals(answer.trim()) || "对".equals(answer.trim())) {
-            return "T";
-        }
-
-        if ("f".equals(trimmed) || "false".equals(trimmed) || "错误".equals(answer.trim()) || "错".equals(answer.trim())) {
-            return "F";
-        }
-
-        return trimmed.toUpperCase();
-    }
-
     @GetMapping("/dashboard/activity-heatmap")
     @PreAuthorize("hasAuthority('ROLE_STUDENT')")
     public Result getActivityHeatmap(Authentication authentication) {
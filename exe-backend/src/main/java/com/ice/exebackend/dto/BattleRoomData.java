@@ -1,33 +1,80 @@
 package com.ice.exebackend.dto;
 
 import lombok.Data;
+
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
+/**
+ * 对战房间状态（存放在 Redis Hash battle:room:{roomId} 中，不含任何 WebSocketSession）
+ * 由 BattleRoomStateMachine 通过 CAS 脚本读写，任意节点都可以推进房间状态
+ */
 @Data
 public class BattleRoomData implements Serializable {
+
+    // 房间阶段
+    public static final String PHASE_COUNTDOWN = "COUNTDOWN"; // 匹配成功，等待开局
+    public static final String PHASE_ANSWERING = "ANSWERING"; // 答题中
+    public static final String PHASE_RESULT = "RESULT";       // 展示本轮结果
+    public static final String PHASE_FINISHED = "FINISHED";   // 已结束
+
     private String roomId;
     private String p1Id; // 玩家1的用户ID
-    private String p2Id; // 玩家2的用户ID（如果是人机，这里可能是特定的机器人ID）
-    // 你可以根据需要添加更多字段，比如当前题目索引、分数等
+    private String p2Id; // 玩家2的用户ID（人机对战时为 "-1"）
+    private boolean botGame;
+
+    private String phase = PHASE_COUNTDOWN;
+    private int round = 0;     // 当前题目索引
+    private long version = 0;  // CAS 版本号
+    private long roundStartTime;
+
+    private String p1Answer;
+    private String p2Answer;
+    private long p1AnswerTime;
+    private long p2AnswerTime;
+    private int p1Score = 0;
+    private int p2Score = 0;
+    private int p1Combo = 0;
+    private int p2Combo = 0;
 
+    // 道具剩余次数：FOG / HINT
+    private Map<String, Integer> p1Items = new HashMap<>();
+    private Map<String, Integer> p2Items = new HashMap<>();
 
-    public String getP1Id() {
-        return p1Id;
+    private List<BattleQuestion> questions = new ArrayList<>();
+
+    /**
+     * 房间内题目快照（仅保留对战需要的字段）
+     */
+    @Data
+    public static class BattleQuestion implements Serializable {
+        private Long id;
+        private String content;
+        private String options;
+        private String answer;
+        private Double difficulty;
     }
 
-    public String getRoomId() {
-        return roomId;
+    public boolean isP1(String userId) {
+        return userId != null && userId.equals(p1Id);
     }
-    public String getP2Id() {
-        return p2Id;
+
+    public String opponentOf(String userId) {
+        return isP1(userId) ? p2Id : p1Id;
     }
-    public void setP1Id(String p1Id) {
-        this.p1Id = p1Id;
+
+    public BattleQuestion currentQuestion() {
+        return questions.get(round);
     }
-    public void setP2Id(String p2Id) {
-        this.p2Id = p2Id;
+
+    public boolean hasNextQuestion() {
+        return round < questions.size() - 1;
     }
-    public void setRoomId(String roomId) {
-        this.roomId = roomId;
+
+    public boolean isRoundComplete() {
+        return p1Answer != null && p2Answer != null;
     }
-}
\ No newline at end of file
+}
@@ -25,6 +25,8 @@ public class ExamResultDetailDTO {
     private Date createTime;
     private String comment;
     private Boolean published;
+    /** 批改状态：1-待批改，2-已批改，3-已发布，4-AI 批改中 */
+    private Integer status;
 
     // Getters and Setters
     public Long getId() {
@@ -163,6 +165,14 @@ public class ExamResultDetailDTO {
         this.published = published;
     }
 
+    public Integer getStatus() {
+        return status;
+    }
+
+    public void setStatus(Integer status) {
+        this.status = status;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -184,14 +194,15 @@ public class ExamResultDetailDTO {
                 Objects.equals(userAnswers, that.userAnswers) &&
                 Objects.equals(createTime, that.createTime) &&
                 Objects.equals(comment, that.comment) &&
-                Objects.equals(published, that.published);
+                Objects.equals(published, that.published) &&
+                Objects.equals(status, that.status);
     }
 
     @Override
     public int hashCode() {
         return Objects.hash(id, paperId, paperName, studentId, studentName, studentNo, classId,
                 className, subjectId, subjectName, score, totalScore, violationCount,
-                userAnswers, createTime, comment, published);
+                userAnswers, createTime, comment, published, status);
     }
 
     @Override
@@ -214,6 +225,7 @@ public class ExamResultDetailDTO {
                 ", createTime=" + createTime +
                 ", comment='" + comment + '\'' +
                 ", published=" + published +
+                ", status=" + status +
                 '}';
     }
 }
@@ -0,0 +1,50 @@
+package com.ice.exebackend.dto;
+
+import lombok.Data;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 智能组卷约束模型
+ *
+ * - typeCounts / typeScores：各题型题量与每题分值（未指定分值时使用默认分值）
+ * - targetTotalScore：目标总分；题量固定时通过分值分配精确满足（按比例缩放后把余数分给高分题）
+ * - targetDifficulty：目标难度（按分值加权）
+ * - knowledgePointMinCounts：知识点覆盖要求，知识点ID -> 至少包含的题目数量
+ * - excludedQuestionIds：排除的题目（如最近几套试卷已用过的题）
+ * - timeBudgetMs：单次组卷的时间预算
+ */
+@Data
+public class PaperConstraintModel {
+
+    private Map<Integer, Integer> typeCounts = new HashMap<>();
+    private Map<Integer, Integer> typeScores = new HashMap<>();
+    private Integer targetTotalScore;
+    private double targetDifficulty = 0.5;
+    private Map<Long, Integer> knowledgePointMinCounts = new HashMap<>();
+    private Set<Long> excludedQuestionIds = new HashSet<>();
+    private long timeBudgetMs = 200;
+
+    /**
+     * 某题型的每题分值
+     */
+    public int scoreOf(Integer type) {
+        Integer score = type == null ? null : typeScores.get(type);
+        return score != null && score > 0 ? score : defaultScore(type);
+    }
+
+    public static int defaultScore(Integer type) {
+        if (type == null) return 0;
+        switch (type) {
+            case 1: return 2;  // 单选
+            case 2: return 4;  // 多选
+            case 3: return 2;  // 填空
+            case 4: return 2;  // 判断
+            case 5: return 10; // 主观
+            default: return 0;
+        }
+    }
+}
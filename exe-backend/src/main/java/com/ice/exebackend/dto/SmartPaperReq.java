@@ -1,5 +1,8 @@
 package com.ice.exebackend.dto;
 
+import java.util.List;
+import java.util.Map;
+
 public class SmartPaperReq {
     private Long subjectId;      // 科目ID
     private String grade;        // 年级 (可选)
@@ -13,6 +16,15 @@ public class SmartPaperReq {
 
     private Double targetDifficulty = 0.5; // 默认难度 0.5
 
+    // ---- 组卷约束（均为可选） ----
+    private Integer totalScore;                  // 目标总分，为空时按各题型默认分值累加
+    private Map<Integer, Integer> typeScores;    // 题型 -> 每题分值，为空时使用默认分值
+    private List<Long> knowledgePointIds;        // 需要覆盖的知识点
+    private Integer knowledgePointMinCount = 1;  // 每个知识点至少包含的题目数量
+    private List<Long> excludeQuestionIds;       // 排除的题目
+    private Integer excludeRecentPaperCount = 0; // 排除该科目最近 N 套试卷中用过的题目
+    private Long timeBudgetMs;                   // 组卷时间预算（毫秒），为空时使用系统配置
+
     // --- 手动添加 Getter 和 Setter ---
 
     public Double getTargetDifficulty() {
@@ -77,4 +89,60 @@ public class SmartPaperReq {
     public void setSubjectiveCount(Integer subjectiveCount) {
         this.subjectiveCount = subjectiveCount;
     }
-}
\ No newline at end of file
+
+    public Integer getTotalScore() {
+        return totalScore;
+    }
+
+    public void setTotalScore(Integer totalScore) {
+        this.totalScore = totalScore;
+    }
+
+    public Map<Integer, Integer> getTypeScores() {
+        return typeScores;
+    }
+
+    public void setTypeScores(Map<Integer, Integer> typeScores) {
+        this.typeScores = typeScores;
+    }
+
+    public List<Long> getKnowledgePointIds() {
+        return knowledgePointIds;
+    }
+
+    public void setKnowledgePointIds(List<Long> knowledgePointIds) {
+        this.knowledgePointIds = knowledgePointIds;
+    }
+
+    public Integer getKnowledgePointMinCount() {
+        return knowledgePointMinCount;
+    }
+
+    public void setKnowledgePointMinCount(Integer knowledgePointMinCount) {
+        this.knowledgePointMinCount = knowledgePointMinCount;
+    }
+
+    public List<Long> getExcludeQuestionIds() {
+        return excludeQuestionIds;
+    }
+
+    public void setExcludeQuestionIds(List<Long> excludeQuestionIds) {
+        this.excludeQuestionIds = excludeQuestionIds;
+    }
+
+    public Integer getExcludeRecentPaperCount() {
+        return excludeRecentPaperCount;
+    }
+
+    public void setExcludeRecentPaperCount(Integer excludeRecentPaperCount) {
+        this.excludeRecentPaperCount = excludeRecentPaperCount;
+    }
+
+    public Long getTimeBudgetMs() {
+        return timeBudgetMs;
+    }
+
+    public void setTimeBudgetMs(Long timeBudgetMs) {
+        this.timeBudgetMs = timeBudgetMs;
+    }
+}
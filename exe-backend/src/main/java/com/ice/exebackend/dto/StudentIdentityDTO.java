@@ -0,0 +1,23 @@
+package com.ice.exebackend.dto;
+
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * 学生身份快照（WebSocket 握手时解析一次，存放在 Session 属性和 Redis 中）
+ * version 对应 Redis 中的身份版本号，积分 / 资料变更时版本号自增，快照即失效
+ */
+@Data
+public class StudentIdentityDTO implements Serializable {
+
+    private Long id;
+    private String studentNo;
+    private String name;
+    private String avatar;
+    private String avatarFrameStyle;
+    private int points;
+    private String tier;
+
+    private long version;
+}
@@ -26,7 +26,7 @@ public class BizExamResult {
     private String comment;
     // 是否发布给学生查看
     private Boolean published;
-    // 批改状态：0-未提交，1-待批改（已提交未批阅），2-已批改（已批阅未发布），3-已发布
+    // 批改状态：0-未提交，1-待批改（已提交未批阅），2-已批改（已批阅未发布），3-已发布，4-AI 批改中（主观题尚未出分）
     private Integer status;
     // 批阅教师ID
     private Long gradedBy;
@@ -0,0 +1,34 @@
+package com.ice.exebackend.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+import java.time.LocalDateTime;
+
+/**
+ * 学生累计计数（成就判定用，交卷时增量维护）
+ */
+@Data
+@TableName("biz_student_counter")
+public class BizStudentCounter {
+    @TableId(type = IdType.INPUT)
+    private Long studentId;
+    // 满分试卷数
+    private Integer perfectPaperCount;
+    // 考试累计作答题数
+    private Integer answeredQuestionCount;
+    private LocalDateTime updateTime;
+
+    public Long getStudentId() { return studentId; }
+    public void setStudentId(Long studentId) { this.studentId = studentId; }
+
+    public Integer getPerfectPaperCount() { return perfectPaperCount; }
+    public void setPerfectPaperCount(Integer perfectPaperCount) { this.perfectPaperCount = perfectPaperCount; }
+
+    public Integer getAnsweredQuestionCount() { return answeredQuestionCount; }
+    public void setAnsweredQuestionCount(Integer answeredQuestionCount) { this.answeredQuestionCount = answeredQuestionCount; }
+
+    public LocalDateTime getUpdateTime() { return updateTime; }
+    public void setUpdateTime(LocalDateTime updateTime) { this.updateTime = updateTime; }
+}
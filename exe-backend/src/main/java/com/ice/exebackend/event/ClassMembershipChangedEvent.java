@@ -0,0 +1,26 @@
+package com.ice.exebackend.event;
+
+import org.springframework.context.ApplicationEvent;
+
+import java.util.Collection;
+
+/**
+ * 班级成员变更事件
+ * 由班级的新增 / 修改 / 删除、学生加入或移出班级时发布，供教师数据权限缓存失效。
+ */
+public class ClassMembershipChangedEvent extends ApplicationEvent {
+
+    private final Collection<Long> teacherIds;
+
+    public ClassMembershipChangedEvent(Object source, Collection<Long> teacherIds) {
+        super(source);
+        this.teacherIds = teacherIds;
+    }
+
+    /**
+     * 可见范围受影响的教师（班级负责人）ID
+     */
+    public Collection<Long> getTeacherIds() {
+        return teacherIds;
+    }
+}
@@ -0,0 +1,31 @@
+package com.ice.exebackend.event;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * 课程变更事件
+ * 由 BizCourseServiceImpl 在新增 / 修改 / 删除课程时发布，供课程全文索引增量刷新。
+ */
+public class CourseChangedEvent extends ApplicationEvent {
+
+    public enum ChangeType {
+        SAVED, DELETED
+    }
+
+    private final ChangeType changeType;
+    private final Long courseId;
+
+    public CourseChangedEvent(Object source, ChangeType changeType, Long courseId) {
+        super(source);
+        this.changeType = changeType;
+        this.courseId = courseId;
+    }
+
+    public ChangeType getChangeType() {
+        return changeType;
+    }
+
+    public Long getCourseId() {
+        return courseId;
+    }
+}
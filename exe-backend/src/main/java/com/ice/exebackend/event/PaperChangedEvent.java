@@ -0,0 +1,31 @@
+package com.ice.exebackend.event;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * 试卷变更事件
+ * 由 BizPaperServiceImpl 在修改试卷题目、发布 / 下架、删除试卷时发布，供按试卷缓存的数据失效或预热。
+ */
+public class PaperChangedEvent extends ApplicationEvent {
+
+    public enum ChangeType {
+        UPDATED, PUBLISHED, UNPUBLISHED, DELETED
+    }
+
+    private final ChangeType changeType;
+    private final Long paperId;
+
+    public PaperChangedEvent(Object source, ChangeType changeType, Long paperId) {
+        super(source);
+        this.changeType = changeType;
+        this.paperId = paperId;
+    }
+
+    public ChangeType getChangeType() {
+        return changeType;
+    }
+
+    public Long getPaperId() {
+        return paperId;
+    }
+}
@@ -0,0 +1,35 @@
+package com.ice.exebackend.event;
+
+import org.springframework.context.ApplicationEvent;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 试题变更事件
+ * 由 BizQuestionServiceImpl 在新增 / 修改 / 删除试题时发布，供各类内存索引做增量刷新。
+ * 事件只携带试题ID，监听方按需重新加载最新数据（已删除的试题查不到即视为移除）。
+ */
+public class QuestionChangedEvent extends ApplicationEvent {
+
+    public enum ChangeType {
+        CREATED, UPDATED, DELETED
+    }
+
+    private final ChangeType changeType;
+    private final List<Long> questionIds;
+
+    public QuestionChangedEvent(Object source, ChangeType changeType, Collection<Long> questionIds) {
+        super(source);
+        this.changeType = changeType;
+        this.questionIds = List.copyOf(questionIds);
+    }
+
+    public ChangeType getChangeType() {
+        return changeType;
+    }
+
+    public List<Long> getQuestionIds() {
+        return questionIds;
+    }
+}
@@ -3,6 +3,7 @@ package com.ice.exebackend.handler;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.ice.exebackend.service.BattleGameManager;
+import com.ice.exebackend.service.StudentIdentityCache;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.CloseStatus;
@@ -21,11 +22,19 @@ public class BattleWebSocketHandler extends TextWebSocketHandler {
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
-        // 连接建立
+        // 连接建立：登记在线状态，断线重连时恢复房间消息投递
+        // 握手时未解析到学生身份（如教师账号）的连接不能参与对战
+        if (!battleManager.onConnect(session)) {
+            session.close(CloseStatus.POLICY_VIOLATION);
+        }
     }
 
     @Override
     protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
+        // 身份在握手时已解析，消息处理全程只读 Session 属性，不访问数据库
+        if (StudentIdentityCache.fromSession(session) == null) {
+            return;
+        }
         JsonNode payload = objectMapper.readTree(message.getPayload());
         String type = payload.has("type") ? payload.get("type").asText() : "";
 
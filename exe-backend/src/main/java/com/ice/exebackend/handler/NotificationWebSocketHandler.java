@@ -95,4 +95,26 @@ public class NotificationWebSocketHandler extends TextWebSocketHandler {
             }
         }
     }
+
+    /**
+     * 向指定用户（握手时登记的 username，学生为学号）的所有在线连接发送消息
+     *
+     * @return 是否至少发送到一个连接
+     */
+    public boolean sendToUser(String username, String message) {
+        boolean sent = false;
+        for (WebSocketSession session : SESSIONS) {
+            if (session.isOpen() && username != null && username.equals(session.getAttributes().get("username"))) {
+                try {
+                    synchronized (session) {
+                        session.sendMessage(new TextMessage(message));
+                    }
+                    sent = true;
+                } catch (IOException e) {
+                    logger.error("发送消息失败: {}", username, e);
+                }
+            }
+        }
+        return sent;
+    }
 }
\ No newline at end of file
@@ -1,7 +1,23 @@
 package com.ice.exebackend.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.ice.exebackend.entity.BizBattleRecord;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 @Mapper
-public interface BizBattleRecordMapper extends BaseMapper<BizBattleRecord> {}
\ No newline at end of file
+public interface BizBattleRecordMapper extends BaseMapper<BizBattleRecord> {
+
+    /**
+     * 多行插入对战记录（对战结果异步批量落库使用）
+     */
+    @Insert("<script>" +
+            "INSERT INTO biz_battle_record (player_id, opponent_id, opponent_name, result, score_change, create_time) VALUES " +
+            "<foreach collection='records' item='r' separator=','>" +
+            "(#{r.playerId}, #{r.opponentId}, #{r.opponentName}, #{r.result}, #{r.scoreChange}, #{r.createTime})" +
+            "</foreach>" +
+            "</script>")
+    int insertBatch(@Param("records") List<BizBattleRecord> records);
+}
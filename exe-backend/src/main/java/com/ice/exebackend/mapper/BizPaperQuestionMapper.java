@@ -3,7 +3,19 @@ package com.ice.exebackend.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.ice.exebackend.entity.BizPaperQuestion;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.util.List;
 
 @Mapper
 public interface BizPaperQuestionMapper extends BaseMapper<BizPaperQuestion> {
-}
\ No newline at end of file
+
+    /**
+     * 某科目最近 N 套试卷中用过的题目ID（智能组卷排除近期用题）
+     */
+    @Select("SELECT DISTINCT pq.question_id FROM biz_paper_question pq " +
+            "JOIN (SELECT id FROM biz_paper WHERE subject_id = #{subjectId} ORDER BY create_time DESC LIMIT #{limit}) p " +
+            "ON pq.paper_id = p.id")
+    List<Long> selectRecentQuestionIds(@Param("subjectId") Long subjectId, @Param("limit") int limit);
+}
@@ -3,7 +3,24 @@ package com.ice.exebackend.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.ice.exebackend.entity.BizQuestionKnowledgePoint;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.util.List;
 
 @Mapper
 public interface BizQuestionKnowledgePointMapper extends BaseMapper<BizQuestionKnowledgePoint> {
-}
\ No newline at end of file
+
+    /**
+     * 查询某科目某题型（可选年级）下所有试题的知识点关联（智能组卷候选池使用）
+     */
+    @Select("<script>" +
+            "SELECT qkp.question_id, qkp.knowledge_point_id FROM biz_question_knowledge_point qkp " +
+            "JOIN biz_question q ON q.id = qkp.question_id " +
+            "WHERE q.subject_id = #{subjectId} AND q.question_type = #{questionType} " +
+            "<if test='grade != null and grade != \"\"'>AND q.grade = #{grade} </if>" +
+            "</script>")
+    List<BizQuestionKnowledgePoint> selectBySubjectAndType(@Param("subjectId") Long subjectId,
+                                                           @Param("questionType") Integer questionType,
+                                                           @Param("grade") String grade);
+}
@@ -0,0 +1,22 @@
+package com.ice.exebackend.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.ice.exebackend.entity.BizStudentCounter;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+@Mapper
+public interface BizStudentCounterMapper extends BaseMapper<BizStudentCounter> {
+
+    /**
+     * 原子累加学生计数，记录不存在时创建
+     */
+    @Insert("INSERT INTO biz_student_counter (student_id, perfect_paper_count, answered_question_count) " +
+            "VALUES (#{studentId}, #{perfectPapers}, #{answeredQuestions}) " +
+            "ON DUPLICATE KEY UPDATE perfect_paper_count = perfect_paper_count + VALUES(perfect_paper_count), " +
+            "answered_question_count = answered_question_count + VALUES(answered_question_count)")
+    int increment(@Param("studentId") Long studentId,
+                  @Param("perfectPapers") int perfectPapers,
+                  @Param("answeredQuestions") int answeredQuestions);
+}
@@ -3,8 +3,25 @@ package com.ice.exebackend.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.ice.exebackend.entity.BizStudent;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Update;
+
+import java.util.Map;
 
 @Mapper
 public interface BizStudentMapper extends BaseMapper<BizStudent> {
     // 基础的 CRUD 已由 BaseMapper 提供
-}
\ No newline at end of file
+
+    /**
+     * 按学生原子累加积分（一条语句处理多名学生，结果不低于 0）
+     *
+     * @param deltas 学生ID -> 积分变化量
+     */
+    @Update("<script>" +
+            "UPDATE biz_student SET points = GREATEST(COALESCE(points, 0) + CASE id " +
+            "<foreach collection='deltas' index='id' item='delta'>WHEN #{id} THEN #{delta} </foreach>" +
+            "ELSE 0 END, 0) WHERE id IN " +
+            "<foreach collection='deltas' index='id' open='(' separator=',' close=')'>#{id}</foreach>" +
+            "</script>")
+    int addPointsBatch(@Param("deltas") Map<Long, Integer> deltas);
+}
@@ -5,6 +5,7 @@ import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.ice.exebackend.dto.PaperStatsVO;
 import com.ice.exebackend.dto.WrongRecordVO;
 import com.ice.exebackend.entity.BizWrongRecord;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
@@ -22,4 +23,16 @@ public interface BizWrongRecordMapper extends BaseMapper<BizWrongRecord> {
 
 
     WrongRecordVO selectWrongRecordDetail(@Param("recordId") Long recordId, @Param("studentId") Long studentId);
+
+    /**
+     * 批量登记未掌握错题，已存在未掌握记录的（唯一索引 uk_student_question_unmastered）保持不变
+     */
+    @Insert("<script>" +
+            "INSERT INTO biz_wrong_record (student_id, question_id, paper_id, wrong_answer, wrong_reason, create_time, is_mastered) VALUES " +
+            "<foreach collection='records' item='r' separator=','>" +
+            "(#{r.studentId}, #{r.questionId}, #{r.paperId}, #{r.wrongAnswer}, #{r.wrongReason}, #{r.createTime}, 0)" +
+            "</foreach>" +
+            " ON DUPLICATE KEY UPDATE id = id" +
+            "</script>")
+    int insertUnmasteredBatch(@Param("records") List<BizWrongRecord> records);
 }
\ No newline at end of file
@@ -1,21 +1,39 @@
 package com.ice.exebackend.service;
 
+import com.ice.exebackend.config.AiConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.time.LocalDateTime;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * AI服务断路器（Circuit Breaker）
  * 当AI服务频繁失败时，自动熔断，避免级联故障
+ *
+ * 每个提供商独立熔断：deepseek 不可用时不影响 qwen，AiHttpClient 按 priority 切换到下一个可用的提供商。
+ * - 失败率：最近 window-seconds 秒分成 10 个桶计数，调用数达到 minimum-calls 且失败率达到阈值即熔断
+ * - 熔断 open-seconds 秒后进入半开状态，放行少量试探请求，成功足够次数即恢复，任一失败重新熔断；
+ *   没有结论的试探（4xx、发送前异常）归还名额，半开超过 open-seconds 仍无结论则重新熔断、重新计时
+ * 状态切换和计数全部基于 CAS，调用路径上不加锁。
  */
 @Component
 public class AiCircuitBreaker {
 
     private static final Logger log = LoggerFactory.getLogger(AiCircuitBreaker.class);
 
+    /** 滑动窗口的桶数 */
+    private static final int BUCKETS = 10;
+
     // 断路器状态
     private enum State {
         CLOSED,      // 关闭（正常工作）
@@ -23,229 +41,340 @@ public class AiCircuitBreaker {
         HALF_OPEN    // 半开（尝试恢复）
     }
 
-    private volatile State state = State.CLOSED;
-    private final AtomicInteger failureCount = new AtomicInteger(0);
-    private final AtomicInteger successCount = new AtomicInteger(0);
-    private volatile LocalDateTime openedTime = null;
+    @Autowired
+    private AiConfig aiConfig;
 
-    // 配置参数
-    private static final int FAILURE_THRESHOLD = 10;           // 失败阈值：连续10次失败
-    private static final long OPEN_DURATION_MILLIS = 300000;   // 熔断持续时间：5分钟
-    private static final int HALF_OPEN_SUCCESS_THRESHOLD = 3;  // 半开状态成功阈值：连续3次成功
-    private static final int HALF_OPEN_MAX_ATTEMPTS = 5;       // 半开状态最大尝试次数
+    private final Map<String, ProviderBreaker> breakers = new ConcurrentHashMap<>();
 
     /**
-     * 检查是否允许请求通过
+     * 检查是否允许向该提供商发送请求（半开状态下会占用一个试探名额）
      *
      * @return true:允许通过, false:被熔断
      */
-    public synchronized boolean allowRequest() {
-        switch (state) {
-            case CLOSED:
-                // 关闭状态，允许所有请求
-                return true;
-
-            case OPEN:
-                // 打开状态，检查是否到了尝试恢复的时间
-                if (shouldAttemptReset()) {
-                    transitionToHalfOpen();
-                    return true;
-                }
-                log.debug("断路器处于OPEN状态，拒绝请求");
-                return false;
-
-            case HALF_OPEN:
-                // 半开状态，允许少量请求尝试
-                int attempts = failureCount.get() + successCount.get();
-                if (attempts < HALF_OPEN_MAX_ATTEMPTS) {
-                    log.debug("断路器处于HALF_OPEN状态，允许尝试请求（{}/{}）",
-                        attempts + 1, HALF_OPEN_MAX_ATTEMPTS);
-                    return true;
-                }
-                log.debug("断路器HALF_OPEN状态尝试次数已达上限，拒绝请求");
-                return false;
+    public boolean allowRequest(String provider) {
+        return breaker(provider).allowRequest();
+    }
 
-            default:
-                return false;
+    /**
+     * 是否还有未熔断的提供商（不占用试探名额），全部熔断时调用方应直接降级
+     */
+    public boolean allowRequest() {
+        for (Map.Entry<String, AiConfig.ProviderConfig> entry : aiConfig.getProviders().entrySet()) {
+            if (entry.getValue().isEnabled() && breaker(entry.getKey()).isAvailable()) {
+                return true;
+            }
         }
+        return false;
     }
 
     /**
      * 记录成功调用
      */
-    public synchronized void recordSuccess() {
-        switch (state) {
-            case CLOSED:
-                // 关闭状态，重置失败计数
-                failureCount.set(0);
-                break;
-
-            case HALF_OPEN:
-                // 半开状态，累计成功次数
-                int successes = successCount.incrementAndGet();
-                log.info("断路器HALF_OPEN状态记录成功（{}/{}）",
-                    successes, HALF_OPEN_SUCCESS_THRESHOLD);
-
-                if (successes >= HALF_OPEN_SUCCESS_THRESHOLD) {
-                    // 达到成功阈值，恢复到关闭状态
-                    transitionToClosed();
-                }
-                break;
-
-            case OPEN:
-                // 打开状态不应该有成功记录，但如果有，说明正在恢复
-                log.warn("断路器在OPEN状态收到成功记录，忽略");
-                break;
-        }
+    public void recordSuccess(String provider) {
+        breaker(provider).recordSuccess();
     }
 
     /**
      * 记录失败调用
      */
-    public synchronized void recordFailure() {
-        switch (state) {
-            case CLOSED:
-                // 关闭状态，累计失败次数
-                int failures = failureCount.incrementAndGet();
-                log.warn("断路器记录失败（{}/{}）", failures, FAILURE_THRESHOLD);
-
-                if (failures >= FAILURE_THRESHOLD) {
-                    // 达到失败阈值，打开断路器
-                    transitionToOpen();
-                }
-                break;
-
-            case HALF_OPEN:
-                // 半开状态遇到失败，立即重新打开
-                log.warn("断路器HALF_OPEN状态遇到失败，重新打开");
-                transitionToOpen();
-                break;
-
-            case OPEN:
-                // 打开状态继续记录失败（但不影响状态）
-                log.debug("断路器已处于OPEN状态，继续熔断");
-                break;
-        }
+    public void recordFailure(String provider) {
+        breaker(provider).recordFailure();
     }
 
     /**
-     * 转换到关闭状态
+     * 记录没有结论的调用（4xx、请求发送前异常等），半开状态下归还试探名额
      */
-    private void transitionToClosed() {
-        state = State.CLOSED;
-        failureCount.set(0);
-        successCount.set(0);
-        openedTime = null;
-        log.info("⚡ AI服务断路器已关闭，服务恢复正常");
+    public void recordIgnored(String provider) {
+        breaker(provider).releaseProbe();
     }
 
     /**
-     * 转换到打开状态
+     * 获取当前状态
      */
-    private void transitionToOpen() {
-        state = State.OPEN;
-        openedTime = LocalDateTime.now();
-        failureCount.set(0);
-        successCount.set(0);
-        log.error("⚠️ AI服务断路器已打开，暂停调用（持续{}分钟）",
-            OPEN_DURATION_MILLIS / 60000);
+    public String getState(String provider) {
+        return breaker(provider).state.get().name();
     }
 
     /**
-     * 转换到半开状态
+     * 手动重置断路器（用于管理操作）
      */
-    private void transitionToHalfOpen() {
-        state = State.HALF_OPEN;
-        failureCount.set(0);
-        successCount.set(0);
-        log.info("🔄 AI服务断路器进入HALF_OPEN状态，尝试恢复");
+    public void reset(String provider) {
+        log.info("手动重置AI服务断路器 [{}]", provider);
+        breaker(provider).transitionToClosed();
     }
 
     /**
-     * 检查是否应该尝试重置
+     * 手动打开断路器（用于维护）
      */
-    private boolean shouldAttemptReset() {
-        if (openedTime == null) {
-            return false;
-        }
-
-        LocalDateTime now = LocalDateTime.now();
-        long millisSinceOpened = java.time.Duration.between(openedTime, now).toMillis();
-
-        return millisSinceOpened >= OPEN_DURATION_MILLIS;
+    public void open(String provider) {
+        log.info("手动打开AI服务断路器 [{}]", provider);
+        breaker(provider).forceOpen();
     }
 
     /**
-     * 获取当前状态
+     * 获取各提供商断路器统计信息
      */
-    public String getState() {
-        return state.name();
+    public List<CircuitBreakerStats> getStats() {
+        List<CircuitBreakerStats> stats = new ArrayList<>();
+        for (ProviderBreaker breaker : breakers.values()) {
+            int[] counts = breaker.window.counts();
+            long openedAt = breaker.openedAtMillis;
+            stats.add(new CircuitBreakerStats(
+                breaker.provider,
+                breaker.state.get().name(),
+                counts[1],
+                counts[0],
+                openedAt > 0 ? Instant.ofEpochMilli(openedAt).toString() : null,
+                aiConfig.getCircuitBreaker().getFailureRateThreshold()
+            ));
+        }
+        return stats;
     }
 
-    /**
-     * 获取失败次数
-     */
-    public int getFailureCount() {
-        return failureCount.get();
+    private ProviderBreaker breaker(String provider) {
+        return breakers.computeIfAbsent(provider != null ? provider : "", ProviderBreaker::new);
     }
 
-    /**
-     * 手动重置断路器（用于管理操作）
-     */
-    public synchronized void reset() {
-        log.info("手动重置AI服务断路器");
-        transitionToClosed();
+    private static long nowMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
     }
 
     /**
-     * 手动打开断路器（用于维护）
+     * 单个提供商的断路器
      */
-    public synchronized void open() {
-        log.info("手动打开AI服务断路器");
-        transitionToOpen();
+    private class ProviderBreaker {
+        final String provider;
+        final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+        final SlidingWindow window;
+        final AtomicInteger halfOpenAttempts = new AtomicInteger();
+        final AtomicInteger halfOpenSuccesses = new AtomicInteger();
+        volatile long openedAt;
+        volatile long halfOpenAt;
+        /** 仅用于展示的打开时间（墙上时钟） */
+        volatile long openedAtMillis;
+
+        ProviderBreaker(String provider) {
+            this.provider = provider;
+            this.window = new SlidingWindow(
+                TimeUnit.SECONDS.toMillis(Math.max(1, aiConfig.getCircuitBreaker().getWindowSeconds())));
+        }
+
+        boolean allowRequest() {
+            AiConfig.CircuitBreakerConfig config = aiConfig.getCircuitBreaker();
+            State current = state.get();
+            if (current == State.CLOSED) {
+                return true;
+            }
+            if (current == State.OPEN) {
+                // 打开状态，检查是否到了尝试恢复的时间
+                if (!openElapsed()) {
+                    log.debug("断路器 [{}] 处于OPEN状态，拒绝请求", provider);
+                    return false;
+                }
+                halfOpenAt = nowMillis();
+                if (state.compareAndSet(State.OPEN, State.HALF_OPEN)) {
+                    log.info("🔄 AI服务断路器 [{}] 进入HALF_OPEN状态，尝试恢复", provider);
+                }
+            }
+            // 半开状态，允许少量请求尝试
+            int attempts;
+            while ((attempts = halfOpenAttempts.get()) < config.getHalfOpenMaxAttempts()) {
+                if (halfOpenAttempts.compareAndSet(attempts, attempts + 1)) {
+                    log.debug("断路器 [{}] 处于HALF_OPEN状态，允许尝试请求（{}/{}）",
+                        provider, attempts + 1, config.getHalfOpenMaxAttempts());
+                    return true;
+                }
+            }
+            // 名额用完却迟迟没有结论（结果丢失），重新熔断，open-seconds 后再给一轮试探
+            if (state.get() == State.HALF_OPEN && elapsedSince(halfOpenAt) && tripFrom(State.HALF_OPEN)) {
+                log.warn("断路器 [{}] HALF_OPEN状态 {} 秒内没有结论，重新打开", provider, config.getOpenSeconds());
+            }
+            return false;
+        }
+
+        void releaseProbe() {
+            if (state.get() == State.HALF_OPEN) {
+                halfOpenAttempts.getAndUpdate(n -> n > 0 ? n - 1 : 0);
+            }
+        }
+
+        boolean isAvailable() {
+            State current = state.get();
+            return current == State.CLOSED
+                || (current == State.OPEN && openElapsed())
+                || (current == State.HALF_OPEN && halfOpenAttempts.get() < aiConfig.getCircuitBreaker().getHalfOpenMaxAttempts());
+        }
+
+        void recordSuccess() {
+            switch (state.get()) {
+                case CLOSED:
+                    window.record(true);
+                    break;
+                case HALF_OPEN:
+                    int successes = halfOpenSuccesses.incrementAndGet();
+                    log.info("断路器 [{}] HALF_OPEN状态记录成功（{}/{}）",
+                        provider, successes, aiConfig.getCircuitBreaker().getHalfOpenSuccessThreshold());
+                    if (successes >= aiConfig.getCircuitBreaker().getHalfOpenSuccessThreshold()
+                            && state.compareAndSet(State.HALF_OPEN, State.CLOSED)) {
+                        window.reset();
+                        openedAtMillis = 0;
+                        log.info("⚡ AI服务断路器 [{}] 已关闭，服务恢复正常", provider);
+                    }
+                    break;
+                default:
+                    // 熔断前发出的请求晚到的结果，忽略
+                    break;
+            }
+        }
+
+        void recordFailure() {
+            AiConfig.CircuitBreakerConfig config = aiConfig.getCircuitBreaker();
+            switch (state.get()) {
+                case CLOSED:
+                    window.record(false);
+                    int[] counts = window.counts();
+                    int calls = counts[0] + counts[1];
+                    if (calls >= config.getMinimumCalls()
+                            && counts[1] >= calls * config.getFailureRateThreshold()) {
+                        if (tripFrom(State.CLOSED)) {
+                            log.error("⚠️ AI服务断路器 [{}] 已打开：最近 {} 次调用失败 {} 次，暂停调用 {} 秒",
+                                provider, calls, counts[1], config.getOpenSeconds());
+                        }
+                    }
+                    break;
+                case HALF_OPEN:
+                    // 半开状态遇到失败，立即重新打开
+                    if (tripFrom(State.HALF_OPEN)) {
+                        log.warn("断路器 [{}] HALF_OPEN状态遇到失败，重新打开", provider);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        void transitionToClosed() {
+            state.set(State.CLOSED);
+            window.reset();
+            openedAtMillis = 0;
+        }
+
+        void forceOpen() {
+            halfOpenAttempts.set(0);
+            halfOpenSuccesses.set(0);
+            openedAt = nowMillis();
+            openedAtMillis = System.currentTimeMillis();
+            state.set(State.OPEN);
+        }
+
+        private boolean tripFrom(State expected) {
+            // 先重置试探计数、写打开时间再切换状态，其他线程看到 OPEN 时这些值一定是新的
+            halfOpenAttempts.set(0);
+            halfOpenSuccesses.set(0);
+            openedAt = nowMillis();
+            if (state.compareAndSet(expected, State.OPEN)) {
+                openedAtMillis = System.currentTimeMillis();
+                return true;
+            }
+            return false;
+        }
+
+        private boolean openElapsed() {
+            return elapsedSince(openedAt);
+        }
+
+        private boolean elapsedSince(long since) {
+            return nowMillis() - since >= TimeUnit.SECONDS.toMillis(aiConfig.getCircuitBreaker().getOpenSeconds());
+        }
     }
 
     /**
-     * 获取断路器统计信息
+     * 分桶滑动窗口计数：每个桶记录所属时间片，过期的桶在下次写入时用 CAS 换成新桶
      */
-    public CircuitBreakerStats getStats() {
-        return new CircuitBreakerStats(
-            state.name(),
-            failureCount.get(),
-            successCount.get(),
-            openedTime != null ? openedTime.toString() : null,
-            FAILURE_THRESHOLD,
-            HALF_OPEN_SUCCESS_THRESHOLD
-        );
+    private static class SlidingWindow {
+        private final long bucketMillis;
+        private final AtomicReferenceArray<Bucket> buckets = new AtomicReferenceArray<>(BUCKETS);
+
+        private static class Bucket {
+            final long epoch;
+            final AtomicInteger successes = new AtomicInteger();
+            final AtomicInteger failures = new AtomicInteger();
+
+            Bucket(long epoch) {
+                this.epoch = epoch;
+            }
+        }
+
+        SlidingWindow(long windowMillis) {
+            this.bucketMillis = Math.max(1, windowMillis / BUCKETS);
+        }
+
+        void record(boolean success) {
+            long epoch = nowMillis() / bucketMillis;
+            int index = (int) (epoch % BUCKETS);
+            Bucket bucket = buckets.get(index);
+            while (bucket == null || bucket.epoch < epoch) {
+                Bucket fresh = new Bucket(epoch);
+                if (buckets.compareAndSet(index, bucket, fresh)) {
+                    bucket = fresh;
+                    break;
+                }
+                bucket = buckets.get(index);
+            }
+            (success ? bucket.successes : bucket.failures).incrementAndGet();
+        }
+
+        /**
+         * @return [成功数, 失败数]
+         */
+        int[] counts() {
+            long oldest = nowMillis() / bucketMillis - BUCKETS + 1;
+            int successes = 0;
+            int failures = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                Bucket bucket = buckets.get(i);
+                if (bucket != null && bucket.epoch >= oldest) {
+                    successes += bucket.successes.get();
+                    failures += bucket.failures.get();
+                }
+            }
+            return new int[]{successes, failures};
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets.set(i, null);
+            }
+        }
     }
 
     /**
      * 断路器统计信息
      */
     public static class CircuitBreakerStats {
+        private final String provider;
         private final String state;
         private final int failureCount;
         private final int successCount;
         private final String openedTime;
-        private final int failureThreshold;
-        private final int successThreshold;
+        private final double failureRateThreshold;
 
-        public CircuitBreakerStats(String state, int failureCount, int successCount,
-                                   String openedTime, int failureThreshold, int successThreshold) {
+        public CircuitBreakerStats(String provider, String state, int failureCount, int successCount,
+                                   String openedTime, double failureRateThreshold) {
+            this.provider = provider;
             this.state = state;
             this.failureCount = failureCount;
             this.successCount = successCount;
             this.openedTime = openedTime;
-            this.failureThreshold = failureThreshold;
-            this.successThreshold = successThreshold;
+            this.failureRateThreshold = failureRateThreshold;
         }
 
         // Getters
+        public String getProvider() { return provider; }
         public String getState() { return state; }
         public int getFailureCount() { return failureCount; }
         public int getSuccessCount() { return successCount; }
         public String getOpenedTime() { return openedTime; }
-        public int getFailureThreshold() { return failureThreshold; }
-        public int getSuccessThreshold() { return successThreshold; }
+        public double getFailureRateThreshold() { return failureRateThreshold; }
     }
 }
@@ -1,6 +1,7 @@
 package com.ice.exebackend.service;
 
 import com.ice.exebackend.config.AiConfig;
+import com.ice.exebackend.utils.AdaptiveConcurrencyLimit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -9,12 +10,15 @@ import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Component;
 
 import java.util.Collections;
-import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
 /**
  * AI 限流器
  * 实现多级限流：全局并发、用户并发、速率限制
+ *
+ * 全局并发上限由 {@link AdaptiveConcurrencyLimit} 根据 AI 响应延迟在
+ * min-concurrent ~ max-concurrent 之间自动调整（延迟由 AiHttpClient 上报，见 {@link #recordLatency}）；
+ * ai.rate-limit.adaptive=false 时固定为 max-concurrent。
  */
 @Component
 public class AiRateLimiter {
@@ -28,7 +32,7 @@ public class AiRateLimiter {
     private RedisTemplate<String, String> redisTemplate;
 
     // 全局并发控制
-    private Semaphore globalConcurrentSemaphore;
+    private AdaptiveConcurrencyLimit globalConcurrentLimit;
 
     // Lua脚本：基于滑动窗口的限流
     private static final String RATE_LIMIT_SCRIPT =
@@ -52,9 +56,12 @@ public class AiRateLimiter {
 
     @Autowired
     public void init(AiConfig aiConfig) {
-        if (aiConfig.getRateLimit().isEnabled()) {
-            this.globalConcurrentSemaphore = new Semaphore(aiConfig.getRateLimit().getMaxConcurrent());
-            log.info("AI限流器初始化完成: 全局并发={}", aiConfig.getRateLimit().getMaxConcurrent());
+        AiConfig.RateLimitConfig config = aiConfig.getRateLimit();
+        if (config.isEnabled()) {
+            int max = config.getMaxConcurrent();
+            int min = config.isAdaptive() ? config.getMinConcurrent() : max;
+            this.globalConcurrentLimit = new AdaptiveConcurrencyLimit(min, max, config.getLatencyTolerance());
+            log.info("AI限流器初始化完成: 全局并发={}~{}", min, max);
         }
     }
 
@@ -68,9 +75,45 @@ public class AiRateLimiter {
             return true;
         }
 
-        boolean acquired = globalConcurrentSemaphore.tryAcquire();
+        boolean acquired = globalConcurrentLimit.tryAcquire();
         if (!acquired) {
-            log.warn("全局并发限制：当前并发已达上限 {}", aiConfig.getRateLimit().getMaxConcurrent());
+            log.warn("全局并发限制：当前并发已达上限 {}", globalConcurrentLimit.getLimit());
+        }
+        return acquired;
+    }
+
+    /**
+     * 等待获取全局并发许可（后台任务使用，请求线程请用 {@link #tryAcquireGlobalConcurrent()}）
+     *
+     * @param timeout 最长等待时间
+     * @return 是否获取成功
+     */
+    public boolean acquireGlobalConcurrent(long timeout, TimeUnit unit) throws InterruptedException {
+        if (!aiConfig.getRateLimit().isEnabled()) {
+            return true;
+        }
+
+        boolean acquired = globalConcurrentLimit.acquire(timeout, unit);
+        if (!acquired) {
+            log.warn("全局并发限制：等待 {} {} 仍未获取到许可", timeout, unit);
+        }
+        return acquired;
+    }
+
+    /**
+     * 不等待地尽量获取多个全局并发许可（一个请求内并行发起多次 AI 调用时使用）
+     *
+     * @param max 最多获取的许可数
+     * @return 实际获取到的许可数，用完后需逐个调用 {@link #releaseGlobalConcurrent()}
+     */
+    public int tryAcquireGlobalConcurrent(int max) {
+        if (!aiConfig.getRateLimit().isEnabled()) {
+            return max;
+        }
+
+        int acquired = 0;
+        while (acquired < max && globalConcurrentLimit.tryAcquire()) {
+            acquired++;
         }
         return acquired;
     }
@@ -80,10 +123,28 @@ public class AiRateLimiter {
      */
     public void releaseGlobalConcurrent() {
         if (aiConfig.getRateLimit().isEnabled()) {
-            globalConcurrentSemaphore.release();
+            globalConcurrentLimit.release();
         }
     }
 
+    /**
+     * 上报一次 AI 调用的延迟，用于调整全局并发上限
+     *
+     * @param overloaded 是否为过载信号（超时、5xx、429），出现时直接收缩上限
+     */
+    public void recordLatency(long millis, boolean overloaded) {
+        if (globalConcurrentLimit != null && aiConfig.getRateLimit().isAdaptive()) {
+            globalConcurrentLimit.onSample(millis, overloaded);
+        }
+    }
+
+    /**
+     * 当前全局并发上限
+     */
+    public int getGlobalConcurrentLimit() {
+        return globalConcurrentLimit != null ? globalConcurrentLimit.getLimit() : aiConfig.getRateLimit().getMaxConcurrent();
+    }
+
     /**
      * 检查用户速率限制（每分钟）
      *
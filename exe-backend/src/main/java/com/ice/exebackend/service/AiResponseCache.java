@@ -0,0 +1,279 @@
+package com.ice.exebackend.service;
+
+import com.ice.exebackend.config.AiConfig;
+import com.ice.exebackend.utils.TextSimilarity;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 错题分析 / 主观题批改的 AI 响应缓存
+ *
+ * 同一道热门题目往往有成百上千名学生给出相同或几乎相同的错误答案，按完整请求做哈希时，
+ * 空白、全角半角这类差异都会让缓存失效。这里改为按「题目范围 + 规范化后的作答」缓存：
+ * - 精确匹配：作答经 {@link TextSimilarity#normalizeText} 规范化后哈希，先查本机再查 Redis（多节点共享）
+ * - 相似匹配：只用于错题分析（{@link #SIMILAR_OPERATIONS}），同一题目范围内，规范化作答的字符二元组 Dice 系数
+ *   达到 ai.cache.similarity-threshold 即复用；短于 similarity-min-length 的作答（选择、填空）只做精确匹配，
+ *   避免 "x>1" 与 "x<1" 这类误判。主观题批改的结果是给某份作答的分数，一字之差（如加了否定）就可能不同，只做精确匹配
+ * - 淘汰：每个条目记录命中次数，按 GreedyDual-Size-Frequency（命中次数 × 生成耗时 / 响应大小，加老化时钟）淘汰，
+ *   生成越贵、越常被复用的响应留得越久；同一题目范围最多保留 max-entries-per-question 条
+ * 指标：ai.response.cache（operation、result=exact/redis/similar/miss）、ai.response.cache.size
+ */
+@Service
+public class AiResponseCache {
+
+    private static final Logger log = LoggerFactory.getLogger(AiResponseCache.class);
+
+    /** 允许按相似作答复用响应的功能 */
+    private static final Set<String> SIMILAR_OPERATIONS = Set.of("analyze");
+
+    /** 从 Redis 回填的条目不知道原始生成耗时，按此估算 */
+    private static final long DEFAULT_COST_MILLIS = 5000;
+
+    @Autowired
+    private AiConfig aiConfig;
+
+    @Autowired(required = false)
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Map<String, Entry> exact = new HashMap<>();
+    private final Map<String, List<Entry>> byScope = new HashMap<>();
+    private final TreeSet<Entry> byPriority = new TreeSet<>(
+            Comparator.comparingDouble((Entry e) -> e.priority).thenComparingLong(e -> e.seq));
+
+    /** GDSF 老化时钟：取最近一次被淘汰条目的优先级 */
+    private double clock;
+    private long seq;
+
+    /**
+     * 缓存条目
+     */
+    private static class Entry {
+        final String key;
+        final String scopeKey;
+        final Set<String> bigrams;
+        final String value;
+        final double costPerSize;
+        final long expiresAt;
+        final long seq;
+        int hits;
+        double priority;
+
+        Entry(String key, String scopeKey, Set<String> bigrams, String value, long costMillis, long expiresAt, long seq) {
+            this.key = key;
+            this.scopeKey = scopeKey;
+            this.bigrams = bigrams;
+            this.value = value;
+            this.costPerSize = Math.max(1, costMillis) / (double) (value.length() / 1024 + 1);
+            this.expiresAt = expiresAt;
+            this.seq = seq;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        Gauge.builder("ai.response.cache.size", this, c -> c.size())
+                .description("本机缓存的 AI 响应条目数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 题目范围：同一道题（题干、答案等定义题目的要素）的各种作答共享一个范围，要素先规范化再哈希
+     */
+    public static String scope(Object... parts) {
+        StringBuilder sb = new StringBuilder();
+        for (Object part : parts) {
+            sb.append(TextSimilarity.normalizeText(part != null ? part.toString() : "")).append('\u0001');
+        }
+        return DigestUtils.md5DigestAsHex(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 缓存键：规范化后相同的作答得到相同的键（相同请求合并也按此键，见 {@link AiSingleFlight}）
+     */
+    public static String key(String operation, String scope, String answer) {
+        return entryKey(operation, scope, TextSimilarity.normalizeText(answer));
+    }
+
+    /**
+     * 查找缓存的响应
+     *
+     * @param operation 功能（analyze、grading 等，不同功能的响应格式不同，互不复用）
+     * @param scope     {@link #scope(Object...)} 计算的题目范围
+     * @param answer    学生作答
+     * @return 命中时返回响应，否则 null
+     */
+    public String get(String operation, String scope, String answer) {
+        if (!aiConfig.getCache().isEnabled()) {
+            return null;
+        }
+        String normalized = TextSimilarity.normalizeText(answer);
+        String key = entryKey(operation, scope, normalized);
+        long now = System.currentTimeMillis();
+
+        synchronized (this) {
+            Entry entry = exact.get(key);
+            if (entry != null) {
+                if (entry.expiresAt > now) {
+                    touch(entry);
+                    record(operation, "exact");
+                    return entry.value;
+                }
+                remove(entry);
+            }
+        }
+
+        String shared = readRedis(key);
+        if (shared != null) {
+            synchronized (this) {
+                if (!exact.containsKey(key)) {
+                    insert(key, operation, scope, normalized, shared, DEFAULT_COST_MILLIS, now);
+                }
+            }
+            record(operation, "redis");
+            return shared;
+        }
+
+        String similar = SIMILAR_OPERATIONS.contains(operation)
+                ? findSimilar(operation + ":" + scope, normalized, now) : null;
+        record(operation, similar != null ? "similar" : "miss");
+        return similar;
+    }
+
+    /**
+     * 保存 AI 生成的响应
+     *
+     * @param costMillis 生成该响应的耗时，用于淘汰优先级
+     */
+    public void put(String operation, String scope, String answer, String value, long costMillis) {
+        if (!aiConfig.getCache().isEnabled() || value == null || value.isEmpty()) {
+            return;
+        }
+        String normalized = TextSimilarity.normalizeText(answer);
+        String key = entryKey(operation, scope, normalized);
+        synchronized (this) {
+            Entry old = exact.get(key);
+            if (old != null) remove(old);
+            insert(key, operation, scope, normalized, value, costMillis, System.currentTimeMillis());
+        }
+        writeRedis(key, value);
+    }
+
+    public synchronized int size() {
+        return exact.size();
+    }
+
+    private String findSimilar(String scopeKey, String normalized, long now) {
+        AiConfig.CacheConfig config = aiConfig.getCache();
+        if (config.getSimilarityThreshold() > 1 || normalized.length() < config.getSimilarityMinLength()) {
+            return null;
+        }
+        Set<String> bigrams = TextSimilarity.bigrams(normalized);
+        synchronized (this) {
+            List<Entry> candidates = byScope.get(scopeKey);
+            if (candidates == null) return null;
+            Entry best = null;
+            double bestScore = config.getSimilarityThreshold();
+            for (Entry candidate : candidates) {
+                if (candidate.bigrams == null || candidate.expiresAt <= now) continue;
+                double score = TextSimilarity.dice(bigrams, candidate.bigrams);
+                if (score >= bestScore) {
+                    best = candidate;
+                    bestScore = score;
+                }
+            }
+            if (best == null) return null;
+            touch(best);
+            return best.value;
+        }
+    }
+
+    private void insert(String key, String operation, String scope, String normalized, String value,
+                        long costMillis, long now) {
+        AiConfig.CacheConfig config = aiConfig.getCache();
+        String scopeKey = operation + ":" + scope;
+        Set<String> bigrams = SIMILAR_OPERATIONS.contains(operation)
+                && normalized.length() >= config.getSimilarityMinLength()
+                ? TextSimilarity.bigrams(normalized) : null;
+        Entry entry = new Entry(key, scopeKey, bigrams, value, costMillis,
+                now + TimeUnit.SECONDS.toMillis(config.getTtl()), seq++);
+        entry.hits = 1;
+        entry.priority = clock + entry.costPerSize;
+        exact.put(key, entry);
+        byPriority.add(entry);
+        List<Entry> siblings = byScope.computeIfAbsent(scopeKey, k -> new ArrayList<>());
+        siblings.add(entry);
+
+        if (siblings.size() > Math.max(1, config.getMaxEntriesPerQuestion())) {
+            // 题目内的淘汰不推进全局老化时钟
+            remove(Collections.min(siblings, byPriority.comparator()));
+        }
+        while (exact.size() > Math.max(1, config.getMaxLocalEntries())) {
+            evict(byPriority.first());
+        }
+    }
+
+    private void touch(Entry entry) {
+        byPriority.remove(entry);
+        entry.hits++;
+        entry.priority = clock + entry.hits * entry.costPerSize;
+        byPriority.add(entry);
+    }
+
+    private void evict(Entry entry) {
+        clock = Math.max(clock, entry.priority);
+        remove(entry);
+    }
+
+    private void remove(Entry entry) {
+        exact.remove(entry.key);
+        byPriority.remove(entry);
+        List<Entry> siblings = byScope.get(entry.scopeKey);
+        if (siblings != null) {
+            siblings.remove(entry);
+            if (siblings.isEmpty()) byScope.remove(entry.scopeKey);
+        }
+    }
+
+    private String readRedis(String key) {
+        if (redisTemplate == null) return null;
+        try {
+            return redisTemplate.opsForValue().get(aiConfig.getCache().getKeyPrefix() + key);
+        } catch (Exception e) {
+            log.error("从缓存获取数据失败: {}", key, e);
+            return null;
+        }
+    }
+
+    private void writeRedis(String key, String value) {
+        if (redisTemplate == null) return;
+        try {
+            redisTemplate.opsForValue().set(aiConfig.getCache().getKeyPrefix() + key, value,
+                    aiConfig.getCache().getTtl(), TimeUnit.SECONDS);
+        } catch (Exception e) {
+            log.error("保存到缓存失败: {}", key, e);
+        }
+    }
+
+    private void record(String operation, String result) {
+        meterRegistry.counter("ai.response.cache", "operation", operation, "result", result).increment();
+    }
+
+    private static String entryKey(String operation, String scope, String normalizedAnswer) {
+        return "resp:" + operation + ":" + scope + ":"
+                + DigestUtils.md5DigestAsHex(normalizedAnswer.getBytes(StandardCharsets.UTF_8));
+    }
+}
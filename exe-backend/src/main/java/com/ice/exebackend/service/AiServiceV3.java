@@ -8,6 +8,9 @@ import com.ice.exebackend.dto.AiAnalysisReq;
 import com.ice.exebackend.dto.AiGeneratedQuestionDTO;
 import com.ice.exebackend.dto.AiGradingResult;
 import com.ice.exebackend.utils.AiHttpClient;
+import com.ice.exebackend.utils.KnowledgePointMerger;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -18,7 +21,8 @@ import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * AI 服务（增强版 V3）
@@ -53,14 +57,73 @@ public class AiServiceV3 {
     @Autowired
     private BasicAnalyzer basicAnalyzer;
 
+    @Autowired
+    private AiResponseCache responseCache;
+
+    @Autowired
+    private AiSingleFlight singleFlight;
+
+    /**
+     * 流式请求的准备工作（限流、拼提示词、发请求）在此线程池执行，数量有界；
+     * 等待和接收 AI 数据块不占用这里的线程（见 {@link AiHttpClient#sendStreamRequest}）
+     */
+    private ThreadPoolExecutor streamExecutor;
+
+    @PostConstruct
+    public void initStreamExecutor() {
+        AiConfig.ExecutorConfig config = aiConfig.getExecutor();
+        int threads = Math.max(1, config.getStreamThreads());
+        AtomicInteger seq = new AtomicInteger();
+        streamExecutor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(Math.max(1, config.getStreamQueueCapacity())), r -> {
+            Thread t = new Thread(r, "ai-stream-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        streamExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    public void shutdownStreamExecutor() {
+        streamExecutor.shutdownNow();
+    }
+
+    /**
+     * 提交流式任务；排队已满时直接告知前端稍后再试
+     */
+    private void runStream(SseEmitter emitter, Runnable task) {
+        try {
+            streamExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            log.warn("流式AI任务排队已满，拒绝请求");
+            emitter.completeWithError(new RuntimeException("系统繁忙，请稍后再试"));
+        }
+    }
+
+    /**
+     * 流式请求结束（完成或出错）后再释放全局并发许可；请求未发出时立即释放
+     */
+    private void releaseGlobalConcurrentWhenDone(CompletableFuture<Void> streamDone) {
+        if (streamDone == null) {
+            rateLimiter.releaseGlobalConcurrent();
+        } else {
+            streamDone.whenComplete((v, e) -> rateLimiter.releaseGlobalConcurrent());
+        }
+    }
+
     /**
      * AI 错题分析（增强版 + 优雅降级）
      */
     public String analyzeWrongQuestion(String apiKey, String providerKey, AiAnalysisReq req, Long userId) throws Exception {
-        return executeWithRateLimit(userId, "analyze", providerKey, () -> {
+        // 相同请求（同一道题、规范化后相同的作答）正在调用时直接复用其结果，不再占用限流配额
+        String scope = analyzeScope(req);
+        AiSingleFlight.Result<String> flight = singleFlight.execute(
+                AiResponseCache.key("analyze", scope, req.getStudentAnswer()),
+                () -> responseCache.get("analyze", scope, req.getStudentAnswer()),
+                () -> executeWithRateLimit(userId, "analyze", providerKey, () -> {
             log.info("AI错题分析请求: provider={}, user={}", providerKey, userId);
 
-            // 【新增】检查断路器状态
+            // 【新增】检查断路器状态（所有提供商都熔断时才降级，否则由 AiHttpClient 切换提供商）
             if (!circuitBreaker.allowRequest()) {
                 log.warn("断路器打开，使用降级方案");
                 String fallbackResult = basicAnalyzer.analyzeWrongQuestion(req);
@@ -69,13 +132,11 @@ public class AiServiceV3 {
                 return fallbackResult;
             }
 
-            // 检查缓存
-            String cacheKey = generateCacheKey("analyze", req);
-            String cachedResult = getFromCache(cacheKey);
+            // 检查缓存（同一道题、规范化后相同或相近的错误答案复用分析）
+            String cachedResult = responseCache.get("analyze", scope, req.getStudentAnswer());
             if (cachedResult != null) {
-                log.info("命中缓存: {}", cacheKey);
+                log.info("命中错题分析缓存: questionId={}", req.getQuestionId());
                 logCall(userId, "STUDENT", "analyze", providerKey, true, 0, true, 0, null, "cached");
-                circuitBreaker.recordSuccess(); // 【新增】缓存命中也算成功
                 return cachedResult;
             }
 
@@ -109,12 +170,11 @@ public class AiServiceV3 {
                 );
 
                 success = true;
-                circuitBreaker.recordSuccess(); // 【新增】记录成功
-                saveToCache(cacheKey, result);
+                responseCache.put("analyze", scope, req.getStudentAnswer(), result,
+                        System.currentTimeMillis() - startTime);
 
             } catch (Exception e) {
                 errorMessage = e.getMessage();
-                circuitBreaker.recordFailure(); // 【新增】记录失败
 
                 // 【新增】如果AI失败，使用降级方案
                 log.warn("AI分析失败，使用降级方案: {}", e.getMessage());
@@ -129,7 +189,12 @@ public class AiServiceV3 {
             }
 
             return result;
-        });
+        }));
+
+        if (flight.isShared()) {
+            logCall(userId, "STUDENT", "analyze", providerKey, true, 0, true, 0, null, "coalesced");
+        }
+        return flight.getValue();
     }
 
     /**
@@ -138,9 +203,25 @@ public class AiServiceV3 {
     public AiGradingResult gradeSubjectiveQuestion(String apiKey, String providerKey,
                                                    String questionContent, String referenceAnswer,
                                                    String studentAnswer, int maxScore, Long userId) throws Exception {
-        return executeWithRateLimit(userId, "grading", providerKey, () -> {
+        // 相同作答正在批改时直接复用其结果，不再占用限流配额
+        String scope = AiResponseCache.scope(questionContent, referenceAnswer, maxScore);
+        AiSingleFlight.Result<AiGradingResult> flight = singleFlight.execute(
+                AiResponseCache.key("grading", scope, studentAnswer),
+                () -> {
+                    String shared = responseCache.get("grading", scope, studentAnswer);
+                    return shared != null ? objectMapper.readValue(shared, AiGradingResult.class) : null;
+                },
+                () -> executeWithRateLimit(userId, "grading", providerKey, () -> {
             log.info("AI主观题批改请求: provider={}, user={}, maxScore={}", providerKey, userId, maxScore);
 
+            // 检查缓存（相同或相近的作答给出相同评分）
+            String cachedResult = responseCache.get("grading", scope, studentAnswer);
+            if (cachedResult != null) {
+                log.info("命中主观题批改缓存");
+                logCall(userId, "STUDENT", "grading", providerKey, true, 0, true, 0, null, "cached");
+                return objectMapper.readValue(cachedResult, AiGradingResult.class);
+            }
+
             long startTime = System.currentTimeMillis();
             boolean success = false;
             String errorMessage = null;
@@ -172,6 +253,8 @@ public class AiServiceV3 {
                 String jsonString = aiHttpClient.extractJson(content);
                 result = objectMapper.readValue(jsonString, AiGradingResult.class);
                 success = true;
+                responseCache.put("grading", scope, studentAnswer, objectMapper.writeValueAsString(result),
+                        System.currentTimeMillis() - startTime);
 
             } catch (Exception e) {
                 errorMessage = e.getMessage();
@@ -183,7 +266,12 @@ public class AiServiceV3 {
             }
 
             return result;
-        });
+        }));
+
+        if (flight.isShared()) {
+            logCall(userId, "STUDENT", "grading", providerKey, true, 0, true, 0, null, "coalesced");
+        }
+        return flight.getValue();
     }
 
     /**
@@ -269,7 +357,7 @@ public class AiServiceV3 {
             log.info("AI知识点提取请求: provider={}, user={}, count={}, textLength={}",
                 providerKey, userId, count, text.length());
 
-            // 检查断路器状态
+            // 检查断路器状态（所有提供商都熔断时才降级）
             if (!circuitBreaker.allowRequest()) {
                 log.warn("断路器打开，使用降级方案");
                 List<Map<String, String>> fallbackResult = basicAnalyzer.extractKnowledgePoints(text, count);
@@ -284,7 +372,6 @@ public class AiServiceV3 {
             if (cachedResult != null) {
                 log.info("命中缓存: {}", cacheKey);
                 logCall(userId, "TEACHER", "extract", providerKey, true, 0, true, 0, null, "cached");
-                circuitBreaker.recordSuccess();
                 return objectMapper.readValue(cachedResult, new TypeReference<List<Map<String, String>>>() {
                 });
             }
@@ -301,16 +388,18 @@ public class AiServiceV3 {
                     result = extractKnowledgePointsDirect(apiKey, providerKey, text, count);
                 } else {
                     // 大文本：分块处理
-                    result = extractKnowledgePointsChunked(apiKey, providerKey, text, count);
+                    try {
+                        result = extractKnowledgePointsChunked(apiKey, providerKey, text, count, null).join();
+                    } catch (CompletionException e) {
+                        throw e.getCause() instanceof Exception cause ? cause : e;
+                    }
                 }
 
                 success = true;
-                circuitBreaker.recordSuccess();
                 saveToCache(cacheKey, objectMapper.writeValueAsString(result));
 
             } catch (Exception e) {
                 errorMessage = e.getMessage();
-                circuitBreaker.recordFailure();
 
                 // 降级方案
                 log.warn("AI知识点提取失败，使用降级方案: {}", e.getMessage());
@@ -334,6 +423,19 @@ public class AiServiceV3 {
     private List<Map<String, String>> extractKnowledgePointsDirect(
             String apiKey, String providerKey, String text, int count) throws Exception {
 
+        String content = aiHttpClient.sendRequest(
+                apiKey, providerKey, knowledgePointMessages(text, count), 0.5, aiConfig.getTimeout().getExtract()
+        );
+        return parseKnowledgePoints(content);
+    }
+
+    private List<Map<String, String>> parseKnowledgePoints(String content) throws Exception {
+        String cleanJson = aiHttpClient.extractJson(content);
+        return objectMapper.readValue(cleanJson, new TypeReference<List<Map<String, String>>>() {
+        });
+    }
+
+    private List<Map<String, String>> knowledgePointMessages(String text, int count) {
         String systemPrompt = "你是一位资深的教学专家。请根据用户提供的文本内容，提取出 " + count + " 个核心知识点。\n" +
                 "请务必严格只返回一个合法的 JSON 数组，不要包含 Markdown 代码块标记（如 ```json），也不要包含其他多余文字。\n" +
                 "JSON 数组中每个对象的格式如下：\n" +
@@ -344,67 +446,119 @@ public class AiServiceV3 {
 
         String userPrompt = "文本内容如下：\n" + text;
 
-        List<Map<String, String>> messages = List.of(
+        return List.of(
                 Map.of("role", "system", "content", systemPrompt),
                 Map.of("role", "user", "content", userPrompt)
         );
-
-        String content = aiHttpClient.sendRequest(
-                apiKey, providerKey, messages, 0.5, aiConfig.getTimeout().getExtract()
-        );
-
-        String cleanJson = aiHttpClient.extractJson(content);
-        return objectMapper.readValue(cleanJson, new TypeReference<List<Map<String, String>>>() {
-        });
     }
 
     /**
      * 分块提取知识点（大文本）
+     *
+     * 同时在途的块数 = 调用方已持有的 1 个全局并发许可 + 额外拿到的许可（最多 ai.extract.parallelism - 1 个），
+     * 每块完成时在回调里提交下一块，整个过程不占用等待线程；耗时随并行度而不是文本长度增长，
+     * 且不会超出 AiRateLimiter 的全局并发上限。某块失败只跳过该块；全部失败时以异常结束，由调用方降级。
+     *
+     * @param onPartial 每完成一块回调一次当前的合并结果（可为 null）；回调串行执行
+     * @return 全部块结束后完成；额外许可在此之前归还
      */
-    private List<Map<String, String>> extractKnowledgePointsChunked(
-            String apiKey, String providerKey, String text, int count) throws Exception {
+    private CompletableFuture<List<Map<String, String>>> extractKnowledgePointsChunked(
+            String apiKey, String providerKey, String text, int count,
+            java.util.function.Consumer<List<Map<String, String>>> onPartial) {
 
+        AiConfig.ExtractConfig config = aiConfig.getExtract();
         log.info("大文本分块处理: textLength={}, targetCount={}", text.length(), count);
 
-        // 将文本分成多个块（每块约6000字符，有200字符重叠）
-        int chunkSize = 6000;
-        int overlap = 200;
-        List<String> chunks = splitTextIntoChunks(text, chunkSize, overlap);
+        // 将文本分成多个块（默认每块约6000字符，有200字符重叠）
+        List<String> chunks = splitTextIntoChunks(text, config.getChunkSize(), config.getChunkOverlap());
 
-        log.info("文本已分成 {} 块", chunks.size());
+        // 每块提取的数量：向上取整，合并去重后再截断
+        int pointsPerChunk = Math.max(1, (count + chunks.size() - 1) / chunks.size());
 
-        // 每块提取的数量
-        int pointsPerChunk = Math.max(1, count / chunks.size());
-        List<Map<String, String>> allPoints = new ArrayList<>();
+        int extraPermits = rateLimiter.tryAcquireGlobalConcurrent(
+                Math.max(0, Math.min(config.getParallelism(), chunks.size()) - 1));
+        int parallelism = 1 + extraPermits;
+        log.info("文本已分成 {} 块，并行度 {}", chunks.size(), parallelism);
 
+        List<CompletableFuture<List<Map<String, String>>>> futures = new ArrayList<>(chunks.size());
         for (int i = 0; i < chunks.size(); i++) {
-            String chunk = chunks.get(i);
-            int chunkCount = (i == chunks.size() - 1) ?
-                (count - allPoints.size()) : pointsPerChunk; // 最后一块取剩余的数量
-
-            if (chunkCount <= 0) break;
-
-            log.info("处理第 {}/{} 块，提取 {} 个知识点", i + 1, chunks.size(), chunkCount);
-
-            try {
-                List<Map<String, String>> chunkPoints = extractKnowledgePointsDirect(
-                    apiKey, providerKey, chunk, chunkCount
-                );
-                allPoints.addAll(chunkPoints);
-
-                // 避免请求过快
-                if (i < chunks.size() - 1) {
-                    Thread.sleep(500);
+            futures.add(new CompletableFuture<>());
+        }
+        AtomicInteger nextChunk = new AtomicInteger();
+        KnowledgePointMerger progress = new KnowledgePointMerger(config.getSimilarityThreshold());
+        Runnable submitNext = new Runnable() {
+            @Override
+            public void run() {
+                int index = nextChunk.getAndIncrement();
+                if (index >= chunks.size()) {
+                    return;
                 }
+                aiHttpClient.sendRequestAsync(
+                                apiKey, providerKey, knowledgePointMessages(chunks.get(index), pointsPerChunk),
+                                0.5, aiConfig.getTimeout().getExtract())
+                        .thenApply(content -> {
+                            try {
+                                return parseKnowledgePoints(content);
+                            } catch (Exception e) {
+                                throw new CompletionException(e);
+                            }
+                        })
+                        .whenComplete((points, ex) -> {
+                            if (ex != null) {
+                                log.warn("第 {} 块处理失败: {}", index + 1, ex.getMessage());
+                            } else {
+                                log.info("第 {}/{} 块完成，提取 {} 个知识点", index + 1, chunks.size(), points.size());
+                                if (onPartial != null) {
+                                    synchronized (progress) {
+                                        progress.addAll(points);
+                                        List<Map<String, String>> snapshot = progress.result();
+                                        onPartial.accept(snapshot.size() > count ? snapshot.subList(0, count) : snapshot);
+                                    }
+                                }
+                            }
+                            // 腾出的名额交给下一块
+                            run();
+                            if (ex != null) {
+                                futures.get(index).completeExceptionally(ex);
+                            } else {
+                                futures.get(index).complete(points);
+                            }
+                        });
+            }
+        };
+        for (int i = 0; i < parallelism; i++) {
+            submitNext.run();
+        }
 
-            } catch (Exception e) {
-                log.warn("第 {} 块处理失败: {}", i + 1, e.getMessage());
-                // 继续处理下一块
+        CompletableFuture<Void> all = CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
+        return all.handle((v, ex) -> {
+            for (int i = 0; i < extraPermits; i++) {
+                rateLimiter.releaseGlobalConcurrent();
             }
+            return mergeChunks(futures, count, config.getSimilarityThreshold());
+        });
+    }
+
+    /**
+     * 按块顺序合并，结果与各块完成先后无关
+     */
+    private List<Map<String, String>> mergeChunks(List<CompletableFuture<List<Map<String, String>>>> futures,
+                                                  int count, double similarityThreshold) {
+        KnowledgePointMerger merger = new KnowledgePointMerger(similarityThreshold);
+        int failed = 0;
+        for (CompletableFuture<List<Map<String, String>>> future : futures) {
+            if (future.isCompletedExceptionally()) {
+                failed++;
+            } else {
+                merger.addAll(future.join());
+            }
+        }
+        if (failed == futures.size()) {
+            throw new RuntimeException("所有文本块提取均失败");
         }
 
-        // 去重和合并相似知识点
-        List<Map<String, String>> deduplicated = deduplicateKnowledgePoints(allPoints);
+        List<Map<String, String>> deduplicated = merger.result();
+        log.info("分块提取完成: 成功 {}/{} 块，合并后 {} 个知识点", futures.size() - failed, futures.size(), deduplicated.size());
 
         // 如果结果超过目标数量，取前N个
         if (deduplicated.size() > count) {
@@ -433,34 +587,13 @@ public class AiServiceV3 {
             }
 
             chunks.add(text.substring(start, end));
+            if (end == text.length()) break;
             start = end - overlap;
         }
 
         return chunks;
     }
 
-    /**
-     * 去重知识点
-     */
-    private List<Map<String, String>> deduplicateKnowledgePoints(List<Map<String, String>> points) {
-        List<Map<String, String>> result = new ArrayList<>();
-        Set<String> seenNames = new HashSet<>();
-
-        for (Map<String, String> point : points) {
-            String name = point.get("name");
-            if (name == null || name.isEmpty()) continue;
-
-            // 简单去重：名称完全相同
-            String normalizedName = name.toLowerCase().trim();
-            if (!seenNames.contains(normalizedName)) {
-                seenNames.add(normalizedName);
-                result.add(point);
-            }
-        }
-
-        return result;
-    }
-
     /**
      * 执行带限流控制的操作
      */
@@ -528,6 +661,60 @@ public class AiServiceV3 {
         }
     }
 
+    /**
+     * 错题分析的题目范围：题目 id + 题干 + 正确答案（题目修改后不再复用旧分析）
+     */
+    private String analyzeScope(AiAnalysisReq req) {
+        return AiResponseCache.scope(req.getQuestionId(), req.getQuestionContent(), req.getCorrectAnswer());
+    }
+
+    /**
+     * 把缓存的完整响应作为一个数据块推送，再发送完成事件
+     */
+    private void replayCached(SseEmitter emitter, String content) throws java.io.IOException {
+        emitter.send(SseEmitter.event().name("message").data(content));
+        emitter.send(SseEmitter.event().name("done").data(""));
+        emitter.complete();
+    }
+
+    /**
+     * 把共享流的输出推送给本请求的 SseEmitter
+     *
+     * @param onShared 本请求复用了其他请求的调用时，在结束时执行（记录日志）；本请求是发起者时为 null
+     * @param retry    发起者因自身准入失败放弃时，本请求重新发起（按自己的配额和 Key）；本请求是发起者时为 null
+     */
+    private void subscribeShared(SseEmitter emitter, AiSingleFlight.SharedStream shared,
+                                 Runnable onShared, Runnable retry) {
+        shared.subscribe(
+                chunk -> {
+                    try {
+                        emitter.send(SseEmitter.event().name("message").data(chunk));
+                    } catch (Exception e) {
+                        log.error("发送SSE数据失败", e);
+                    }
+                },
+                () -> {
+                    if (onShared != null) {
+                        onShared.run();
+                    }
+                    try {
+                        emitter.send(SseEmitter.event().name("done").data(""));
+                        emitter.complete();
+                    } catch (Exception e) {
+                        log.error("完成SSE时出错", e);
+                        emitter.completeWithError(e);
+                    }
+                },
+                error -> {
+                    if (retry != null && error instanceof AiSingleFlight.LeaderRejectedException) {
+                        log.debug("合并的流式调用被发起者放弃，自行调用: {}", error.getMessage());
+                        retry.run();
+                    } else {
+                        emitter.completeWithError(error);
+                    }
+                });
+    }
+
     /**
      * 生成缓存key
      */
@@ -593,113 +780,137 @@ public class AiServiceV3 {
         // 创建 SseEmitter，设置超时时间为60秒
         SseEmitter emitter = new SseEmitter(60000L);
 
-        // 在新线程中执行流式请求，避免阻塞主线程
-        new Thread(() -> {
-            try {
-                // 限流检查
-                if (!rateLimiter.checkGlobalRateLimit()) {
-                    emitter.completeWithError(new RuntimeException("系统繁忙，请稍后再试"));
-                    return;
-                }
+        // 在流式线程池中执行，避免阻塞主线程
+        runStream(emitter, () -> streamAnalyzeWrongQuestion(emitter, apiKey, providerKey, req, userId));
 
-                if (!rateLimiter.checkUserRateLimit(userId)) {
-                    int remaining = rateLimiter.getRemainingQuota(userId);
-                    emitter.completeWithError(new RuntimeException(
-                        "您的请求过于频繁，请稍后再试。当前剩余配额: " + remaining + " 次/分钟"));
-                    return;
-                }
+        return emitter;
+    }
 
-                if (!rateLimiter.tryAcquireGlobalConcurrent()) {
-                    emitter.completeWithError(new RuntimeException("系统繁忙，请稍后再试"));
-                    return;
-                }
+    /**
+     * 流式错题分析的执行体，合并到的发起者因自身准入失败放弃时由订阅者重新执行
+     */
+    private void streamAnalyzeWrongQuestion(SseEmitter emitter, String apiKey, String providerKey,
+                                            AiAnalysisReq req, Long userId) {
+        AiSingleFlight.SharedStream leading = null;
+        try {
+            // 命中缓存时直接回放，不占用限流配额和 AI 并发
+            String scope = analyzeScope(req);
+            String cachedResult = responseCache.get("analyze", scope, req.getStudentAnswer());
+            if (cachedResult != null) {
+                logCall(userId, "STUDENT", "analyze", providerKey, true, 0, true, 0, null, "cached");
+                replayCached(emitter, cachedResult);
+                return;
+            }
 
-                long startTime = System.currentTimeMillis();
-                StringBuilder fullContent = new StringBuilder();
+            // 相同请求正在生成时直接接入其输出，否则由本请求发起调用
+            AiSingleFlight.SharedStream shared = singleFlight.joinStream(
+                    AiResponseCache.key("analyze", scope, req.getStudentAnswer()));
+            boolean leader = shared.claimLeader();
+            subscribeShared(emitter, shared,
+                    leader ? null : () -> logCall(userId, "STUDENT", "analyze", providerKey, true, 0, true, 0, null, "coalesced"),
+                    leader ? null : () -> runStream(emitter, () -> streamAnalyzeWrongQuestion(emitter, apiKey, providerKey, req, userId)));
+            if (!leader) {
+                return;
+            }
+            leading = shared;
 
-                try {
-                    log.info("开始流式AI错题分析: provider={}, user={}", providerKey, userId);
+            // 限流检查（只针对发起者，订阅者收到后按自己的配额重新发起）
+            if (!rateLimiter.checkGlobalRateLimit()) {
+                shared.fail(new AiSingleFlight.LeaderRejectedException("系统繁忙，请稍后再试"));
+                return;
+            }
 
-                    // 构建提示词
-                    String systemPrompt = "你是一位经验丰富的中学全科教师。请根据学生提供的错题信息，进行深入浅出的分析。包含三个部分：\n" +
-                            "1. 【知识点回顾】：简要回顾题目涉及的核心考点。\n" +
-                            "2. 【错误原因推测】：分析学生为什么会填这个错误答案（例如概念混淆、计算失误等）。\n" +
-                            "3. 【解题思路】：给出正确的推导步骤。\n" +
-                            "请使用 Markdown 格式输出，保持语气鼓励和耐心。";
+            if (!rateLimiter.checkUserRateLimit(userId)) {
+                int remaining = rateLimiter.getRemainingQuota(userId);
+                shared.fail(new AiSingleFlight.LeaderRejectedException(
+                    "您的请求过于频繁，请稍后再试。当前剩余配额: " + remaining + " 次/分钟"));
+                return;
+            }
 
-                    String userPrompt = String.format(
-                            "题目：%s\n正确答案：%s\n学生的错误答案：%s\n原解析参考：%s",
-                            req.getQuestionContent(), req.getCorrectAnswer(),
-                            req.getStudentAnswer(), req.getAnalysis() != null ? req.getAnalysis() : "无"
-                    );
+            if (!rateLimiter.tryAcquireGlobalConcurrent()) {
+                shared.fail(new AiSingleFlight.LeaderRejectedException("系统繁忙，请稍后再试"));
+                return;
+            }
 
-                    List<Map<String, String>> messages = List.of(
-                            Map.of("role", "system", "content", systemPrompt),
-                            Map.of("role", "user", "content", userPrompt)
-                    );
+            CompletableFuture<Void> streamDone = null;
 
-                    // 发送流式请求
-                    aiHttpClient.sendStreamRequest(
-                        apiKey,
-                        providerKey,
-                        messages,
-                        0.7,
-                        aiConfig.getTimeout().getAnalyze(),
-                        // onChunk: 接收到数据块时发送给前端
-                        (chunk) -> {
-                            try {
-                                fullContent.append(chunk);
-                                emitter.send(SseEmitter.event()
-                                    .name("message")
-                                    .data(chunk));
-                            } catch (Exception e) {
-                                log.error("发送SSE数据失败", e);
-                            }
-                        },
-                        // onComplete: 完成时通知前端
-                        () -> {
-                            try {
-                                long duration = System.currentTimeMillis() - startTime;
+            long startTime = System.currentTimeMillis();
+            StringBuilder fullContent = new StringBuilder();
 
-                                // 记录日志
-                                logCall(userId, "STUDENT", "analyze", providerKey, true, duration,
-                                    false, 0, null,
-                                    req.getQuestionContent().substring(0, Math.min(100, req.getQuestionContent().length())));
+            try {
+                log.info("开始流式AI错题分析: provider={}, user={}", providerKey, userId);
 
-                                // 缓存完整结果
-                                String cacheKey = generateCacheKey("analyze", req);
-                                saveToCache(cacheKey, fullContent.toString());
+                // 构建提示词
+                String systemPrompt = "你是一位经验丰富的中学全科教师。请根据学生提供的错题信息，进行深入浅出的分析。包含三个部分：\n" +
+                        "1. 【知识点回顾】：简要回顾题目涉及的核心考点。\n" +
+                        "2. 【错误原因推测】：分析学生为什么会填这个错误答案（例如概念混淆、计算失误等）。\n" +
+                        "3. 【解题思路】：给出正确的推导步骤。\n" +
+                        "请使用 Markdown 格式输出，保持语气鼓励和耐心。";
 
-                                emitter.send(SseEmitter.event().name("done").data(""));
-                                emitter.complete();
-                                log.info("流式AI错题分析完成: user={}, duration={}ms", userId, duration);
-                            } catch (Exception e) {
-                                log.error("完成SSE时出错", e);
-                                emitter.completeWithError(e);
-                            }
-                        },
-                        // onError: 发生错误时通知前端
-                        (error) -> {
-                            long duration = System.currentTimeMillis() - startTime;
-                            logCall(userId, "STUDENT", "analyze", providerKey, false, duration,
-                                false, 0, error.getMessage(),
-                                req.getQuestionContent().substring(0, Math.min(100, req.getQuestionContent().length())));
-
-                            emitter.completeWithError(error);
-                        }
-                    );
+                String userPrompt = String.format(
+                        "题目：%s\n正确答案：%s\n学生的错误答案：%s\n原解析参考：%s",
+                        req.getQuestionContent(), req.getCorrectAnswer(),
+                        req.getStudentAnswer(), req.getAnalysis() != null ? req.getAnalysis() : "无"
+                );
 
-                } finally {
-                    rateLimiter.releaseGlobalConcurrent();
-                }
+                List<Map<String, String>> messages = List.of(
+                        Map.of("role", "system", "content", systemPrompt),
+                        Map.of("role", "user", "content", userPrompt)
+                );
 
-            } catch (Exception e) {
-                log.error("流式AI分析异常", e);
-                emitter.completeWithError(e);
+                // 发送流式请求
+                streamDone = aiHttpClient.sendStreamRequest(
+                    apiKey,
+                    providerKey,
+                    messages,
+                    0.7,
+                    aiConfig.getTimeout().getAnalyze(),
+                    // onChunk: 接收到数据块时推送给所有订阅者
+                    (chunk) -> {
+                        fullContent.append(chunk);
+                        shared.publish(chunk);
+                    },
+                    // onComplete: 完成时通知所有订阅者
+                    () -> {
+                        long duration = System.currentTimeMillis() - startTime;
+
+                        // 记录日志
+                        logCall(userId, "STUDENT", "analyze", providerKey, true, duration,
+                            false, 0, null,
+                            req.getQuestionContent().substring(0, Math.min(100, req.getQuestionContent().length())));
+
+                        // 缓存完整结果
+                        responseCache.put("analyze", scope, req.getStudentAnswer(),
+                                fullContent.toString(), duration);
+
+                        shared.complete();
+                        log.info("流式AI错题分析完成: user={}, duration={}ms", userId, duration);
+                    },
+                    // onError: 发生错误时通知所有订阅者
+                    (error) -> {
+                        long duration = System.currentTimeMillis() - startTime;
+                        logCall(userId, "STUDENT", "analyze", providerKey, false, duration,
+                            false, 0, error.getMessage(),
+                            req.getQuestionContent().substring(0, Math.min(100, req.getQuestionContent().length())));
+
+                        // 发起者个人 Key 无效等客户端错误不扇出，订阅者用自己的 Key 重新发起
+                        shared.fail(error instanceof AiHttpClient.NonRetryableException
+                                ? new AiSingleFlight.LeaderRejectedException(error) : error);
+                    }
+                );
+
+            } finally {
+                releaseGlobalConcurrentWhenDone(streamDone);
             }
-        }).start();
 
-        return emitter;
+        } catch (Exception e) {
+            log.error("流式AI分析异常", e);
+            if (leading != null) {
+                leading.fail(e);
+            } else {
+                emitter.completeWithError(e);
+            }
+        }
     }
 
     /**
@@ -712,114 +923,144 @@ public class AiServiceV3 {
         // 创建 SseEmitter，设置超时时间为90秒
         SseEmitter emitter = new SseEmitter(90000L);
 
-        // 在新线程中执行流式请求，避免阻塞主线程
-        new Thread(() -> {
-            try {
-                // 限流检查
-                if (!rateLimiter.checkGlobalRateLimit()) {
-                    emitter.completeWithError(new RuntimeException("系统繁忙，请稍后再试"));
-                    return;
-                }
+        // 在流式线程池中执行，避免阻塞主线程
+        runStream(emitter, () -> streamGradeSubjectiveQuestion(emitter, apiKey, providerKey,
+                            questionContent, referenceAnswer, studentAnswer, maxScore, userId));
 
-                if (!rateLimiter.checkUserRateLimit(userId)) {
-                    int remaining = rateLimiter.getRemainingQuota(userId);
-                    emitter.completeWithError(new RuntimeException(
-                        "您的请求过于频繁，请稍后再试。当前剩余配额: " + remaining + " 次/分钟"));
-                    return;
-                }
+        return emitter;
+    }
 
-                if (!rateLimiter.tryAcquireGlobalConcurrent()) {
-                    emitter.completeWithError(new RuntimeException("系统繁忙，请稍后再试"));
-                    return;
-                }
+    /**
+     * 流式主观题批改的执行体，合并到的发起者因自身准入失败放弃时由订阅者重新执行
+     */
+    private void streamGradeSubjectiveQuestion(SseEmitter emitter, String apiKey, String providerKey,
+                                               String questionContent, String referenceAnswer,
+                                               String studentAnswer, int maxScore, Long userId) {
+        AiSingleFlight.SharedStream leading = null;
+        try {
+            // 命中缓存时直接回放，不占用限流配额和 AI 并发（流式批改输出 Markdown，与 JSON 批改分开缓存）
+            String scope = AiResponseCache.scope(questionContent, referenceAnswer, maxScore);
+            String cachedResult = responseCache.get("grading_stream", scope, studentAnswer);
+            if (cachedResult != null) {
+                logCall(userId, "STUDENT", "grading", providerKey, true, 0, true, 0, null, "cached");
+                replayCached(emitter, cachedResult);
+                return;
+            }
 
-                long startTime = System.currentTimeMillis();
-                StringBuilder fullContent = new StringBuilder();
+            // 相同作答正在批改时直接接入其输出，否则由本请求发起调用
+            AiSingleFlight.SharedStream shared = singleFlight.joinStream(
+                    AiResponseCache.key("grading_stream", scope, studentAnswer));
+            boolean leader = shared.claimLeader();
+            subscribeShared(emitter, shared,
+                    leader ? null : () -> logCall(userId, "STUDENT", "grading", providerKey, true, 0, true, 0, null, "coalesced"),
+                    leader ? null : () -> runStream(emitter, () -> streamGradeSubjectiveQuestion(emitter, apiKey, providerKey,
+                            questionContent, referenceAnswer, studentAnswer, maxScore, userId)));
+            if (!leader) {
+                return;
+            }
+            leading = shared;
 
-                try {
-                    log.info("开始流式AI主观题批改: provider={}, user={}, maxScore={}", providerKey, userId, maxScore);
+            // 限流检查（只针对发起者，订阅者收到后按自己的配额重新发起）
+            if (!rateLimiter.checkGlobalRateLimit()) {
+                shared.fail(new AiSingleFlight.LeaderRejectedException("系统繁忙，请稍后再试"));
+                return;
+            }
 
-                    // 构建提示词
-                    String systemPrompt = "你是一位公正严谨的阅卷老师。请根据题目、参考答案和学生答案进行批改。\n" +
-                            "请按照以下Markdown格式输出：\n\n" +
-                            "## 评分\n得分：X/" + maxScore + "分\n\n" +
-                            "## 答题分析\n" +
-                            "### 优点\n- 列出答题的亮点\n\n" +
-                            "### 不足\n- 列出需要改进的地方\n\n" +
-                            "## 改进建议\n" +
-                            "1. 具体的改进建议\n2. 补充说明\n\n" +
-                            "## 知识点梳理\n" +
-                            "- 涉及的核心知识点\n\n" +
-                            "请保持语气鼓励和耐心，帮助学生理解错误并改进。";
+            if (!rateLimiter.checkUserRateLimit(userId)) {
+                int remaining = rateLimiter.getRemainingQuota(userId);
+                shared.fail(new AiSingleFlight.LeaderRejectedException(
+                    "您的请求过于频繁，请稍后再试。当前剩余配额: " + remaining + " 次/分钟"));
+                return;
+            }
 
-                    String userPrompt = String.format(
-                            "【题目】\n%s\n\n【参考答案】\n%s\n\n【该题满分】\n%d 分\n\n【学生答案】\n%s",
-                            questionContent, referenceAnswer, maxScore, studentAnswer
-                    );
+            if (!rateLimiter.tryAcquireGlobalConcurrent()) {
+                shared.fail(new AiSingleFlight.LeaderRejectedException("系统繁忙，请稍后再试"));
+                return;
+            }
 
-                    List<Map<String, String>> messages = List.of(
-                            Map.of("role", "system", "content", systemPrompt),
-                            Map.of("role", "user", "content", userPrompt)
-                    );
+            CompletableFuture<Void> streamDone = null;
 
-                    // 发送流式请求
-                    aiHttpClient.sendStreamRequest(
-                        apiKey,
-                        providerKey,
-                        messages,
-                        0.5,  // temperature 降低随机性,使批改更稳定
-                        aiConfig.getTimeout().getGrading(),
-                        // onChunk: 接收到数据块时发送给前端
-                        (chunk) -> {
-                            try {
-                                fullContent.append(chunk);
-                                emitter.send(SseEmitter.event()
-                                    .name("message")
-                                    .data(chunk));
-                            } catch (Exception e) {
-                                log.error("发送SSE数据失败", e);
-                            }
-                        },
-                        // onComplete: 完成时通知前端
-                        () -> {
-                            try {
-                                long duration = System.currentTimeMillis() - startTime;
+            long startTime = System.currentTimeMillis();
+            StringBuilder fullContent = new StringBuilder();
 
-                                // 记录日志
-                                logCall(userId, "STUDENT", "grading", providerKey, true, duration,
-                                    false, 0, null,
-                                    questionContent.substring(0, Math.min(100, questionContent.length())));
+            try {
+                log.info("开始流式AI主观题批改: provider={}, user={}, maxScore={}", providerKey, userId, maxScore);
 
-                                emitter.send(SseEmitter.event().name("done").data(""));
-                                emitter.complete();
-                                log.info("流式AI主观题批改完成: user={}, duration={}ms", userId, duration);
-                            } catch (Exception e) {
-                                log.error("完成SSE时出错", e);
-                                emitter.completeWithError(e);
-                            }
-                        },
-                        // onError: 发生错误时通知前端
-                        (error) -> {
-                            long duration = System.currentTimeMillis() - startTime;
-                            logCall(userId, "STUDENT", "grading", providerKey, false, duration,
-                                false, 0, error.getMessage(),
-                                questionContent.substring(0, Math.min(100, questionContent.length())));
-
-                            emitter.completeWithError(error);
-                        }
-                    );
+                // 构建提示词
+                String systemPrompt = "你是一位公正严谨的阅卷老师。请根据题目、参考答案和学生答案进行批改。\n" +
+                        "请按照以下Markdown格式输出：\n\n" +
+                        "## 评分\n得分：X/" + maxScore + "分\n\n" +
+                        "## 答题分析\n" +
+                        "### 优点\n- 列出答题的亮点\n\n" +
+                        "### 不足\n- 列出需要改进的地方\n\n" +
+                        "## 改进建议\n" +
+                        "1. 具体的改进建议\n2. 补充说明\n\n" +
+                        "## 知识点梳理\n" +
+                        "- 涉及的核心知识点\n\n" +
+                        "请保持语气鼓励和耐心，帮助学生理解错误并改进。";
 
-                } finally {
-                    rateLimiter.releaseGlobalConcurrent();
-                }
+                String userPrompt = String.format(
+                        "【题目】\n%s\n\n【参考答案】\n%s\n\n【该题满分】\n%d 分\n\n【学生答案】\n%s",
+                        questionContent, referenceAnswer, maxScore, studentAnswer
+                );
 
-            } catch (Exception e) {
-                log.error("流式AI批改异常", e);
-                emitter.completeWithError(e);
+                List<Map<String, String>> messages = List.of(
+                        Map.of("role", "system", "content", systemPrompt),
+                        Map.of("role", "user", "content", userPrompt)
+                );
+
+                // 发送流式请求
+                streamDone = aiHttpClient.sendStreamRequest(
+                    apiKey,
+                    providerKey,
+                    messages,
+                    0.5,  // temperature 降低随机性,使批改更稳定
+                    aiConfig.getTimeout().getGrading(),
+                    // onChunk: 接收到数据块时推送给所有订阅者
+                    (chunk) -> {
+                        fullContent.append(chunk);
+                        shared.publish(chunk);
+                    },
+                    // onComplete: 完成时通知所有订阅者
+                    () -> {
+                        long duration = System.currentTimeMillis() - startTime;
+
+                        // 记录日志
+                        logCall(userId, "STUDENT", "grading", providerKey, true, duration,
+                            false, 0, null,
+                            questionContent.substring(0, Math.min(100, questionContent.length())));
+
+                        responseCache.put("grading_stream", scope, studentAnswer,
+                                fullContent.toString(), duration);
+
+                        shared.complete();
+                        log.info("流式AI主观题批改完成: user={}, duration={}ms", userId, duration);
+                    },
+                    // onError: 发生错误时通知所有订阅者
+                    (error) -> {
+                        long duration = System.currentTimeMillis() - startTime;
+                        logCall(userId, "STUDENT", "grading", providerKey, false, duration,
+                            false, 0, error.getMessage(),
+                            questionContent.substring(0, Math.min(100, questionContent.length())));
+
+                        // 发起者个人 Key 无效等客户端错误不扇出，订阅者用自己的 Key 重新发起
+                        shared.fail(error instanceof AiHttpClient.NonRetryableException
+                                ? new AiSingleFlight.LeaderRejectedException(error) : error);
+                    }
+                );
+
+            } finally {
+                releaseGlobalConcurrentWhenDone(streamDone);
             }
-        }).start();
 
-        return emitter;
+        } catch (Exception e) {
+            log.error("流式AI批改异常", e);
+            if (leading != null) {
+                leading.fail(e);
+            } else {
+                emitter.completeWithError(e);
+            }
+        }
     }
 
     /**
@@ -829,9 +1070,16 @@ public class AiServiceV3 {
     public SseEmitter generateKnowledgePointsFromTextStream(String apiKey, String providerKey,
                                                              String text, int count, Long userId) {
         // 【修复】增加超时时间到5分钟（300秒），与配置文件中的generate超时一致
-        SseEmitter emitter = new SseEmitter(300000L);
+        long timeout = 300000L;
+        if (text.length() > 8000) {
+            // 大文本分块：按最坏情况（逐块串行、每块用满提取超时）放宽，避免连接先于结果超时
+            AiConfig.ExtractConfig config = aiConfig.getExtract();
+            int chunks = splitTextIntoChunks(text, config.getChunkSize(), config.getChunkOverlap()).size();
+            timeout = Math.max(timeout, (chunks * (long) aiConfig.getTimeout().getExtract() + 60) * 1000L);
+        }
+        SseEmitter emitter = new SseEmitter(timeout);
 
-        new Thread(() -> {
+        runStream(emitter, () -> {
             long startTime = System.currentTimeMillis();
             StringBuilder fullResponse = new StringBuilder();
             // 【修复】添加标志位防止重复完成
@@ -859,7 +1107,14 @@ public class AiServiceV3 {
                     return;
                 }
 
+                CompletableFuture<Void> streamDone = null;
                 try {
+                    if (text.length() > 8000) {
+                        // 大文本：分块并行提取，逐块推送阶段结果
+                        streamDone = streamKnowledgePointsChunked(emitter, isCompleted, apiKey, providerKey, text, count, userId, startTime);
+                        return;
+                    }
+
                     // 构建提示词（与非流式版本相同）
                     String systemPrompt = "你是一位资深的教学专家。请根据用户提供的文本内容，提取出 " + count + " 个核心知识点。\n" +
                             "请务必严格只返回一个合法的 JSON 数组，不要包含 Markdown 代码块标记（如 ```json），也不要包含其他多余文字。\n" +
@@ -869,7 +1124,7 @@ public class AiServiceV3 {
                             "  \"description\": \"知识点详细描述或定义（50-200字）\"\n" +
                             "}";
 
-                    String userPrompt = "文本内容如下：\n" + (text.length() > 8000 ? text.substring(0, 8000) + "..." : text);
+                    String userPrompt = "文本内容如下：\n" + text;
 
                     List<Map<String, String>> messages = List.of(
                             Map.of("role", "system", "content", systemPrompt),
@@ -879,7 +1134,7 @@ public class AiServiceV3 {
                     log.info("开始流式知识点提取: provider={}, user={}, count={}", providerKey, userId, count);
 
                     // 发送流式请求
-                    aiHttpClient.sendStreamRequest(
+                    streamDone = aiHttpClient.sendStreamRequest(
                             apiKey,
                             providerKey,
                             messages,
@@ -955,7 +1210,7 @@ public class AiServiceV3 {
                     );
 
                 } finally {
-                    rateLimiter.releaseGlobalConcurrent();
+                    releaseGlobalConcurrentWhenDone(streamDone);
                 }
 
             } catch (Exception e) {
@@ -966,11 +1221,69 @@ public class AiServiceV3 {
                     isCompleted.set(true);
                 }
             }
-        }).start();
+        });
 
         return emitter;
     }
 
+    /**
+     * 大文本流式提取知识点：每完成一块推送一次 partial 事件（当前的合并结果），全部完成后推送 done
+     *
+     * @return 全部块结束、emitter 完成后完成（与单次流式请求的 streamDone 相同，用于归还全局并发许可）
+     */
+    private CompletableFuture<Void> streamKnowledgePointsChunked(SseEmitter emitter, java.util.concurrent.atomic.AtomicBoolean isCompleted,
+                                                                 String apiKey, String providerKey, String text, int count,
+                                                                 Long userId, long startTime) {
+        log.info("开始分块流式知识点提取: provider={}, user={}, count={}, textLength={}",
+                providerKey, userId, count, text.length());
+        return extractKnowledgePointsChunked(apiKey, providerKey, text, count, partial -> {
+            if (isCompleted.get()) {
+                return;
+            }
+            try {
+                emitter.send(SseEmitter.event()
+                        .name("partial")
+                        .data(objectMapper.writeValueAsString(partial)));
+            } catch (Exception e) {
+                log.error("发送SSE数据失败: {}", e.getMessage());
+                isCompleted.set(true);
+            }
+        }).handle((points, ex) -> {
+            long duration = System.currentTimeMillis() - startTime;
+            if (ex != null) {
+                Throwable error = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                log.error("分块流式知识点提取失败: {}", error.getMessage());
+                logCall(userId, "TEACHER", "extract", providerKey, false, duration,
+                        false, 0, error.getMessage(), text.substring(0, Math.min(100, text.length())));
+                if (!isCompleted.getAndSet(true)) {
+                    emitter.completeWithError(error);
+                }
+                return null;
+            }
+
+            logCall(userId, "TEACHER", "extract", providerKey, true, duration,
+                    false, 0, null, text.substring(0, Math.min(100, text.length())));
+            try {
+                String json = objectMapper.writeValueAsString(points);
+                saveToCache(generateCacheKey("extract", Map.of("text", text, "count", count)), json);
+                if (!isCompleted.get()) {
+                    emitter.send(SseEmitter.event()
+                            .name("done")
+                            .data(json));
+                    emitter.complete();
+                    isCompleted.set(true);
+                    log.info("分块流式知识点提取完成: user={}, count={}, duration={}ms", userId, points.size(), duration);
+                }
+            } catch (Exception e) {
+                log.error("发送分块知识点结果失败: {}", e.getMessage());
+                if (!isCompleted.getAndSet(true)) {
+                    emitter.completeWithError(e);
+                }
+            }
+            return null;
+        });
+    }
+
     /**
      * 【流式响应】智能出题（流式）
      * 返回 SseEmitter 对象用于实时推送生成内容
@@ -979,7 +1292,7 @@ public class AiServiceV3 {
                                                       String text, int count, int type, Long userId) {
         SseEmitter emitter = new SseEmitter(180000L); // 3分钟超时，智能出题需要更长时间
 
-        new Thread(() -> {
+        runStream(emitter, () -> {
             long startTime = System.currentTimeMillis();
             StringBuilder fullResponse = new StringBuilder();
 
@@ -1002,6 +1315,8 @@ public class AiServiceV3 {
                     return;
                 }
 
+                CompletableFuture<Void> streamDone = null;
+
                 try {
                     // 构建题型描述
                     String typeDesc = switch (type) {
@@ -1037,7 +1352,7 @@ public class AiServiceV3 {
                             providerKey, userId, count, type);
 
                     // 发送流式请求
-                    aiHttpClient.sendStreamRequest(
+                    streamDone = aiHttpClient.sendStreamRequest(
                             apiKey,
                             providerKey,
                             messages,
@@ -1090,14 +1405,14 @@ public class AiServiceV3 {
                     );
 
                 } finally {
-                    rateLimiter.releaseGlobalConcurrent();
+                    releaseGlobalConcurrentWhenDone(streamDone);
                 }
 
             } catch (Exception e) {
                 log.error("流式智能出题异常", e);
                 emitter.completeWithError(e);
             }
-        }).start();
+        });
 
         return emitter;
     }
@@ -1125,7 +1440,7 @@ public class AiServiceV3 {
         org.springframework.security.core.context.SecurityContext securityContext =
             org.springframework.security.core.context.SecurityContextHolder.getContext();
 
-        new Thread(() -> {
+        runStream(emitter, () -> {
             try {
                 // 【修复】在新线程中设置 SecurityContext
                 org.springframework.security.core.context.SecurityContextHolder.setContext(securityContext);
@@ -1146,6 +1461,8 @@ public class AiServiceV3 {
                     return;
                 }
 
+                CompletableFuture<Void> streamDone = null;
+
                 try {
                     long startTime = System.currentTimeMillis();
                     StringBuilder fullResponse = new StringBuilder();
@@ -1203,7 +1520,7 @@ public class AiServiceV3 {
                     int timeout = aiConfig.getTimeout().getGenerate();
 
                     // 流式请求
-                    aiHttpClient.sendStreamRequest(
+                    streamDone = aiHttpClient.sendStreamRequest(
                             apiKey, providerKey, messages, 0.7, timeout,
                             // onChunk: 接收每个数据块
                             (chunk) -> {
@@ -1286,7 +1603,7 @@ public class AiServiceV3 {
                     );
 
                 } finally {
-                    rateLimiter.releaseGlobalConcurrent();
+                    releaseGlobalConcurrentWhenDone(streamDone);
                     // 【修复】清理 SecurityContext，防止内存泄漏
                     org.springframework.security.core.context.SecurityContextHolder.clearContext();
                 }
@@ -1297,7 +1614,7 @@ public class AiServiceV3 {
                 // 【修复】异常情况下也要清理 SecurityContext
                 org.springframework.security.core.context.SecurityContextHolder.clearContext();
             }
-        }).start();
+        });
 
         return emitter;
     }
@@ -0,0 +1,357 @@
+package com.ice.exebackend.service;
+
+import com.ice.exebackend.config.AiConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * 相同 AI 请求合并（single-flight）
+ *
+ * 老师投屏讲一道题时，几十名学生会在同一时刻请求同一份分析，缓存全部未命中，
+ * 每个请求都去调一次模型、占一个全局并发许可和各自的限流配额。这里按响应缓存的键合并：
+ * - 本机：同一键只有一个发起者真正调用，其余请求挂在发起者的 future 上，不占限流配额；
+ *   发起者失败时，等待者各自重新调用（失败原因可能只针对发起者，如其个人限流）
+ * - 跨节点：发起者再用 Redis SET NX 抢调用锁，抢不到说明其他节点正在调用，
+ *   订阅 {@link #CHANNEL} 等对方写完缓存后的通知，再从缓存读取；等待超时或对方失败时自行调用
+ * - 流式：同一键的请求共享一个 {@link SharedStream}，发起者把 AI 数据块写入缓冲，
+ *   每个订阅者先回放已缓冲的数据块再接收后续数据块（只在本机合并）；发起者自身准入失败时以
+ *   {@link LeaderRejectedException} 结束，订阅者收到后按自己的限流配额和 Key 重新发起
+ * 指标：ai.single.flight（result=leader/local/remote/stream）
+ */
+@Service
+public class AiSingleFlight {
+
+    private static final Logger log = LoggerFactory.getLogger(AiSingleFlight.class);
+
+    /** 跨节点完成通知频道，消息内容为键 */
+    public static final String CHANNEL = "ai:flight:done";
+
+    private static final String LOCK_PREFIX = "ai:flight:lock:";
+
+    /** 只删除自己持有的锁 */
+    private static final String UNLOCK_SCRIPT =
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end";
+
+    @Autowired
+    private AiConfig aiConfig;
+
+    @Autowired(required = false)
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Autowired(required = false)
+    private RedisMessageListenerContainer listenerContainer;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /** 本机正在进行的非流式调用 */
+    private final Map<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    /** 等待其他节点完成通知的键 */
+    private final Map<String, CompletableFuture<Void>> remoteWaiters = new ConcurrentHashMap<>();
+
+    /** 本机正在进行的流式调用 */
+    private final Map<String, SharedStream> streams = new ConcurrentHashMap<>();
+
+    /**
+     * 合并调用的结果
+     */
+    public static class Result<T> {
+        private final T value;
+        private final boolean shared;
+
+        Result(T value, boolean shared) {
+            this.value = value;
+            this.shared = shared;
+        }
+
+        public T getValue() {
+            return value;
+        }
+
+        /**
+         * 结果是否来自其他请求的调用（本次没有调用 AI）
+         */
+        public boolean isShared() {
+            return shared;
+        }
+    }
+
+    /**
+     * 只针对发起者的失败（个人限流、全局许可、个人 API Key 无效等），不代表其他订阅者也会失败
+     */
+    public static class LeaderRejectedException extends RuntimeException {
+        public LeaderRejectedException(String message) {
+            super(message);
+        }
+
+        public LeaderRejectedException(Exception cause) {
+            super(cause.getMessage(), cause);
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        if (listenerContainer != null) {
+            listenerContainer.addMessageListener((message, pattern) ->
+                    onDone(new String(message.getBody(), StandardCharsets.UTF_8)), new ChannelTopic(CHANNEL));
+        }
+    }
+
+    /**
+     * 执行调用，同一键的并发调用只执行一次
+     *
+     * @param key    响应缓存键（见 {@link AiResponseCache#key}）
+     * @param lookup 读取其他节点写入的缓存结果，未命中返回 null
+     * @param loader 实际调用（含限流、调用 AI、写缓存）
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Result<T> execute(String key, Callable<T> lookup, Callable<T> loader) throws Exception {
+        if (!aiConfig.getSingleFlight().isEnabled()) {
+            return new Result<>(loader.call(), false);
+        }
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            try {
+                T value = (T) existing.get(aiConfig.getSingleFlight().getWaitSeconds(), TimeUnit.SECONDS);
+                record("local");
+                return new Result<>(value, true);
+            } catch (TimeoutException | ExecutionException e) {
+                log.debug("合并的调用未成功，自行调用: key={}", key);
+                return new Result<>(loader.call(), false);
+            }
+        }
+
+        try {
+            Result<T> result = lead(key, lookup, loader);
+            flight.complete(result.getValue());
+            return result;
+        } catch (Exception e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    private <T> Result<T> lead(String key, Callable<T> lookup, Callable<T> loader) throws Exception {
+        String token = UUID.randomUUID().toString();
+        if (tryLock(key, token)) {
+            record("leader");
+            try {
+                return new Result<>(loader.call(), false);
+            } finally {
+                unlock(key, token);
+            }
+        }
+
+        // 其他节点正在调用：先登记等待，再查一次缓存（对方可能在抢锁后已经完成）
+        CompletableFuture<Void> done = remoteWaiters.computeIfAbsent(key, k -> new CompletableFuture<>());
+        try {
+            T value = lookup.call();
+            if (value == null) {
+                try {
+                    done.get(aiConfig.getSingleFlight().getWaitSeconds(), TimeUnit.SECONDS);
+                } catch (TimeoutException e) {
+                    log.warn("等待其他节点的AI调用超时，自行调用: key={}", key);
+                }
+                value = lookup.call();
+            }
+            if (value != null) {
+                record("remote");
+                return new Result<>(value, true);
+            }
+        } finally {
+            remoteWaiters.remove(key, done);
+        }
+        record("leader");
+        return new Result<>(loader.call(), false);
+    }
+
+    /**
+     * 加入同一键的流式调用
+     *
+     * 返回的 {@link SharedStream} 由第一个 {@link SharedStream#claimLeader()} 成功的请求负责调用 AI，
+     * 其余请求只需 {@link SharedStream#subscribe} 即可收到相同的数据块
+     */
+    public SharedStream joinStream(String key) {
+        if (!aiConfig.getSingleFlight().isEnabled()) {
+            return new SharedStream(() -> { });
+        }
+        SharedStream[] created = new SharedStream[1];
+        SharedStream stream = streams.compute(key, (k, current) -> {
+            if (current != null && !current.isDone()) {
+                return current;
+            }
+            created[0] = new SharedStream(() -> streams.remove(k, created[0]));
+            return created[0];
+        });
+        record(stream == created[0] ? "leader" : "stream");
+        return stream;
+    }
+
+    private void onDone(String key) {
+        CompletableFuture<Void> waiter = remoteWaiters.remove(key);
+        if (waiter != null) {
+            waiter.complete(null);
+        }
+    }
+
+    /**
+     * 抢跨节点调用锁；未配置 Redis 或 Redis 不可用时按抢到处理（退化为只在本机合并）
+     */
+    private boolean tryLock(String key, String token) {
+        if (redisTemplate == null) return true;
+        try {
+            Boolean locked = redisTemplate.opsForValue().setIfAbsent(LOCK_PREFIX + key, token,
+                    aiConfig.getSingleFlight().getLockSeconds(), TimeUnit.SECONDS);
+            return !Boolean.FALSE.equals(locked);
+        } catch (Exception e) {
+            log.error("获取AI调用锁失败: {}", key, e);
+            return true;
+        }
+    }
+
+    /**
+     * 释放锁并通知等待的节点（调用失败时同样通知，等待者查不到缓存会自行调用）
+     */
+    private void unlock(String key, String token) {
+        if (redisTemplate == null) return;
+        try {
+            redisTemplate.execute(RedisScript.of(UNLOCK_SCRIPT, Long.class),
+                    Collections.singletonList(LOCK_PREFIX + key), token);
+            redisTemplate.convertAndSend(CHANNEL, key);
+        } catch (Exception e) {
+            log.error("释放AI调用锁失败: {}", key, e);
+        }
+    }
+
+    private void record(String result) {
+        meterRegistry.counter("ai.single.flight", "result", result).increment();
+    }
+
+    /**
+     * 流式调用的扇出缓冲
+     *
+     * 发起者通过 {@link #publish}、{@link #complete}、{@link #fail} 写入，订阅者按订阅顺序依次收到；
+     * 回调在锁内执行，保证每个订阅者看到的数据块顺序一致，订阅者回调抛出的异常只影响其自身
+     */
+    public static class SharedStream {
+        private final Runnable onFinish;
+        private final AtomicBoolean leaderClaimed = new AtomicBoolean();
+        private final List<String> chunks = new ArrayList<>();
+        private final List<Subscriber> subscribers = new ArrayList<>();
+        private boolean done;
+        private Exception error;
+
+        SharedStream(Runnable onFinish) {
+            this.onFinish = onFinish;
+        }
+
+        private static class Subscriber {
+            final Consumer<String> onChunk;
+            final Runnable onComplete;
+            final Consumer<Exception> onError;
+
+            Subscriber(Consumer<String> onChunk, Runnable onComplete, Consumer<Exception> onError) {
+                this.onChunk = onChunk;
+                this.onComplete = onComplete;
+                this.onError = onError;
+            }
+        }
+
+        /**
+         * 认领发起者身份，只有第一次调用返回 true
+         */
+        public boolean claimLeader() {
+            return leaderClaimed.compareAndSet(false, true);
+        }
+
+        /**
+         * 订阅：先回放已缓冲的数据块，已结束时立即收到结束回调
+         */
+        public synchronized void subscribe(Consumer<String> onChunk, Runnable onComplete, Consumer<Exception> onError) {
+            Subscriber subscriber = new Subscriber(onChunk, onComplete, onError);
+            for (String chunk : chunks) {
+                deliver(subscriber, chunk);
+            }
+            if (done) {
+                finish(subscriber);
+            } else {
+                subscribers.add(subscriber);
+            }
+        }
+
+        public synchronized void publish(String chunk) {
+            if (done) return;
+            chunks.add(chunk);
+            for (Subscriber subscriber : subscribers) {
+                deliver(subscriber, chunk);
+            }
+        }
+
+        public void complete() {
+            end(null);
+        }
+
+        public void fail(Exception e) {
+            end(e);
+        }
+
+        public synchronized boolean isDone() {
+            return done;
+        }
+
+        private void end(Exception e) {
+            synchronized (this) {
+                if (done) return;
+                done = true;
+                error = e;
+                for (Subscriber subscriber : subscribers) {
+                    finish(subscriber);
+                }
+                subscribers.clear();
+            }
+            onFinish.run();
+        }
+
+        private void deliver(Subscriber subscriber, String chunk) {
+            try {
+                subscriber.onChunk.accept(chunk);
+            } catch (Exception e) {
+                log.debug("推送共享数据块失败", e);
+            }
+        }
+
+        private void finish(Subscriber subscriber) {
+            try {
+                if (error == null) {
+                    subscriber.onComplete.run();
+                } else {
+                    subscriber.onError.accept(error);
+                }
+            } catch (Exception e) {
+                log.debug("结束共享流失败", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package com.ice.exebackend.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.ice.exebackend.entity.SysUser;
+import com.ice.exebackend.mapper.SysUserMapper;
+import com.ice.exebackend.utils.JwtUtil;
+import io.jsonwebtoken.Claims;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * 请求认证缓存（本机）
+ *
+ * - 已验证的 Token：键为 Token 的 SHA-256，值为用户名和过期时间，Token 过期前不再验签解析
+ * - 登录主体：键为「管理端 / 学生端 + 用户名」，缓存 loadUserByUsername 的结果（用户、权限、角色），
+ *   最多 principal-ttl-seconds 秒后重新加载
+ * 两者都是按最近使用淘汰的有界 LRU。用户角色 / 权限变更、用户或学生信息变更、删除时调用 evict*，
+ * 本机立即清除（事务中则在提交后），并通过 Redis 频道 {@link #CHANNEL} 通知其他节点清除。
+ * 稳态下认证过滤器不访问数据库和 Redis。
+ */
+@Service
+public class AuthenticationCacheService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AuthenticationCacheService.class);
+
+    /** 跨节点失效通知频道，消息内容为「realm:用户名」 */
+    public static final String CHANNEL = "auth:principal:evict";
+
+    public static final String REALM_ADMIN = "admin";
+    public static final String REALM_STUDENT = "student";
+
+    @Autowired
+    private JwtUtil jwtUtil;
+
+    @Autowired
+    private SysUserMapper sysUserMapper;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired(required = false)
+    private RedisMessageListenerContainer listenerContainer;
+
+    @Value("${auth.cache.token-size:20000}")
+    private int tokenSize;
+
+    @Value("${auth.cache.principal-size:5000}")
+    private int principalSize;
+
+    @Value("${auth.cache.principal-ttl-seconds:600}")
+    private long principalTtlSeconds;
+
+    private Map<String, VerifiedToken> tokens;
+    private Map<String, PrincipalEntry> principals;
+
+    /**
+     * 验证通过的 Token
+     */
+    public static class VerifiedToken {
+        private final String username;
+        private final long expiresAt;
+
+        VerifiedToken(String username, long expiresAt) {
+            this.username = username;
+            this.expiresAt = expiresAt;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        boolean isExpired() {
+            return System.currentTimeMillis() >= expiresAt;
+        }
+    }
+
+    private static class PrincipalEntry {
+        final UserDetails userDetails;
+        final long loadedAt;
+
+        PrincipalEntry(UserDetails userDetails) {
+            this.userDetails = userDetails;
+            this.loadedAt = System.currentTimeMillis();
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        tokens = lruMap(Math.max(1, tokenSize));
+        principals = lruMap(Math.max(1, principalSize));
+        if (listenerContainer != null) {
+            listenerContainer.addMessageListener((message, pattern) ->
+                    evictLocal(new String(message.getBody(), StandardCharsets.UTF_8)), new ChannelTopic(CHANNEL));
+        }
+    }
+
+    /**
+     * 验证 Token：命中缓存且未过期时直接返回，否则验签解析一次并缓存到过期为止
+     *
+     * @return 过期或用户名为空时返回 null
+     * @throws io.jsonwebtoken.JwtException Token 格式或签名无效
+     */
+    public VerifiedToken verify(String token) {
+        String key = hash(token);
+        VerifiedToken cached;
+        synchronized (tokens) {
+            cached = tokens.get(key);
+        }
+        if (cached != null) {
+            if (!cached.isExpired()) return cached;
+            synchronized (tokens) {
+                tokens.remove(key);
+            }
+            return null;
+        }
+
+        Claims claims = jwtUtil.getAllClaimsFromToken(token);
+        String username = claims.getSubject();
+        if (username == null || username.trim().isEmpty() || claims.getExpiration() == null) {
+            return null;
+        }
+        VerifiedToken verified = new VerifiedToken(username, claims.getExpiration().getTime());
+        if (verified.isExpired()) return null;
+        synchronized (tokens) {
+            tokens.put(key, verified);
+        }
+        return verified;
+    }
+
+    /**
+     * 取登录主体，未命中或超过 TTL 时用 loader 加载并缓存
+     *
+     * @param realm  {@link #REALM_ADMIN} / {@link #REALM_STUDENT}
+     * @param loader 对应端的 loadUserByUsername
+     */
+    public UserDetails principal(String realm, String username, Function<String, UserDetails> loader) {
+        String key = realm + ":" + username;
+        PrincipalEntry entry;
+        synchronized (principals) {
+            entry = principals.get(key);
+        }
+        if (entry != null && System.currentTimeMillis() - entry.loadedAt < principalTtlSeconds * 1000) {
+            return entry.userDetails;
+        }
+        UserDetails userDetails = loader.apply(username);
+        synchronized (principals) {
+            principals.put(key, new PrincipalEntry(userDetails));
+        }
+        return userDetails;
+    }
+
+    /**
+     * 管理端用户的角色、权限或账号状态变更后调用
+     */
+    public void evictUsers(Collection<Long> userIds) {
+        if (userIds == null || userIds.isEmpty()) return;
+        List<String> usernames = new ArrayList<>();
+        for (SysUser user : sysUserMapper.selectList(new QueryWrapper<SysUser>()
+                .select("id", "username")
+                .in("id", userIds))) {
+            usernames.add(user.getUsername());
+        }
+        evict(REALM_ADMIN, usernames);
+    }
+
+    /**
+     * 学生信息变更或被删除后调用（学号被修改时需要传入旧学号）
+     */
+    public void evictStudents(Collection<String> studentNos) {
+        evict(REALM_STUDENT, studentNos);
+    }
+
+    /**
+     * 按用户名失效（用户名本身被修改时需要传入旧用户名）
+     */
+    public void evict(String realm, Collection<String> usernames) {
+        if (usernames == null || usernames.isEmpty()) return;
+        List<String> messages = new ArrayList<>(usernames.size());
+        for (String username : usernames) {
+            if (username != null) messages.add(realm + ":" + username);
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publish(messages);
+                }
+            });
+        } else {
+            publish(messages);
+        }
+    }
+
+    private void publish(List<String> messages) {
+        for (String message : messages) {
+            evictLocal(message);
+            try {
+                redisTemplate.convertAndSend(CHANNEL, message);
+            } catch (Exception e) {
+                // 其他节点的缓存最多 principal-ttl-seconds 秒后自然刷新
+                logger.warn("认证缓存失效通知发送失败: {}", message, e);
+            }
+        }
+    }
+
+    /**
+     * 清除一个登录主体及其所有 Token（下次请求重新验签并加载权限）
+     */
+    private void evictLocal(String message) {
+        int sep = message.indexOf(':');
+        if (sep < 0) return;
+        String username = message.substring(sep + 1);
+        synchronized (principals) {
+            principals.remove(message);
+        }
+        synchronized (tokens) {
+            tokens.values().removeIf(t -> t.getUsername().equals(username));
+        }
+    }
+
+    private static String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static <V> Map<String, V> lruMap(int capacity) {
+        return new LinkedHashMap<>(Math.min(capacity, 1024) * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+}
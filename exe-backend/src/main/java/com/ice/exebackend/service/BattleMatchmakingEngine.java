@@ -0,0 +1,303 @@
+package com.ice.exebackend.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * 对战匹配引擎（事件驱动 + 段位分片）
+ *
+ * 1. 每个段位一个 Redis ZSET 队列（member = userId, score = 入队时间）；
+ *    所有队列共用同一个 hash tag，保证多 key 的 Lua 脚本在 Redis Cluster 下也能执行。
+ *    这里有意只占一个 slot：配对脚本要同时访问本段位和上下 {@link #MAX_WIDEN_RANGE} 个段位的队列，
+ *    相邻段位的窗口互相重叠，无论怎样按段位分组都会把某些相邻段位拆到不同 slot，跨 slot 就无法原子配对；
+ *    按玩家散列分桶又会把同一段位的玩家拆开，降低配对成功率。匹配流量每名玩家只有入队、
+ *    几次配对（单次 O(段位数 × log N)）和出队，远小于对战过程中的流量；对战期间的定时任务已按
+ *    {@link BattleTimerWheel#SHARDS} 分片到不同 slot，房间状态按房间散列。
+ * 2. 玩家入队立即触发一次原子配对（Lua 脚本一次性取出两名玩家），不再每秒轮询所有段位。
+ * 3. 等待时间越长，可接受的段位范围越大（复用 {@link BattleGameManager#addAdjacentTiers}），
+ *    只要任意一方的放宽范围覆盖了双方的段位差即可配对；超过 {@link #BOT_FALLBACK_MS} 回退人机。
+ * 4. 段位按存活节点分片，每个节点只对自己负责的段位做低频兜底清理（处理节点宕机遗留的玩家）。
+ */
+@Component
+public class BattleMatchmakingEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(BattleMatchmakingEngine.class);
+
+    // 所有段位队列共享 {battle} hash tag（单 slot，原因见类注释）
+    private static final String QUEUE_PREFIX = "battle:mmq:{battle}:";
+    private static final String NODE_REGISTRY_KEY = "battle:mm:nodes";
+
+    public static final long WIDEN_STEP_MS = 2000;      // 每等待 2 秒放宽一个相邻段位
+    public static final int MAX_WIDEN_RANGE = 2;        // 最多放宽到上下 2 个段位
+    public static final long BOT_FALLBACK_MS = 5000;    // 等待超过 5 秒匹配人机
+    private static final long NODE_TTL_MS = 10000;      // 节点心跳过期时间
+    private static final long ORPHAN_ENTRY_MS = BOT_FALLBACK_MS + NODE_TTL_MS;
+    private static final long SWEEP_INTERVAL_MS = 3000; // 兜底扫描 / 心跳间隔
+
+    /**
+     * 原子配对脚本
+     * KEYS[1]   : 发起者所在段位队列；KEYS[2..n]: 按段位差由近到远排列的相邻段位队列
+     * ARGV[1]   : 发起者 userId（已不在队列中说明被其他节点配走，直接返回 nil）
+     * ARGV[i+1] : KEYS[i] 中候选对手允许的最大入队时间（'+inf' 表示不限制）
+     * 返回 {发起者, 对手}，无法配对时返回 nil
+     */
+    private static final String MATCH_PAIR_SCRIPT =
+            "local me = ARGV[1]\n" +
+            "if not redis.call('ZSCORE', KEYS[1], me) then return nil end\n" +
+            "for i = 1, #KEYS do\n" +
+            "  local cands = redis.call('ZRANGEBYSCORE', KEYS[i], '-inf', ARGV[i + 1], 'LIMIT', 0, 2)\n" +
+            "  for _, c in ipairs(cands) do\n" +
+            "    if c ~= me then\n" +
+            "      redis.call('ZREM', KEYS[1], me)\n" +
+            "      redis.call('ZREM', KEYS[i], c)\n" +
+            "      return {me, c}\n" +
+            "    end\n" +
+            "  end\n" +
+            "end\n" +
+            "return nil";
+
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> MATCH_PAIR = RedisScript.of(MATCH_PAIR_SCRIPT, List.class);
+
+    /**
+     * 匹配结果回调（由 BattleGameManager 注册，避免 Bean 循环依赖）
+     */
+    public interface MatchListener {
+        /** 两名玩家配对成功，调用方所在节点负责建房 */
+        void onMatched(String user1Id, String user2Id);
+
+        /** 玩家等待超时，已从队列移除，应回退为人机对战 */
+        void onMatchTimeout(String userId);
+    }
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+    private final String nodeId = UUID.randomUUID().toString();
+
+    // 本节点上正在等待的玩家：userId -> 段位 / 入队时间 / 下一次放宽任务
+    private final Map<String, LocalWaiter> localWaiters = new ConcurrentHashMap<>();
+
+    private volatile MatchListener listener;
+
+    private static class LocalWaiter {
+        final String userId;
+        final String tier;
+        final long joinTime;
+        volatile ScheduledFuture<?> nextCheck;
+
+        LocalWaiter(String userId, String tier, long joinTime) {
+            this.userId = userId;
+            this.tier = tier;
+            this.joinTime = joinTime;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        scheduler.scheduleWithFixedDelay(this::heartbeatAndSweep, 0, SWEEP_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        try {
+            redisTemplate.opsForZSet().remove(NODE_REGISTRY_KEY, nodeId);
+        } catch (Exception e) {
+            logger.warn("注销匹配节点失败: {}", nodeId, e);
+        }
+    }
+
+    public void setListener(MatchListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * 玩家入队，并立即尝试一次配对
+     */
+    public void enqueue(String userId, String tier) {
+        long now = System.currentTimeMillis();
+        LocalWaiter waiter = new LocalWaiter(userId, tier, now);
+        LocalWaiter previous = localWaiters.put(userId, waiter);
+        if (previous != null) {
+            cancelCheck(previous);
+            redisTemplate.opsForZSet().remove(queueKey(previous.tier), userId);
+        }
+        redisTemplate.opsForZSet().add(queueKey(tier), userId, now);
+        scheduler.execute(() -> checkWaiter(waiter));
+    }
+
+    /**
+     * 玩家主动离开 / 断线，移出队列
+     */
+    public void leave(String userId) {
+        LocalWaiter waiter = localWaiters.remove(userId);
+        if (waiter != null) {
+            cancelCheck(waiter);
+            redisTemplate.opsForZSet().remove(queueKey(waiter.tier), userId);
+        }
+    }
+
+    /**
+     * 当前本节点等待中的玩家数
+     */
+    public int getLocalWaitingCount() {
+        return localWaiters.size();
+    }
+
+    /**
+     * 检查一名本地等待者：尝试配对，失败则安排下一次放宽或回退人机
+     */
+    private void checkWaiter(LocalWaiter waiter) {
+        if (localWaiters.get(waiter.userId) != waiter) return;
+        try {
+            long waited = System.currentTimeMillis() - waiter.joinTime;
+            List<String> pair = tryMatch(waiter.tier, waiter.userId, waiter.joinTime);
+            if (pair != null) {
+                localWaiters.remove(waiter.userId, waiter);
+                notifyMatched(pair.get(0), pair.get(1));
+                return;
+            }
+
+            Double score = redisTemplate.opsForZSet().score(queueKey(waiter.tier), waiter.userId);
+            if (score == null) {
+                // 已被其他节点配走（对方节点负责建房）
+                localWaiters.remove(waiter.userId, waiter);
+                return;
+            }
+
+            if (waited >= BOT_FALLBACK_MS) {
+                Long removed = redisTemplate.opsForZSet().remove(queueKey(waiter.tier), waiter.userId);
+                localWaiters.remove(waiter.userId, waiter);
+                if (removed != null && removed > 0 && listener != null) {
+                    logger.info("玩家 {} 等待超时，创建人机对战", waiter.userId);
+                    listener.onMatchTimeout(waiter.userId);
+                }
+                return;
+            }
+
+            long nextAt = Math.min((waited / WIDEN_STEP_MS + 1) * WIDEN_STEP_MS, BOT_FALLBACK_MS);
+            waiter.nextCheck = scheduler.schedule(() -> checkWaiter(waiter),
+                    nextAt - waited, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            logger.error("匹配检查失败: userId={}", waiter.userId, e);
+            waiter.nextCheck = scheduler.schedule(() -> checkWaiter(waiter), WIDEN_STEP_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 执行一次原子配对
+     *
+     * @param tier     发起者所在段位
+     * @param userId   发起者
+     * @param joinTime 发起者入队时间，用于计算其自身的放宽范围
+     * @return {发起者, 对手}，无法配对时返回 null
+     */
+    @SuppressWarnings("unchecked")
+    List<String> tryMatch(String tier, String userId, long joinTime) {
+        long now = System.currentTimeMillis();
+        int myRange = widenRange(now - joinTime);
+
+        List<String> neighbours = new ArrayList<>();
+        BattleGameManager.addAdjacentTiers(neighbours, tier, MAX_WIDEN_RANGE);
+        int myIndex = BattleGameManager.ORDERED_TIERS.indexOf(tier);
+        neighbours.sort(Comparator.comparingInt(t -> Math.abs(BattleGameManager.ORDERED_TIERS.indexOf(t) - myIndex)));
+
+        List<String> keys = new ArrayList<>(neighbours.size() + 1);
+        List<String> args = new ArrayList<>(neighbours.size() + 2);
+        keys.add(queueKey(tier));
+        args.add(userId);
+        args.add("+inf");
+        for (String t : neighbours) {
+            int distance = Math.abs(BattleGameManager.ORDERED_TIERS.indexOf(t) - myIndex);
+            keys.add(queueKey(t));
+            // 发起者已放宽到该段位：不限制对手；否则要求对手自己已等待到足以放宽到本段位
+            args.add(distance <= myRange ? "+inf" : String.valueOf(now - distance * WIDEN_STEP_MS));
+        }
+
+        List<String> result = redisTemplate.execute(MATCH_PAIR, keys, args.toArray());
+        return (result == null || result.size() < 2) ? null : result;
+    }
+
+    private void notifyMatched(String user1Id, String user2Id) {
+        LocalWaiter other = localWaiters.remove(user2Id);
+        if (other != null) cancelCheck(other);
+        LocalWaiter self = localWaiters.remove(user1Id);
+        if (self != null) cancelCheck(self);
+
+        if (listener == null) {
+            logger.warn("匹配成功但未注册监听器: {} vs {}", user1Id, user2Id);
+            return;
+        }
+        try {
+            listener.onMatched(user1Id, user2Id);
+        } catch (Exception e) {
+            logger.error("处理匹配结果失败: {} vs {}", user1Id, user2Id, e);
+        }
+    }
+
+    /**
+     * 节点心跳 + 兜底清理本节点负责的段位
+     */
+    private void heartbeatAndSweep() {
+        try {
+            long now = System.currentTimeMillis();
+            ZSetOperations<String, String> zset = redisTemplate.opsForZSet();
+            zset.add(NODE_REGISTRY_KEY, nodeId, now);
+            zset.removeRangeByScore(NODE_REGISTRY_KEY, 0, now - NODE_TTL_MS);
+
+            Set<String> nodes = zset.range(NODE_REGISTRY_KEY, 0, -1);
+            List<String> sortedNodes = nodes == null ? Collections.singletonList(nodeId) : new ArrayList<>(nodes);
+            Collections.sort(sortedNodes);
+
+            for (int i = 0; i < BattleGameManager.ORDERED_TIERS.size(); i++) {
+                String tier = BattleGameManager.ORDERED_TIERS.get(i);
+                if (ownsTier(i, sortedNodes)) {
+                    sweepTier(tier, now);
+                }
+            }
+        } catch (Exception e) {
+            logger.error("匹配兜底扫描失败", e);
+        }
+    }
+
+    private boolean ownsTier(int tierIndex, List<String> sortedNodes) {
+        if (sortedNodes.isEmpty()) return true;
+        return nodeId.equals(sortedNodes.get(tierIndex % sortedNodes.size()));
+    }
+
+    /**
+     * 清理遗留玩家：存活节点会在 BOT_FALLBACK_MS 内把自己的玩家移出队列，
+     * 超过 BOT_FALLBACK_MS + NODE_TTL_MS 仍在队列中的只可能来自已宕机节点（其 WebSocket 也已断开）
+     */
+    private void sweepTier(String tier, long now) {
+        Long removed = redisTemplate.opsForZSet().removeRangeByScore(queueKey(tier), 0, now - ORPHAN_ENTRY_MS);
+        if (removed != null && removed > 0) {
+            logger.info("清理段位 {} 中遗留的 {} 名等待玩家", tier, removed);
+        }
+    }
+
+    private void cancelCheck(LocalWaiter waiter) {
+        ScheduledFuture<?> f = waiter.nextCheck;
+        if (f != null) f.cancel(false);
+    }
+
+    static int widenRange(long waitedMs) {
+        return (int) Math.min(MAX_WIDEN_RANGE, Math.max(0, waitedMs / WIDEN_STEP_MS));
+    }
+
+    static String queueKey(String tier) {
+        return QUEUE_PREFIX + tier;
+    }
+}
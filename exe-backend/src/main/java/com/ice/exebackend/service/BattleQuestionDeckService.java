@@ -0,0 +1,198 @@
+package com.ice.exebackend.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.ice.exebackend.entity.BizQuestion;
+import com.ice.exebackend.utils.DifficultyBand;
+import com.ice.exebackend.utils.QuestionDeckPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 对战题组服务
+ *
+ * 启动时把所有单选题的 ID 按「科目 / 年级 / 难度档」分桶装入内存池，开房时直接从池中
+ * 不放回地抽取 5 道题，再按主键批量取回题目内容，替代原先每开一局执行一次的
+ * ORDER BY RAND()（全表排序）。
+ *
+ * 全量重建与增量刷新由 {@link QuestionIndexLoader} 统一驱动，池未就绪时回退到原 SQL。
+ */
+@Service
+public class BattleQuestionDeckService implements QuestionIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(BattleQuestionDeckService.class);
+
+    private static final int SINGLE_CHOICE = 1;
+    private static final String ALL_KEY = "*";
+
+    @Autowired
+    private BizQuestionService questionService;
+
+    private volatile DeckIndex index = new DeckIndex();
+    private volatile boolean ready = false;
+
+    /**
+     * 发一副题
+     *
+     * @param subjectId 科目ID，可为空
+     * @param grade     年级，可为空
+     * @param band      难度档（{@link DifficultyBand#name}：EASY / MEDIUM / HARD），可为空
+     * @param count     题目数量
+     * @return 按抽取顺序排列的题目；池中题量不足时自动放宽条件
+     */
+    public List<BizQuestion> dealQuestions(Long subjectId, String grade, String band, int count) {
+        if (ready) {
+            DeckIndex current = index;
+            for (String key : candidateKeys(subjectId, grade, band)) {
+                QuestionDeckPool pool = current.pools.get(key);
+                if (pool == null || pool.size() < count) continue;
+
+                long[] ids = pool.deal(count, ThreadLocalRandom.current());
+                List<BizQuestion> questions = loadInDealOrder(ids);
+                // 抽中的题恰好在此刻被删除时数量会不足，直接走回退查询
+                if (questions.size() == count) {
+                    return questions;
+                }
+                break;
+            }
+        }
+        return fallbackQuery(subjectId, grade, count);
+    }
+
+    @Override
+    public String indexName() {
+        return "对战题组";
+    }
+
+    /**
+     * 增量刷新：先移除，再按最新数据重新入池（已删除或不再是单选题的不会重新加入）
+     */
+    @Override
+    public void refresh(Collection<Long> questionIds, List<BizQuestion> latest) {
+        DeckIndex current = index;
+        for (Long id : questionIds) {
+            current.remove(id);
+        }
+        for (BizQuestion q : latest) {
+            if (isSingleChoice(q)) current.add(q);
+        }
+    }
+
+    /**
+     * 全量重建：只收单选题，读完后整体替换
+     */
+    @Override
+    public Rebuild beginRebuild() {
+        DeckIndex fresh = new DeckIndex();
+        return new Rebuild() {
+            @Override
+            public void accept(List<BizQuestion> page) {
+                for (BizQuestion q : page) {
+                    if (isSingleChoice(q)) fresh.add(q);
+                }
+            }
+
+            @Override
+            public void commit() {
+                index = fresh;
+                ready = true;
+                logger.info("对战题组重建完成: {} 道单选题, {} 个题池", fresh.membership.size(), fresh.pools.size());
+            }
+        };
+    }
+
+    private static boolean isSingleChoice(BizQuestion q) {
+        return q.getQuestionType() != null && q.getQuestionType() == SINGLE_CHOICE;
+    }
+
+    private List<BizQuestion> loadInDealOrder(long[] ids) {
+        List<Long> idList = new ArrayList<>(ids.length);
+        for (long id : ids) idList.add(id);
+
+        Map<Long, BizQuestion> byId = new HashMap<>();
+        for (BizQuestion q : questionService.listByIds(idList)) {
+            byId.put(q.getId(), q);
+        }
+        List<BizQuestion> result = new ArrayList<>(ids.length);
+        for (Long id : idList) {
+            BizQuestion q = byId.get(id);
+            if (q != null) result.add(q);
+        }
+        return result;
+    }
+
+    private List<BizQuestion> fallbackQuery(Long subjectId, String grade, int count) {
+        QueryWrapper<BizQuestion> wrapper = new QueryWrapper<BizQuestion>()
+                .eq("question_type", SINGLE_CHOICE)
+                .eq(subjectId != null, "subject_id", subjectId)
+                .eq(StringUtils.hasText(grade), "grade", grade)
+                .last("ORDER BY RAND() LIMIT " + count);
+        return questionService.list(wrapper);
+    }
+
+    /**
+     * 从最具体到最宽泛的题池 key
+     */
+    private static List<String> candidateKeys(Long subjectId, String grade, String band) {
+        List<String> keys = new ArrayList<>(4);
+        if (subjectId != null) {
+            String s = subjectKey(subjectId);
+            if (StringUtils.hasText(grade)) {
+                String sg = s + "|g:" + grade;
+                if (StringUtils.hasText(band)) keys.add(sg + "|b:" + band);
+                keys.add(sg);
+            }
+            keys.add(s);
+        }
+        keys.add(ALL_KEY);
+        return keys;
+    }
+
+    private static String subjectKey(Long subjectId) {
+        return "s:" + subjectId;
+    }
+
+    /**
+     * 一份完整的题池索引：poolKey -> 题池，questionId -> 所在题池
+     */
+    private static class DeckIndex {
+        final Map<String, QuestionDeckPool> pools = new ConcurrentHashMap<>();
+        final Map<Long, String[]> membership = new ConcurrentHashMap<>();
+
+        void add(BizQuestion q) {
+            if (q.getId() == null) return;
+            String[] keys = keysOf(q);
+            for (String key : keys) {
+                pools.computeIfAbsent(key, k -> new QuestionDeckPool()).add(q.getId());
+            }
+            membership.put(q.getId(), keys);
+        }
+
+        void remove(Long id) {
+            String[] keys = membership.remove(id);
+            if (keys == null) return;
+            for (String key : keys) {
+                QuestionDeckPool pool = pools.get(key);
+                if (pool != null) pool.remove(id);
+            }
+        }
+
+        private static String[] keysOf(BizQuestion q) {
+            if (q.getSubjectId() == null) {
+                return new String[]{ALL_KEY};
+            }
+            String s = subjectKey(q.getSubjectId());
+            if (!StringUtils.hasText(q.getGrade())) {
+                return new String[]{ALL_KEY, s};
+            }
+            String sg = s + "|g:" + q.getGrade();
+            return new String[]{ALL_KEY, s, sg, sg + "|b:" + DifficultyBand.name(DifficultyBand.of(q.getDifficulty()))};
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.ice.exebackend.service;
+
+import com.ice.exebackend.entity.BizBattleRecord;
+import com.ice.exebackend.mapper.BizBattleRecordMapper;
+import com.ice.exebackend.mapper.BizStudentMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对战结果异步批量落库（write-behind）
+ *
+ * 房间结算时只把战绩放入有界队列，由单独的刷盘线程攒批写入：
+ * - biz_battle_record 多行 INSERT
+ * - 积分按学生合并后用一条 UPDATE ... points = points + ? 原子累加，不再先读后写
+ * 两者在同一事务中提交，提交后使学生身份缓存失效。
+ *
+ * 队列满时退化为调用方线程同步写入（不丢数据）；应用关闭时把队列中剩余的战绩全部刷完。
+ * 指标：battle.result.queue.depth / battle.result.flush / battle.result.sync.fallback / battle.result.failed
+ */
+@Component
+public class BattleResultWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(BattleResultWriter.class);
+
+    private static final int QUEUE_CAPACITY = 10000;
+    private static final int MAX_BATCH_SIZE = 500;
+    private static final long MAX_BATCH_WAIT_MS = 200;   // 攒批最长等待
+    private static final long OFFER_TIMEOUT_MS = 50;     // 队列满时的最长等待
+    private static final int MAX_FLUSH_ATTEMPTS = 3;
+
+    @Autowired
+    private BizBattleRecordMapper battleRecordMapper;
+    @Autowired
+    private BizStudentMapper studentMapper;
+    @Autowired
+    private StudentIdentityCache studentIdentityCache;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final BlockingQueue<BizBattleRecord> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread flusher = new Thread(this::runFlushLoop, "battle-result-writer");
+    private volatile boolean running = true;
+
+    private Timer flushTimer;
+    private Counter syncFallbackCounter;
+    private Counter failedCounter;
+
+    @PostConstruct
+    public void init() {
+        Gauge.builder("battle.result.queue.depth", queue, BlockingQueue::size)
+                .description("等待落库的对战战绩数量")
+                .register(meterRegistry);
+        flushTimer = Timer.builder("battle.result.flush")
+                .description("对战战绩批量落库耗时")
+                .register(meterRegistry);
+        syncFallbackCounter = Counter.builder("battle.result.sync.fallback")
+                .description("队列满时同步写入的战绩数量")
+                .register(meterRegistry);
+        failedCounter = Counter.builder("battle.result.failed")
+                .description("重试后仍写入失败的战绩数量")
+                .register(meterRegistry);
+
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        flusher.interrupt();
+        try {
+            flusher.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 刷盘线程未能及时退出时，由关闭线程把剩余战绩刷完
+        List<BizBattleRecord> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        if (!rest.isEmpty()) {
+            logger.info("应用关闭，刷写剩余对战战绩 {} 条", rest.size());
+            flushInChunks(rest);
+        }
+    }
+
+    /**
+     * 提交一条战绩（scoreChange 同时作为该玩家的积分变化量），不等待数据库
+     */
+    public void submit(BizBattleRecord record) {
+        if (record == null || record.getPlayerId() == null) return;
+        try {
+            if (running && queue.offer(record, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 队列已满或正在关闭：同步写入，宁可慢也不丢战绩
+        syncFallbackCounter.increment();
+        logger.warn("对战战绩队列已满或已关闭，同步写入: playerId={}", record.getPlayerId());
+        flushWithRetry(List.of(record));
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    private void runFlushLoop() {
+        List<BizBattleRecord> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        while (running || !queue.isEmpty()) {
+            try {
+                BizBattleRecord first = queue.poll(MAX_BATCH_WAIT_MS, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                long deadline = System.currentTimeMillis() + MAX_BATCH_WAIT_MS;
+                while (batch.size() < MAX_BATCH_SIZE) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) break;
+                    if (queue.drainTo(batch, MAX_BATCH_SIZE - batch.size()) == 0) {
+                        BizBattleRecord next = queue.poll(remaining, TimeUnit.MILLISECONDS);
+                        if (next == null) break;
+                        batch.add(next);
+                    }
+                }
+            } catch (InterruptedException e) {
+                // 关闭信号：把已取出的这一批写完后退出，剩余部分由 shutdown() 处理
+                if (!batch.isEmpty()) flushWithRetry(new ArrayList<>(batch));
+                return;
+            }
+            flushWithRetry(new ArrayList<>(batch));
+            batch.clear();
+        }
+    }
+
+    private void flushInChunks(List<BizBattleRecord> records) {
+        for (int i = 0; i < records.size(); i += MAX_BATCH_SIZE) {
+            flushWithRetry(records.subList(i, Math.min(i + MAX_BATCH_SIZE, records.size())));
+        }
+    }
+
+    private void flushWithRetry(List<BizBattleRecord> batch) {
+        for (int attempt = 1; attempt <= MAX_FLUSH_ATTEMPTS; attempt++) {
+            try {
+                flushTimer.record(() -> flush(batch));
+                return;
+            } catch (Exception e) {
+                logger.warn("对战战绩批量落库失败（第 {} 次）, size={}", attempt, batch.size(), e);
+                try {
+                    Thread.sleep(200L * attempt);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        failedCounter.increment(batch.size());
+        for (BizBattleRecord r : batch) {
+            // 记录完整信息，便于人工补录
+            logger.error("对战战绩丢弃: playerId={}, opponentId={}, result={}, scoreChange={}, time={}",
+                    r.getPlayerId(), r.getOpponentId(), r.getResult(), r.getScoreChange(), r.getCreateTime());
+        }
+    }
+
+    private void flush(List<BizBattleRecord> batch) {
+        Map<Long, Integer> deltas = new LinkedHashMap<>();
+        for (BizBattleRecord r : batch) {
+            if (r.getScoreChange() != null && r.getScoreChange() != 0) {
+                deltas.merge(r.getPlayerId(), r.getScoreChange(), Integer::sum);
+            }
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            battleRecordMapper.insertBatch(batch);
+            if (!deltas.isEmpty()) {
+                studentMapper.addPointsBatch(deltas);
+                // 在事务内登记，提交后才使身份缓存失效
+                deltas.keySet().forEach(studentIdentityCache::invalidate);
+            }
+        });
+    }
+}
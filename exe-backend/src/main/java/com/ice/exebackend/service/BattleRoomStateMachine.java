@@ -0,0 +1,693 @@
+package com.ice.exebackend.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ice.exebackend.dto.BattleMessage;
+import com.ice.exebackend.dto.BattleRoomData;
+import com.ice.exebackend.dto.BattleRoomData.BattleQuestion;
+import com.ice.exebackend.dto.StudentIdentityDTO;
+import com.ice.exebackend.entity.BizBattleRecord;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * 对战房间状态机（分布式）
+ *
+ * 房间状态保存在 Redis Hash（battle:room:{roomId}）中，所有状态变更都通过 CAS 脚本
+ * （校验 version 后写入）完成，回合倒计时 / 结果展示 / 机器人答题由 {@link BattleTimerWheel} 驱动，
+ * 状态变化产生的消息通过 battle:channel 广播，由各节点的 {@link BattleMessageSubscriber} 投递给本机玩家。
+ * 因此房间不再绑定某个节点：节点重启后房间继续推进，两名玩家也可以连在不同节点上。
+ *
+ * 状态流转：COUNTDOWN -(START)-> ANSWERING -(双方作答/超时)-> RESULT -(NEXT)-> ANSWERING ... -> FINISHED
+ */
+@Component
+public class BattleRoomStateMachine {
+
+    private static final Logger logger = LoggerFactory.getLogger(BattleRoomStateMachine.class);
+
+    // 常量定义
+    private static final int ROUND_TIMEOUT_SECONDS = 20; // 每题限时
+    private static final int ROUND_RESULT_VIEW_TIME = 3; // 结果展示时间
+    private static final int START_DELAY_SECONDS = 1;    // 匹配成功到发第一题的间隔
+    private static final int BASE_SCORE = 10; // 基础分
+    private static final long ABANDON_GRACE_MS = 10000;  // 断线后等待重连的时间
+    private static final long ROOM_TTL_MS = TimeUnit.MINUTES.toMillis(10);
+    private static final int MAX_CAS_RETRIES = 5;
+
+    public static final String BOT_USER_ID = "-1";
+    private static final String BOT_NAME = "AI 智能助教";
+
+    private static final String CHANNEL_NAME = "battle:channel";
+    private static final String ROOM_PREFIX = "battle:room:";
+    private static final String PLAYER_ROOM_PREFIX = "player:room:";
+    private static final String ONLINE_PREFIX = "battle:online:";
+
+    // 定时任务类型（任务标识格式：TYPE:roomId:round 或 ABANDON:roomId:userId）
+    private static final String TASK_START = "START";
+    private static final String TASK_TIMEOUT = "TIMEOUT";
+    private static final String TASK_NEXT = "NEXT";
+    private static final String TASK_BOT = "BOT";
+    private static final String TASK_ABANDON = "ABANDON";
+
+    private static final String ITEM_FIELD_PREFIX_P1 = "p1Item:";
+    private static final String ITEM_FIELD_PREFIX_P2 = "p2Item:";
+
+    /**
+     * CAS 写入：version 匹配时写入字段、版本号 +1 并续期
+     * KEYS[1] = 房间 key, ARGV[1] = 期望版本号, ARGV[2] = 过期毫秒, ARGV[3..] = field/value 对
+     */
+    private static final String CAS_SCRIPT =
+            "if redis.call('HGET', KEYS[1], 'version') ~= ARGV[1] then return 0 end\n" +
+            "for i = 3, #ARGV, 2 do\n" +
+            "  redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1])\n" +
+            "end\n" +
+            "redis.call('HINCRBY', KEYS[1], 'version', 1)\n" +
+            "redis.call('PEXPIRE', KEYS[1], ARGV[2])\n" +
+            "return 1";
+
+    private static final RedisScript<Long> CAS = RedisScript.of(CAS_SCRIPT, Long.class);
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private BattleTimerWheel timerWheel;
+    @Autowired
+    private StudentIdentityCache identityCache;
+    @Autowired
+    private BattleResultWriter resultWriter;
+
+    @PostConstruct
+    public void init() {
+        timerWheel.setHandler(this::handleTimer);
+    }
+
+    // ==================== 对外入口 ====================
+
+    /**
+     * 创建房间并安排开局
+     */
+    public BattleRoomData createRoom(String p1Id, String p2Id, boolean botGame, List<BattleQuestion> questions) {
+        BattleRoomData room = new BattleRoomData();
+        room.setRoomId(UUID.randomUUID().toString());
+        room.setP1Id(p1Id);
+        room.setP2Id(p2Id);
+        room.setBotGame(botGame);
+        room.setQuestions(questions);
+        room.getP1Items().put("FOG", 1);
+        room.getP1Items().put("HINT", 1);
+        room.getP2Items().put("FOG", 1);
+        room.getP2Items().put("HINT", 1);
+
+        String key = ROOM_PREFIX + room.getRoomId();
+        Map<String, String> hash = toHash(room);
+        hash.put("questions", toJson(questions));
+        redisTemplate.opsForHash().putAll(key, hash);
+        redisTemplate.expire(key, ROOM_TTL_MS, TimeUnit.MILLISECONDS);
+
+        // 记录玩家当前所在的房间ID (用于重连或答题时查找)
+        redisTemplate.opsForValue().set(PLAYER_ROOM_PREFIX + p1Id, room.getRoomId(), ROOM_TTL_MS, TimeUnit.MILLISECONDS);
+        if (!botGame) {
+            redisTemplate.opsForValue().set(PLAYER_ROOM_PREFIX + p2Id, room.getRoomId(), ROOM_TTL_MS, TimeUnit.MILLISECONDS);
+        }
+
+        timerWheel.schedule(task(TASK_START, room.getRoomId(), 0), START_DELAY_SECONDS * 1000L);
+        return room;
+    }
+
+    /**
+     * 玩家作答
+     */
+    public void submitAnswer(String userId, String answer) {
+        String roomId = findRoomId(userId);
+        if (roomId == null) return;
+
+        long now = System.currentTimeMillis();
+        BattleRoomData room = update(roomId, r -> {
+            if (!BattleRoomData.PHASE_ANSWERING.equals(r.getPhase())) return false;
+            if (r.isP1(userId)) {
+                if (r.getP1Answer() != null) return false;
+                r.setP1Answer(answer);
+                r.setP1AnswerTime(now);
+                return true;
+            }
+            if (userId.equals(r.getP2Id()) && r.getP2Answer() == null) {
+                r.setP2Answer(answer);
+                r.setP2AnswerTime(now);
+                return true;
+            }
+            return false;
+        });
+
+        if (room != null && room.isRoundComplete()) {
+            settleRound(roomId, room.getRound());
+        }
+    }
+
+    /**
+     * 玩家使用道具
+     */
+    public void useItem(String userId, String itemType) {
+        String roomId = findRoomId(userId);
+        if (roomId == null) return;
+
+        BattleRoomData room = update(roomId, r -> {
+            if (BattleRoomData.PHASE_FINISHED.equals(r.getPhase())) return false;
+            Map<String, Integer> myItems = r.isP1(userId) ? r.getP1Items() : r.getP2Items();
+            if (myItems.getOrDefault(itemType, 0) <= 0) return false;
+            myItems.put(itemType, myItems.get(itemType) - 1);
+            return true;
+        });
+        if (room == null) return;
+
+        if ("FOG".equals(itemType)) {
+            sendToPlayer(room.opponentOf(userId), BattleMessage.of("ITEM_EFFECT", Map.of("effect", "FOG", "duration", 3000)));
+        } else if ("HINT".equals(itemType)) {
+            String wrongOption = findOneWrongOption(room.currentQuestion());
+            sendToPlayer(userId, BattleMessage.of("ITEM_EFFECT", Map.of("effect", "HINT", "wrongOption", wrongOption)));
+        }
+        sendToPlayer(userId, BattleMessage.of("ITEM_USED_SUCCESS", itemType));
+    }
+
+    /**
+     * 玩家断线：给予重连宽限期，超时未重连才判定离开
+     */
+    public void playerDisconnected(String userId, String sessionId) {
+        String onlineKey = ONLINE_PREFIX + userId;
+        if (sessionId.equals(redisTemplate.opsForValue().get(onlineKey))) {
+            redisTemplate.delete(onlineKey);
+        }
+        String roomId = findRoomId(userId);
+        if (roomId != null) {
+            timerWheel.schedule(TASK_ABANDON + ":" + roomId + ":" + userId, ABANDON_GRACE_MS);
+        }
+    }
+
+    /**
+     * 玩家（重新）连接：登记在线状态，返回其所在房间ID（没有则返回 null）
+     */
+    public String playerConnected(String userId, String sessionId) {
+        redisTemplate.opsForValue().set(ONLINE_PREFIX + userId, sessionId, ROOM_TTL_MS, TimeUnit.MILLISECONDS);
+        return findRoomId(userId);
+    }
+
+    /**
+     * 向玩家推送消息：发布到 battle:channel，由玩家所在节点的 BattleMessageSubscriber 投递
+     */
+    public void sendToPlayer(String userId, BattleMessage msg) {
+        if (userId == null || BOT_USER_ID.equals(userId)) return;
+        Map<String, Object> pubMsg = new HashMap<>();
+        pubMsg.put("targetUserId", userId);
+        pubMsg.put("payload", msg);
+        redisTemplate.convertAndSend(CHANNEL_NAME, toJson(pubMsg));
+    }
+
+    // ==================== 定时任务驱动的状态流转 ====================
+
+    private void handleTimer(String task) {
+        String[] parts = task.split(":");
+        if (parts.length != 3) {
+            logger.warn("无法识别的对战定时任务: {}", task);
+            return;
+        }
+        String type = parts[0];
+        String roomId = parts[1];
+        if (TASK_ABANDON.equals(type)) {
+            abandon(roomId, parts[2]);
+            return;
+        }
+        int round = Integer.parseInt(parts[2]);
+        switch (type) {
+            case TASK_START:
+                startGame(roomId);
+                break;
+            case TASK_TIMEOUT:
+                settleRound(roomId, round);
+                break;
+            case TASK_NEXT:
+                nextRound(roomId, round);
+                break;
+            case TASK_BOT:
+                botAnswer(roomId, round);
+                break;
+            default:
+                logger.warn("无法识别的对战定时任务: {}", task);
+        }
+    }
+
+    private void startGame(String roomId) {
+        long now = System.currentTimeMillis();
+        BattleRoomData room = update(roomId, r -> {
+            if (!BattleRoomData.PHASE_COUNTDOWN.equals(r.getPhase())) return false;
+            r.setPhase(BattleRoomData.PHASE_ANSWERING);
+            r.setRound(0);
+            r.setRoundStartTime(now);
+            return true;
+        });
+        if (room != null) {
+            sendQuestion(room);
+        }
+    }
+
+    /**
+     * 回合结算（双方作答完毕或超时）
+     */
+    private void settleRound(String roomId, int round) {
+        int[] roundScores = new int[2];
+        boolean[] correct = new boolean[2];
+        BattleRoomData room = update(roomId, r -> {
+            if (!BattleRoomData.PHASE_ANSWERING.equals(r.getPhase()) || r.getRound() != round) return false;
+            String answer = r.currentQuestion().getAnswer();
+            correct[0] = isCorrect(r.getP1Answer(), answer);
+            correct[1] = isCorrect(r.getP2Answer(), answer);
+
+            roundScores[0] = 0;
+            roundScores[1] = 0;
+            if (correct[0]) {
+                r.setP1Combo(r.getP1Combo() + 1);
+                roundScores[0] = roundScore(r.getP1AnswerTime() - r.getRoundStartTime(), r.getP1Combo());
+            } else {
+                r.setP1Combo(0);
+            }
+            if (correct[1]) {
+                r.setP2Combo(r.getP2Combo() + 1);
+                roundScores[1] = roundScore(r.getP2AnswerTime() - r.getRoundStartTime(), r.getP2Combo());
+            } else {
+                r.setP2Combo(0);
+            }
+            r.setP1Score(r.getP1Score() + roundScores[0]);
+            r.setP2Score(r.getP2Score() + roundScores[1]);
+            r.setPhase(BattleRoomData.PHASE_RESULT);
+            return true;
+        });
+        if (room == null) return;
+
+        timerWheel.cancel(task(TASK_TIMEOUT, roomId, round));
+        timerWheel.cancel(task(TASK_BOT, roomId, round));
+
+        Map<String, Object> baseData = new HashMap<>();
+        baseData.put("correctAnswer", room.currentQuestion().getAnswer());
+        sendResultToPlayer(room.getP1Id(), baseData, room.getP1Answer(), room.getP2Answer(),
+                room.getP1Score(), room.getP2Score(), correct[0], roundScores[0], room.getP1Combo());
+        sendResultToPlayer(room.getP2Id(), baseData, room.getP2Answer(), room.getP1Answer(),
+                room.getP2Score(), room.getP1Score(), correct[1], roundScores[1], room.getP2Combo());
+
+        timerWheel.schedule(task(TASK_NEXT, roomId, round), ROUND_RESULT_VIEW_TIME * 1000L);
+    }
+
+    private void nextRound(String roomId, int round) {
+        long now = System.currentTimeMillis();
+        BattleRoomData room = update(roomId, r -> {
+            if (!BattleRoomData.PHASE_RESULT.equals(r.getPhase()) || r.getRound() != round) return false;
+            if (r.hasNextQuestion()) {
+                r.setRound(round + 1);
+                r.setP1Answer(null);
+                r.setP2Answer(null);
+                r.setP1AnswerTime(0);
+                r.setP2AnswerTime(0);
+                r.setRoundStartTime(now);
+                r.setPhase(BattleRoomData.PHASE_ANSWERING);
+            } else {
+                r.setPhase(BattleRoomData.PHASE_FINISHED);
+            }
+            return true;
+        });
+        if (room == null) return;
+
+        if (BattleRoomData.PHASE_FINISHED.equals(room.getPhase())) {
+            finishGame(room);
+        } else {
+            sendQuestion(room);
+        }
+    }
+
+    /**
+     * 模拟机器人答题（拟人化）：正确率随题目难度下降
+     */
+    private void botAnswer(String roomId, int round) {
+        long now = System.currentTimeMillis();
+        BattleRoomData room = update(roomId, r -> {
+            if (!BattleRoomData.PHASE_ANSWERING.equals(r.getPhase()) || r.getRound() != round
+                    || r.getP2Answer() != null) return false;
+            r.setP2Answer(pickBotAnswer(r.currentQuestion()));
+            r.setP2AnswerTime(now);
+            return true;
+        });
+        if (room != null && room.isRoundComplete()) {
+            settleRound(roomId, round);
+        }
+    }
+
+    private void abandon(String roomId, String userId) {
+        if (Boolean.TRUE.equals(redisTemplate.hasKey(ONLINE_PREFIX + userId))) {
+            return; // 已重连
+        }
+        BattleRoomData room = update(roomId, r -> {
+            if (BattleRoomData.PHASE_FINISHED.equals(r.getPhase())) return false;
+            r.setPhase(BattleRoomData.PHASE_FINISHED);
+            return true;
+        });
+        if (room == null) return;
+
+        logger.info("玩家 {} 断线未重连，房间 {} 结束", userId, roomId);
+        sendToPlayer(room.opponentOf(userId), BattleMessage.of("OPPONENT_LEFT", null));
+        cleanup(room);
+    }
+
+    // ==================== 消息推送 ====================
+
+    private void sendQuestion(BattleRoomData room) {
+        BattleQuestion q = room.currentQuestion();
+        Map<String, Object> qData = new HashMap<>();
+        qData.put("content", q.getContent());
+        qData.put("options", q.getOptions());
+        qData.put("round", room.getRound() + 1);
+        qData.put("total", room.getQuestions().size());
+
+        BattleMessage msg = BattleMessage.of("QUESTION", qData);
+        sendToPlayer(room.getP1Id(), msg);
+        sendToPlayer(room.getP2Id(), msg);
+
+        timerWheel.schedule(task(TASK_TIMEOUT, room.getRoomId(), room.getRound()), ROUND_TIMEOUT_SECONDS * 1000L);
+        if (room.isBotGame()) {
+            timerWheel.schedule(task(TASK_BOT, room.getRoomId(), room.getRound()), botDelayMs(q));
+        }
+    }
+
+    private void sendResultToPlayer(String userId, Map<String, Object> base, String myAns, String oppAns, int myScore, int oppScore, boolean isCorrect, int roundScore, int combo) {
+        Map<String, Object> data = new HashMap<>(base);
+        data.put("myAnswer", myAns);
+        data.put("oppAnswer", oppAns);
+        data.put("myScore", myScore);
+        data.put("oppScore", oppScore);
+        data.put("isCorrect", isCorrect);
+        data.put("scoreChange", roundScore);
+        data.put("combo", combo);
+        sendToPlayer(userId, BattleMessage.of("ROUND_RESULT", data));
+    }
+
+    /**
+     * 游戏结束：提交战绩（异步落库）、通知双方（只有赢得 FINISHED CAS 的节点会执行）
+     */
+    private void finishGame(BattleRoomData room) {
+        String resultP1, resultP2;
+        String dbResultP1, dbResultP2;
+        int scoreP1, scoreP2;
+
+        if (room.getP1Score() > room.getP2Score()) {
+            resultP1 = "YOU";      dbResultP1 = "WIN";  scoreP1 = 20;
+            resultP2 = "OPPONENT"; dbResultP2 = "LOSE"; scoreP2 = -10;
+        } else if (room.getP1Score() < room.getP2Score()) {
+            resultP1 = "OPPONENT"; dbResultP1 = "LOSE"; scoreP1 = -10;
+            resultP2 = "YOU";      dbResultP2 = "WIN";  scoreP2 = 20;
+        } else {
+            resultP1 = "DRAW";     dbResultP1 = "DRAW"; scoreP1 = 5;
+            resultP2 = "DRAW";     dbResultP2 = "DRAW"; scoreP2 = 5;
+        }
+
+        submitBattleRecord(room.getP1Id(), room.getP2Id(), dbResultP1, scoreP1);
+        if (!room.isBotGame()) {
+            submitBattleRecord(room.getP2Id(), room.getP1Id(), dbResultP2, scoreP2);
+        }
+
+        Map<String, Object> res1 = new HashMap<>();
+        res1.put("result", resultP1);
+        res1.put("myScore", room.getP1Score());
+        res1.put("oppScore", room.getP2Score());
+        res1.put("scoreChange", scoreP1);
+        sendToPlayer(room.getP1Id(), BattleMessage.of("GAME_OVER", res1));
+
+        Map<String, Object> res2 = new HashMap<>();
+        res2.put("result", resultP2);
+        res2.put("myScore", room.getP2Score());
+        res2.put("oppScore", room.getP1Score());
+        res2.put("scoreChange", scoreP2);
+        sendToPlayer(room.getP2Id(), BattleMessage.of("GAME_OVER", res2));
+
+        cleanup(room);
+    }
+
+    private void cleanup(BattleRoomData room) {
+        String roomId = room.getRoomId();
+        timerWheel.cancel(task(TASK_TIMEOUT, roomId, room.getRound()));
+        timerWheel.cancel(task(TASK_BOT, roomId, room.getRound()));
+        redisTemplate.delete(ROOM_PREFIX + roomId);
+        deleteIfEquals(PLAYER_ROOM_PREFIX + room.getP1Id(), roomId);
+        if (!room.isBotGame()) {
+            deleteIfEquals(PLAYER_ROOM_PREFIX + room.getP2Id(), roomId);
+        }
+    }
+
+    private void deleteIfEquals(String key, String expected) {
+        if (expected.equals(redisTemplate.opsForValue().get(key))) {
+            redisTemplate.delete(key);
+        }
+    }
+
+    // ==================== 积分与战绩 ====================
+
+    /**
+     * 生成战绩并交给 {@link BattleResultWriter} 异步落库（积分变化随战绩一起累加），这里不访问数据库
+     */
+    private void submitBattleRecord(String playerId, String opponentId, String result, int scoreChange) {
+        Long player = parseStudentId(playerId);
+        if (player == null) return;
+
+        BizBattleRecord record = new BizBattleRecord();
+        record.setPlayerId(player);
+        Long opponent = parseStudentId(opponentId);
+        if (opponent != null) {
+            StudentIdentityDTO opponentIdentity = identityCache.lookup(opponent);
+            record.setOpponentId(opponent);
+            record.setOpponentName(opponentIdentity != null ? opponentIdentity.getName() : null);
+        } else {
+            record.setOpponentId(-1L);
+            record.setOpponentName(BOT_NAME);
+        }
+        record.setResult(result);
+        record.setScoreChange(scoreChange);
+        record.setCreateTime(LocalDateTime.now());
+        resultWriter.submit(record);
+    }
+
+    private Long parseStudentId(String userId) {
+        if (userId == null || BOT_USER_ID.equals(userId)) return null;
+        try {
+            return Long.valueOf(userId);
+        } catch (NumberFormatException e) {
+            logger.warn("非法的玩家ID: {}", userId);
+            return null;
+        }
+    }
+
+    // ==================== 规则计算 ====================
+
+    private int roundScore(long timeUsedMs, int combo) {
+        double timeBonus = Math.max(0, (ROUND_TIMEOUT_SECONDS * 1000 - timeUsedMs) / 1000.0 * 0.5);
+        int comboBonus = Math.min(combo * 2, 10);
+        return (int) (BASE_SCORE + timeBonus + comboBonus);
+    }
+
+    private boolean isCorrect(String userAns, String correctAns) {
+        return userAns != null && userAns.equalsIgnoreCase(correctAns);
+    }
+
+    private String findOneWrongOption(BattleQuestion q) {
+        String correct = q.getAnswer();
+        List<String> candidates = new ArrayList<>();
+        for (String opt : Arrays.asList("A", "B", "C", "D")) {
+            if (!opt.equalsIgnoreCase(correct)) {
+                candidates.add(opt);
+            }
+        }
+        if (candidates.isEmpty()) return "";
+        return candidates.get(ThreadLocalRandom.current().nextInt(candidates.size()));
+    }
+
+    /**
+     * 拟人化延迟：阅读时间（每字 50ms）+ 1~5 秒思考时间，限制在 [2s, 限时-2s]
+     */
+    private long botDelayMs(BattleQuestion q) {
+        int contentLength = q.getContent() != null ? q.getContent().length() : 10;
+        long readTime = contentLength * 50L;
+        long thinkTime = ThreadLocalRandom.current().nextLong(1000, 5000);
+        long totalDelayMs = readTime + thinkTime;
+
+        long maxDelay = (ROUND_TIMEOUT_SECONDS - 2) * 1000L;
+        if (totalDelayMs > maxDelay) totalDelayMs = maxDelay;
+        if (totalDelayMs < 2000) totalDelayMs = 2000;
+        return totalDelayMs;
+    }
+
+    /**
+     * 基础正确率 P = 0.95 - 难度 * 0.6，再叠加 ±0.05 的随机波动
+     */
+    private String pickBotAnswer(BattleQuestion q) {
+        double difficulty = (q.getDifficulty() != null) ? q.getDifficulty() : 0.5;
+        double winRate = 0.95 - (difficulty * 0.6);
+        winRate += (ThreadLocalRandom.current().nextDouble() * 0.1 - 0.05);
+
+        if (ThreadLocalRandom.current().nextDouble() < winRate) {
+            return q.getAnswer();
+        }
+        // 智能生成错误答案：从非正确选项中随机选一个
+        String[] allOptions = {"A", "B", "C", "D"};
+        List<String> wrongOptions = new ArrayList<>();
+        for (String opt : allOptions) {
+            if (!opt.equalsIgnoreCase(q.getAnswer())) {
+                wrongOptions.add(opt);
+            }
+        }
+        if (!wrongOptions.isEmpty()) {
+            return wrongOptions.get(ThreadLocalRandom.current().nextInt(wrongOptions.size()));
+        }
+        return allOptions[ThreadLocalRandom.current().nextInt(4)];
+    }
+
+    // ==================== Redis 读写 ====================
+
+    private String findRoomId(String userId) {
+        if (userId == null) return null;
+        return redisTemplate.opsForValue().get(PLAYER_ROOM_PREFIX + userId);
+    }
+
+    /**
+     * 读取 - 修改 - CAS 写回，版本冲突时重试
+     *
+     * @param mutation 在房间对象上原地修改，返回 false 表示当前状态不允许该操作
+     * @return 写入成功后的房间状态；房间不存在、操作不被允许或重试耗尽时返回 null
+     */
+    private BattleRoomData update(String roomId, Predicate<BattleRoomData> mutation) {
+        String key = ROOM_PREFIX + roomId;
+        for (int attempt = 0; attempt < MAX_CAS_RETRIES; attempt++) {
+            BattleRoomData room = load(key);
+            if (room == null) return null;
+            long expectedVersion = room.getVersion();
+            if (!mutation.test(room)) return null;
+
+            List<String> args = new ArrayList<>();
+            args.add(String.valueOf(expectedVersion));
+            args.add(String.valueOf(ROOM_TTL_MS));
+            for (Map.Entry<String, String> e : toHash(room).entrySet()) {
+                if ("version".equals(e.getKey())) continue;
+                args.add(e.getKey());
+                args.add(e.getValue());
+            }
+            Long ok = redisTemplate.execute(CAS, Collections.singletonList(key), args.toArray());
+            if (ok != null && ok == 1L) {
+                room.setVersion(expectedVersion + 1);
+                return room;
+            }
+        }
+        logger.warn("房间 {} CAS 重试 {} 次仍冲突，放弃本次操作", roomId, MAX_CAS_RETRIES);
+        return null;
+    }
+
+    private BattleRoomData load(String key) {
+        Map<Object, Object> hash = redisTemplate.opsForHash().entries(key);
+        if (hash == null || hash.isEmpty()) return null;
+
+        BattleRoomData room = new BattleRoomData();
+        room.setRoomId(str(hash, "roomId"));
+        room.setP1Id(str(hash, "p1Id"));
+        room.setP2Id(str(hash, "p2Id"));
+        room.setBotGame("1".equals(str(hash, "botGame")));
+        room.setPhase(str(hash, "phase"));
+        room.setRound((int) num(hash, "round"));
+        room.setVersion(num(hash, "version"));
+        room.setRoundStartTime(num(hash, "roundStartTime"));
+        room.setP1Answer(str(hash, "p1Answer"));
+        room.setP2Answer(str(hash, "p2Answer"));
+        room.setP1AnswerTime(num(hash, "p1AnswerTime"));
+        room.setP2AnswerTime(num(hash, "p2AnswerTime"));
+        room.setP1Score((int) num(hash, "p1Score"));
+        room.setP2Score((int) num(hash, "p2Score"));
+        room.setP1Combo((int) num(hash, "p1Combo"));
+        room.setP2Combo((int) num(hash, "p2Combo"));
+        for (Map.Entry<Object, Object> e : hash.entrySet()) {
+            String field = String.valueOf(e.getKey());
+            if (field.startsWith(ITEM_FIELD_PREFIX_P1)) {
+                room.getP1Items().put(field.substring(ITEM_FIELD_PREFIX_P1.length()), Integer.parseInt(String.valueOf(e.getValue())));
+            } else if (field.startsWith(ITEM_FIELD_PREFIX_P2)) {
+                room.getP2Items().put(field.substring(ITEM_FIELD_PREFIX_P2.length()), Integer.parseInt(String.valueOf(e.getValue())));
+            }
+        }
+        String questionsJson = str(hash, "questions");
+        if (questionsJson != null) {
+            try {
+                room.setQuestions(objectMapper.readValue(questionsJson, new TypeReference<List<BattleQuestion>>() {}));
+            } catch (Exception e) {
+                logger.error("解析房间题目失败: {}", key, e);
+                return null;
+            }
+        }
+        return room;
+    }
+
+    /**
+     * 房间可变字段 -> Hash（题目列表只在建房时写入一次）；null 以空串存储
+     */
+    private Map<String, String> toHash(BattleRoomData room) {
+        Map<String, String> hash = new LinkedHashMap<>();
+        hash.put("roomId", room.getRoomId());
+        hash.put("p1Id", nvl(room.getP1Id()));
+        hash.put("p2Id", nvl(room.getP2Id()));
+        hash.put("botGame", room.isBotGame() ? "1" : "0");
+        hash.put("phase", room.getPhase());
+        hash.put("round", String.valueOf(room.getRound()));
+        hash.put("version", String.valueOf(room.getVersion()));
+        hash.put("roundStartTime", String.valueOf(room.getRoundStartTime()));
+        hash.put("p1Answer", nvl(room.getP1Answer()));
+        hash.put("p2Answer", nvl(room.getP2Answer()));
+        hash.put("p1AnswerTime", String.valueOf(room.getP1AnswerTime()));
+        hash.put("p2AnswerTime", String.valueOf(room.getP2AnswerTime()));
+        hash.put("p1Score", String.valueOf(room.getP1Score()));
+        hash.put("p2Score", String.valueOf(room.getP2Score()));
+        hash.put("p1Combo", String.valueOf(room.getP1Combo()));
+        hash.put("p2Combo", String.valueOf(room.getP2Combo()));
+        room.getP1Items().forEach((k, v) -> hash.put(ITEM_FIELD_PREFIX_P1 + k, String.valueOf(v)));
+        room.getP2Items().forEach((k, v) -> hash.put(ITEM_FIELD_PREFIX_P2 + k, String.valueOf(v)));
+        return hash;
+    }
+
+    private static String str(Map<Object, Object> hash, String field) {
+        Object v = hash.get(field);
+        if (v == null) return null;
+        String s = String.valueOf(v);
+        return s.isEmpty() ? null : s;
+    }
+
+    private static long num(Map<Object, Object> hash, String field) {
+        String s = str(hash, field);
+        return s == null ? 0L : Long.parseLong(s);
+    }
+
+    private static String nvl(String s) {
+        return s == null ? "" : s;
+    }
+
+    private static String task(String type, String roomId, int round) {
+        return type + ":" + roomId + ":" + round;
+    }
+
+    private String toJson(Object object) {
+        try {
+            return objectMapper.writeValueAsString(object);
+        } catch (Exception e) {
+            logger.error("对象转JSON失败", e);
+            return "{}";
+        }
+    }
+}
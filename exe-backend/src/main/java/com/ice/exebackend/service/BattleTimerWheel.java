@@ -0,0 +1,160 @@
+package com.ice.exebackend.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * 对战分布式定时轮
+ *
+ * 定时任务存放在 Redis ZSET 中（score = 到期时间），所有节点按固定刻度推进：
+ * 每个刻度用 Lua 脚本原子地认领到期任务，并把它们挪到 inflight 集合（带租约）。
+ * 处理成功后 ack 删除；处理失败或节点宕机的任务留在 inflight 中，租约过期后重新投递（可能换一个节点）。
+ * 任务处理方需保证幂等（房间状态机通过轮次 + CAS 保证）。
+ *
+ * 任务按标识散列到 {@link #SHARDS} 个分片，每个分片一对 key（hash tag 为 {wheel:分片号}），
+ * Redis Cluster 下分布在不同 slot；每个刻度从轮转的起点依次认领所有分片。
+ */
+@Component
+public class BattleTimerWheel {
+
+    private static final Logger logger = LoggerFactory.getLogger(BattleTimerWheel.class);
+
+    static final int SHARDS = 8;
+
+    private static final long TICK_MS = 100;         // 刻度
+    private static final long LEASE_MS = 10000;      // 认领后的租约时长
+    private static final int BATCH_SIZE = 200;       // 每个刻度最多认领的任务数
+
+    /**
+     * KEYS[1] = 待执行集合, KEYS[2] = 执行中集合
+     * ARGV[1] = 当前时间, ARGV[2] = 租约到期时间, ARGV[3] = 批量大小
+     */
+    private static final String CLAIM_SCRIPT =
+            "local expired = redis.call('ZRANGEBYSCORE', KEYS[2], '-inf', ARGV[1], 'LIMIT', 0, ARGV[3])\n" +
+            "for _, t in ipairs(expired) do\n" +
+            "  redis.call('ZREM', KEYS[2], t)\n" +
+            "  redis.call('ZADD', KEYS[1], ARGV[1], t)\n" +
+            "end\n" +
+            "local due = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', ARGV[1], 'LIMIT', 0, ARGV[3])\n" +
+            "for _, t in ipairs(due) do\n" +
+            "  redis.call('ZREM', KEYS[1], t)\n" +
+            "  redis.call('ZADD', KEYS[2], ARGV[2], t)\n" +
+            "end\n" +
+            "return due";
+
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> CLAIM = RedisScript.of(CLAIM_SCRIPT, List.class);
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    private final ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor();
+    private final ExecutorService workers = Executors.newFixedThreadPool(4);
+
+    private final AtomicInteger nextShard = new AtomicInteger();
+
+    private volatile Consumer<String> handler;
+
+    @PostConstruct
+    public void init() {
+        ticker.scheduleWithFixedDelay(this::tick, TICK_MS, TICK_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ticker.shutdownNow();
+        workers.shutdown();
+        try {
+            // 已认领但未执行完的任务留在 inflight 中，租约到期后由其他节点接管
+            workers.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 注册任务处理器（由 BattleRoomStateMachine 注册）
+     */
+    public void setHandler(Consumer<String> handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * 安排一个定时任务
+     *
+     * @param task    任务标识（同一标识重复安排会覆盖到期时间）
+     * @param delayMs 延迟毫秒数
+     */
+    public void schedule(String task, long delayMs) {
+        redisTemplate.opsForZSet().add(dueKey(shardOf(task)), task, System.currentTimeMillis() + delayMs);
+    }
+
+    /**
+     * 取消尚未到期的任务
+     */
+    public void cancel(String task) {
+        redisTemplate.opsForZSet().remove(dueKey(shardOf(task)), task);
+    }
+
+    private void tick() {
+        Consumer<String> h = handler;
+        if (h == null) return;
+        // 轮转起点，避免各节点总是先争抢同一个分片
+        int start = Math.floorMod(nextShard.getAndIncrement(), SHARDS);
+        for (int i = 0; i < SHARDS; i++) {
+            claim(h, (start + i) % SHARDS);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void claim(Consumer<String> h, int shard) {
+        try {
+            long now = System.currentTimeMillis();
+            List<String> due = redisTemplate.execute(CLAIM, Arrays.asList(dueKey(shard), inflightKey(shard)),
+                    String.valueOf(now), String.valueOf(now + LEASE_MS), String.valueOf(BATCH_SIZE));
+            if (due == null || due.isEmpty()) return;
+            for (String task : due) {
+                workers.execute(() -> run(h, task));
+            }
+        } catch (Exception e) {
+            logger.error("对战定时轮推进失败: shard={}", shard, e);
+        }
+    }
+
+    /**
+     * 执行成功才 ack；失败的任务留在 inflight 中，租约到期后重新投递
+     */
+    void run(Consumer<String> h, String task) {
+        try {
+            h.accept(task);
+        } catch (Exception e) {
+            logger.error("执行对战定时任务失败，{}ms 后重试: {}", LEASE_MS, task, e);
+            return;
+        }
+        redisTemplate.opsForZSet().remove(inflightKey(shardOf(task)), task);
+    }
+
+    static int shardOf(String task) {
+        return Math.floorMod(task.hashCode(), SHARDS);
+    }
+
+    static String dueKey(int shard) {
+        return "battle:timer:{wheel:" + shard + "}:due";
+    }
+
+    static String inflightKey(int shard) {
+        return "battle:timer:{wheel:" + shard + "}:inflight";
+    }
+}
@@ -9,6 +9,15 @@ public interface BizAchievementService extends IService<BizAchievement> {
     // 检查并颁发成就
     List<BizAchievement> checkAndAward(Long studentId, String type, int currentValue);
 
+    /**
+     * 交卷后累加学生计数（biz_student_counter）并检查满分试卷 / 累计作答题数成就
+     *
+     * @param perfectPaper      本次是否满分
+     * @param answeredQuestions 本次作答题数
+     * @return 本次新解锁的成就
+     */
+    List<BizAchievement> recordExamCounters(Long studentId, boolean perfectPaper, int answeredQuestions);
+
     // 获取学生的成就列表（包含已解锁和未解锁）
     List<BizAchievement> getStudentAchievements(Long studentId);
 }
\ No newline at end of file
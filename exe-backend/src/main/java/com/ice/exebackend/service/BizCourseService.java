@@ -15,4 +15,14 @@ public interface BizCourseService extends IService<BizCourse> {
      * 保存或更新课程资源
      */
     void saveResource(BizCourseResource resource);
+
+    /**
+     * 新增或更新课程
+     */
+    void saveCourse(BizCourse course);
+
+    /**
+     * 删除课程及其资源
+     */
+    void deleteCourse(Long id);
 }
\ No newline at end of file
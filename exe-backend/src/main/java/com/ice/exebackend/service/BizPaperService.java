@@ -25,6 +25,14 @@ public interface BizPaperService extends IService<BizPaper> {
      */
     boolean updatePaperWithQuestions(PaperDTO paperDTO);
 
+    /**
+     * 修改试卷状态（1-发布，其他-草稿）
+     * @param id 试卷ID
+     * @param status 新状态
+     * @return 是否修改成功
+     */
+    boolean updatePaperStatus(Long id, Integer status);
+
     /**
      * 根据ID获取试卷详情，包含关联的试题
      * @param id 试卷ID
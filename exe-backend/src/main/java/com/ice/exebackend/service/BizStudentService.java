@@ -29,4 +29,11 @@ public interface BizStudentService extends IService<BizStudent> {
      * @return 统计数据DTO
      */
     StudentDashboardStatsDTO getStudentDashboardStats(Long studentId);
+
+    /**
+     * 原子累加积分（UPDATE ... SET points = points + ?，不先读后写）
+     * @param studentId 学生ID
+     * @param delta 积分变化量
+     */
+    void addPoints(Long studentId, int delta);
 }
\ No newline at end of file
@@ -20,4 +20,9 @@ public interface BizWrongRecordService extends IService<BizWrongRecord> {
 
     // 【新增】标记错题为已掌握
     boolean markAsMastered(Long recordId, Long studentId);
+
+    /**
+     * 批量登记错题：一条语句写入，同一学生同一题已有未掌握记录时跳过
+     */
+    int addUnmasteredBatch(List<BizWrongRecord> records);
 }
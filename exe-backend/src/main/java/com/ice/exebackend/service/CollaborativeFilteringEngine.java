@@ -0,0 +1,616 @@
+package com.ice.exebackend.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ice.exebackend.entity.BizExamResult;
+import com.ice.exebackend.entity.BizQuestion;
+import com.ice.exebackend.entity.BizWrongRecord;
+import com.ice.exebackend.mapper.BizExamResultMapper;
+import com.ice.exebackend.mapper.BizQuestionMapper;
+import com.ice.exebackend.mapper.BizWrongRecordMapper;
+import com.ice.exebackend.utils.SparseInteractionMatrix;
+import com.ice.exebackend.utils.StudentAnnIndex;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+/**
+ * 协同过滤引擎（离线构建 + 在线增量）
+ *
+ * - 离线：启动时及每隔 full-rebuild-hours 小时，从考试记录（做过的题）和错题本（答错的题）
+ *   全量构建学生 × 题目交互矩阵（{@link SparseInteractionMatrix}），并为每个学生预计算 Top-K 相似学生
+ * - 在线：交卷 / 提交练习时调用 {@link #recordAnswers} 登记答题结果，后台线程每隔
+ *   merge-interval-seconds 秒合并进矩阵，只重算有变更学生的邻居
+ * - 查询：{@link #recommend} 只读当前快照，纯内存计算
+ * - 近似近邻：学生数达到 ann.min-students 后，邻居改由 {@link StudentAnnIndex} 召回候选再精确重排，
+ *   不再逐列扫描倒排；学生较少时倒排扫描本身更快，不启用
+ *
+ * 所有写操作都在单个后台线程上执行，查询线程读取 volatile 快照，无需加锁。
+ */
+@Service
+public class CollaborativeFilteringEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(CollaborativeFilteringEngine.class);
+
+    private static final int LOAD_PAGE_SIZE = 2000;
+    private static final float CORRECT = 1f;
+    private static final float WRONG = -1f;
+
+    @Autowired
+    private BizExamResultMapper examResultMapper;
+
+    @Autowired
+    private BizWrongRecordMapper wrongRecordMapper;
+
+    @Autowired
+    private BizQuestionMapper questionMapper;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${recommendation.cf.neighbors:20}")
+    private int neighbors;
+
+    @Value("${recommendation.cf.min-similarity:0.1}")
+    private float minSimilarity;
+
+    @Value("${recommendation.cf.max-column-scan:5000}")
+    private int maxColumnScan;
+
+    @Value("${recommendation.cf.history-months:3}")
+    private int historyMonths;
+
+    @Value("${recommendation.cf.merge-interval-seconds:30}")
+    private long mergeIntervalSeconds;
+
+    @Value("${recommendation.cf.full-rebuild-hours:6}")
+    private long fullRebuildHours;
+
+    @Value("${recommendation.ann.enabled:true}")
+    private boolean annEnabled;
+
+    @Value("${recommendation.ann.min-students:300000}")
+    private int annMinStudents;
+
+    @Value("${recommendation.ann.dims:64}")
+    private int annDims;
+
+    @Value("${recommendation.ann.m:16}")
+    private int annM;
+
+    @Value("${recommendation.ann.ef-construction:128}")
+    private int annEfConstruction;
+
+    @Value("${recommendation.ann.ef-search:400}")
+    private int annEfSearch;
+
+    @Value("${recommendation.ann.index-file:./data/student-ann.idx}")
+    private String annIndexFile;
+
+    private final ScheduledExecutorService worker = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "cf-engine");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // 增量合并触发的索引重建在单独线程执行，不阻塞 cf-engine 上的合并；排队中的重建只保留一个
+    private final ExecutorService annWorker = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "cf-ann-index");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicBoolean annRefreshQueued = new AtomicBoolean(false);
+    // 索引构建写同一个文件，全量重建与增量触发的重建互斥
+    private final Object annLock = new Object();
+
+    private final ThreadLocal<SparseInteractionMatrix.Scratch> scratch =
+            ThreadLocal.withInitial(SparseInteractionMatrix.Scratch::new);
+
+    private volatile Model model = Model.empty();
+    private volatile StudentAnnIndex annIndex;
+    private volatile boolean ready = false;
+
+    // 尚未合并的答题结果：学生ID -> (题目ID -> 是否答对)
+    // 内层 Map 只在 pending.compute 中修改，合并时按学生 remove 取走，取走后不会再有写入
+    private final ConcurrentHashMap<Long, Map<Long, Boolean>> pending = new ConcurrentHashMap<>();
+
+    /**
+     * 推荐候选
+     */
+    public static class ScoredQuestion {
+        private final Long questionId;
+        private final double score;
+        private final double similarity;
+        private final boolean correct;
+
+        ScoredQuestion(Long questionId, double score, double similarity, boolean correct) {
+            this.questionId = questionId;
+            this.score = score;
+            this.similarity = similarity;
+            this.correct = correct;
+        }
+
+        public Long getQuestionId() { return questionId; }
+        /** 推荐分数（各相似学生贡献之和） */
+        public double getScore() { return score; }
+        /** 贡献这道题的最相似学生的相似度 */
+        public double getSimilarity() { return similarity; }
+        /** 该学生是否答对 */
+        public boolean isCorrect() { return correct; }
+    }
+
+    @PostConstruct
+    public void init() {
+        worker.scheduleWithFixedDelay(this::rebuild, 0, fullRebuildHours, TimeUnit.HOURS);
+        worker.scheduleWithFixedDelay(this::mergePending, mergeIntervalSeconds, mergeIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        worker.shutdownNow();
+        annWorker.shutdownNow();
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 登记一次答题结果（交卷 / 提交练习后调用），只写入内存，由后台线程合并
+     */
+    public void recordAnswers(Long studentId, Map<Long, Boolean> correctness) {
+        if (studentId == null || correctness == null || correctness.isEmpty()) return;
+        pending.compute(studentId, (k, answers) -> {
+            if (answers == null) answers = new ConcurrentHashMap<>();
+            answers.putAll(correctness);
+            return answers;
+        });
+    }
+
+    /**
+     * 基于相似学生推荐题目
+     *
+     * @param subjectId 科目ID，可为空
+     * @return 按分数降序的候选；学生没有交互数据或没有相似学生时返回空列表
+     */
+    public List<ScoredQuestion> recommend(Long studentId, Long subjectId, int limit) {
+        Model m = model;
+        Integer row = m.userRows.get(studentId);
+        if (row == null || row >= m.neighborRows.length || m.neighborRows[row] == null) {
+            return Collections.emptyList();
+        }
+        SparseInteractionMatrix matrix = m.matrix;
+        Map<Long, Boolean> unmerged = pending.get(studentId);
+
+        Map<Integer, double[]> scores = new HashMap<>();
+        int[] nbrRows = m.neighborRows[row];
+        float[] nbrSims = m.neighborSims[row];
+        for (int n = 0; n < nbrRows.length; n++) {
+            int other = nbrRows[n];
+            double similarity = nbrSims[n];
+            for (int i = matrix.rowStart(other); i < matrix.rowEnd(other); i++) {
+                int col = matrix.colAt(i);
+                if (subjectId != null && m.colSubjects[col] != subjectId) continue;
+                if (matrix.contains(row, col)) continue;
+                if (unmerged != null && unmerged.containsKey(m.colQuestions[col])) continue;
+
+                boolean correct = matrix.valueAt(i) > 0;
+                double score = calculateRecommendScore(correct, similarity, m.colDifficulties[col]);
+                double[] entry = scores.get(col);
+                if (entry == null) {
+                    // 邻居按相似度降序遍历，第一次出现时记录的就是最相似学生的信息
+                    scores.put(col, new double[]{score, similarity, correct ? 1 : 0});
+                } else {
+                    entry[0] += score;
+                }
+            }
+        }
+
+        List<ScoredQuestion> result = new ArrayList<>(scores.size());
+        scores.forEach((col, e) -> result.add(new ScoredQuestion(m.colQuestions[col], e[0], e[1], e[2] > 0)));
+        result.sort((a, b) -> Double.compare(b.score, a.score));
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+    /**
+     * 推荐分数：综合相似度、该学生是否答对、题目难度
+     */
+    private static double calculateRecommendScore(boolean correct, double similarity, float difficulty) {
+        double baseScore = similarity * 10;
+        // 如果相似学生答对了，增加权重
+        if (correct) {
+            baseScore *= 1.5;
+        }
+        // 难度适中的题目优先推荐（难度为 0~1）
+        double difficultyFactor = 1.0 - Math.abs(difficulty - 0.5);
+        return baseScore * (0.5 + difficultyFactor);
+    }
+
+    // ==================== 后台构建 ====================
+
+    /**
+     * 全量重建：从数据库读取近 history-months 个月的交互，构建矩阵并计算所有学生的邻居
+     */
+    void rebuild() {
+        try {
+            long start = System.currentTimeMillis();
+            Map<Long, Map<Long, Float>> interactions = loadInteractions();
+
+            Map<Integer, Map<Integer, Float>> changes = new HashMap<>();
+            Set<Long> questionIds = new HashSet<>();
+            interactions.values().forEach(row -> questionIds.addAll(row.keySet()));
+            Model.Builder builder = Model.empty().builder();
+            builder.addQuestions(loadQuestionMeta(questionIds));
+
+            for (Map.Entry<Long, Map<Long, Float>> entry : interactions.entrySet()) {
+                int row = builder.rowOf(entry.getKey());
+                Map<Integer, Float> rowChanges = new HashMap<>();
+                entry.getValue().forEach((qid, v) -> {
+                    Integer col = builder.colOf(qid);
+                    if (col != null) rowChanges.put(col, v);
+                });
+                changes.put(row, rowChanges);
+            }
+            Model built = builder.build(changes);
+            refreshAnnIndex(built, true);
+            built.computeAllNeighbors(this);
+            model = built;
+            ready = true;
+            logger.info("协同过滤矩阵重建完成: {} 名学生, {} 道题, {} 条交互, 耗时 {}ms",
+                    built.matrix.rows(), built.matrix.cols(), built.matrix.nnz(), System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            logger.error("协同过滤矩阵重建失败，继续使用旧矩阵", e);
+        }
+    }
+
+    /**
+     * 合并在线登记的答题结果，只重算有变更学生的邻居
+     */
+    void mergePending() {
+        if (pending.isEmpty()) return;
+        Map<Long, Map<Long, Boolean>> batch = new HashMap<>();
+        for (Long studentId : pending.keySet()) {
+            Map<Long, Boolean> answers = pending.remove(studentId);
+            if (answers != null) batch.put(studentId, answers);
+        }
+        try {
+            long start = System.currentTimeMillis();
+            Model current = model;
+            Model.Builder builder = current.builder();
+
+            Set<Long> unknown = new HashSet<>();
+            batch.values().forEach(row -> row.keySet().forEach(qid -> {
+                if (builder.colOf(qid) == null) unknown.add(qid);
+            }));
+            builder.addQuestions(loadQuestionMeta(unknown));
+
+            Map<Integer, Map<Integer, Float>> changes = new HashMap<>();
+            batch.forEach((studentId, answers) -> {
+                int row = builder.rowOf(studentId);
+                Map<Integer, Float> rowChanges = changes.computeIfAbsent(row, k -> new HashMap<>());
+                answers.forEach((qid, correct) -> {
+                    Integer col = builder.colOf(qid);
+                    if (col != null) rowChanges.put(col, correct ? CORRECT : WRONG);
+                });
+            });
+
+            Model merged = builder.build(changes);
+            merged.computeNeighbors(this, changes.keySet());
+            model = merged;
+            logger.debug("协同过滤增量合并: {} 名学生, 耗时 {}ms", changes.size(), System.currentTimeMillis() - start);
+
+            // 未入索引的新学生过多时重建索引（他们能查询，但不会作为候选被召回）
+            StudentAnnIndex index = annIndex;
+            int unindexed = merged.matrix.rows() - (index != null ? index.size() : 0);
+            if (annEnabled && merged.matrix.rows() >= annMinStudents
+                    && (index == null || unindexed > Math.max(1000, index.size() / 10))) {
+                requestAnnRefresh();
+            }
+        } catch (Exception e) {
+            // 合并失败时放回待合并队列，下次重试（同一题以较新的结果为准）
+            batch.forEach((studentId, answers) -> pending.merge(studentId, answers, (newer, older) -> {
+                older.putAll(newer);
+                return older;
+            }));
+            logger.warn("协同过滤增量合并失败，稍后重试", e);
+        }
+    }
+
+    /**
+     * 在索引线程上按最新矩阵重建近似近邻索引；已有一次在排队时不再重复提交
+     */
+    private void requestAnnRefresh() {
+        if (!annRefreshQueued.compareAndSet(false, true)) return;
+        annWorker.execute(() -> {
+            annRefreshQueued.set(false);
+            refreshAnnIndex(model, false);
+        });
+    }
+
+    /**
+     * 重建近似近邻索引
+     *
+     * @param reuseFile 为 true 时优先映射 full-rebuild-hours 内构建的已有索引文件（重启后免重建）
+     */
+    private void refreshAnnIndex(Model m, boolean reuseFile) {
+        if (!annEnabled || m.matrix.rows() < annMinStudents) {
+            annIndex = null;
+            return;
+        }
+        synchronized (annLock) {
+            buildAnnIndex(m, reuseFile);
+        }
+    }
+
+    private void buildAnnIndex(Model m, boolean reuseFile) {
+        Path file = Paths.get(annIndexFile);
+        try {
+            long start = System.currentTimeMillis();
+            if (reuseFile && annIndex == null && Files.exists(file)) {
+                StudentAnnIndex existing = StudentAnnIndex.open(file);
+                if (start - existing.buildTime() < TimeUnit.HOURS.toMillis(fullRebuildHours)) {
+                    annIndex = existing;
+                    logger.info("加载学生近邻索引: {} 名学生", existing.size());
+                    return;
+                }
+            }
+            annIndex = StudentAnnIndex.build(m.matrix, m.rowUsers, m.colQuestions,
+                    annDims, annM, annEfConstruction, start, file);
+            logger.info("学生近邻索引构建完成: {} 名学生, 耗时 {}ms", m.matrix.rows(), System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            // 索引不可用时退回倒排扫描
+            annIndex = null;
+            logger.warn("学生近邻索引构建失败，使用倒排扫描计算邻居", e);
+        }
+    }
+
+    /**
+     * 学生ID -> (题目ID -> 交互值)：考试中做过的题记为答对，错题本中的题记为答错
+     */
+    private Map<Long, Map<Long, Float>> loadInteractions() {
+        Map<Long, Map<Long, Float>> interactions = new HashMap<>();
+        LocalDateTime since = LocalDateTime.now().minusMonths(historyMonths);
+
+        long lastId = 0;
+        while (true) {
+            List<BizExamResult> page = examResultMapper.selectList(new QueryWrapper<BizExamResult>()
+                    .select("id", "student_id", "user_answers")
+                    .ge("create_time", since)
+                    .gt("id", lastId)
+                    .orderByAsc("id")
+                    .last("LIMIT " + LOAD_PAGE_SIZE));
+            for (BizExamResult result : page) {
+                if (result.getStudentId() == null || result.getUserAnswers() == null) continue;
+                Map<Long, Float> row = interactions.computeIfAbsent(result.getStudentId(), k -> new HashMap<>());
+                parseAnsweredQuestions(result.getUserAnswers(), row);
+            }
+            if (page.size() < LOAD_PAGE_SIZE) break;
+            lastId = page.get(page.size() - 1).getId();
+        }
+
+        lastId = 0;
+        while (true) {
+            List<BizWrongRecord> page = wrongRecordMapper.selectList(new QueryWrapper<BizWrongRecord>()
+                    .select("id", "student_id", "question_id")
+                    .ge("create_time", since)
+                    .gt("id", lastId)
+                    .orderByAsc("id")
+                    .last("LIMIT " + LOAD_PAGE_SIZE));
+            for (BizWrongRecord record : page) {
+                if (record.getStudentId() == null || record.getQuestionId() == null) continue;
+                interactions.computeIfAbsent(record.getStudentId(), k -> new HashMap<>())
+                        .put(record.getQuestionId(), WRONG);
+            }
+            if (page.size() < LOAD_PAGE_SIZE) break;
+            lastId = page.get(page.size() - 1).getId();
+        }
+        return interactions;
+    }
+
+    /**
+     * user_answers 为 {"题目ID": "答案"}；兼容早期的 [{"questionId": .., "correct": ..}] 格式
+     */
+    private void parseAnsweredQuestions(String json, Map<Long, Float> row) {
+        try {
+            JsonNode node = objectMapper.readTree(json);
+            if (node.isObject()) {
+                node.fieldNames().forEachRemaining(name -> {
+                    try {
+                        row.putIfAbsent(Long.parseLong(name), CORRECT);
+                    } catch (NumberFormatException ignored) {
+                        // 非题目ID的字段
+                    }
+                });
+            } else if (node.isArray()) {
+                for (JsonNode answer : node) {
+                    if (!answer.has("questionId")) continue;
+                    boolean correct = !answer.has("correct") || answer.get("correct").asBoolean();
+                    row.put(answer.get("questionId").asLong(), correct ? CORRECT : WRONG);
+                }
+            }
+        } catch (Exception e) {
+            logger.debug("解析答题记录失败: {}", e.getMessage());
+        }
+    }
+
+    private List<BizQuestion> loadQuestionMeta(Collection<Long> questionIds) {
+        List<BizQuestion> result = new ArrayList<>();
+        if (questionIds.isEmpty()) return result;
+        List<Long> ids = new ArrayList<>(questionIds);
+        for (int from = 0; from < ids.size(); from += LOAD_PAGE_SIZE) {
+            List<Long> chunk = ids.subList(from, Math.min(from + LOAD_PAGE_SIZE, ids.size()));
+            result.addAll(questionMapper.selectList(new QueryWrapper<BizQuestion>()
+                    .select("id", "subject_id", "difficulty")
+                    .in("id", chunk)));
+        }
+        return result;
+    }
+
+    // ==================== 快照 ====================
+
+    /**
+     * 一份不可变的模型快照
+     * 行号 / 列号只增不减，字典（userRows / questionCols）在各快照间共享，
+     * 查询时以 matrix 的行列数为准，快照之后新增的条目不可见。
+     */
+    private static class Model {
+        final SparseInteractionMatrix matrix;
+        final Map<Long, Integer> userRows;
+        final long[] rowUsers;
+        final Map<Long, Integer> questionCols;
+        final long[] colQuestions;
+        final long[] colSubjects;
+        final float[] colDifficulties;
+        final int[][] neighborRows;
+        final float[][] neighborSims;
+
+        Model(SparseInteractionMatrix matrix, Map<Long, Integer> userRows, long[] rowUsers,
+              Map<Long, Integer> questionCols, long[] colQuestions, long[] colSubjects, float[] colDifficulties,
+              int[][] neighborRows, float[][] neighborSims) {
+            this.matrix = matrix;
+            this.userRows = userRows;
+            this.rowUsers = rowUsers;
+            this.questionCols = questionCols;
+            this.colQuestions = colQuestions;
+            this.colSubjects = colSubjects;
+            this.colDifficulties = colDifficulties;
+            this.neighborRows = neighborRows;
+            this.neighborSims = neighborSims;
+        }
+
+        static Model empty() {
+            return new Model(SparseInteractionMatrix.empty(), new ConcurrentHashMap<>(), new long[0],
+                    new ConcurrentHashMap<>(), new long[0], new long[0], new float[0], new int[0][], new float[0][]);
+        }
+
+        Builder builder() {
+            return new Builder(this);
+        }
+
+        void computeAllNeighbors(CollaborativeFilteringEngine engine) {
+            IntStream.range(0, matrix.rows()).parallel().forEach(row -> computeNeighbors(engine, row));
+        }
+
+        void computeNeighbors(CollaborativeFilteringEngine engine, Collection<Integer> rows) {
+            rows.parallelStream().forEach(row -> computeNeighbors(engine, row));
+        }
+
+        private void computeNeighbors(CollaborativeFilteringEngine engine, int row) {
+            int k = engine.neighbors;
+            int[] outRows = new int[k];
+            float[] outSims = new float[k];
+            StudentAnnIndex index = engine.annIndex;
+            int n = index != null && matrix.rows() >= engine.annMinStudents
+                    ? annNeighbors(index, engine, row, k, outRows, outSims)
+                    : matrix.topNeighbors(row, k, engine.minSimilarity, engine.maxColumnScan,
+                            engine.scratch.get(), outRows, outSims);
+            neighborRows[row] = Arrays.copyOf(outRows, n);
+            neighborSims[row] = Arrays.copyOf(outSims, n);
+        }
+
+        /**
+         * 近似近邻：索引召回 ef-search 个候选，按精确余弦相似度取 Top K
+         */
+        private int annNeighbors(StudentAnnIndex index, CollaborativeFilteringEngine engine, int row, int k,
+                                 int[] outRows, float[] outSims) {
+            int ef = Math.max(engine.annEfSearch, k);
+            long[] candidates = index.search(index.embed(matrix, row, colQuestions), ef, ef);
+            int size = 0;
+            for (long userId : candidates) {
+                Integer other = userRows.get(userId);
+                if (other == null || other == row || other >= matrix.rows()) continue;
+                float sim = matrix.cosine(row, other);
+                if (sim < engine.minSimilarity || (size == k && sim <= outSims[k - 1])) continue;
+                // 插入排序，保持降序
+                int i = size < k ? size++ : k - 1;
+                while (i > 0 && outSims[i - 1] < sim) {
+                    outRows[i] = outRows[i - 1];
+                    outSims[i] = outSims[i - 1];
+                    i--;
+                }
+                outRows[i] = other;
+                outSims[i] = sim;
+            }
+            return size;
+        }
+
+        /**
+         * 在当前快照基础上追加学生 / 题目并合并交互，生成新快照
+         */
+        static class Builder {
+            private final Model base;
+            private long[] rowUsers;
+            private int rows;
+            private long[] colQuestions;
+            private long[] colSubjects;
+            private float[] colDifficulties;
+            private int cols;
+
+            Builder(Model base) {
+                this.base = base;
+                this.rows = base.rowUsers.length;
+                this.rowUsers = Arrays.copyOf(base.rowUsers, rows + 16);
+                this.cols = base.colQuestions.length;
+                this.colQuestions = Arrays.copyOf(base.colQuestions, cols + 16);
+                this.colSubjects = Arrays.copyOf(base.colSubjects, cols + 16);
+                this.colDifficulties = Arrays.copyOf(base.colDifficulties, cols + 16);
+            }
+
+            int rowOf(Long userId) {
+                Integer row = base.userRows.get(userId);
+                if (row != null) return row;
+                if (rows == rowUsers.length) {
+                    rowUsers = Arrays.copyOf(rowUsers, rows * 2);
+                }
+                rowUsers[rows] = userId;
+                base.userRows.put(userId, rows);
+                return rows++;
+            }
+
+            Integer colOf(Long questionId) {
+                return base.questionCols.get(questionId);
+            }
+
+            void addQuestions(List<BizQuestion> questions) {
+                for (BizQuestion q : questions) {
+                    if (q.getId() == null || base.questionCols.containsKey(q.getId())) continue;
+                    if (cols == colQuestions.length) {
+                        colQuestions = Arrays.copyOf(colQuestions, cols * 2);
+                        colSubjects = Arrays.copyOf(colSubjects, cols * 2);
+                        colDifficulties = Arrays.copyOf(colDifficulties, cols * 2);
+                    }
+                    colQuestions[cols] = q.getId();
+                    colSubjects[cols] = q.getSubjectId() != null ? q.getSubjectId() : -1;
+                    colDifficulties[cols] = q.getDifficulty() != null ? q.getDifficulty().floatValue() : 0.5f;
+                    base.questionCols.put(q.getId(), cols++);
+                }
+            }
+
+            Model build(Map<Integer, Map<Integer, Float>> changes) {
+                SparseInteractionMatrix matrix = SparseInteractionMatrix.merge(base.matrix, rows, cols, changes);
+                return new Model(matrix, base.userRows, Arrays.copyOf(rowUsers, rows),
+                        base.questionCols, Arrays.copyOf(colQuestions, cols),
+                        Arrays.copyOf(colSubjects, cols), Arrays.copyOf(colDifficulties, cols),
+                        Arrays.copyOf(base.neighborRows, rows), Arrays.copyOf(base.neighborSims, rows));
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.ice.exebackend.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.ice.exebackend.context.UserDataScope;
+import com.ice.exebackend.entity.BizClass;
+import com.ice.exebackend.entity.BizClassStudent;
+import com.ice.exebackend.entity.SysUser;
+import com.ice.exebackend.event.ClassMembershipChangedEvent;
+import com.ice.exebackend.mapper.BizClassMapper;
+import com.ice.exebackend.mapper.BizClassStudentMapper;
+import com.ice.exebackend.mapper.SysUserMapper;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * 数据权限范围缓存（本机）
+ *
+ * 把「用户名 → 用户ID、是否管理员、负责的班级和学生」解析一次后缓存为不可变的 {@link UserDataScope}，
+ * 同一请求中多个 @DataScope 方法、以及之后的请求都直接复用，不再每次按用户名查 sys_user。
+ * - 按最近使用淘汰的有界 LRU，最多 data-scope-ttl-seconds 秒后重新解析
+ * - 班级或班级成员变更（{@link ClassMembershipChangedEvent}）后清除相关教师的缓存，
+ *   并通过 Redis 频道 {@link #CHANNEL} 通知其他节点清除
+ */
+@Service
+public class DataScopeService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DataScopeService.class);
+
+    /** 跨节点失效通知频道，消息内容为教师ID */
+    public static final String CHANNEL = "auth:datascope:evict";
+
+    @Autowired
+    private SysUserMapper sysUserMapper;
+
+    @Autowired
+    private BizClassMapper classMapper;
+
+    @Autowired
+    private BizClassStudentMapper classStudentMapper;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired(required = false)
+    private RedisMessageListenerContainer listenerContainer;
+
+    @Value("${auth.cache.data-scope-size:2000}")
+    private int cacheSize;
+
+    @Value("${auth.cache.data-scope-ttl-seconds:600}")
+    private long ttlSeconds;
+
+    private Map<String, Entry> cache;
+
+    private static class Entry {
+        final UserDataScope scope;
+        final long loadedAt;
+
+        Entry(UserDataScope scope) {
+            this.scope = scope;
+            this.loadedAt = System.currentTimeMillis();
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        int capacity = Math.max(1, cacheSize);
+        cache = new LinkedHashMap<>(Math.min(capacity, 1024) * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > capacity;
+            }
+        };
+        if (listenerContainer != null) {
+            listenerContainer.addMessageListener((message, pattern) -> {
+                try {
+                    evictLocal(Long.valueOf(new String(message.getBody(), StandardCharsets.UTF_8)));
+                } catch (NumberFormatException e) {
+                    logger.warn("忽略无法识别的数据权限失效通知");
+                }
+            }, new ChannelTopic(CHANNEL));
+        }
+    }
+
+    /**
+     * 取用户的数据权限范围
+     *
+     * @param admin 当前认证信息中是否有管理员角色（角色变更时认证缓存已失效，这里按最新值区分）
+     * @return 用户不存在时返回 null
+     */
+    public UserDataScope resolve(String username, boolean admin) {
+        Entry entry;
+        synchronized (cache) {
+            entry = cache.get(username);
+        }
+        if (entry != null && entry.scope.isAdmin() == admin
+                && System.currentTimeMillis() - entry.loadedAt < ttlSeconds * 1000) {
+            return entry.scope;
+        }
+
+        UserDataScope scope = load(username, admin);
+        if (scope != null) {
+            synchronized (cache) {
+                cache.put(username, new Entry(scope));
+            }
+        }
+        return scope;
+    }
+
+    private UserDataScope load(String username, boolean admin) {
+        SysUser user = sysUserMapper.selectOne(new QueryWrapper<SysUser>()
+                .select("id")
+                .eq("username", username));
+        if (user == null) return null;
+        if (admin) return UserDataScope.admin(user.getId());
+
+        Set<Long> classIds = new HashSet<>();
+        for (BizClass c : classMapper.selectList(new QueryWrapper<BizClass>()
+                .select("id")
+                .eq("teacher_id", user.getId()))) {
+            classIds.add(c.getId());
+        }
+        Set<Long> studentIds = new HashSet<>();
+        if (!classIds.isEmpty()) {
+            for (BizClassStudent relation : classStudentMapper.selectList(new QueryWrapper<BizClassStudent>()
+                    .select("student_id")
+                    .in("class_id", classIds))) {
+                studentIds.add(relation.getStudentId());
+            }
+        }
+        return UserDataScope.teacher(user.getId(), classIds, studentIds);
+    }
+
+    /**
+     * 事务提交后清除相关教师的缓存并通知其他节点
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onClassMembershipChanged(ClassMembershipChangedEvent event) {
+        if (event.getTeacherIds() == null) return;
+        for (Long teacherId : new HashSet<>(event.getTeacherIds())) {
+            if (teacherId == null) continue;
+            evictLocal(teacherId);
+            try {
+                redisTemplate.convertAndSend(CHANNEL, String.valueOf(teacherId));
+            } catch (Exception e) {
+                // 其他节点的缓存最多 data-scope-ttl-seconds 秒后自然刷新
+                logger.warn("数据权限失效通知发送失败: teacherId={}", teacherId, e);
+            }
+        }
+    }
+
+    private void evictLocal(Long userId) {
+        synchronized (cache) {
+            cache.values().removeIf(e -> userId.equals(e.scope.getUserId()));
+        }
+    }
+}
@@ -0,0 +1,376 @@
+package com.ice.exebackend.service;
+
+import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ice.exebackend.dto.AiGradingResult;
+import com.ice.exebackend.entity.BizAchievement;
+import com.ice.exebackend.entity.BizExamResult;
+import com.ice.exebackend.entity.BizWrongRecord;
+import com.ice.exebackend.handler.NotificationWebSocketHandler;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 考试主观题 AI 批改流水线
+ *
+ * 交卷时客观题同步判分，成绩以「AI 批改中」状态立即入库返回；主观题交给本服务：
+ * - 每道题作为一个任务提交到 exam-grading 线程池并发批改，实际并发受 {@link AiRateLimiter} 全局许可约束
+ * - 全部完成后把得分与评语合并写回 {@link BizExamResult#getResultDetails()}，状态改为「待批改」，
+ *   并登记错题、判定满分试卷成就
+ * - 通过 {@link NotificationWebSocketHandler} 推送给学生（EXAM_GRADED），不在线时学生可在考试记录中查看
+ *
+ * 单题批改失败（超时、许可等待超时、AI 异常）按 0 分处理并附说明，与原同步批改的行为一致。
+ * 写回失败时延迟重试 {@link #WRITE_BACK_ROUNDS} 轮。批改任务只在内存中（API Key 不落库，无法重新入队），
+ * 节点重启、宕机或写回最终失败都会让成绩停在「AI 批改中」：启动时及之后每隔 exam.grading.recovery-interval-minutes
+ * 把交卷超过 exam.grading.stale-minutes 仍处于该状态的成绩改回「待批改」，由老师人工批改主观题。
+ */
+@Service
+public class ExamGradingService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExamGradingService.class);
+
+    /** 批改状态：AI 批改中（主观题尚未出分），完成后改为 1-待批改 */
+    public static final int STATUS_AI_GRADING = 4;
+    private static final int STATUS_PENDING_REVIEW = 1;
+    private static final int WRITE_BACK_RETRIES = 3;
+    private static final int WRITE_BACK_ROUNDS = 3;
+    private static final long WRITE_BACK_DELAY_SECONDS = 5;
+
+    @Autowired
+    private AiService aiService;
+
+    @Autowired
+    private AiRateLimiter aiRateLimiter;
+
+    @Autowired
+    private BizExamResultService examResultService;
+
+    @Autowired
+    private BizWrongRecordService wrongRecordService;
+
+    @Autowired
+    private BizAchievementService achievementService;
+
+    @Autowired
+    private CollaborativeFilteringEngine cfEngine;
+
+    @Autowired
+    private NotificationWebSocketHandler notificationHandler;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${exam.grading.threads:16}")
+    private int threads;
+
+    @Value("${exam.grading.permit-timeout-seconds:120}")
+    private long permitTimeoutSeconds;
+
+    @Value("${exam.grading.stale-minutes:30}")
+    private long staleMinutes;
+
+    @Value("${exam.grading.recovery-interval-minutes:5}")
+    private long recoveryIntervalMinutes;
+
+    private ExecutorService executor;
+
+    private final ScheduledExecutorService recovery = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "exam-grading-recovery");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * 一道待 AI 批改的主观题
+     */
+    public static class SubjectiveItem {
+        private final Long questionId;
+        private final String content;
+        private final String referenceAnswer;
+        private final String studentAnswer;
+        private final int maxScore;
+
+        public SubjectiveItem(Long questionId, String content, String referenceAnswer, String studentAnswer, int maxScore) {
+            this.questionId = questionId;
+            this.content = content;
+            this.referenceAnswer = referenceAnswer;
+            this.studentAnswer = studentAnswer;
+            this.maxScore = maxScore;
+        }
+
+        public Long getQuestionId() { return questionId; }
+        public String getStudentAnswer() { return studentAnswer; }
+        public int getMaxScore() { return maxScore; }
+    }
+
+    /**
+     * 一份待批改的答卷
+     */
+    public static class GradingJob {
+        private final Long examResultId;
+        private final Long studentId;
+        private final String studentNo;
+        private final String paperName;
+        private final String apiKey;
+        private final String provider;
+        private final List<SubjectiveItem> items;
+
+        public GradingJob(Long examResultId, Long studentId, String studentNo, String paperName,
+                          String apiKey, String provider, List<SubjectiveItem> items) {
+            this.examResultId = examResultId;
+            this.studentId = studentId;
+            this.studentNo = studentNo;
+            this.paperName = paperName;
+            this.apiKey = apiKey;
+            this.provider = provider;
+            this.items = items;
+        }
+    }
+
+    /**
+     * 单题批改结果
+     */
+    static class Graded {
+        final SubjectiveItem item;
+        final int score;
+        final String feedback;
+
+        Graded(SubjectiveItem item, int score, String feedback) {
+            this.item = item;
+            this.score = score;
+            this.feedback = feedback;
+        }
+
+        boolean correct() {
+            return score >= item.maxScore * 0.6;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger seq = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread t = new Thread(r, "exam-grading-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        recovery.scheduleWithFixedDelay(this::recoverStale, 0, Math.max(1, recoveryIntervalMinutes), TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        recovery.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    /**
+     * 提交批改任务（立即返回）；调用前成绩记录必须已入库
+     */
+    public void submit(GradingJob job) {
+        if (job.items.isEmpty()) return;
+        List<CompletableFuture<Graded>> futures = new ArrayList<>(job.items.size());
+        for (SubjectiveItem item : job.items) {
+            futures.add(CompletableFuture.supplyAsync(() -> grade(job, item), executor));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .thenRunAsync(() -> {
+                    List<Graded> results = new ArrayList<>(futures.size());
+                    futures.forEach(f -> results.add(f.join()));
+                    writeBack(job, results, 0);
+                }, executor)
+                .exceptionally(e -> {
+                    logger.error("AI 批改结果写回失败: examResultId={}", job.examResultId, e);
+                    return null;
+                });
+    }
+
+    /**
+     * 把「AI 批改中」超时的成绩改回「待批改」（条件更新，只改仍处于该状态的记录）
+     *
+     * @return 恢复的记录数
+     */
+    int recoverStale() {
+        try {
+            LambdaUpdateWrapper<BizExamResult> updateWrapper = new LambdaUpdateWrapper<>();
+            updateWrapper.eq(BizExamResult::getStatus, STATUS_AI_GRADING)
+                    .lt(BizExamResult::getCreateTime, LocalDateTime.now().minusMinutes(staleMinutes))
+                    .set(BizExamResult::getStatus, STATUS_PENDING_REVIEW);
+            // 只改状态列：与迟到的写回并发时，写回同样把状态改为待批改，分数照常累加
+            int recovered = examResultService.getBaseMapper().update(null, updateWrapper);
+            if (recovered > 0) {
+                logger.warn("{} 份成绩 AI 批改超过 {} 分钟未完成，已改为待批改", recovered, staleMinutes);
+            }
+            return recovered;
+        } catch (Exception e) {
+            logger.error("恢复超时的 AI 批改成绩失败", e);
+            return 0;
+        }
+    }
+
+    /**
+     * 写回失败（乐观锁冲突用尽、数据库异常）时延迟重试，仍失败的交给 {@link #recoverStale()}
+     */
+    private void writeBack(GradingJob job, List<Graded> results, int round) {
+        if (complete(job, results)) return;
+        if (round + 1 >= WRITE_BACK_ROUNDS) {
+            logger.error("AI 批改结果写回失败，等待超时恢复为待批改: examResultId={}", job.examResultId);
+            return;
+        }
+        long delay = WRITE_BACK_DELAY_SECONDS << round;
+        logger.warn("AI 批改结果写回失败，{}s 后重试: examResultId={}", delay, job.examResultId);
+        try {
+            CompletableFuture.runAsync(() -> writeBack(job, results, round + 1),
+                    CompletableFuture.delayedExecutor(delay, TimeUnit.SECONDS, executor));
+        } catch (RejectedExecutionException e) {
+            logger.warn("服务关闭，放弃写回重试: examResultId={}", job.examResultId);
+        }
+    }
+
+    private Graded grade(GradingJob job, SubjectiveItem item) {
+        try {
+            if (!aiRateLimiter.acquireGlobalConcurrent(permitTimeoutSeconds, TimeUnit.SECONDS)) {
+                return new Graded(item, 0, "(AI 服务繁忙，未能完成批改)");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Graded(item, 0, "(AI 批改被中断)");
+        }
+        try {
+            AiGradingResult aiResult = aiService.gradeSubjectiveQuestion(job.apiKey, job.provider,
+                    item.content, item.referenceAnswer, item.studentAnswer, item.maxScore);
+            int score = aiResult.getScore() != null
+                    ? Math.max(0, Math.min(item.maxScore, aiResult.getScore())) : 0;
+            String feedback = aiResult.getFeedback();
+            if (aiResult.getReason() != null) {
+                feedback += "\n(扣分原因: " + aiResult.getReason() + ")";
+            }
+            return new Graded(item, score, feedback);
+        } catch (Exception e) {
+            logger.error("AI 批改失败: examResultId={}, questionId={}", job.examResultId, item.questionId, e);
+            return new Graded(item, 0, "(AI 服务连接超时或异常，未能完成批改)");
+        } finally {
+            aiRateLimiter.releaseGlobalConcurrent();
+        }
+    }
+
+    /**
+     * 写回成绩（乐观锁冲突时重读重试）、登记错题、通知学生
+     *
+     * @return 是否不再需要重试（写回成功、记录已删除或结果无法序列化）；写回失败时返回 false
+     */
+    boolean complete(GradingJob job, List<Graded> results) {
+        int earned = 0;
+        Map<String, Map<String, Object>> details = new LinkedHashMap<>();
+        for (Graded g : results) {
+            earned += g.score;
+            Map<String, Object> detail = new HashMap<>();
+            detail.put("score", g.score);
+            detail.put("feedback", g.feedback);
+            details.put(g.item.questionId.toString(), detail);
+        }
+
+        BizExamResult saved = null;
+        for (int attempt = 0; attempt < WRITE_BACK_RETRIES && saved == null; attempt++) {
+            BizExamResult result;
+            try {
+                result = examResultService.getById(job.examResultId);
+            } catch (Exception e) {
+                logger.error("读取成绩记录失败: examResultId={}", job.examResultId, e);
+                return false;
+            }
+            if (result == null) {
+                logger.warn("AI 批改完成但成绩记录已不存在: examResultId={}", job.examResultId);
+                return true;
+            }
+            Map<String, Map<String, Object>> merged = new LinkedHashMap<>();
+            if (StringUtils.hasText(result.getResultDetails())) {
+                try {
+                    merged.putAll(objectMapper.readValue(result.getResultDetails(),
+                            new TypeReference<Map<String, Map<String, Object>>>() {}));
+                } catch (Exception e) {
+                    logger.warn("解析已有批改详情失败，将覆盖: examResultId={}", job.examResultId);
+                }
+            }
+            merged.putAll(details);
+            try {
+                result.setResultDetails(objectMapper.writeValueAsString(merged));
+            } catch (Exception e) {
+                logger.error("JSON序列化失败", e);
+                return true;
+            }
+            result.setScore((result.getScore() == null ? 0 : result.getScore()) + earned);
+            result.setOriginalScore((result.getOriginalScore() == null ? 0 : result.getOriginalScore()) + earned);
+            if (Objects.equals(result.getStatus(), STATUS_AI_GRADING)) {
+                result.setStatus(STATUS_PENDING_REVIEW);
+            }
+            try {
+                if (examResultService.updateById(result)) {
+                    saved = result;
+                }
+            } catch (Exception e) {
+                logger.error("写回成绩记录失败: examResultId={}", job.examResultId, e);
+                return false;
+            }
+        }
+        if (saved == null) {
+            return false;
+        }
+
+        Map<Long, Boolean> correctness = new HashMap<>();
+        List<BizWrongRecord> wrongRecords = new ArrayList<>();
+        for (Graded g : results) {
+            correctness.put(g.item.questionId, g.correct());
+            if (!g.correct()) {
+                BizWrongRecord wrongRecord = new BizWrongRecord();
+                wrongRecord.setStudentId(job.studentId);
+                wrongRecord.setQuestionId(g.item.questionId);
+                wrongRecord.setWrongAnswer(g.item.studentAnswer);
+                wrongRecord.setWrongReason("模拟考试《" + job.paperName + "》中答错");
+                wrongRecord.setCreateTime(LocalDateTime.now());
+                wrongRecords.add(wrongRecord);
+            }
+        }
+        wrongRecordService.addUnmasteredBatch(wrongRecords);
+        cfEngine.recordAnswers(job.studentId, correctness);
+
+        // 交卷时主观题未出分，满分试卷成就在这里判定
+        List<BizAchievement> unlocked = Collections.emptyList();
+        Integer total = saved.getTotalScore();
+        if (total != null && total > 0 && saved.getScore() >= total) {
+            unlocked = achievementService.recordExamCounters(job.studentId, true, 0);
+        }
+        notifyStudent(job, saved, details, unlocked);
+        return true;
+    }
+
+    private void notifyStudent(GradingJob job, BizExamResult result, Map<String, Map<String, Object>> details,
+                               List<BizAchievement> unlocked) {
+        try {
+            Map<String, Object> message = new HashMap<>();
+            message.put("type", "EXAM_GRADED");
+            message.put("examResultId", result.getId());
+            message.put("paperName", job.paperName);
+            message.put("score", result.getScore());
+            message.put("totalScore", result.getTotalScore());
+            message.put("details", details);
+            if (!unlocked.isEmpty()) {
+                message.put("newAchievements", unlocked);
+            }
+            notificationHandler.sendToUser(job.studentNo, objectMapper.writeValueAsString(message));
+        } catch (Exception e) {
+            logger.warn("AI 批改结果推送失败: examResultId={}", job.examResultId, e);
+        }
+    }
+}
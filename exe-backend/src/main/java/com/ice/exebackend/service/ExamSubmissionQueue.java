@@ -0,0 +1,278 @@
+package com.ice.exebackend.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ice.exebackend.dto.PracticeSubmissionDTO;
+import com.ice.exebackend.entity.BizStudent;
+import com.ice.exebackend.handler.NotificationWebSocketHandler;
+import com.ice.exebackend.utils.SubmissionJournal;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 考试集中交卷（考试结束前几分钟的交卷洪峰）的排队入口
+ *
+ * 同步判分的请求数达到 sync-threshold 后（mode=auto），后续交卷改为：
+ * 1. 答卷追加到本地日志 {@link SubmissionJournal}，落盘后立即返回回执 id（即日志条目 id）
+ * 2. workers 个工作线程按顺序消费，调用 {@link ExamSubmissionService#submit} 判分落库
+ * 3. 结果写入回执（Redis，保留 receipt-ttl-hours；Redis 不可用时存本机内存），
+ *    并推送 EXAM_SUBMIT_RESULT 消息；学生也可通过回执 id 轮询
+ * 4. 处理完成后 ack 日志条目
+ *
+ * 排队数达到 max-pending 后不再接收，新交卷退回同步判分，由请求线程自身形成背压。
+ * 进程重启时回放日志中未 ack 的答卷；回执已是 DONE 的条目直接 ack，不会重复判分。
+ * 判分落库后、回执写入前进程退出的极端情况下，该答卷会在重启后再判一次。
+ *
+ * AI Key 不写入日志，只保存在内存中：重启回放的答卷主观题不做 AI 批改，留给教师批改。
+ */
+@Service
+public class ExamSubmissionQueue {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExamSubmissionQueue.class);
+
+    private static final String RECEIPT_KEY_PREFIX = "exam:submit:receipt:";
+
+    public static final String STATUS_QUEUED = "QUEUED";
+    public static final String STATUS_PROCESSING = "PROCESSING";
+    public static final String STATUS_DONE = "DONE";
+    public static final String STATUS_FAILED = "FAILED";
+
+    @Autowired
+    private ExamSubmissionService examSubmissionService;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private NotificationWebSocketHandler notificationHandler;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /** auto：同步判分并发超过阈值时排队；always：始终排队；off：始终同步 */
+    @Value("${exam.surge.mode:auto}")
+    private String mode;
+
+    @Value("${exam.surge.sync-threshold:32}")
+    private int syncThreshold;
+
+    @Value("${exam.surge.workers:8}")
+    private int workers;
+
+    @Value("${exam.surge.max-pending:5000}")
+    private int maxPending;
+
+    @Value("${exam.surge.journal-dir:./data/exam-journal}")
+    private String journalDir;
+
+    @Value("${exam.surge.journal-compact-bytes:67108864}")
+    private long journalCompactBytes;
+
+    @Value("${exam.surge.receipt-ttl-hours:24}")
+    private long receiptTtlHours;
+
+    private SubmissionJournal journal;
+    private ExecutorService executor;
+
+    private final AtomicInteger syncInFlight = new AtomicInteger();
+    private final AtomicInteger pending = new AtomicInteger();
+    /** 排队中答卷的 AI Key（不落盘），处理时取出 */
+    private final Map<String, String> aiKeys = new ConcurrentHashMap<>();
+    /** Redis 写入失败时的回执兜底 */
+    private final Map<String, String> localReceipts = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() throws IOException {
+        AtomicInteger seq = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(Math.max(1, workers), r -> {
+            Thread t = new Thread(r, "exam-submit-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        journal = new SubmissionJournal(Paths.get(journalDir, "submissions.log"), journalCompactBytes);
+
+        int replayed = 0;
+        for (SubmissionJournal.Entry entry : journal.pending()) {
+            Map<String, Object> receipt = getReceipt(entry.getId());
+            if (receipt != null && STATUS_DONE.equals(receipt.get("status"))) {
+                journal.ack(entry.getId());
+                continue;
+            }
+            pending.incrementAndGet();
+            executor.execute(() -> process(entry.getId(), entry.getFields()));
+            replayed++;
+        }
+        if (replayed > 0) {
+            logger.info("回放未处理的交卷 {} 份", replayed);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        // 未处理完的答卷留在日志中，下次启动回放
+        executor.shutdownNow();
+        journal.close();
+    }
+
+    /**
+     * 本次交卷是否走排队
+     */
+    public boolean shouldQueue() {
+        if ("off".equalsIgnoreCase(mode) || pending.get() >= maxPending) {
+            return false;
+        }
+        return "always".equalsIgnoreCase(mode) || syncInFlight.get() >= syncThreshold;
+    }
+
+    /**
+     * 同步判分（计入同步并发数，供 {@link #shouldQueue} 判断）
+     */
+    public <T> T runSync(Supplier<T> task) {
+        syncInFlight.incrementAndGet();
+        try {
+            return task.get();
+        } finally {
+            syncInFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * 答卷落盘并排队，返回回执 id
+     */
+    public String enqueue(BizStudent student, PracticeSubmissionDTO submission, Long paperId,
+                          String aiKey, String aiProvider) {
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("studentId", String.valueOf(student.getId()));
+        fields.put("studentNo", student.getStudentNo());
+        fields.put("paperId", String.valueOf(paperId));
+        if (aiProvider != null) {
+            fields.put("aiProvider", aiProvider);
+        }
+        try {
+            fields.put("submission", objectMapper.writeValueAsString(submission));
+        } catch (IOException e) {
+            throw new IllegalStateException("答卷序列化失败", e);
+        }
+
+        String receiptId;
+        try {
+            receiptId = journal.append(fields).get(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("交卷排队被中断", e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new IllegalStateException("交卷日志写入失败", e);
+        }
+        if (aiKey != null) {
+            aiKeys.put(receiptId, aiKey);
+        }
+        saveReceipt(receiptId, student.getStudentNo(), STATUS_QUEUED, null, null);
+        pending.incrementAndGet();
+        executor.execute(() -> process(receiptId, fields));
+        return receiptId;
+    }
+
+    /**
+     * 查询回执：receiptId / studentNo / status，DONE 时带 result，FAILED 时带 error；不存在或已过期返回 null
+     */
+    public Map<String, Object> getReceipt(String receiptId) {
+        String json = null;
+        try {
+            json = redisTemplate.opsForValue().get(RECEIPT_KEY_PREFIX + receiptId);
+        } catch (Exception e) {
+            logger.warn("读取交卷回执失败，改查本机: {}", receiptId, e);
+        }
+        if (json == null) {
+            json = localReceipts.get(receiptId);
+        }
+        if (json == null) return null;
+        try {
+            return objectMapper.readValue(json, new TypeReference<Map<String, Object>>() {});
+        } catch (IOException e) {
+            logger.warn("交卷回执解析失败: {}", receiptId, e);
+            return null;
+        }
+    }
+
+    private void process(String receiptId, Map<String, String> fields) {
+        String studentNo = fields.get("studentNo");
+        String aiKey = aiKeys.remove(receiptId);
+        try {
+            saveReceipt(receiptId, studentNo, STATUS_PROCESSING, null, null);
+            BizStudent student = new BizStudent();
+            student.setId(Long.valueOf(fields.get("studentId")));
+            student.setStudentNo(studentNo);
+            PracticeSubmissionDTO submission = objectMapper.readValue(fields.get("submission"), PracticeSubmissionDTO.class);
+            Long paperId = Long.valueOf(fields.get("paperId"));
+
+            Map<String, Object> result = examSubmissionService.submit(student, submission, paperId,
+                    aiKey, fields.get("aiProvider"));
+            saveReceipt(receiptId, studentNo, STATUS_DONE, result, null);
+            notifyStudent(receiptId, studentNo, STATUS_DONE, result, null);
+        } catch (IllegalArgumentException e) {
+            saveReceipt(receiptId, studentNo, STATUS_FAILED, null, e.getMessage());
+            notifyStudent(receiptId, studentNo, STATUS_FAILED, null, e.getMessage());
+        } catch (Exception e) {
+            logger.error("排队交卷处理失败: receiptId={}", receiptId, e);
+            saveReceipt(receiptId, studentNo, STATUS_FAILED, null, "交卷处理失败，请联系老师");
+            notifyStudent(receiptId, studentNo, STATUS_FAILED, null, "交卷处理失败，请联系老师");
+        } finally {
+            pending.decrementAndGet();
+        }
+        journal.ack(receiptId);
+    }
+
+    private void saveReceipt(String receiptId, String studentNo, String status,
+                             Map<String, Object> result, String error) {
+        Map<String, Object> receipt = new HashMap<>();
+        receipt.put("receiptId", receiptId);
+        receipt.put("studentNo", studentNo);
+        receipt.put("status", status);
+        if (result != null) receipt.put("result", result);
+        if (error != null) receipt.put("error", error);
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(receipt);
+        } catch (IOException e) {
+            logger.error("交卷回执序列化失败: {}", receiptId, e);
+            return;
+        }
+        try {
+            redisTemplate.opsForValue().set(RECEIPT_KEY_PREFIX + receiptId, json, receiptTtlHours, TimeUnit.HOURS);
+            localReceipts.remove(receiptId);
+        } catch (Exception e) {
+            logger.warn("交卷回执写入 Redis 失败，暂存本机: {}", receiptId, e);
+            localReceipts.put(receiptId, json);
+        }
+    }
+
+    private void notifyStudent(String receiptId, String studentNo, String status,
+                               Map<String, Object> result, String error) {
+        try {
+            Map<String, Object> message = new HashMap<>();
+            message.put("type", "EXAM_SUBMIT_RESULT");
+            message.put("receiptId", receiptId);
+            message.put("status", status);
+            if (result != null) message.put("result", result);
+            if (error != null) message.put("error", error);
+            notificationHandler.sendToUser(studentNo, objectMapper.writeValueAsString(message));
+        } catch (Exception e) {
+            logger.warn("交卷结果推送失败: receiptId={}", receiptId, e);
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package com.ice.exebackend.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ice.exebackend.dto.PaperDTO;
+import com.ice.exebackend.dto.PracticeResultDTO;
+import com.ice.exebackend.dto.PracticeSubmissionDTO;
+import com.ice.exebackend.entity.*;
+import com.ice.exebackend.event.PaperChangedEvent;
+import com.ice.exebackend.event.QuestionChangedEvent;
+import com.ice.exebackend.utils.CompiledAnswerKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.util.StringUtils;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * 考试交卷判分
+ *
+ * 同步交卷（请求线程）和排队交卷（{@link ExamSubmissionQueue} 的工作线程）共用同一套判分与落库逻辑。
+ * 试卷结构和预编译的标准答案（{@link CompiledAnswerKey}）按试卷缓存：
+ * - 试卷发布时预先编译，否则在第一份答卷到达时编译；最多缓存 answer-key-cache-size 张试卷，超出时淘汰最久未用的
+ * - 试卷修改 / 下架 / 删除（{@link PaperChangedEvent}）时失效该试卷，试题变更（{@link QuestionChangedEvent}）时整体失效
+ * - 另有 answer-key-ttl-seconds 过期兜底（多实例部署时其他实例上的修改不会通知到本机）
+ * 缓存中的试题对象只读，返回给前端的是副本。
+ */
+@Service
+public class ExamSubmissionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExamSubmissionService.class);
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private BizPaperService paperService;
+
+    @Autowired
+    private BizQuestionService questionService;
+
+    @Autowired
+    private BizStudentService studentService;
+
+    @Autowired
+    private BizExamResultService examResultService;
+
+    @Autowired
+    private BizWrongRecordService wrongRecordService;
+
+    @Autowired
+    private BizLearningActivityService learningActivityService;
+
+    @Autowired
+    private BizAchievementService achievementService;
+
+    @Autowired
+    private CollaborativeFilteringEngine cfEngine;
+
+    @Autowired
+    private ExamGradingService examGradingService;
+
+    @Value("${exam.answer-key-ttl-seconds:60}")
+    private long answerKeyTtlSeconds;
+
+    @Value("${exam.answer-key-cache-size:256}")
+    private int answerKeyCacheSize;
+
+    private final Map<Long, PaperAnswerKey> answerKeys = new ConcurrentHashMap<>();
+
+    /**
+     * 一张试卷的判分依据：试卷结构 + 试题 + 预编译答案
+     */
+    private static class PaperAnswerKey {
+        final PaperDTO paper;
+        final Map<Long, BizQuestion> questions;
+        final CompiledAnswerKey compiled;
+        final long loadedAt = System.currentTimeMillis();
+        volatile long lastUsed = loadedAt;
+
+        PaperAnswerKey(PaperDTO paper, Map<Long, BizQuestion> questions, CompiledAnswerKey compiled) {
+            this.paper = paper;
+            this.questions = questions;
+            this.compiled = compiled;
+        }
+    }
+
+    /**
+     * 交卷判分并落库
+     *
+     * @param aiKey 主观题 AI 批改使用的 Key，为空时主观题不自动批改
+     * @return 返回给前端的判分结果（score / totalScore / details / examResultId / aiGradingPending / newAchievements）
+     * @throws IllegalArgumentException 试卷不存在
+     */
+    public Map<String, Object> submit(BizStudent student, PracticeSubmissionDTO submission, Long paperId,
+                                      String aiKey, String aiProvider) {
+        PaperAnswerKey key = answerKey(paperId);
+        if (key == null) {
+            throw new IllegalArgumentException("试卷不存在");
+        }
+        PaperDTO paper = key.paper;
+        Map<Long, String> answers = submission.getAnswers() != null ? submission.getAnswers() : Map.of();
+
+        int totalScore = 0;
+        int studentScore = 0;
+        List<PracticeResultDTO.AnswerResult> results = new ArrayList<>();
+        Map<Long, Boolean> correctness = new HashMap<>();
+        // 需要 AI 批改的主观题，交卷后异步批改
+        List<ExamGradingService.SubjectiveItem> subjectiveItems = new ArrayList<>();
+        List<BizWrongRecord> wrongRecords = new ArrayList<>();
+
+        if (paper.getPaperType() != null && paper.getPaperType() == 2) {
+            totalScore = paper.getTotalScore() != null ? paper.getTotalScore() : 100;
+            studentScore = 0;
+        } else {
+            CompiledAnswerKey compiled = key.compiled;
+            byte[] outcomes = new byte[compiled.size()];
+            studentScore = compiled.grade(answers, outcomes);
+            totalScore = compiled.totalScore();
+
+            for (int i = 0; i < compiled.size(); i++) {
+                Long questionId = compiled.questionId(i);
+                BizQuestion q = new BizQuestion();
+                BeanUtils.copyProperties(key.questions.get(questionId), q);
+                String userAns = answers.get(questionId);
+                boolean isCorrect = outcomes[i] == CompiledAnswerKey.CORRECT;
+                boolean aiPending = false;
+
+                if (outcomes[i] == CompiledAnswerKey.SUBJECTIVE
+                        && StringUtils.hasText(aiKey) && StringUtils.hasText(userAns)) {
+                    // 主观题不在判分线程里等 AI，交卷后并发批改，结果通过消息推送
+                    subjectiveItems.add(new ExamGradingService.SubjectiveItem(
+                            questionId, q.getContent(), q.getAnswer(), userAns, compiled.score(i)));
+                    aiPending = true;
+                    q.setDescription((q.getDescription() == null ? "" : q.getDescription()) + "\n\n(AI 批改中，完成后将通知你)");
+                }
+
+                // 自动记录错题到错题本（交卷后一次批量写入；AI 批改中的题目由批改完成后登记）
+                if (!isCorrect && !aiPending) {
+                    BizWrongRecord wrongRecord = new BizWrongRecord();
+                    wrongRecord.setStudentId(student.getId());
+                    wrongRecord.setQuestionId(questionId);
+                    wrongRecord.setWrongAnswer(userAns);
+                    wrongRecord.setWrongReason("模拟考试《" + paper.getName() + "》中答错");
+                    wrongRecord.setCreateTime(LocalDateTime.now());
+                    wrongRecords.add(wrongRecord);
+                }
+
+                PracticeResultDTO.AnswerResult res = new PracticeResultDTO.AnswerResult();
+                res.setQuestion(q);
+                res.setUserAnswer(userAns);
+                res.setCorrect(isCorrect);
+                res.setEarnedScore(isCorrect ? compiled.score(i) : 0);
+                results.add(res);
+                if (userAns != null && !aiPending) {
+                    correctness.put(questionId, isCorrect);
+                }
+            }
+        }
+
+        BizExamResult examResult = new BizExamResult();
+        examResult.setStudentId(student.getId());
+        examResult.setPaperId(paperId);
+        examResult.setPaperName(paper.getName());
+        examResult.setScore(studentScore);
+        examResult.setTotalScore(totalScore);
+        examResult.setViolationCount(submission.getViolationCount() != null ? submission.getViolationCount() : 0);
+
+        try {
+            examResult.setUserAnswers(objectMapper.writeValueAsString(answers));
+        } catch (JsonProcessingException e) {
+            logger.error("JSON序列化失败", e);
+            examResult.setUserAnswers("{}");
+        }
+
+        examResult.setCreateTime(LocalDateTime.now());
+        // 学生提交后设为"待批改"状态；有主观题待 AI 批改时为"AI 批改中"
+        examResult.setStatus(subjectiveItems.isEmpty() ? 1 : ExamGradingService.STATUS_AI_GRADING);
+        // 保存AI自动评分作为原始分数（主观题得分由批改完成后累加）
+        examResult.setOriginalScore(studentScore);
+        examResultService.save(examResult);
+        wrongRecordService.addUnmasteredBatch(wrongRecords);
+        cfEngine.recordAnswers(student.getId(), correctness);
+        examGradingService.submit(new ExamGradingService.GradingJob(examResult.getId(), student.getId(),
+                student.getStudentNo(), paper.getName(), aiKey, aiProvider, subjectiveItems));
+
+        // 记录学习活动
+        Integer examDuration = submission.getDuration() != null ? submission.getDuration() : 1800; // 默认30分钟
+        learningActivityService.recordActivity(
+                student.getId(),
+                "EXAM",
+                examDuration,
+                paper.getSubjectId(),
+                examResult.getId(),
+                "参加了模拟考试《" + paper.getName() + "》，得分：" + studentScore + "/" + totalScore
+        );
+
+        studentService.addPoints(student.getId(), 10);
+
+        // 满分试卷数、累计作答题数在计数表中增量维护（有主观题待 AI 批改时，满分由批改完成后判定）
+        boolean perfectPaper = subjectiveItems.isEmpty() && totalScore > 0 && studentScore >= totalScore;
+        List<BizAchievement> unlockedList = achievementService.recordExamCounters(
+                student.getId(), perfectPaper, answers.size());
+
+        Map<String, Object> resMap = new HashMap<>();
+        resMap.put("score", studentScore);
+        resMap.put("totalScore", totalScore);
+        resMap.put("details", results);
+        resMap.put("examResultId", examResult.getId());
+        resMap.put("aiGradingPending", !subjectiveItems.isEmpty());
+        if (!unlockedList.isEmpty()) {
+            resMap.put("newAchievements", unlockedList);
+        }
+        return resMap;
+    }
+
+    /**
+     * 试题变更后清空答案缓存（变更不频繁，按试卷精确失效需要反查试卷，得不偿失）
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onQuestionChanged(QuestionChangedEvent event) {
+        answerKeys.clear();
+    }
+
+    /**
+     * 试卷变更后失效该试卷；发布时预先编译，避免开考瞬间的第一批答卷一起查库
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPaperChanged(PaperChangedEvent event) {
+        answerKeys.remove(event.getPaperId());
+        if (event.getChangeType() == PaperChangedEvent.ChangeType.PUBLISHED) {
+            try {
+                answerKey(event.getPaperId());
+            } catch (Exception e) {
+                logger.warn("试卷答案预编译失败，将在首次交卷时重试: paperId={}", event.getPaperId(), e);
+            }
+        }
+    }
+
+    private PaperAnswerKey answerKey(Long paperId) {
+        PaperAnswerKey key = answerKeys.get(paperId);
+        if (key == null || System.currentTimeMillis() - key.loadedAt >= answerKeyTtlSeconds * 1000) {
+            // 同一试卷并发过期时只有一个线程查库
+            key = answerKeys.compute(paperId, (id, existing) -> {
+                if (existing != null && System.currentTimeMillis() - existing.loadedAt < answerKeyTtlSeconds * 1000) {
+                    return existing;
+                }
+                return loadAnswerKey(id);
+            });
+            if (key != null && answerKeys.size() > answerKeyCacheSize) {
+                evictLeastRecentlyUsed();
+            }
+        }
+        if (key != null) {
+            key.lastUsed = System.currentTimeMillis();
+        }
+        return key;
+    }
+
+    private PaperAnswerKey loadAnswerKey(Long paperId) {
+        PaperDTO paper = paperService.getPaperWithQuestionsById(paperId);
+        if (paper == null) return null;
+        List<Long> questionIds = new ArrayList<>();
+        List<Integer> scores = new ArrayList<>();
+        if (paper.getGroups() != null) {
+            paper.getGroups().forEach(g -> g.getQuestions().forEach(pq -> {
+                questionIds.add(pq.getQuestionId());
+                scores.add(pq.getScore());
+            }));
+        }
+        Map<Long, BizQuestion> questions = questionIds.isEmpty() ? Map.of()
+                : questionService.listByIds(questionIds).stream()
+                        .collect(Collectors.toMap(BizQuestion::getId, q -> q, (a, b) -> a));
+        return new PaperAnswerKey(paper, questions, new CompiledAnswerKey(questionIds, scores, questions));
+    }
+
+    private void evictLeastRecentlyUsed() {
+        while (answerKeys.size() > answerKeyCacheSize) {
+            Long oldest = null;
+            long oldestUsed = Long.MAX_VALUE;
+            for (Map.Entry<Long, PaperAnswerKey> e : answerKeys.entrySet()) {
+                if (e.getValue().lastUsed < oldestUsed) {
+                    oldestUsed = e.getValue().lastUsed;
+                    oldest = e.getKey();
+                }
+            }
+            if (oldest == null) return;
+            answerKeys.remove(oldest);
+        }
+    }
+}
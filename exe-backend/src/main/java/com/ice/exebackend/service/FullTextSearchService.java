@@ -0,0 +1,315 @@
+package com.ice.exebackend.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.ice.exebackend.entity.BizCourse;
+import com.ice.exebackend.entity.BizQuestion;
+import com.ice.exebackend.event.CourseChangedEvent;
+import com.ice.exebackend.mapper.BizCourseMapper;
+import com.ice.exebackend.utils.InvertedTextIndex;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 试题 / 课程全文检索
+ *
+ * 用本机的倒排索引（{@link InvertedTextIndex}）代替题干、课程名称与描述上的 LIKE '%…%' 全表扫描：
+ * - 后台管理的题干筛选：索引先圈出包含全部二元组的候选ID，再只在候选内做 LIKE 精确校验
+ * - 自然语言搜索：按 BM25 排序取前若干条
+ * 启动时加载磁盘上的段立即可用；缓冲区定时落盘。试题索引的增量刷新与全量重建由 {@link QuestionIndexLoader}
+ * 统一驱动（距上次重建不足 rebuild-minutes 的轮次不参与），课程索引随试题索引一起重建、按课程变更事件增量刷新。
+ * 索引未就绪时各调用方退回 LIKE。
+ */
+@Service
+public class FullTextSearchService implements QuestionIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(FullTextSearchService.class);
+
+    @Value("${search.index.dir:./data/search-index}")
+    private String indexDir;
+
+    @Value("${search.index.flush-docs:2000}")
+    private int flushDocs;
+
+    @Value("${search.index.flush-seconds:60}")
+    private long flushSeconds;
+
+    @Value("${search.index.max-segments:8}")
+    private int maxSegments;
+
+    @Value("${search.index.rebuild-minutes:60}")
+    private long rebuildMinutes;
+
+    @Value("${search.index.max-filter-hits:5000}")
+    private int maxFilterHits;
+
+    // 加载器收集全部 QuestionIndex（包括本类），这里延迟注入避免循环依赖
+    @Lazy
+    @Autowired
+    private QuestionIndexLoader questionIndexLoader;
+
+    @Autowired
+    private BizCourseMapper courseMapper;
+
+    private final ScheduledExecutorService maintenanceExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "full-text-index");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private volatile InvertedTextIndex questionIndex;
+    private volatile InvertedTextIndex courseIndex;
+    private volatile boolean ready = false;
+
+    /** 已入索引的最大试题ID；之后在其他节点或停机期间新建的试题ID一般比它大，题干筛选时一并交给 LIKE 校验 */
+    private final AtomicLong maxQuestionId = new AtomicLong();
+
+    /** 上次全量重建（或从磁盘加载）完成的时间 */
+    private volatile long lastRebuildAt;
+
+    // 全量重建期间发生变更的课程，重建完成后补刷一次，避免被旧快照覆盖（试题由加载器补刷）
+    private final Object rebuildLock = new Object();
+    private Set<Long> coursesChangedDuringRebuild = null;
+
+    @PostConstruct
+    public void init() {
+        maintenanceExecutor.execute(this::load);
+        maintenanceExecutor.scheduleWithFixedDelay(this::flush, flushSeconds, flushSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        maintenanceExecutor.shutdownNow();
+        flush();
+    }
+
+    // ==================== 查询 ====================
+
+    /**
+     * 给试题查询加上「题干包含 content」的条件
+     *
+     * 索引可用且条件有区分度时，先用索引圈出候选ID（以及索引之后新建的试题），
+     * 再在候选内做 LIKE 精确校验；否则退回整表 LIKE。
+     */
+    public void filterQuestionContent(QueryWrapper<BizQuestion> query, String content) {
+        List<Long> candidates = ready ? questionIndex.matchAll(content, maxFilterHits) : null;
+        if (candidates != null) {
+            long tail = maxQuestionId.get();
+            query.and(w -> {
+                if (!candidates.isEmpty()) {
+                    w.in("id", candidates).or();
+                }
+                w.gt("id", tail);
+            });
+        }
+        query.like("content", content);
+    }
+
+    /**
+     * 按 BM25 检索试题题干
+     *
+     * @return 按相关度排列的结果；索引未就绪时返回 null，调用方退回 LIKE
+     */
+    public List<InvertedTextIndex.Hit> searchQuestions(Collection<String> keywords, int limit) {
+        return ready ? questionIndex.search(keywords, limit) : null;
+    }
+
+    /**
+     * 按 BM25 检索课程名称与描述（名称权重加倍）
+     *
+     * @return 按相关度排列的结果；索引未就绪时返回 null，调用方退回 LIKE
+     */
+    public List<InvertedTextIndex.Hit> searchCourses(String query, int limit) {
+        return ready ? courseIndex.search(List.of(query), limit) : null;
+    }
+
+    // ==================== 增量刷新 ====================
+
+    @Override
+    public String indexName() {
+        return "试题全文索引";
+    }
+
+    /**
+     * 增量刷新：按最新数据重新写入，查不到的视为已删除
+     */
+    @Override
+    public void refresh(Collection<Long> questionIds, List<BizQuestion> latest) {
+        InvertedTextIndex index = questionIndex;
+        if (index == null) return;
+        Set<Long> missing = new HashSet<>(questionIds);
+        for (BizQuestion q : latest) {
+            index.put(q.getId(), q.getContent());
+            maxQuestionId.accumulateAndGet(q.getId(), Math::max);
+            missing.remove(q.getId());
+        }
+        missing.forEach(index::remove);
+        scheduleFlushIfFull(index);
+    }
+
+    /**
+     * 事务提交后增量刷新课程：按最新数据重新写入，查不到的视为已删除
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCourseChanged(CourseChangedEvent event) {
+        try {
+            refreshCourses(List.of(event.getCourseId()));
+        } catch (Exception e) {
+            logger.warn("课程全文索引增量刷新失败: id={}", event.getCourseId(), e);
+        }
+    }
+
+    private void refreshCourses(Collection<Long> courseIds) {
+        if (courseIds == null || courseIds.isEmpty()) return;
+        synchronized (rebuildLock) {
+            if (coursesChangedDuringRebuild != null) {
+                coursesChangedDuringRebuild.addAll(courseIds);
+            }
+        }
+        InvertedTextIndex index = courseIndex;
+        if (index == null) return;
+        Set<Long> missing = new HashSet<>(courseIds);
+        for (BizCourse c : courseMapper.selectList(new QueryWrapper<BizCourse>()
+                .select("id", "name", "description").in("id", courseIds))) {
+            index.put(c.getId(), courseFields(c));
+            missing.remove(c.getId());
+        }
+        missing.forEach(index::remove);
+        scheduleFlushIfFull(index);
+    }
+
+    /**
+     * 课程名称传两次，名称命中的课程排在描述命中的前面
+     */
+    private static String[] courseFields(BizCourse c) {
+        return new String[]{c.getName(), c.getName(), c.getDescription()};
+    }
+
+    private void scheduleFlushIfFull(InvertedTextIndex index) {
+        if (index.bufferedDocs() >= flushDocs) {
+            maintenanceExecutor.execute(this::flush);
+        }
+    }
+
+    // ==================== 加载 / 落盘（在维护线程执行）/ 重建（在加载器的重建线程执行） ====================
+
+    /**
+     * 加载磁盘上的段；没有可用的段时立即全量重建
+     */
+    void load() {
+        try {
+            long start = System.currentTimeMillis();
+            questionIndex = InvertedTextIndex.open(Paths.get(indexDir, "questions"), maxSegments);
+            courseIndex = InvertedTextIndex.open(Paths.get(indexDir, "courses"), maxSegments);
+            if (questionIndex.size() > 0) {
+                // 停机期间新建的试题ID都比索引中的大，题干筛选时由 LIKE 兜住，直到下一次重建
+                maxQuestionId.set(questionIndex.maxId());
+                lastRebuildAt = System.currentTimeMillis();
+                ready = true;
+                logger.info("全文索引加载完成: {} 道试题, {} 门课程, 耗时 {}ms",
+                        questionIndex.size(), courseIndex.size(), System.currentTimeMillis() - start);
+                return;
+            }
+        } catch (Exception e) {
+            logger.error("全文索引加载失败，检索退回 LIKE", e);
+            return;
+        }
+        questionIndexLoader.requestRebuild(this);
+    }
+
+    void flush() {
+        for (InvertedTextIndex index : new InvertedTextIndex[]{questionIndex, courseIndex}) {
+            if (index == null) continue;
+            try {
+                index.flush();
+            } catch (Exception e) {
+                // 缓冲区仍在内存中，下次 flush 重试
+                logger.warn("全文索引落盘失败", e);
+            }
+        }
+    }
+
+    /**
+     * 全量重建：试题由加载器逐页喂入，读完后连同课程一起构建新的基础段并整体替换；
+     * 磁盘加载未完成，或距上次重建不足 rebuild-minutes 时本轮不参与
+     */
+    @Override
+    public Rebuild beginRebuild() {
+        InvertedTextIndex currentQuestions = questionIndex;
+        InvertedTextIndex currentCourses = courseIndex;
+        if (currentQuestions == null || currentCourses == null) return null;
+        if (ready && System.currentTimeMillis() - lastRebuildAt < TimeUnit.MINUTES.toMillis(rebuildMinutes)) {
+            return null;
+        }
+        synchronized (rebuildLock) {
+            coursesChangedDuringRebuild = new HashSet<>();
+        }
+        InvertedTextIndex.Rebuild questions = currentQuestions.rebuild();
+        return new Rebuild() {
+            private long lastId;
+            private int count;
+
+            @Override
+            public void accept(List<BizQuestion> page) {
+                for (BizQuestion q : page) {
+                    questions.put(q.getId(), q.getContent());
+                    lastId = Math.max(lastId, q.getId());
+                }
+                count += page.size();
+            }
+
+            @Override
+            public void commit() {
+                try {
+                    InvertedTextIndex.Rebuild courses = currentCourses.rebuild();
+                    for (BizCourse c : courseMapper.selectList(new QueryWrapper<BizCourse>().select("id", "name", "description"))) {
+                        courses.put(c.getId(), courseFields(c));
+                    }
+                    questions.commit();
+                    courses.commit();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } finally {
+                    refreshCoursesChangedDuringRebuild();
+                }
+                maxQuestionId.accumulateAndGet(lastId, Math::max);
+                lastRebuildAt = System.currentTimeMillis();
+                ready = true;
+                logger.info("全文索引重建完成: {} 道试题", count);
+            }
+
+            @Override
+            public void abort() {
+                refreshCoursesChangedDuringRebuild();
+            }
+        };
+    }
+
+    private void refreshCoursesChangedDuringRebuild() {
+        Set<Long> changed;
+        synchronized (rebuildLock) {
+            changed = coursesChangedDuringRebuild;
+            coursesChangedDuringRebuild = null;
+        }
+        try {
+            refreshCourses(changed);
+        } catch (Exception e) {
+            logger.warn("课程全文索引补刷失败: ids={}", changed, e);
+        }
+    }
+}
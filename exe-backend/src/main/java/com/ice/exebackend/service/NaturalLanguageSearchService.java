@@ -3,6 +3,7 @@ package com.ice.exebackend.service;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.ice.exebackend.utils.AiHttpClient;
+import com.ice.exebackend.utils.InvertedTextIndex;
 import com.ice.exebackend.mapper.BizQuestionMapper;
 import com.ice.exebackend.mapper.BizCourseMapper;
 import com.ice.exebackend.entity.BizQuestion;
@@ -39,6 +40,9 @@ public class NaturalLanguageSearchService {
     @Autowired
     private BizCourseMapper courseMapper;
 
+    @Autowired
+    private FullTextSearchService fullTextSearchService;
+
     /**
      * 用户意图枚举
      */
@@ -321,9 +325,29 @@ public class NaturalLanguageSearchService {
         List<QuestionResult> results = new ArrayList<>();
 
         try {
+            // 关键词搜索：优先走全文索引按 BM25 排序，索引未就绪时退回 LIKE
+            List<InvertedTextIndex.Hit> hits = keywords.isEmpty() ? null : fullTextSearchService.searchQuestions(keywords, 20);
+            if (hits != null) {
+                if (hits.isEmpty()) {
+                    return results;
+                }
+                Map<Long, BizQuestion> byId = new HashMap<>();
+                for (BizQuestion question : questionMapper.selectBatchIds(
+                        hits.stream().map(InvertedTextIndex.Hit::getId).toList())) {
+                    byId.put(question.getId(), question);
+                }
+                double topScore = hits.get(0).getScore();
+                for (InvertedTextIndex.Hit hit : hits) {
+                    BizQuestion question = byId.get(hit.getId());
+                    if (question == null) continue;
+                    results.add(toQuestionResult(question, hit.getScore() / topScore));
+                }
+                log.info("搜索到 {} 道题目", results.size());
+                return results;
+            }
+
             LambdaQueryWrapper<BizQuestion> wrapper = new LambdaQueryWrapper<>();
 
-            // 关键词搜索
             if (!keywords.isEmpty()) {
                 wrapper.and(w -> {
                     for (String keyword : keywords) {
@@ -338,12 +362,7 @@ public class NaturalLanguageSearchService {
             List<BizQuestion> questions = questionMapper.selectList(wrapper);
 
             for (BizQuestion question : questions) {
-                QuestionResult result = new QuestionResult();
-                result.setId(question.getId());
-                result.setContent(question.getContent());
-                result.setQuestionType(question.getQuestionType());
-                result.setRelevance(0.85); // 简化的相关度
-                results.add(result);
+                results.add(toQuestionResult(question, 0.85)); // 简化的相关度
             }
 
             log.info("搜索到 {} 道题目", results.size());
@@ -355,6 +374,15 @@ public class NaturalLanguageSearchService {
         return results;
     }
 
+    private static QuestionResult toQuestionResult(BizQuestion question, double relevance) {
+        QuestionResult result = new QuestionResult();
+        result.setId(question.getId());
+        result.setContent(question.getContent());
+        result.setQuestionType(question.getQuestionType());
+        result.setRelevance(relevance);
+        return result;
+    }
+
     /**
      * 搜索课程
      */
@@ -368,7 +396,31 @@ public class NaturalLanguageSearchService {
                 return results;
             }
 
-            // 根据课程名称或描述搜索
+            // 根据课程名称或描述搜索：优先走全文索引，相关度为 BM25 得分相对第一名的比例
+            List<InvertedTextIndex.Hit> hits = fullTextSearchService.searchCourses(concept, 10);
+            if (hits != null) {
+                if (hits.isEmpty()) {
+                    return results;
+                }
+                Map<Long, BizCourse> byId = new HashMap<>();
+                for (BizCourse course : courseMapper.selectBatchIds(
+                        hits.stream().map(InvertedTextIndex.Hit::getId).toList())) {
+                    byId.put(course.getId(), course);
+                }
+                double topScore = hits.get(0).getScore();
+                for (InvertedTextIndex.Hit hit : hits) {
+                    BizCourse course = byId.get(hit.getId());
+                    if (course == null) continue;
+                    CourseResult result = new CourseResult();
+                    result.setId(course.getId());
+                    result.setName(course.getName());
+                    result.setRelevance(hit.getScore() / topScore);
+                    results.add(result);
+                }
+                log.info("搜索到 {} 门课程", results.size());
+                return results;
+            }
+
             LambdaQueryWrapper<BizCourse> wrapper = new LambdaQueryWrapper<>();
             wrapper.like(BizCourse::getName, concept)
                     .or()
@@ -0,0 +1,245 @@
+package com.ice.exebackend.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ice.exebackend.dto.PaperDTO;
+import com.ice.exebackend.entity.BizPaperQuestion;
+import com.ice.exebackend.event.QuestionChangedEvent;
+import com.ice.exebackend.mapper.BizPaperQuestionMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 组装好的试卷（{@link PaperDTO}，含分组、试题详情、图片）两级缓存
+ *
+ * - 一级：本机 LRU，最多 local-size 张试卷
+ * - 二级：Redis，键带版本号 paper:dto:{id}:{version}，版本号保存在 paper:dto:ver:{id}
+ * - 试卷变更时 {@link #invalidate(Long)} 使版本号自增（事务中则在提交后），旧键不再被读到，等 TTL 自然过期；
+ *   本机一级缓存的条目最多 version-check-seconds 秒后与 Redis 版本号比对一次，因此其他节点的修改也能及时生效
+ * - 试题变更（{@link QuestionChangedEvent}）时反查包含该试题的试卷逐一失效
+ * 缓存的 PaperDTO 为共享对象，调用方只读，需要修改时自行复制。
+ * 指标：paper.cache.hit（tier=local/redis）、paper.cache.miss、paper.cache.load、paper.cache.local.size
+ */
+@Service
+public class PaperCacheService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PaperCacheService.class);
+
+    private static final String VERSION_KEY_PREFIX = "paper:dto:ver:";
+    private static final String SNAPSHOT_KEY_PREFIX = "paper:dto:";
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private BizPaperQuestionMapper paperQuestionMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${paper.cache.local-size:200}")
+    private int localSize;
+
+    @Value("${paper.cache.version-check-seconds:5}")
+    private long versionCheckSeconds;
+
+    @Value("${paper.cache.redis-ttl-hours:12}")
+    private long redisTtlHours;
+
+    private Map<Long, LocalEntry> local;
+
+    private Counter localHitCounter;
+    private Counter redisHitCounter;
+    private Counter missCounter;
+    private Timer loadTimer;
+
+    /**
+     * 一级缓存条目
+     */
+    private static class LocalEntry {
+        final PaperDTO paper;
+        final long version;
+        volatile long checkedAt;
+
+        LocalEntry(PaperDTO paper, long version) {
+            this.paper = paper;
+            this.version = version;
+            this.checkedAt = System.currentTimeMillis();
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        int capacity = Math.max(1, localSize);
+        local = new LinkedHashMap<>(capacity * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, LocalEntry> eldest) {
+                return size() > capacity;
+            }
+        };
+        localHitCounter = Counter.builder("paper.cache.hit")
+                .tag("tier", "local")
+                .description("试卷缓存命中（本机）")
+                .register(meterRegistry);
+        redisHitCounter = Counter.builder("paper.cache.hit")
+                .tag("tier", "redis")
+                .description("试卷缓存命中（Redis）")
+                .register(meterRegistry);
+        missCounter = Counter.builder("paper.cache.miss")
+                .description("试卷缓存未命中（查库组装）")
+                .register(meterRegistry);
+        loadTimer = Timer.builder("paper.cache.load")
+                .description("未命中时查库组装试卷耗时")
+                .register(meterRegistry);
+        Gauge.builder("paper.cache.local.size", this, c -> c.localCount())
+                .description("本机缓存的试卷数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 读取试卷，两级都未命中时调用 loader 查库组装并回填；loader 返回 null（试卷不存在）时不缓存
+     */
+    public PaperDTO get(Long paperId, Function<Long, PaperDTO> loader) {
+        LocalEntry entry;
+        synchronized (local) {
+            entry = local.get(paperId);
+        }
+        long now = System.currentTimeMillis();
+        if (entry != null && now - entry.checkedAt < versionCheckSeconds * 1000) {
+            localHitCounter.increment();
+            return entry.paper;
+        }
+
+        long version = currentVersion(paperId);
+        if (entry != null && entry.version == version) {
+            entry.checkedAt = now;
+            localHitCounter.increment();
+            return entry.paper;
+        }
+
+        PaperDTO paper = readSnapshot(paperId, version);
+        if (paper != null) {
+            redisHitCounter.increment();
+        } else {
+            missCounter.increment();
+            paper = loadTimer.record(() -> loader.apply(paperId));
+            if (paper == null) return null;
+            // 查库期间版本号变了说明有并发修改，本次结果只返回不回填
+            if (currentVersion(paperId) != version) return paper;
+            writeSnapshot(paperId, version, paper);
+        }
+        if (version >= 0) {
+            synchronized (local) {
+                local.put(paperId, new LocalEntry(paper, version));
+            }
+        }
+        return paper;
+    }
+
+    /**
+     * 试卷变更后调用：版本号自增（在事务中则提交后执行），并移除本机缓存
+     */
+    public void invalidate(Long paperId) {
+        if (paperId == null) return;
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    bumpVersion(paperId);
+                }
+            });
+        } else {
+            bumpVersion(paperId);
+        }
+    }
+
+    /**
+     * 试题内容变更：包含这些试题的试卷都要失效
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onQuestionChanged(QuestionChangedEvent event) {
+        if (event.getChangeType() == QuestionChangedEvent.ChangeType.CREATED) return;
+        List<Long> paperIds = paperQuestionMapper.selectList(new QueryWrapper<BizPaperQuestion>()
+                        .select("DISTINCT paper_id")
+                        .in("question_id", event.getQuestionIds()))
+                .stream()
+                .map(BizPaperQuestion::getPaperId)
+                .collect(Collectors.toList());
+        paperIds.forEach(this::bumpVersion);
+    }
+
+    private void bumpVersion(Long paperId) {
+        synchronized (local) {
+            local.remove(paperId);
+        }
+        try {
+            redisTemplate.opsForValue().increment(VERSION_KEY_PREFIX + paperId);
+        } catch (Exception e) {
+            logger.warn("试卷缓存版本号自增失败: paperId={}", paperId, e);
+        }
+    }
+
+    private long currentVersion(Long paperId) {
+        try {
+            String value = redisTemplate.opsForValue().get(VERSION_KEY_PREFIX + paperId);
+            return value != null ? Long.parseLong(value) : 0L;
+        } catch (Exception e) {
+            // Redis 不可用时版本号取 -1：两级缓存都不读写，每次查库
+            logger.warn("读取试卷缓存版本号失败: paperId={}", paperId, e);
+            return -1L;
+        }
+    }
+
+    private PaperDTO readSnapshot(Long paperId, long version) {
+        if (version < 0) return null;
+        try {
+            String json = redisTemplate.opsForValue().get(snapshotKey(paperId, version));
+            return json != null ? objectMapper.readValue(json, PaperDTO.class) : null;
+        } catch (Exception e) {
+            logger.warn("读取试卷缓存失败: paperId={}", paperId, e);
+            return null;
+        }
+    }
+
+    private void writeSnapshot(Long paperId, long version, PaperDTO paper) {
+        if (version < 0) return;
+        try {
+            redisTemplate.opsForValue().set(snapshotKey(paperId, version),
+                    objectMapper.writeValueAsString(paper), redisTtlHours, TimeUnit.HOURS);
+        } catch (Exception e) {
+            logger.warn("写入试卷缓存失败: paperId={}", paperId, e);
+        }
+    }
+
+    private static String snapshotKey(Long paperId, long version) {
+        return SNAPSHOT_KEY_PREFIX + paperId + ":" + version;
+    }
+
+    private int localCount() {
+        synchronized (local) {
+            return local.size();
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.ice.exebackend.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.ice.exebackend.entity.BizQuestion;
+import com.ice.exebackend.entity.BizQuestionKnowledgePoint;
+import com.ice.exebackend.mapper.BizQuestionKnowledgePointMapper;
+import com.ice.exebackend.utils.QuestionCandidatePartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 智能组卷候选索引
+ *
+ * 启动时把全部试题的组卷元数据（id、难度、知识点）按「科目 / 年级 / 题型」分区按列装入内存，
+ * 组卷时直接从分区中均匀抽样交给遗传算法，不再每次到数据库做随机 OFFSET 扫描
+ * （越往后越慢，且抽到的总是一段连续 ID）。
+ *
+ * 每道题同时属于「科目 + 题型」和「科目 + 年级 + 题型」两个分区，分别服务不限年级 / 指定年级的组卷。
+ * 全量重建与增量刷新由 {@link QuestionIndexLoader} 统一驱动，知识点关联按页补查。
+ * 索引未就绪时按分区直接查库。
+ */
+@Service
+public class PaperCandidatePoolService implements QuestionIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(PaperCandidatePoolService.class);
+
+    @Autowired
+    private BizQuestionService questionService;
+
+    @Autowired
+    private BizQuestionKnowledgePointMapper questionKnowledgePointMapper;
+
+    private volatile CandidateIndex index = new CandidateIndex();
+    private volatile boolean ready = false;
+
+    /**
+     * 抽取某科目 / 年级 / 题型的候选题
+     *
+     * @param grade             年级，为空表示不限年级
+     * @param limit             最多抽取的数量
+     * @param excluded          排除的题目ID，可为空
+     * @param requiredKnowledge 需要覆盖的知识点（覆盖这些知识点的题目优先入选），可为空
+     */
+    public QuestionCandidatePartition.Sample sample(Long subjectId, String grade, Integer questionType, int limit,
+                                                    Set<Long> excluded, Set<Long> requiredKnowledge) {
+        QuestionCandidatePartition partition = ready
+                ? index.partitions.get(partitionKey(subjectId, grade, questionType))
+                : loadPartition(subjectId, grade, questionType);
+        if (partition == null) {
+            partition = new QuestionCandidatePartition(subjectId, grade, questionType);
+        }
+        return partition.sample(limit, excluded, requiredKnowledge, ThreadLocalRandom.current());
+    }
+
+    @Override
+    public String indexName() {
+        return "组卷候选索引";
+    }
+
+    /**
+     * 增量刷新：先从所在分区移除，再按最新数据重新加入（已删除的不会重新加入）
+     */
+    @Override
+    public void refresh(Collection<Long> questionIds, List<BizQuestion> latest) {
+        Map<Long, long[]> kps = loadKnowledgePoints(questionIds);
+        CandidateIndex current = index;
+        for (Long id : questionIds) {
+            current.remove(id);
+        }
+        for (BizQuestion q : latest) {
+            current.add(q, kps.get(q.getId()));
+        }
+    }
+
+    /**
+     * 全量重建：每页试题补查一次知识点关联，读完后整体替换
+     */
+    @Override
+    public Rebuild beginRebuild() {
+        CandidateIndex fresh = new CandidateIndex();
+        return new Rebuild() {
+            @Override
+            public void accept(List<BizQuestion> page) {
+                List<Long> pageIds = new ArrayList<>(page.size());
+                for (BizQuestion q : page) pageIds.add(q.getId());
+                Map<Long, long[]> kps = loadKnowledgePoints(pageIds);
+                for (BizQuestion q : page) {
+                    fresh.add(q, kps.get(q.getId()));
+                }
+            }
+
+            @Override
+            public void commit() {
+                index = fresh;
+                ready = true;
+                logger.info("组卷候选索引重建完成: {} 道试题, {} 个分区", fresh.membership.size(), fresh.partitions.size());
+            }
+        };
+    }
+
+    /**
+     * 索引未就绪时的回退：直接查出一个分区
+     */
+    private QuestionCandidatePartition loadPartition(Long subjectId, String grade, Integer questionType) {
+        QueryWrapper<BizQuestion> query = lightQuery()
+                .eq("subject_id", subjectId)
+                .eq("question_type", questionType);
+        if (StringUtils.hasText(grade)) {
+            query.eq("grade", grade);
+        }
+        List<BizQuestion> questions = questionService.list(query);
+
+        Map<Long, List<Long>> links = new HashMap<>();
+        for (BizQuestionKnowledgePoint link : questionKnowledgePointMapper.selectBySubjectAndType(subjectId, questionType, grade)) {
+            links.computeIfAbsent(link.getQuestionId(), k -> new ArrayList<>(2)).add(link.getKnowledgePointId());
+        }
+
+        QuestionCandidatePartition partition = new QuestionCandidatePartition(
+                subjectId, StringUtils.hasText(grade) ? grade : null, questionType, questions.size());
+        for (BizQuestion q : questions) {
+            partition.upsert(q.getId(), q.getDifficulty(), toArray(links.get(q.getId())));
+        }
+        return partition;
+    }
+
+    private Map<Long, long[]> loadKnowledgePoints(Collection<Long> questionIds) {
+        Map<Long, List<Long>> links = new HashMap<>();
+        for (BizQuestionKnowledgePoint link : questionKnowledgePointMapper.selectList(
+                new QueryWrapper<BizQuestionKnowledgePoint>().in("question_id", questionIds))) {
+            links.computeIfAbsent(link.getQuestionId(), k -> new ArrayList<>(2)).add(link.getKnowledgePointId());
+        }
+        Map<Long, long[]> result = new HashMap<>(links.size() * 2);
+        links.forEach((id, kps) -> result.put(id, toArray(kps)));
+        return result;
+    }
+
+    private static long[] toArray(List<Long> list) {
+        if (list == null) return null;
+        long[] array = new long[list.size()];
+        for (int i = 0; i < array.length; i++) array[i] = list.get(i);
+        return array;
+    }
+
+    private static QueryWrapper<BizQuestion> lightQuery() {
+        return new QueryWrapper<BizQuestion>().select("id", "subject_id", "grade", "question_type", "difficulty");
+    }
+
+    private static String partitionKey(Long subjectId, String grade, Integer questionType) {
+        return subjectId + "|" + (StringUtils.hasText(grade) ? grade : "") + "|" + questionType;
+    }
+
+    /**
+     * 一份完整的候选索引：partitionKey -> 分区，questionId -> 所在分区
+     */
+    private static class CandidateIndex {
+        final Map<String, QuestionCandidatePartition> partitions = new ConcurrentHashMap<>();
+        final Map<Long, String[]> membership = new ConcurrentHashMap<>();
+
+        void add(BizQuestion q, long[] kps) {
+            if (q.getId() == null || q.getSubjectId() == null || q.getQuestionType() == null) return;
+            String[] keys = StringUtils.hasText(q.getGrade())
+                    ? new String[]{partitionKey(q.getSubjectId(), null, q.getQuestionType()),
+                                   partitionKey(q.getSubjectId(), q.getGrade(), q.getQuestionType())}
+                    : new String[]{partitionKey(q.getSubjectId(), null, q.getQuestionType())};
+            for (int i = 0; i < keys.length; i++) {
+                String partitionGrade = i == 0 ? null : q.getGrade();
+                partitions.computeIfAbsent(keys[i],
+                        k -> new QuestionCandidatePartition(q.getSubjectId(), partitionGrade, q.getQuestionType()))
+                        .upsert(q.getId(), q.getDifficulty(), kps);
+            }
+            membership.put(q.getId(), keys);
+        }
+
+        void remove(Long id) {
+            String[] keys = membership.remove(id);
+            if (keys == null) return;
+            for (String key : keys) {
+                QuestionCandidatePartition partition = partitions.get(key);
+                if (partition != null) partition.remove(id);
+            }
+        }
+    }
+}
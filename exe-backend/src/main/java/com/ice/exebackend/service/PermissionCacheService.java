@@ -4,6 +4,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
@@ -17,6 +18,9 @@ public class PermissionCacheService {
     @Autowired
     private RedisTemplate<String, Object> redisTemplate;
 
+    @Autowired
+    private AuthenticationCacheService authenticationCacheService;
+
     private static final String PERMISSION_CACHE_PREFIX = "auth:user:";
     private static final String PERMISSION_CACHE_SUFFIX = ":permissions";
     private static final long CACHE_TTL = 30; // 30分钟
@@ -45,12 +49,13 @@ public class PermissionCacheService {
 
     /**
      * 清除单个用户的权限缓存
-     * 当用户权限发生变化时调用此方法
+     * 当用户权限发生变化时调用此方法，同时通知各节点清除该用户的认证缓存
      * @param userId 用户ID
      */
     public void clearUserPermissions(Long userId) {
         String key = PERMISSION_CACHE_PREFIX + userId + PERMISSION_CACHE_SUFFIX;
         redisTemplate.delete(key);
+        authenticationCacheService.evictUsers(Collections.singletonList(userId));
     }
 
     /**
@@ -60,7 +65,8 @@ public class PermissionCacheService {
      */
     public void clearUsersPermissions(List<Long> userIds) {
         if (userIds != null && !userIds.isEmpty()) {
-            userIds.forEach(this::clearUserPermissions);
+            userIds.forEach(userId -> redisTemplate.delete(PERMISSION_CACHE_PREFIX + userId + PERMISSION_CACHE_SUFFIX));
+            authenticationCacheService.evictUsers(userIds);
         }
     }
 }
@@ -0,0 +1,258 @@
+package com.ice.exebackend.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.ice.exebackend.entity.BizQuestion;
+import com.ice.exebackend.utils.DifficultyBand;
+import com.ice.exebackend.utils.QuestionDeckPool;
+import com.ice.exebackend.utils.RecentlySeenQuestions;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 练习抽题服务
+ *
+ * 为学生的一次练习挑题：多个同名科目按题量比例分配名额，每个科目内按难度档分层抽取，
+ * 使抽到的易 / 中 / 难比例与该科目题库一致，同一次练习内不会重复。
+ * 题池按「科目」和「科目 + 年级」各建一份（每道题两边都有），分别服务不限年级 / 指定年级的练习。
+ *
+ * 每个学生在本机保留最近做过的 recent-window 道题，抽题时优先跳过，题库不够时才会重复。
+ * 全量重建与增量刷新由 {@link QuestionIndexLoader} 统一驱动。
+ * 索引未就绪时按池直接查库（只取 id / difficulty，不排序）。
+ */
+@Service
+public class PracticeSamplingService implements QuestionIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(PracticeSamplingService.class);
+
+    @Autowired
+    private BizQuestionService questionService;
+
+    @Value("${practice.sampling.recent-window:200}")
+    private int recentWindow;
+
+    @Value("${practice.sampling.recent-students:10000}")
+    private int recentStudents;
+
+    private volatile PoolIndex index = new PoolIndex();
+    private volatile boolean ready = false;
+
+    // studentId -> 最近做过的题目，按最近使用淘汰
+    private Map<Long, RecentlySeenQuestions> recent;
+
+    @PostConstruct
+    public void init() {
+        int capacity = Math.max(1, recentStudents);
+        recent = new LinkedHashMap<>(capacity * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, RecentlySeenQuestions> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * 为学生抽取练习题：按难度分层（难度分布与题库一致），优先跳过该学生最近做过的题
+     *
+     * @param subjectIds 科目ID（同名科目可能有多个，题目从这些科目的题池中按题量比例抽取）
+     * @param grade      年级，为空表示不限年级
+     * @param count      题目数量
+     * @param studentId  学生ID，为空时不排除做过的题
+     * @param excluded   额外排除的题目ID，可为空
+     * @return 按抽取顺序排列的题目ID；题量不足时返回全部可用题目
+     */
+    public List<Long> sample(Collection<Long> subjectIds, String grade, int count, Long studentId,
+                             Collection<Long> excluded) {
+        List<QuestionDeckPool> pools = new ArrayList<>();
+        for (Long subjectId : new LinkedHashSet<>(subjectIds)) {
+            QuestionDeckPool pool = ready
+                    ? index.pools.get(poolKey(subjectId, grade))
+                    : loadPool(subjectId, grade);
+            if (pool != null && pool.size() > 0) pools.add(pool);
+        }
+        if (pools.isEmpty() || count <= 0) return new ArrayList<>();
+
+        RecentlySeenQuestions seen = studentId != null ? recentOf(studentId, false) : null;
+        Set<Long> skip = excluded != null ? new HashSet<>(excluded) : new HashSet<>();
+        List<Long> result = new ArrayList<>(count);
+        int[] quotas = allocate(pools, count);
+        // 第一轮按题量比例分配名额，第二轮由仍有余量的池补齐
+        for (int round = 0; round < 2 && result.size() < count; round++) {
+            for (int i = 0; i < pools.size() && result.size() < count; i++) {
+                int quota = round == 0 ? quotas[i] : count - result.size();
+                if (quota <= 0) continue;
+                QuestionDeckPool pool = pools.get(i);
+                long[] drawn = pool.sampleStratified(quota, null, skip::contains,
+                        seen != null ? seen::contains : null, ThreadLocalRandom.current());
+                for (long id : drawn) {
+                    result.add(id);
+                    skip.add(id);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 记录学生刚拿到的练习题，之后的抽题优先避开
+     */
+    public void recordSeen(Long studentId, Collection<Long> questionIds) {
+        if (studentId == null || questionIds == null || questionIds.isEmpty()) return;
+        recentOf(studentId, true).record(questionIds);
+    }
+
+    private RecentlySeenQuestions recentOf(Long studentId, boolean create) {
+        synchronized (recent) {
+            RecentlySeenQuestions seen = recent.get(studentId);
+            if (seen == null && create) {
+                seen = new RecentlySeenQuestions(recentWindow);
+                recent.put(studentId, seen);
+            }
+            return seen;
+        }
+    }
+
+    @Override
+    public String indexName() {
+        return "练习题池";
+    }
+
+    /**
+     * 增量刷新：题目仍在原池时只更新难度档，换池或已删除时从旧池移除
+     */
+    @Override
+    public void refresh(Collection<Long> questionIds, List<BizQuestion> latest) {
+        Set<Long> present = new HashSet<>();
+        PoolIndex current = index;
+        for (BizQuestion q : latest) {
+            current.put(q);
+            present.add(q.getId());
+        }
+        for (Long id : questionIds) {
+            if (!present.contains(id)) current.remove(id);
+        }
+    }
+
+    @Override
+    public Rebuild beginRebuild() {
+        PoolIndex fresh = new PoolIndex();
+        return new Rebuild() {
+            @Override
+            public void accept(List<BizQuestion> page) {
+                for (BizQuestion q : page) {
+                    fresh.put(q);
+                }
+            }
+
+            @Override
+            public void commit() {
+                index = fresh;
+                ready = true;
+                logger.info("练习题池重建完成: {} 道试题, {} 个题池", fresh.membership.size(), fresh.pools.size());
+            }
+        };
+    }
+
+    /**
+     * 索引未就绪时的回退：直接查出一个池
+     */
+    private QuestionDeckPool loadPool(Long subjectId, String grade) {
+        List<BizQuestion> questions = questionService.list(lightQuery()
+                .eq("subject_id", subjectId)
+                .eq(StringUtils.hasText(grade), "grade", grade));
+        QuestionDeckPool pool = new QuestionDeckPool(questions.size());
+        for (BizQuestion q : questions) {
+            pool.put(q.getId(), DifficultyBand.of(q.getDifficulty()));
+        }
+        return pool;
+    }
+
+    /**
+     * 最大余数法按题量把名额分给各池
+     */
+    private static int[] allocate(List<QuestionDeckPool> pools, int count) {
+        int[] quotas = new int[pools.size()];
+        if (pools.size() == 1) {
+            quotas[0] = count;
+            return quotas;
+        }
+        long total = 0;
+        int[] sizes = new int[pools.size()];
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = pools.get(i).size();
+            total += sizes[i];
+        }
+        if (total == 0) return quotas;
+        int assigned = 0;
+        long[] remainders = new long[sizes.length];
+        for (int i = 0; i < sizes.length; i++) {
+            quotas[i] = (int) ((long) count * sizes[i] / total);
+            remainders[i] = (long) count * sizes[i] % total;
+            assigned += quotas[i];
+        }
+        while (assigned < count) {
+            int best = 0;
+            for (int i = 1; i < remainders.length; i++) {
+                if (remainders[i] > remainders[best]) best = i;
+            }
+            quotas[best]++;
+            remainders[best] = -1;
+            assigned++;
+        }
+        return quotas;
+    }
+
+    private static QueryWrapper<BizQuestion> lightQuery() {
+        return new QueryWrapper<BizQuestion>().select("id", "subject_id", "grade", "difficulty");
+    }
+
+    private static String poolKey(Long subjectId, String grade) {
+        return subjectId + "|" + (StringUtils.hasText(grade) ? grade : "");
+    }
+
+    /**
+     * 一份完整的题池索引：poolKey -> 题池，questionId -> 所在题池
+     */
+    private static class PoolIndex {
+        final Map<String, QuestionDeckPool> pools = new ConcurrentHashMap<>();
+        final Map<Long, String[]> membership = new ConcurrentHashMap<>();
+
+        void put(BizQuestion q) {
+            if (q.getId() == null || q.getSubjectId() == null) return;
+            String[] keys = StringUtils.hasText(q.getGrade())
+                    ? new String[]{poolKey(q.getSubjectId(), null), poolKey(q.getSubjectId(), q.getGrade())}
+                    : new String[]{poolKey(q.getSubjectId(), null)};
+            String[] old = membership.put(q.getId(), keys);
+            if (old != null) {
+                // 换了科目或年级：从不再所属的池中移除；仍在原池的只更新难度档
+                for (String key : old) {
+                    if (!Arrays.asList(keys).contains(key)) removeFrom(key, q.getId());
+                }
+            }
+            for (String key : keys) {
+                pools.computeIfAbsent(key, k -> new QuestionDeckPool()).put(q.getId(), DifficultyBand.of(q.getDifficulty()));
+            }
+        }
+
+        void remove(Long id) {
+            String[] keys = membership.remove(id);
+            if (keys == null) return;
+            for (String key : keys) {
+                removeFrom(key, id);
+            }
+        }
+
+        private void removeFrom(String key, Long id) {
+            QuestionDeckPool pool = pools.get(key);
+            if (pool != null) pool.remove(id);
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.ice.exebackend.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.ice.exebackend.entity.BizQuestion;
+import com.ice.exebackend.mapper.BizQuestionMapper;
+import com.ice.exebackend.utils.MinHashLshIndex;
+import org.apache.commons.text.similarity.LevenshteinDistance;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 试题查重
+ *
+ * 按科目为题干建立 MinHash + LSH 索引（{@link MinHashLshIndex}），查重时只对索引给出的少量候选计算编辑距离，
+ * 不再把整个科目的题干读出来逐条比较。同一个索引也用于生成「科目内全部重复题」报告。
+ *
+ * 全量重建与增量刷新由 {@link QuestionIndexLoader} 统一驱动。
+ * 索引未就绪时退回整科目逐条比较。
+ */
+@Service
+public class QuestionDuplicateService implements QuestionIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(QuestionDuplicateService.class);
+
+    /** 编辑距离相似度超过该值视为重复 */
+    static final double SIMILARITY_THRESHOLD = 0.8;
+    /**
+     * 24 段 × 每段 2 行。编辑距离相似度 0.8 的两段文本，二元组 Jaccard 最差约 0.43，
+     * 此时进入候选的概率 1 - (1 - 0.43²)²⁴ ≈ 99.3%，0.5 约 99.9%；
+     * Jaccard 0.1 的无关题目约 21% 落入同段，再经签名估计过滤后只剩约 1% 需要计算编辑距离
+     */
+    static final int BANDS = 24;
+    static final int ROWS = 2;
+    /**
+     * 候选的签名估计下限，低于它的候选不再计算编辑距离。
+     * 48 个哈希下 Jaccard 0.43 的估计值标准差约 0.07，低于 0.2 的概率不到 0.1%
+     */
+    static final double MIN_ESTIMATE = 0.2;
+
+    @Autowired
+    private BizQuestionMapper questionMapper;
+
+    private volatile DuplicateIndex index = new DuplicateIndex();
+    private volatile boolean ready = false;
+
+    /**
+     * 一组互为重复的试题
+     */
+    public static class DuplicateGroup {
+        private final List<BizQuestion> questions;
+        private final double similarity;
+
+        public DuplicateGroup(List<BizQuestion> questions, double similarity) {
+            this.questions = questions;
+            this.similarity = similarity;
+        }
+
+        public List<BizQuestion> getQuestions() { return questions; }
+        /** 组内最高的编辑距离相似度 */
+        public double getSimilarity() { return similarity; }
+    }
+
+    /**
+     * 查找与 content 重复的试题
+     *
+     * @param excludeId 排除的试题（编辑时为题目本身），可为空
+     * @return 只含 id、content，按相似度从高到低排列
+     */
+    public List<BizQuestion> findSimilar(Long subjectId, String content, Long excludeId) {
+        List<BizQuestion> candidates;
+        if (ready) {
+            MinHashLshIndex subjectIndex = index.subjects.get(subjectId);
+            List<Long> ids = subjectIndex == null
+                    ? Collections.emptyList()
+                    : subjectIndex.candidates(content, MIN_ESTIMATE, excludeId);
+            candidates = ids.isEmpty() ? Collections.emptyList() : loadContents(ids);
+        } else {
+            candidates = questionMapper.selectList(new QueryWrapper<BizQuestion>()
+                    .select("id", "content")
+                    .eq("subject_id", subjectId)
+                    .ne(excludeId != null, "id", excludeId));
+        }
+
+        List<BizQuestion> result = new ArrayList<>();
+        Map<Long, Double> similarities = new HashMap<>();
+        for (BizQuestion q : candidates) {
+            double similarity = similarity(content, q.getContent());
+            if (similarity > SIMILARITY_THRESHOLD) {
+                result.add(q);
+                similarities.put(q.getId(), similarity);
+            }
+        }
+        result.sort(Comparator.comparing(q -> similarities.get(q.getId()), Comparator.reverseOrder()));
+        return result;
+    }
+
+    /**
+     * 科目内全部重复题：候选对逐一校验编辑距离后，按连通关系合并成组
+     *
+     * @return 按组内最高相似度从高到低排列；索引未就绪时返回 null
+     */
+    public List<DuplicateGroup> findDuplicatesInSubject(Long subjectId) {
+        if (!ready) return null;
+        MinHashLshIndex subjectIndex = index.subjects.get(subjectId);
+        if (subjectIndex == null) return Collections.emptyList();
+
+        List<MinHashLshIndex.Pair> pairs = subjectIndex.candidatePairs(MIN_ESTIMATE);
+        if (pairs.isEmpty()) return Collections.emptyList();
+        Set<Long> involved = new HashSet<>();
+        for (MinHashLshIndex.Pair pair : pairs) {
+            involved.add(pair.getFirst());
+            involved.add(pair.getSecond());
+        }
+        Map<Long, BizQuestion> questions = new HashMap<>();
+        for (BizQuestion q : loadContents(involved)) {
+            questions.put(q.getId(), q);
+        }
+
+        // 并查集：parent 指向同组的上级，组代表取组内最小ID
+        Map<Long, Long> parent = new HashMap<>();
+        Map<Long, Double> best = new HashMap<>();
+        for (MinHashLshIndex.Pair pair : pairs) {
+            BizQuestion a = questions.get(pair.getFirst());
+            BizQuestion b = questions.get(pair.getSecond());
+            if (a == null || b == null) continue;
+            double similarity = similarity(a.getContent(), b.getContent());
+            if (similarity <= SIMILARITY_THRESHOLD) continue;
+            long rootA = find(parent, a.getId());
+            long rootB = find(parent, b.getId());
+            long root = Math.min(rootA, rootB);
+            parent.put(Math.max(rootA, rootB), root);
+            double merged = Math.max(similarity, Math.max(best.getOrDefault(rootA, 0.0), best.getOrDefault(rootB, 0.0)));
+            best.put(root, merged);
+        }
+
+        Map<Long, List<BizQuestion>> groups = new TreeMap<>();
+        for (Long id : parent.keySet()) {
+            groups.computeIfAbsent(find(parent, id), k -> new ArrayList<>()).add(questions.get(id));
+        }
+        List<DuplicateGroup> result = new ArrayList<>(groups.size());
+        groups.forEach((root, members) -> {
+            members.sort(Comparator.comparing(BizQuestion::getId));
+            result.add(new DuplicateGroup(members, best.get(root)));
+        });
+        result.sort(Comparator.comparingDouble(DuplicateGroup::getSimilarity).reversed());
+        return result;
+    }
+
+    private static long find(Map<Long, Long> parent, long id) {
+        parent.putIfAbsent(id, id);
+        long root = id;
+        while (parent.get(root) != root) {
+            root = parent.get(root);
+        }
+        // 路径压缩
+        long current = id;
+        while (current != root) {
+            long up = parent.get(current);
+            parent.put(current, root);
+            current = up;
+        }
+        return root;
+    }
+
+    /**
+     * 编辑距离相似度：1 - 距离 / 较长文本长度；距离超出阈值时不再继续计算
+     */
+    static double similarity(String a, String b) {
+        if (a == null || b == null) return 0;
+        int maxLength = Math.max(a.length(), b.length());
+        if (maxLength == 0) return 1.0;
+        int threshold = (int) Math.floor(maxLength * (1 - SIMILARITY_THRESHOLD));
+        int distance = new LevenshteinDistance(threshold).apply(a, b);
+        return distance < 0 ? 0 : 1.0 - (double) distance / maxLength;
+    }
+
+    private List<BizQuestion> loadContents(Collection<Long> ids) {
+        List<BizQuestion> result = new ArrayList<>(ids.size());
+        List<Long> batch = new ArrayList<>(1000);
+        for (Long id : ids) {
+            batch.add(id);
+            if (batch.size() == 1000) {
+                result.addAll(questionMapper.selectList(new QueryWrapper<BizQuestion>().select("id", "content").in("id", batch)));
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            result.addAll(questionMapper.selectList(new QueryWrapper<BizQuestion>().select("id", "content").in("id", batch)));
+        }
+        return result;
+    }
+
+    @Override
+    public String indexName() {
+        return "查重索引";
+    }
+
+    /**
+     * 增量刷新：先从原科目移除，再按最新数据重新加入（已删除的不会重新加入）
+     */
+    @Override
+    public void refresh(Collection<Long> questionIds, List<BizQuestion> latest) {
+        DuplicateIndex current = index;
+        for (Long id : questionIds) {
+            current.remove(id);
+        }
+        for (BizQuestion q : latest) {
+            current.add(q);
+        }
+    }
+
+    @Override
+    public Rebuild beginRebuild() {
+        DuplicateIndex fresh = new DuplicateIndex();
+        return new Rebuild() {
+            @Override
+            public void accept(List<BizQuestion> page) {
+                for (BizQuestion q : page) {
+                    fresh.add(q);
+                }
+            }
+
+            @Override
+            public void commit() {
+                index = fresh;
+                ready = true;
+                logger.info("查重索引重建完成: {} 道试题, {} 个科目", fresh.membership.size(), fresh.subjects.size());
+            }
+        };
+    }
+
+    /**
+     * 一份完整的查重索引：科目 -> 索引，questionId -> 所在科目
+     */
+    private static class DuplicateIndex {
+        final Map<Long, MinHashLshIndex> subjects = new ConcurrentHashMap<>();
+        final Map<Long, Long> membership = new ConcurrentHashMap<>();
+
+        void add(BizQuestion q) {
+            if (q.getId() == null || q.getSubjectId() == null) return;
+            subjects.computeIfAbsent(q.getSubjectId(), k -> new MinHashLshIndex(BANDS, ROWS))
+                    .put(q.getId(), q.getContent());
+            membership.put(q.getId(), q.getSubjectId());
+        }
+
+        void remove(Long id) {
+            Long subjectId = membership.remove(id);
+            if (subjectId == null) return;
+            MinHashLshIndex subjectIndex = subjects.get(subjectId);
+            if (subjectIndex != null) subjectIndex.remove(id);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.ice.exebackend.service;
+
+import com.ice.exebackend.entity.BizQuestion;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 基于试题表的内存索引（对战题组、练习题池、组卷候选、查重、全文检索等）
+ *
+ * 全量重建与增量刷新由 {@link QuestionIndexLoader} 统一驱动：各索引共用同一次按主键分页的全表读取，
+ * 试题变更也只查一次最新数据再分发。传入的试题只带 {@link QuestionIndexLoader} 读取的列，
+ * 各索引自行挑选需要的题目（如只要单选题）。
+ */
+public interface QuestionIndex {
+
+    /**
+     * 索引名称，用于日志
+     */
+    String indexName();
+
+    /**
+     * 开始一次全量重建
+     *
+     * @return 新索引的构建器；本轮不参与重建时返回 null
+     */
+    Rebuild beginRebuild();
+
+    /**
+     * 增量刷新（事务提交后调用）
+     *
+     * @param questionIds 发生变更的试题ID
+     * @param latest      这些试题的最新数据，查不到的即已删除
+     */
+    void refresh(Collection<Long> questionIds, List<BizQuestion> latest);
+
+    /**
+     * 一次全量重建：按主键升序逐页喂入，全部读完后 commit 整体替换当前索引
+     */
+    interface Rebuild {
+
+        void accept(List<BizQuestion> page);
+
+        void commit();
+
+        /**
+         * 读取失败、本轮作废时调用
+         */
+        default void abort() {
+        }
+    }
+}
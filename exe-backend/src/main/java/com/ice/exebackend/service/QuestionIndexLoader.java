@@ -0,0 +1,190 @@
+package com.ice.exebackend.service;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.ice.exebackend.entity.BizQuestion;
+import com.ice.exebackend.event.QuestionChangedEvent;
+import com.ice.exebackend.mapper.BizQuestionMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 试题内存索引的统一加载器
+ *
+ * - 全量重建：定时按主键分页读一遍试题表（取各索引所需列的并集），每页依次交给参与本轮的全部
+ *   {@link QuestionIndex}，读完后各自整体替换；覆盖直接改库等绕过 Service 的变更
+ * - 增量刷新：{@link QuestionChangedEvent} 事务提交后只查一次最新数据，分发给全部索引
+ * - 重建期间发生变更的试题记下来，重建完成后对刚替换的索引补刷一次，避免被旧快照覆盖
+ * 单个索引失败只影响它自己，其余索引照常重建 / 刷新。
+ */
+@Service
+public class QuestionIndexLoader {
+
+    private static final Logger logger = LoggerFactory.getLogger(QuestionIndexLoader.class);
+
+    /** 各索引需要的列的并集 */
+    private static final String[] COLUMNS = {"id", "subject_id", "grade", "question_type", "difficulty", "content"};
+
+    @Value("${question.index.page-size:2000}")
+    private int pageSize;
+
+    @Value("${question.index.rebuild-minutes:30}")
+    private long rebuildMinutes;
+
+    @Autowired
+    private BizQuestionMapper questionMapper;
+
+    @Autowired
+    private List<QuestionIndex> indexes;
+
+    private final ScheduledExecutorService rebuildExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "question-index-rebuild");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // 全量重建期间发生变更的题目，重建完成后补刷一次
+    private final Object rebuildLock = new Object();
+    private Set<Long> changedDuringRebuild = null;
+
+    @PostConstruct
+    public void init() {
+        rebuildExecutor.scheduleWithFixedDelay(() -> rebuild(indexes), 0, rebuildMinutes, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        rebuildExecutor.shutdownNow();
+    }
+
+    /**
+     * 在重建线程上单独为某个索引做一次全量重建（如启动时磁盘上没有可用数据的索引）
+     */
+    public void requestRebuild(QuestionIndex index) {
+        rebuildExecutor.execute(() -> rebuild(List.of(index)));
+    }
+
+    /**
+     * 事务提交后增量刷新
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onQuestionChanged(QuestionChangedEvent event) {
+        try {
+            refresh(event.getQuestionIds());
+        } catch (Exception e) {
+            // 增量刷新失败不影响业务，等待下一次全量重建
+            logger.warn("试题索引增量刷新失败: ids={}", event.getQuestionIds(), e);
+        }
+    }
+
+    private void refresh(Collection<Long> questionIds) {
+        if (questionIds == null || questionIds.isEmpty()) return;
+        synchronized (rebuildLock) {
+            if (changedDuringRebuild != null) {
+                changedDuringRebuild.addAll(questionIds);
+            }
+        }
+        dispatch(indexes, questionIds);
+    }
+
+    private void dispatch(Collection<QuestionIndex> targets, Collection<Long> questionIds) {
+        List<BizQuestion> latest = questionMapper.selectList(query().in("id", questionIds));
+        for (QuestionIndex index : targets) {
+            try {
+                index.refresh(questionIds, latest);
+            } catch (Exception e) {
+                logger.warn("{}增量刷新失败，等待下一次全量重建: ids={}", index.indexName(), questionIds, e);
+            }
+        }
+    }
+
+    /**
+     * 全量重建：按主键分页读取一次，逐页交给参与本轮的索引，全部读完后各自整体替换
+     */
+    void rebuild(List<QuestionIndex> targets) {
+        Map<QuestionIndex, QuestionIndex.Rebuild> builds = new LinkedHashMap<>();
+        for (QuestionIndex index : targets) {
+            try {
+                QuestionIndex.Rebuild build = index.beginRebuild();
+                if (build != null) builds.put(index, build);
+            } catch (Exception e) {
+                logger.error("{}重建失败，继续使用旧索引", index.indexName(), e);
+            }
+        }
+        if (builds.isEmpty()) return;
+
+        synchronized (rebuildLock) {
+            changedDuringRebuild = new HashSet<>();
+        }
+        List<QuestionIndex> committed = new ArrayList<>(builds.size());
+        Set<Long> changed;
+        try {
+            long start = System.currentTimeMillis();
+            long lastId = 0;
+            int count = 0;
+            while (!builds.isEmpty()) {
+                List<BizQuestion> page = questionMapper.selectList(query()
+                        .gt("id", lastId)
+                        .orderByAsc("id")
+                        .last("LIMIT " + pageSize));
+                if (page.isEmpty()) break;
+                builds.entrySet().removeIf(entry -> !accept(entry.getKey(), entry.getValue(), page));
+                count += page.size();
+                if (page.size() < pageSize) break;
+                lastId = page.get(page.size() - 1).getId();
+            }
+            for (Map.Entry<QuestionIndex, QuestionIndex.Rebuild> entry : builds.entrySet()) {
+                try {
+                    entry.getValue().commit();
+                    committed.add(entry.getKey());
+                } catch (Exception e) {
+                    logger.error("{}重建失败，继续使用旧索引", entry.getKey().indexName(), e);
+                }
+            }
+            logger.info("试题索引重建完成: {} 道试题, 重建 {} 个索引, 耗时 {}ms",
+                    count, committed.size(), System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            logger.error("试题索引重建读取失败，各索引继续使用旧数据", e);
+            builds.forEach((index, build) -> {
+                if (!committed.contains(index)) build.abort();
+            });
+        } finally {
+            synchronized (rebuildLock) {
+                changed = changedDuringRebuild;
+                changedDuringRebuild = null;
+            }
+        }
+        if (changed != null && !changed.isEmpty() && !committed.isEmpty()) {
+            try {
+                dispatch(committed, changed);
+            } catch (Exception e) {
+                logger.warn("试题索引补刷失败: ids={}", changed, e);
+            }
+        }
+    }
+
+    private static boolean accept(QuestionIndex index, QuestionIndex.Rebuild build, List<BizQuestion> page) {
+        try {
+            build.accept(page);
+            return true;
+        } catch (Exception e) {
+            logger.error("{}重建失败，继续使用旧索引", index.indexName(), e);
+            build.abort();
+            return false;
+        }
+    }
+
+    private static QueryWrapper<BizQuestion> query() {
+        return new QueryWrapper<BizQuestion>().select(COLUMNS);
+    }
+}
@@ -1,8 +1,6 @@
 package com.ice.exebackend.service;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.ice.exebackend.entity.BizQuestion;
 import com.ice.exebackend.entity.BizExamResult;
 import com.ice.exebackend.entity.BizPaper;
@@ -12,7 +10,6 @@ import com.ice.exebackend.mapper.BizExamResultMapper;
 import com.ice.exebackend.mapper.BizPaperMapper;
 import com.ice.exebackend.mapper.BizCourseMapper;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,56 +42,8 @@ public class RecommendationService {
     @Autowired
     private BizCourseMapper courseMapper;
 
-    /**
-     * 用户行为数据
-     */
-    public static class UserBehavior {
-        private Long userId;
-        private Long questionId;
-        private boolean correct;
-        private int timeSpent; // 秒
-        private double difficulty; // 题目难度1-5
-
-        public UserBehavior() {}
-
-        public UserBehavior(Long userId, Long questionId, boolean correct, int timeSpent, double difficulty) {
-            this.userId = userId;
-            this.questionId = questionId;
-            this.correct = correct;
-            this.timeSpent = timeSpent;
-            this.difficulty = difficulty;
-        }
-
-        // Getters and Setters
-        public Long getUserId() { return userId; }
-        public void setUserId(Long userId) { this.userId = userId; }
-        public Long getQuestionId() { return questionId; }
-        public void setQuestionId(Long questionId) { this.questionId = questionId; }
-        public boolean isCorrect() { return correct; }
-        public void setCorrect(boolean correct) { this.correct = correct; }
-        public int getTimeSpent() { return timeSpent; }
-        public void setTimeSpent(int timeSpent) { this.timeSpent = timeSpent; }
-        public double getDifficulty() { return difficulty; }
-        public void setDifficulty(double difficulty) { this.difficulty = difficulty; }
-    }
-
-    /**
-     * 用户相似度
-     */
-    static class UserSimilarity implements Comparable<UserSimilarity> {
-        Long userId;
-        double similarity;
-
-        public UserSimilarity(Long userId, double similarity) {
-            this.userId = userId;
-            this.similarity = similarity;
-        }
-
-        @Override
-        public int compareTo(UserSimilarity o) {
-            return Double.compare(o.similarity, this.similarity); // 降序
-        }
-    }
+    @Autowired
+    private CollaborativeFilteringEngine cfEngine;
 
     /**
      * 题目推荐结果
@@ -150,83 +99,45 @@ public class RecommendationService {
 
     /**
      * 推荐题目（协同过滤）
+     * 相似学生及其答题数据由 CollaborativeFilteringEngine 在内存中预计算，这里只做查表与打分
      * @param userId 当前用户ID
      * @param subjectId 科目ID（可选）
      * @param limit 推荐数量
      * @return 推荐题目列表
      */
-    @Cacheable(value = "questionRecommendations", key = "#userId + '_' + #subjectId + '_' + #limit")
     public List<QuestionRecommendation> recommendQuestions(Long userId, Long subjectId, int limit) {
         log.info("为用户 {} 推荐题目，科目ID: {}, 数量: {}", userId, subjectId, limit);
 
         try {
-            // 1. 获取所有用户的答题行为
-            List<UserBehavior> allBehaviors = fetchAllUserBehaviors(subjectId);
+            List<CollaborativeFilteringEngine.ScoredQuestion> candidates =
+                    cfEngine.recommend(userId, subjectId, limit);
 
-            if (allBehaviors.isEmpty()) {
-                log.warn("没有足够的用户行为数据，返回热门题目");
+            if (candidates.isEmpty()) {
+                log.info("没有相似用户或行为数据不足，返回热门题目");
                 return getPopularQuestions(subjectId, limit);
             }
 
-            // 2. 计算用户相似度
-            List<UserSimilarity> similarUsers = calculateSimilarUsers(userId, allBehaviors, 20);
+            // 一次性查询题目详情
+            Map<Long, BizQuestion> questionMap = questionMapper.selectBatchIds(
+                    candidates.stream().map(CollaborativeFilteringEngine.ScoredQuestion::getQuestionId)
+                            .collect(Collectors.toList()))
+                    .stream()
+                    .collect(Collectors.toMap(BizQuestion::getId, q -> q));
 
-            if (similarUsers.isEmpty()) {
-                log.info("没有相似用户，返回热门题目");
-                return getPopularQuestions(subjectId, limit);
-            }
+            List<QuestionRecommendation> recommendations = new ArrayList<>(candidates.size());
+            for (CollaborativeFilteringEngine.ScoredQuestion candidate : candidates) {
+                BizQuestion question = questionMap.get(candidate.getQuestionId());
+                if (question == null) continue; // 题目已删除
 
-            log.info("找到 {} 个相似用户", similarUsers.size());
-
-            // 3. 获取当前用户已做题目
-            Set<Long> doneQuestions = getDoneQuestionIds(userId);
-
-            // 4. 推荐相似用户做过但当前用户未做的题目
-            Map<Long, Double> questionScores = new HashMap<>();
-            Map<Long, String> questionReasons = new HashMap<>();
-
-            for (UserSimilarity similarUser : similarUsers) {
-                List<UserBehavior> userBehaviors = allBehaviors.stream()
-                        .filter(b -> b.userId.equals(similarUser.userId))
-                        .collect(Collectors.toList());
-
-                for (UserBehavior behavior : userBehaviors) {
-                    if (!doneQuestions.contains(behavior.questionId)) {
-                        // 计算推荐分数
-                        double score = calculateRecommendScore(behavior, similarUser.similarity);
-                        questionScores.put(behavior.questionId,
-                                questionScores.getOrDefault(behavior.questionId, 0.0) + score);
-
-                        // 生成推荐理由
-                        if (!questionReasons.containsKey(behavior.questionId)) {
-                            questionReasons.put(behavior.questionId,
-                                    generateRecommendReason(behavior, similarUser.similarity));
-                        }
-                    }
-                }
+                QuestionRecommendation rec = new QuestionRecommendation();
+                rec.setQuestionId(candidate.getQuestionId());
+                rec.setScore(candidate.getScore());
+                rec.setReason(generateRecommendReason(candidate.isCorrect(), candidate.getSimilarity()));
+                rec.setContent(question.getContent());
+                rec.setQuestionType(question.getQuestionType());
+                recommendations.add(rec);
             }
 
-            // 5. 按分数排序并返回Top N
-            List<QuestionRecommendation> recommendations = questionScores.entrySet().stream()
-                    .sorted((e1, e2) -> Double.compare(e2.getValue(), e1.getValue()))
-                    .limit(limit)
-                    .map(entry -> {
-                        QuestionRecommendation rec = new QuestionRecommendation();
-                        rec.setQuestionId(entry.getKey());
-                        rec.setScore(entry.getValue());
-                        rec.setReason(questionReasons.get(entry.getKey()));
-
-                        // 查询题目详情
-                        BizQuestion question = questionMapper.selectById(entry.getKey());
-                        if (question != null) {
-                            rec.setContent(question.getContent());
-                            rec.setQuestionType(question.getQuestionType());
-                        }
-
-                        return rec;
-                    })
-                    .collect(Collectors.toList());
-
             log.info("成功生成 {} 条推荐", recommendations.size());
             return recommendations;
 
@@ -236,230 +147,19 @@ public class RecommendationService {
         }
     }
 
-    /**
-     * 计算用户相似度（余弦相似度）
-     */
-    private List<UserSimilarity> calculateSimilarUsers(Long targetUserId, List<UserBehavior> allBehaviors, int k) {
-        // 获取目标用户的行为向量
-        Map<Long, UserBehavior> targetVector = allBehaviors.stream()
-                .filter(b -> b.userId.equals(targetUserId))
-                .collect(Collectors.toMap(b -> b.questionId, b -> b, (a, b) -> a));
-
-        if (targetVector.isEmpty()) {
-            log.warn("目标用户 {} 没有行为数据", targetUserId);
-            return Collections.emptyList();
-        }
-
-        // 计算与其他用户的相似度
-        Map<Long, List<UserBehavior>> userBehaviors = allBehaviors.stream()
-                .filter(b -> !b.userId.equals(targetUserId))
-                .collect(Collectors.groupingBy(b -> b.userId));
-
-        List<UserSimilarity> similarities = new ArrayList<>();
-
-        for (Map.Entry<Long, List<UserBehavior>> entry : userBehaviors.entrySet()) {
-            Long otherUserId = entry.getKey();
-            Map<Long, UserBehavior> otherVector = entry.getValue().stream()
-                    .collect(Collectors.toMap(b -> b.questionId, b -> b, (a, b) -> a));
-
-            double similarity = cosineSimilarity(targetVector, otherVector);
-            if (similarity > 0.1) { // 相似度阈值
-                similarities.add(new UserSimilarity(otherUserId, similarity));
-            }
-        }
-
-        // 排序并返回Top K
-        Collections.sort(similarities);
-        return similarities.stream().limit(k).collect(Collectors.toList());
-    }
-
-    /**
-     * 余弦相似度计算
-     */
-    private double cosineSimilarity(Map<Long, UserBehavior> vec1, Map<Long, UserBehavior> vec2) {
-        Set<Long> commonQuestions = new HashSet<>(vec1.keySet());
-        commonQuestions.retainAll(vec2.keySet());
-
-        if (commonQuestions.isEmpty()) {
-            return 0.0;
-        }
-
-        double dotProduct = 0.0;
-        double norm1 = 0.0;
-        double norm2 = 0.0;
-
-        for (Long questionId : commonQuestions) {
-            UserBehavior b1 = vec1.get(questionId);
-            UserBehavior b2 = vec2.get(questionId);
-
-            // 特征向量：[正确性(0/1), 归一化时间(0-1), 难度(1-5)]
-            double[] f1 = buildFeatureVector(b1);
-            double[] f2 = buildFeatureVector(b2);
-
-            for (int i = 0; i < f1.length; i++) {
-                dotProduct += f1[i] * f2[i];
-                norm1 += f1[i] * f1[i];
-                norm2 += f2[i] * f2[i];
-            }
-        }
-
-        if (norm1 == 0 || norm2 == 0) {
-            return 0.0;
-        }
-
-        return dotProduct / (Math.sqrt(norm1) * Math.sqrt(norm2));
-    }
-
-    /**
-     * 构建特征向量
-     */
-    private double[] buildFeatureVector(UserBehavior behavior) {
-        return new double[]{
-                behavior.correct ? 1.0 : 0.0,
-                Math.min(behavior.timeSpent / 300.0, 1.0), // 归一化到0-1
-                behavior.difficulty / 5.0
-        };
-    }
-
-    /**
-     * 计算推荐分数
-     */
-    private double calculateRecommendScore(UserBehavior behavior, double userSimilarity) {
-        // 综合考虑用户相似度、题目难度、答题正确性
-        double baseScore = userSimilarity * 10;
-
-        // 如果相似用户答对了，增加权重
-        if (behavior.correct) {
-            baseScore *= 1.5;
-        }
-
-        // 难度适中的题目优先推荐
-        double difficultyFactor = 1.0 - Math.abs(behavior.difficulty - 3.0) / 5.0;
-        baseScore *= (0.5 + difficultyFactor);
-
-        return baseScore;
-    }
-
     /**
      * 生成推荐理由
      */
-    private String generateRecommendReason(UserBehavior behavior, double similarity) {
+    private String generateRecommendReason(boolean correct, double similarity) {
         if (similarity > 0.7) {
             return "与你学习习惯相似的同学都在练习这道题";
-        } else if (behavior.correct) {
+        } else if (correct) {
             return "这道题难度适中，建议巩固练习";
         } else {
             return "这道题是易错点，值得挑战";
         }
     }
 
-    /**
-     * 获取所有用户答题行为
-     */
-    private List<UserBehavior> fetchAllUserBehaviors(Long subjectId) {
-        List<UserBehavior> behaviors = new ArrayList<>();
-
-        try {
-            // 查询考试结果，获取用户答题数据
-            LambdaQueryWrapper<BizExamResult> wrapper = new LambdaQueryWrapper<>();
-            // 只查询最近3个月的数据，避免数据量过大
-            wrapper.ge(BizExamResult::getCreateTime,
-                LocalDateTime.now().minusMonths(3));
-            wrapper.orderByDesc(BizExamResult::getCreateTime);
-            wrapper.last("LIMIT 1000"); // 限制数量
-
-            List<BizExamResult> examResults = examResultMapper.selectList(wrapper);
-
-            for (BizExamResult result : examResults) {
-                if (result.getUserAnswers() == null) continue;
-
-                try {
-                    // 解析答案JSON
-                    ObjectMapper objectMapper = new ObjectMapper();
-                    JsonNode answersNode = objectMapper.readTree(result.getUserAnswers());
-
-                    if (answersNode.isArray()) {
-                        for (JsonNode answerNode : answersNode) {
-                            Long questionId = answerNode.get("questionId").asLong();
-                            boolean correct = answerNode.has("correct") && answerNode.get("correct").asBoolean();
-                            int timeSpent = answerNode.has("timeSpent") ? answerNode.get("timeSpent").asInt() : 60;
-
-                            // 查询题目获取难度和科目
-                            BizQuestion question = questionMapper.selectById(questionId);
-                            if (question != null) {
-                                // 如果指定了科目，只获取该科目的数据
-                                if (subjectId != null && !question.getSubjectId().equals(subjectId)) {
-                                    continue;
-                                }
-
-                                double difficulty = question.getDifficulty() != null ? question.getDifficulty() : 3.0;
-
-                                UserBehavior behavior = new UserBehavior(
-                                    result.getStudentId(),
-                                    questionId,
-                                    correct,
-                                    timeSpent,
-                                    difficulty
-                                );
-
-                                behaviors.add(behavior);
-                            }
-                        }
-                    }
-                } catch (Exception e) {
-                    log.error("解析答案JSON失败: {}", e.getMessage());
-                }
-            }
-
-            log.info("成功加载 {} 条用户行为数据", behaviors.size());
-
-        } catch (Exception e) {
-            log.error("获取用户行为数据失败", e);
-        }
-
-        return behaviors;
-    }
-
-    /**
-     * 获取用户已做题目ID
-     */
-    private Set<Long> getDoneQuestionIds(Long userId) {
-        Set<Long> doneQuestions = new HashSet<>();
-
-        try {
-            // 查询该用户所有考试记录
-            LambdaQueryWrapper<BizExamResult> wrapper = new LambdaQueryWrapper<>();
-            wrapper.eq(BizExamResult::getStudentId, userId);
-            wrapper.orderByDesc(BizExamResult::getCreateTime);
-
-            List<BizExamResult> examResults = examResultMapper.selectList(wrapper);
-
-            ObjectMapper objectMapper = new ObjectMapper();
-            for (BizExamResult result : examResults) {
-                if (result.getUserAnswers() == null) continue;
-
-                try {
-                    JsonNode answersNode = objectMapper.readTree(result.getUserAnswers());
-                    if (answersNode.isArray()) {
-                        for (JsonNode answerNode : answersNode) {
-                            Long questionId = answerNode.get("questionId").asLong();
-                            doneQuestions.add(questionId);
-                        }
-                    }
-                } catch (Exception e) {
-                    log.error("解析已做题目失败", e);
-                }
-            }
-
-            log.info("用户 {} 已做 {} 道题目", userId, doneQuestions.size());
-
-        } catch (Exception e) {
-            log.error("获取已做题目失败", e);
-        }
-
-        return doneQuestions;
-    }
-
     /**
      * 获取热门题目（降级方案）
      */
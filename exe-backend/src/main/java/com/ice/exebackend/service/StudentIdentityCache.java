@@ -0,0 +1,208 @@
+package com.ice.exebackend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ice.exebackend.dto.StudentIdentityDTO;
+import com.ice.exebackend.entity.BizStudent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 学生身份缓存（对战等 WebSocket 热路径使用）
+ *
+ * - 握手时按学号解析身份，快照写入 Session 属性，同时在 Redis 中保留一份供其他节点读取（如对手信息）；
+ *   学号 -> ID 的映射也缓存在 Redis，重复连接时直接读取共享快照，版本号未变时不访问数据库
+ * - 每个学生在 Redis 中有一个身份版本号，积分或资料变更时 {@link #invalidate(Long)} 使版本号自增；
+ *   Session 中的快照只在需要积分的低频操作（加入匹配）时比对一次版本号，过期才重新查库
+ * - 答题、使用道具只读 Session 属性，不访问数据库
+ */
+@Service
+public class StudentIdentityCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(StudentIdentityCache.class);
+
+    // Session 属性名
+    public static final String ATTR_STUDENT_IDENTITY = "studentIdentity";
+
+    private static final String VERSION_KEY_PREFIX = "student:identity:ver:";
+    private static final String SNAPSHOT_KEY_PREFIX = "student:identity:";
+    private static final String ID_KEY_PREFIX = "student:identity:no:";
+    private static final long SNAPSHOT_TTL_HOURS = 6;
+    private static final long ID_TTL_DAYS = 7;
+
+    // BizStudentServiceImpl 在更新学生时会回调本类，这里延迟注入避免循环依赖
+    @Lazy
+    @Autowired
+    private BizStudentService studentService;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * 握手时调用：按学号解析身份并写入 Session 属性
+     *
+     * @return 解析到的身份，学生不存在时返回 null
+     */
+    public StudentIdentityDTO resolveForHandshake(String studentNo, Map<String, Object> attributes) {
+        // 快照要按「先版本号、后数据」生成，需要先知道ID；映射命中时只读共享快照
+        Long cachedId = cachedStudentId(studentNo);
+        StudentIdentityDTO identity = cachedId != null ? lookup(cachedId) : null;
+        if (identity == null || !studentNo.equals(identity.getStudentNo())) {
+            // 首次连接，或学号已被修改（映射指向的学生换了学号）
+            BizStudent student = studentService.lambdaQuery()
+                    .select(BizStudent::getId)
+                    .eq(BizStudent::getStudentNo, studentNo)
+                    .one();
+            if (student == null) return null;
+            cacheStudentId(studentNo, student.getId());
+            identity = lookup(student.getId());
+            if (identity == null) return null;
+        }
+        attributes.put(ATTR_STUDENT_IDENTITY, identity);
+        return identity;
+    }
+
+    /**
+     * 读取 Session 中的身份快照（纯内存，不做版本校验）
+     */
+    public static StudentIdentityDTO fromSession(WebSocketSession session) {
+        if (session == null) return null;
+        return (StudentIdentityDTO) session.getAttributes().get(ATTR_STUDENT_IDENTITY);
+    }
+
+    /**
+     * 读取 Session 中的身份快照，并用一次 Redis GET 校验版本号，过期则重新加载
+     */
+    public StudentIdentityDTO currentIdentity(WebSocketSession session) {
+        StudentIdentityDTO identity = fromSession(session);
+        if (identity == null) return null;
+        if (identity.getVersion() == currentVersion(identity.getId())) {
+            return identity;
+        }
+        StudentIdentityDTO refreshed = load(identity.getId());
+        if (refreshed == null) return identity;
+        session.getAttributes().put(ATTR_STUDENT_IDENTITY, refreshed);
+        return refreshed;
+    }
+
+    /**
+     * 按学生ID读取身份（优先 Redis 快照，未命中再查库并回填）
+     */
+    public StudentIdentityDTO lookup(Long studentId) {
+        if (studentId == null) return null;
+        try {
+            List<String> values = redisTemplate.opsForValue().multiGet(
+                    Arrays.asList(SNAPSHOT_KEY_PREFIX + studentId, VERSION_KEY_PREFIX + studentId));
+            if (values != null && values.get(0) != null) {
+                StudentIdentityDTO identity = objectMapper.readValue(values.get(0), StudentIdentityDTO.class);
+                long version = values.get(1) != null ? Long.parseLong(values.get(1)) : 0L;
+                if (identity.getVersion() == version) {
+                    return identity;
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("读取学生身份快照失败: studentId={}", studentId, e);
+        }
+        return load(studentId);
+    }
+
+    /**
+     * 学生积分 / 资料变更后调用：版本号自增并删除共享快照
+     */
+    public void invalidate(Long studentId) {
+        if (studentId == null) return;
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // 在事务中：提交后再自增版本号，否则其他线程可能在提交前读到旧数据却拿到新版本号
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    bumpVersion(studentId);
+                }
+            });
+        } else {
+            bumpVersion(studentId);
+        }
+    }
+
+    private void bumpVersion(Long studentId) {
+        try {
+            redisTemplate.opsForValue().increment(VERSION_KEY_PREFIX + studentId);
+            redisTemplate.delete(SNAPSHOT_KEY_PREFIX + studentId);
+        } catch (Exception e) {
+            logger.warn("使学生身份缓存失效失败: studentId={}", studentId, e);
+        }
+    }
+
+    /**
+     * 查库生成快照：先读版本号再查数据，并发变更时快照只会被判定为过期，而不会把旧数据标成新版本
+     */
+    private StudentIdentityDTO load(Long studentId) {
+        long version = currentVersion(studentId);
+        BizStudent student = studentService.getById(studentId);
+        return student != null ? snapshot(student, version) : null;
+    }
+
+    private StudentIdentityDTO snapshot(BizStudent student, long version) {
+        StudentIdentityDTO identity = new StudentIdentityDTO();
+        identity.setId(student.getId());
+        identity.setStudentNo(student.getStudentNo());
+        identity.setName(student.getName());
+        identity.setAvatar(student.getAvatar());
+        identity.setAvatarFrameStyle(student.getAvatarFrameStyle());
+        int points = student.getPoints() != null ? student.getPoints() : 0;
+        identity.setPoints(points);
+        identity.setTier(BattleGameManager.calculateTier(points));
+        identity.setVersion(version);
+
+        try {
+            redisTemplate.opsForValue().set(SNAPSHOT_KEY_PREFIX + student.getId(),
+                    objectMapper.writeValueAsString(identity), SNAPSHOT_TTL_HOURS, TimeUnit.HOURS);
+        } catch (Exception e) {
+            logger.warn("写入学生身份快照失败: studentId={}", student.getId(), e);
+        }
+        return identity;
+    }
+
+    private Long cachedStudentId(String studentNo) {
+        try {
+            String id = redisTemplate.opsForValue().get(ID_KEY_PREFIX + studentNo);
+            return id != null ? Long.valueOf(id) : null;
+        } catch (Exception e) {
+            logger.warn("读取学号映射失败: studentNo={}", studentNo, e);
+            return null;
+        }
+    }
+
+    private void cacheStudentId(String studentNo, Long studentId) {
+        try {
+            redisTemplate.opsForValue().set(ID_KEY_PREFIX + studentNo, String.valueOf(studentId), ID_TTL_DAYS, TimeUnit.DAYS);
+        } catch (Exception e) {
+            logger.warn("写入学号映射失败: studentNo={}", studentNo, e);
+        }
+    }
+
+    private long currentVersion(Long studentId) {
+        try {
+            String v = redisTemplate.opsForValue().get(VERSION_KEY_PREFIX + studentId);
+            return v != null ? Long.parseLong(v) : 0L;
+        } catch (Exception e) {
+            // Redis 不可用时返回 -1，使快照总被视为过期，退回查库
+            logger.warn("读取学生身份版本号失败: studentId={}", studentId, e);
+            return -1L;
+        }
+    }
+}
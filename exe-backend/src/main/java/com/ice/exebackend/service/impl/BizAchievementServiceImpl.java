@@ -5,8 +5,10 @@ import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.ice.exebackend.entity.BizAchievement;
 import com.ice.exebackend.entity.BizLearningActivity;
 import com.ice.exebackend.entity.BizStudent;
+import com.ice.exebackend.entity.BizStudentCounter;
 import com.ice.exebackend.entity.BizUserAchievement;
 import com.ice.exebackend.mapper.BizAchievementMapper;
+import com.ice.exebackend.mapper.BizStudentCounterMapper;
 import com.ice.exebackend.mapper.BizUserAchievementMapper;
 import com.ice.exebackend.service.BizAchievementService;
 import com.ice.exebackend.service.BizLearningActivityService;
@@ -31,6 +33,28 @@ public class BizAchievementServiceImpl extends ServiceImpl<BizAchievementMapper,
     private BizStudentService studentService;
     @Autowired
     private BizLearningActivityService activityService;
+    @Autowired
+    private BizStudentCounterMapper studentCounterMapper;
+
+    @Override
+    @Transactional
+    public List<BizAchievement> recordExamCounters(Long studentId, boolean perfectPaper, int answeredQuestions) {
+        List<BizAchievement> newUnlocked = new ArrayList<>();
+        if (!perfectPaper && answeredQuestions <= 0) return newUnlocked;
+
+        // 原子累加后读回累计值，不再每次聚合全部历史成绩
+        studentCounterMapper.increment(studentId, perfectPaper ? 1 : 0, Math.max(answeredQuestions, 0));
+        BizStudentCounter counter = studentCounterMapper.selectById(studentId);
+        if (counter == null) return newUnlocked;
+
+        if (perfectPaper) {
+            newUnlocked.addAll(checkAndAward(studentId, "PERFECT_PAPER", counter.getPerfectPaperCount()));
+        }
+        if (answeredQuestions > 0) {
+            newUnlocked.addAll(checkAndAward(studentId, "TOTAL_QUESTIONS", counter.getAnsweredQuestionCount()));
+        }
+        return newUnlocked;
+    }
 
     @Override
     @Transactional
@@ -5,17 +5,21 @@ import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.ice.exebackend.entity.BizClass;
 import com.ice.exebackend.entity.BizClassStudent;
 import com.ice.exebackend.entity.BizHomework;
+import com.ice.exebackend.event.ClassMembershipChangedEvent;
 import com.ice.exebackend.mapper.BizClassMapper;
 import com.ice.exebackend.mapper.BizClassStudentMapper;
 import com.ice.exebackend.mapper.BizHomeworkMapper;
 import com.ice.exebackend.service.BizClassService;
 import com.ice.exebackend.utils.DataScopeUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
 import java.util.Random;
 import java.util.stream.Collectors;
 
@@ -31,6 +35,9 @@ public class BizClassServiceImpl extends ServiceImpl<BizClassMapper, BizClass> i
     @Autowired
     private BizHomeworkMapper homeworkMapper;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     /**
      * 【重写】获取班级列表，应用数据权限过滤
      * 教师只能看到自己负责的班级，管理员可以看到所有班级
@@ -50,6 +57,7 @@ public class BizClassServiceImpl extends ServiceImpl<BizClassMapper, BizClass> i
         bizClass.setCode(generateInviteCode());
         bizClass.setCreateTime(LocalDateTime.now());
         this.save(bizClass);
+        publishChange(bizClass.getTeacherId());
         return bizClass;
     }
 
@@ -68,7 +76,12 @@ public class BizClassServiceImpl extends ServiceImpl<BizClassMapper, BizClass> i
         // 保留原有的邀请码和创建时间
         bizClass.setCode(existing.getCode());
         bizClass.setCreateTime(existing.getCreateTime());
-        return this.updateById(bizClass);
+        boolean updated = this.updateById(bizClass);
+        if (updated && bizClass.getTeacherId() != null) {
+            // 负责教师可能变了，新旧教师的可见范围都要刷新
+            publishChange(existing.getTeacherId(), bizClass.getTeacherId());
+        }
+        return updated;
     }
 
     @Override
@@ -109,6 +122,7 @@ public class BizClassServiceImpl extends ServiceImpl<BizClassMapper, BizClass> i
 
         // 删除班级
         this.removeById(id);
+        publishChange(existingClass.getTeacherId());
         return "删除成功";
     }
 
@@ -140,17 +154,28 @@ public class BizClassServiceImpl extends ServiceImpl<BizClassMapper, BizClass> i
         relation.setClassId(bizClass.getId());
         relation.setStudentId(studentId);
         relation.setCreateTime(LocalDateTime.now());
-        return classStudentMapper.insert(relation) > 0;
+        boolean joined = classStudentMapper.insert(relation) > 0;
+        if (joined) {
+            publishChange(bizClass.getTeacherId());
+        }
+        return joined;
     }
 
     @Override
     @Transactional
     public boolean removeStudent(Long classId, Long studentId) {
-        return classStudentMapper.delete(
+        boolean removed = classStudentMapper.delete(
                 new QueryWrapper<BizClassStudent>()
                         .eq("class_id", classId)
                         .eq("student_id", studentId)
         ) > 0;
+        if (removed) {
+            BizClass bizClass = this.getById(classId);
+            if (bizClass != null) {
+                publishChange(bizClass.getTeacherId());
+            }
+        }
+        return removed;
     }
 
     @Override
@@ -196,6 +221,15 @@ public class BizClassServiceImpl extends ServiceImpl<BizClassMapper, BizClass> i
         return newCode;
     }
 
+    /**
+     * 班级或成员变更后，让相关教师的数据权限缓存失效（事务提交后生效）
+     */
+    private void publishChange(Long... teacherIds) {
+        List<Long> ids = Arrays.asList(teacherIds);
+        if (ids.stream().allMatch(Objects::isNull)) return;
+        eventPublisher.publishEvent(new ClassMembershipChangedEvent(this, ids));
+    }
+
     /**
      * 生成6位随机邀请码
      */
@@ -4,10 +4,12 @@ import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.ice.exebackend.entity.BizCourse;
 import com.ice.exebackend.entity.BizCourseResource;
+import com.ice.exebackend.event.CourseChangedEvent;
 import com.ice.exebackend.mapper.BizCourseMapper;
 import com.ice.exebackend.mapper.BizCourseResourceMapper;
 import com.ice.exebackend.service.BizCourseService; // 需创建此接口继承 IService
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -19,6 +21,9 @@ public class BizCourseServiceImpl extends ServiceImpl<BizCourseMapper, BizCourse
     @Autowired
     private BizCourseResourceMapper resourceMapper;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     public BizCourse getCourseWithResources(Long id) {
         BizCourse course = this.getById(id);
         if (course != null) {
@@ -41,4 +46,17 @@ public class BizCourseServiceImpl extends ServiceImpl<BizCourseMapper, BizCourse
             resourceMapper.updateById(resource);
         }
     }
-}
\ No newline at end of file
+
+    @Transactional
+    public void saveCourse(BizCourse course) {
+        this.saveOrUpdate(course);
+        eventPublisher.publishEvent(new CourseChangedEvent(this, CourseChangedEvent.ChangeType.SAVED, course.getId()));
+    }
+
+    @Transactional
+    public void deleteCourse(Long id) {
+        this.removeById(id);
+        resourceMapper.delete(new QueryWrapper<BizCourseResource>().eq("course_id", id));
+        eventPublisher.publishEvent(new CourseChangedEvent(this, CourseChangedEvent.ChangeType.DELETED, id));
+    }
+}
@@ -377,7 +377,7 @@ public class BizExamResultServiceImpl extends ServiceImpl<BizExamResultMapper, B
             query.eq("published", params.get("published"));
         }
 
-        // 批改状态筛选（0=未提交，1=已提交待批改，2=已批改）
+        // 批改状态筛选（0=未提交，1=已提交待批改，2=已批改，4=AI 批改中）
         if (params.containsKey("status") && params.get("status") != null) {
             query.eq("status", params.get("status"));
         }
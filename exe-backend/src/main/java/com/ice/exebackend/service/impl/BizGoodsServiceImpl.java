@@ -9,6 +9,7 @@ import com.ice.exebackend.mapper.BizGoodsMapper;
 import com.ice.exebackend.mapper.BizStudentMapper;
 import com.ice.exebackend.mapper.BizUserGoodsMapper;
 import com.ice.exebackend.service.BizGoodsService;
+import com.ice.exebackend.service.StudentIdentityCache;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -24,6 +25,8 @@ public class BizGoodsServiceImpl extends ServiceImpl<BizGoodsMapper, BizGoods> i
     private BizUserGoodsMapper userGoodsMapper;
     @Autowired
     private BizStudentMapper studentMapper;
+    @Autowired
+    private StudentIdentityCache studentIdentityCache;
 
     @Override
     public List<BizGoods> getGoodsListForStudent(Long studentId) {
@@ -65,6 +68,7 @@ public class BizGoodsServiceImpl extends ServiceImpl<BizGoodsMapper, BizGoods> i
         }
         student.setPoints(student.getPoints() - goods.getPrice());
         studentMapper.updateById(student);
+        studentIdentityCache.invalidate(studentId);
 
         // 4. 记录兑换
         BizUserGoods userGoods = new BizUserGoods();
@@ -3,9 +3,11 @@ package com.ice.exebackend.service.impl;
 import com.alibaba.fastjson.JSON;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.ice.exebackend.dto.PaperConstraintModel;
 import com.ice.exebackend.dto.PaperDTO;
 import com.ice.exebackend.dto.PaperKnowledgePointDTO;
 import com.ice.exebackend.entity.BizPaper;
+import com.ice.exebackend.event.PaperChangedEvent;
 import com.ice.exebackend.entity.BizPaperGroup; // 导入BizPaperGroup
 import com.ice.exebackend.entity.BizPaperImage;
 import com.ice.exebackend.entity.BizPaperQuestion;
@@ -22,7 +24,11 @@ import com.ice.exebackend.mapper.BizQuestionKnowledgePointMapper;
 import com.ice.exebackend.service.BizPaperService;
 import com.ice.exebackend.service.BizQuestionService;
 import com.ice.exebackend.service.BizKnowledgePointService;
+import com.ice.exebackend.service.PaperCacheService;
+import com.ice.exebackend.service.PaperCandidatePoolService;
 import com.ice.exebackend.utils.GeneticPaperUtil;
+import com.ice.exebackend.utils.IslandGeneticPaperEngine;
+import com.ice.exebackend.utils.QuestionCandidatePartition;
 import org.apache.poi.util.Units;
 import org.apache.poi.xwpf.usermodel.*;
 import org.slf4j.Logger;
@@ -30,6 +36,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.CollectionUtils;
@@ -47,6 +54,7 @@ import com.ice.exebackend.utils.GeneticPaperUtil; // 解决 "找不到符号 变
 
 import java.io.FileInputStream;
 import java.io.InputStream;
+import java.io.Serializable;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -84,96 +92,192 @@ public class BizPaperServiceImpl extends ServiceImpl<BizPaperMapper, BizPaper> i
     @Autowired
     private BizKnowledgePointService knowledgePointService;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private PaperCacheService paperCache;
+
     @Value("${file.upload-dir}")
     private String uploadDir;
 
-    @Override
-    public List<PaperDTO.PaperGroupDTO> generateSmartPaper(SmartPaperReq req) {
-        // 1. 准备组卷约束
-        Map<Integer, Integer> typeCountMap = new HashMap<>();
-        typeCountMap.put(1, req.getSingleCount());
-        typeCountMap.put(2, req.getMultiCount());
-        typeCountMap.put(3, req.getFillCount());
-        typeCountMap.put(4, req.getJudgeCount());
-        typeCountMap.put(5, req.getSubjectiveCount());
+    // 智能组卷引擎：island（并行岛屿模型，默认）/ classic（原单线程实现）
+    @Value("${paper.ga.engine:island}")
+    private String gaEngine;
 
-        // 2. 准备候选池 (Candidate Pool)
-        // 为了保证 GA 有选择空间，我们按需求的 2-3 倍数量去数据库拉取题目
-        Map<Integer, List<BizQuestion>> candidatePool = new HashMap<>();
+    @Value("${paper.ga.islands:0}")
+    private int gaIslands;
 
-        for (Map.Entry<Integer, Integer> entry : typeCountMap.entrySet()) {
-            if (entry.getValue() <= 0) continue;
+    @Value("${paper.ga.population-per-island:32}")
+    private int gaPopulationPerIsland;
 
-            // 需求 N 道，我们查 3N 道，保证随机性和优化空间
-            int fetchSize = entry.getValue() * 3;
+    @Value("${paper.ga.max-generations:300}")
+    private int gaMaxGenerations;
 
-            QueryWrapper<BizQuestion> query = new QueryWrapper<>();
-            query.eq("subject_id", req.getSubjectId())
-                    .eq("question_type", entry.getKey());
+    @Value("${paper.ga.time-budget-ms:200}")
+    private long gaTimeBudgetMs;
 
-            if (StringUtils.hasText(req.getGrade())) {
-                query.eq("grade", req.getGrade());
-            }
+    @Value("${paper.ga.max-time-budget-ms:2000}")
+    private long gaMaxTimeBudgetMs;
+
+    @Value("${paper.ga.candidate-sample-size:600}")
+    private int gaCandidateSampleSize;
+
+    @Autowired
+    private PaperCandidatePoolService candidatePoolService;
 
-            // ✅ 先查询总数，验证题库充足性
-            int totalCount = (int) questionService.count(query);
-            if (totalCount < entry.getValue()) {
+    @Override
+    public List<PaperDTO.PaperGroupDTO> generateSmartPaper(SmartPaperReq req) {
+        // 1. 准备组卷约束
+        PaperConstraintModel model = buildConstraintModel(req);
+
+        // 2. 准备候选池：从内存候选索引中均匀抽样（元数据 + 知识点），排除指定 / 近期用过的题
+        Map<Integer, List<BizQuestion>> candidatePool = new HashMap<>();
+        Map<Long, List<Long>> questionKnowledgePoints = new HashMap<>();
+        Set<Long> requiredKnowledge = model.getKnowledgePointMinCounts().keySet();
+
+        for (Map.Entry<Integer, Integer> entry : model.getTypeCounts().entrySet()) {
+            if (entry.getValue() == null || entry.getValue() <= 0) continue;
+            int type = entry.getKey();
+            int need = entry.getValue();
+            int limit = Math.max(gaCandidateSampleSize, need * 4);
+
+            QuestionCandidatePartition.Sample sample = candidatePoolService.sample(
+                    req.getSubjectId(), req.getGrade(), type, limit, model.getExcludedQuestionIds(), requiredKnowledge);
+            if (sample.getAvailable() < need && !model.getExcludedQuestionIds().isEmpty()) {
+                // 排除后不够用时放宽排除条件，保证能组出卷
+                logger.warn("排除近期用题后{}不足（需要{}道，剩余{}道），该题型不再排除",
+                        getQuestionTypeName(type), need, sample.getAvailable());
+                sample = candidatePoolService.sample(
+                        req.getSubjectId(), req.getGrade(), type, limit, null, requiredKnowledge);
+            }
+            if (sample.getAvailable() < need) {
                 throw new RuntimeException(String.format(
                     "题库不足：%s需要%d道，但只有%d道",
-                    getQuestionTypeName(entry.getKey()),
-                    entry.getValue(),
-                    totalCount
+                    getQuestionTypeName(type),
+                    need,
+                    sample.getAvailable()
                 ));
             }
+            candidatePool.put(type, sample.getQuestions());
+            questionKnowledgePoints.putAll(sample.getKnowledgePoints());
+        }
 
-            // ✅ 优化：使用随机偏移代替 ORDER BY RAND()
-            List<BizQuestion> pool;
-            if (totalCount <= fetchSize) {
-                // 题库数量不足3倍，全部查出
-                pool = questionService.list(query);
-            } else {
-                // 随机选择起始位置，避免 ORDER BY RAND() 的全表扫描
-                int offset = new Random().nextInt(totalCount - fetchSize + 1);
-                query.last("LIMIT " + fetchSize + " OFFSET " + offset);
-                pool = questionService.list(query);
+        // 3. 运行遗传算法
+        List<BizQuestion> finalQuestions;
+        Map<Long, Integer> scores = new HashMap<>();
+        if ("classic".equalsIgnoreCase(gaEngine)) {
+            finalQuestions = GeneticPaperUtil.evolution(
+                    candidatePool,
+                    model.getTypeCounts(),
+                    model.getTargetDifficulty(),
+                    100.0 // 暂时忽略总分约束，由算法自动计算
+            );
+            for (BizQuestion q : finalQuestions) {
+                scores.put(q.getId(), PaperConstraintModel.defaultScore(q.getQuestionType()));
+            }
+        } else {
+            IslandGeneticPaperEngine.Config config = buildGaConfig();
+            config.setTimeBudgetMs(model.getTimeBudgetMs());
+            IslandGeneticPaperEngine.Result result =
+                    new IslandGeneticPaperEngine(candidatePool, model, questionKnowledgePoints, config).evolve();
+            logger.debug("智能组卷完成: fitness={}, difficulty={}, 知识点覆盖 {}/{}, 总分={}, generations={}",
+                    result.getFitness(), result.getDifficulty(), result.getCoveredKnowledgePoints(),
+                    result.getRequiredKnowledgePoints(), result.getTotalScore(), result.getGenerations());
+            finalQuestions = result.getQuestions();
+            for (int i = 0; i < finalQuestions.size(); i++) {
+                scores.put(finalQuestions.get(i).getId(), result.getScores()[i]);
             }
-
-            candidatePool.put(entry.getKey(), pool);
         }
 
-        // 3. 运行遗传算法
+        // 4. 候选池只有组卷元数据，按主键取回选中题目的完整内容
+        List<BizQuestion> fullQuestions = loadQuestionsInOrder(finalQuestions);
+
+        // 5. 将扁平的题目列表转换为前端需要的分组结构 (GroupDTO)
+        return convertToGroups(fullQuestions, scores);
+    }
+
+    private PaperConstraintModel buildConstraintModel(SmartPaperReq req) {
+        PaperConstraintModel model = new PaperConstraintModel();
+        Map<Integer, Integer> typeCountMap = new HashMap<>();
+        typeCountMap.put(1, req.getSingleCount());
+        typeCountMap.put(2, req.getMultiCount());
+        typeCountMap.put(3, req.getFillCount());
+        typeCountMap.put(4, req.getJudgeCount());
+        typeCountMap.put(5, req.getSubjectiveCount());
+        model.setTypeCounts(typeCountMap);
+
         // 假设目标难度来自前端 req.getTargetDifficulty()，如果没有则默认 0.5
-        double targetDiff = req.getTargetDifficulty() != null ? req.getTargetDifficulty() : 0.5;
+        model.setTargetDifficulty(req.getTargetDifficulty() != null ? req.getTargetDifficulty() : 0.5);
+        if (req.getTypeScores() != null) {
+            model.setTypeScores(req.getTypeScores());
+        }
+        model.setTargetTotalScore(req.getTotalScore());
 
-        List<BizQuestion> finalQuestions = GeneticPaperUtil.evolution(
-                candidatePool,
-                typeCountMap,
-                targetDiff,
-                100.0 // 暂时忽略总分约束，由算法自动计算
-        );
+        if (!CollectionUtils.isEmpty(req.getKnowledgePointIds())) {
+            int minCount = req.getKnowledgePointMinCount() != null && req.getKnowledgePointMinCount() > 0
+                    ? req.getKnowledgePointMinCount() : 1;
+            for (Long kpId : req.getKnowledgePointIds()) {
+                model.getKnowledgePointMinCounts().put(kpId, minCount);
+            }
+        }
+
+        if (!CollectionUtils.isEmpty(req.getExcludeQuestionIds())) {
+            model.getExcludedQuestionIds().addAll(req.getExcludeQuestionIds());
+        }
+        if (req.getExcludeRecentPaperCount() != null && req.getExcludeRecentPaperCount() > 0) {
+            model.getExcludedQuestionIds().addAll(
+                    paperQuestionMapper.selectRecentQuestionIds(req.getSubjectId(), req.getExcludeRecentPaperCount()));
+        }
+
+        long budget = req.getTimeBudgetMs() != null && req.getTimeBudgetMs() > 0 ? req.getTimeBudgetMs() : gaTimeBudgetMs;
+        model.setTimeBudgetMs(Math.min(budget, gaMaxTimeBudgetMs));
+        return model;
+    }
+
+    private List<BizQuestion> loadQuestionsInOrder(List<BizQuestion> selected) {
+        if (selected.isEmpty()) return new ArrayList<>();
+        List<Long> ids = selected.stream().map(BizQuestion::getId).collect(Collectors.toList());
+        Map<Long, BizQuestion> byId = questionService.listByIds(ids).stream()
+                .collect(Collectors.toMap(BizQuestion::getId, q -> q));
+        List<BizQuestion> result = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            BizQuestion q = byId.get(id);
+            if (q != null) result.add(q);
+        }
+        return result;
+    }
 
-        // 4. 将扁平的题目列表转换为前端需要的分组结构 (GroupDTO)
-        return convertToGroups(finalQuestions);
+    private IslandGeneticPaperEngine.Config buildGaConfig() {
+        IslandGeneticPaperEngine.Config config = new IslandGeneticPaperEngine.Config();
+        if (gaIslands > 0) {
+            config.setIslands(gaIslands);
+        }
+        config.setPopulationPerIsland(gaPopulationPerIsland);
+        config.setMaxGenerations(gaMaxGenerations);
+        config.setTimeBudgetMs(gaTimeBudgetMs);
+        return config;
     }
 
     // 辅助方法：将 List<Question> 转为 List<GroupDTO>
-    private List<PaperDTO.PaperGroupDTO> convertToGroups(List<BizQuestion> questions) {
+    private List<PaperDTO.PaperGroupDTO> convertToGroups(List<BizQuestion> questions, Map<Long, Integer> scores) {
         Map<Integer, List<BizQuestion>> groupedMap = questions.stream()
                 .collect(Collectors.groupingBy(BizQuestion::getQuestionType));
 
         List<PaperDTO.PaperGroupDTO> result = new ArrayList<>();
 
         // 按照标准顺序添加分组
-        addGroupIfPresent(result, groupedMap, 1, "一、单选题");
-        addGroupIfPresent(result, groupedMap, 2, "二、多选题");
-        addGroupIfPresent(result, groupedMap, 4, "三、判断题");
-        addGroupIfPresent(result, groupedMap, 3, "四、填空题");
-        addGroupIfPresent(result, groupedMap, 5, "五、主观题");
+        addGroupIfPresent(result, groupedMap, scores, 1, "一、单选题");
+        addGroupIfPresent(result, groupedMap, scores, 2, "二、多选题");
+        addGroupIfPresent(result, groupedMap, scores, 4, "三、判断题");
+        addGroupIfPresent(result, groupedMap, scores, 3, "四、填空题");
+        addGroupIfPresent(result, groupedMap, scores, 5, "五、主观题");
 
         return result;
     }
 
-    private void addGroupIfPresent(List<PaperDTO.PaperGroupDTO> result, Map<Integer, List<BizQuestion>> map, int type, String name) {
+    private void addGroupIfPresent(List<PaperDTO.PaperGroupDTO> result, Map<Integer, List<BizQuestion>> map,
+                                   Map<Long, Integer> scores, int type, String name) {
         List<BizQuestion> list = map.get(type);
         if (list != null && !list.isEmpty()) {
             PaperDTO.PaperGroupDTO group = new PaperDTO.PaperGroupDTO();
@@ -185,8 +289,8 @@ public class BizPaperServiceImpl extends ServiceImpl<BizPaperMapper, BizPaper> i
                 BizQuestion q = list.get(i);
                 BizPaperQuestion pq = new BizPaperQuestion();
                 pq.setQuestionId(q.getId());
-                // 这里使用之前工具类里的逻辑或默认分值
-                pq.setScore(type == 2 ? 4 : (type == 5 ? 10 : 2));
+                // 分值来自约束模型（可能为满足目标总分做过调整）
+                pq.setScore(scores.getOrDefault(q.getId(), PaperConstraintModel.defaultScore(type)));
                 pq.setSortOrder(i);
                 pq.setQuestionDetail(q); // 确保前端能显示
                 pqs.add(pq);
@@ -208,6 +312,7 @@ public class BizPaperServiceImpl extends ServiceImpl<BizPaperMapper, BizPaper> i
         } else {
             updatePaperImages(paperDTO.getId(), paperDTO.getPaperImages());
         }
+        paperCache.invalidate(paperDTO.getId());
         return true;
     }
 
@@ -225,9 +330,37 @@ public class BizPaperServiceImpl extends ServiceImpl<BizPaperMapper, BizPaper> i
             paperGroupMapper.delete(new QueryWrapper<BizPaperGroup>().eq("paper_id", paperDTO.getId())); // 【修复】删除旧分组
             paperQuestionMapper.delete(new QueryWrapper<BizPaperQuestion>().eq("paper_id", paperDTO.getId()));
         }
+        paperCache.invalidate(paperDTO.getId());
+        eventPublisher.publishEvent(new PaperChangedEvent(this, PaperChangedEvent.ChangeType.UPDATED, paperDTO.getId()));
         return true;
     }
 
+    @Override
+    public boolean updatePaperStatus(Long id, Integer status) {
+        BizPaper paper = new BizPaper();
+        paper.setId(id);
+        paper.setStatus(status);
+        boolean success = this.updateById(paper);
+        if (success) {
+            paperCache.invalidate(id);
+            PaperChangedEvent.ChangeType type = Integer.valueOf(1).equals(status)
+                    ? PaperChangedEvent.ChangeType.PUBLISHED : PaperChangedEvent.ChangeType.UNPUBLISHED;
+            eventPublisher.publishEvent(new PaperChangedEvent(this, type, id));
+        }
+        return success;
+    }
+
+    @Override
+    public boolean removeById(Serializable id) {
+        boolean success = super.removeById(id);
+        if (success) {
+            paperCache.invalidate(Long.valueOf(id.toString()));
+            eventPublisher.publishEvent(new PaperChangedEvent(this, PaperChangedEvent.ChangeType.DELETED,
+                    Long.valueOf(id.toString())));
+        }
+        return success;
+    }
+
     // 【新增】更新分组和题目的核心逻辑
     // 【核心修改】重构此方法
     private void updatePaperGroupsAndQuestions(Long paperId, List<PaperDTO.PaperGroupDTO> groups) {
@@ -279,6 +412,7 @@ public class BizPaperServiceImpl extends ServiceImpl<BizPaperMapper, BizPaper> i
      */
     @Transactional
     public void syncPaperKnowledgePoints(Long paperId) {
+        paperCache.invalidate(paperId);
         // 1. 删除旧的知识点关联
         paperKnowledgePointMapper.delete(
                 new QueryWrapper<BizPaperKnowledgePoint>().eq("paper_id", paperId)
@@ -352,6 +486,13 @@ public class BizPaperServiceImpl extends ServiceImpl<BizPaperMapper, BizPaper> i
     // 【修复】查询逻辑，适配分组结构
     @Override
     public PaperDTO getPaperWithQuestionsById(Long id) {
+        return paperCache.get(id, this::loadPaperWithQuestions);
+    }
+
+    /**
+     * 查库组装试卷：基本信息 + 分组 + 试题详情（手动选题卷）或图片（图片卷）
+     */
+    private PaperDTO loadPaperWithQuestions(Long id) {
         BizPaper paper = this.getById(id);
         if (paper == null) return null;
         PaperDTO dto = new PaperDTO();
@@ -13,13 +13,16 @@ import com.ice.exebackend.dto.QuestionExcelDTO;
 import com.ice.exebackend.dto.QuestionPageParams;
 import com.ice.exebackend.entity.BizQuestion;
 import com.ice.exebackend.entity.BizQuestionKnowledgePoint;
+import com.ice.exebackend.event.QuestionChangedEvent;
 import com.ice.exebackend.mapper.BizQuestionKnowledgePointMapper;
 import com.ice.exebackend.mapper.BizQuestionMapper;
 import com.ice.exebackend.service.BizQuestionService;
+import com.ice.exebackend.service.FullTextSearchService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.CollectionUtils;
@@ -48,6 +51,12 @@ public class BizQuestionServiceImpl extends ServiceImpl<BizQuestionMapper, BizQu
     @Autowired
     private com.ice.exebackend.service.BizWrongRecordService wrongRecordService;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private FullTextSearchService fullTextSearchService;
+
     @Override
     @Transactional
     public boolean createQuestionWithKnowledgePoints(QuestionDTO questionDTO) {
@@ -56,6 +65,8 @@ public class BizQuestionServiceImpl extends ServiceImpl<BizQuestionMapper, BizQu
 
         // 2. 更新关联的知识点
         updateKnowledgePoints(questionDTO.getId(), questionDTO.getKnowledgePointIds());
+
+        publishChange(QuestionChangedEvent.ChangeType.CREATED, Collections.singletonList(questionDTO.getId()));
         return true;
     }
 
@@ -67,9 +78,21 @@ public class BizQuestionServiceImpl extends ServiceImpl<BizQuestionMapper, BizQu
 
         // 2. 更新关联的知识点
         updateKnowledgePoints(questionDTO.getId(), questionDTO.getKnowledgePointIds());
+
+        publishChange(QuestionChangedEvent.ChangeType.UPDATED, Collections.singletonList(questionDTO.getId()));
         return true;
     }
 
+    /**
+     * 发布试题变更事件（监听方在事务提交后刷新各自的内存索引）
+     */
+    private void publishChange(QuestionChangedEvent.ChangeType type, List<Long> questionIds) {
+        if (CollectionUtils.isEmpty(questionIds)) {
+            return;
+        }
+        eventPublisher.publishEvent(new QuestionChangedEvent(this, type, questionIds));
+    }
+
     @Override
     public QuestionDTO getQuestionWithKnowledgePointsById(Long id) {
         BizQuestion question = this.getById(id);
@@ -213,7 +236,7 @@ public class BizQuestionServiceImpl extends ServiceImpl<BizQuestionMapper, BizQu
             queryWrapper.eq("grade", params.getGrade());
         }
         if (StringUtils.hasText(params.getContent())) {
-            queryWrapper.like("content", params.getContent());
+            fullTextSearchService.filterQuestionContent(queryWrapper, params.getContent());
         }
         queryWrapper.orderByDesc("id");
 
@@ -288,7 +311,11 @@ public class BizQuestionServiceImpl extends ServiceImpl<BizQuestionMapper, BizQu
         }
 
         if(hasUpdate) {
-            return this.update(updateWrapper);
+            boolean updated = this.update(updateWrapper);
+            if (updated) {
+                publishChange(QuestionChangedEvent.ChangeType.UPDATED, dto.getQuestionIds());
+            }
+            return updated;
         }
 
         return false;
@@ -342,6 +369,7 @@ public class BizQuestionServiceImpl extends ServiceImpl<BizQuestionMapper, BizQu
         boolean success = this.removeById(questionId);
 
         if (success) {
+            publishChange(QuestionChangedEvent.ChangeType.DELETED, Collections.singletonList(questionId));
             log.info("成功级联删除题目及所有关联数据: questionId={}", questionId);
         } else {
             log.error("删除题目失败: questionId={}", questionId);
@@ -14,6 +14,7 @@ import com.ice.exebackend.service.BizStudentService;
 import com.ice.exebackend.service.BizSubjectService;
 import com.ice.exebackend.service.BizWrongRecordService;
 import com.ice.exebackend.service.BizExamResultService; // 【新增】导入考试成绩服务
+import com.ice.exebackend.service.StudentIdentityCache;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.security.crypto.password.PasswordEncoder;
@@ -44,6 +45,27 @@ public class BizStudentServiceImpl extends ServiceImpl<BizStudentMapper, BizStud
     @Lazy
     @Autowired
     private PasswordEncoder passwordEncoder;
+    @Autowired
+    private StudentIdentityCache studentIdentityCache;
+
+    /**
+     * 更新学生后使 WebSocket 会话中的身份快照失效（积分、头像等可能已变化）
+     */
+    @Override
+    public boolean updateById(BizStudent entity) {
+        boolean updated = super.updateById(entity);
+        if (updated) {
+            studentIdentityCache.invalidate(entity.getId());
+        }
+        return updated;
+    }
+
+    @Override
+    public void addPoints(Long studentId, int delta) {
+        if (studentId == null || delta == 0) return;
+        baseMapper.addPointsBatch(Map.of(studentId, delta));
+        studentIdentityCache.invalidate(studentId);
+    }
     @Override
     @Transactional
     public void importStudents(MultipartFile file) throws IOException {
@@ -90,6 +90,12 @@ public class BizWrongRecordServiceImpl extends ServiceImpl<BizWrongRecordMapper,
                 .set(BizWrongRecord::getIsMastered, 1)
                 .update();
     }
+
+    @Override
+    public int addUnmasteredBatch(List<BizWrongRecord> records) {
+        if (records == null || records.isEmpty()) return 0;
+        return baseMapper.insertUnmasteredBatch(records);
+    }
     @Override
     public List<Long> getTopErrorKnowledgePointIds(Long studentId, Long subjectId, int limit) {
         // 确保你已经注入了 BizQuestionKnowledgePointMapper 和 BizKnowledgePointMapper
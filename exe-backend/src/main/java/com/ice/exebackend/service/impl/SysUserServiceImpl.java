@@ -11,6 +11,7 @@ import com.ice.exebackend.entity.SysUserRole;
 import com.ice.exebackend.mapper.SysRoleMapper;
 import com.ice.exebackend.mapper.SysUserMapper;
 import com.ice.exebackend.mapper.SysUserRoleMapper;
+import com.ice.exebackend.service.AuthenticationCacheService;
 import com.ice.exebackend.service.PermissionCacheService;
 import com.ice.exebackend.service.SysUserService;
 import org.springframework.beans.BeanUtils;
@@ -23,6 +24,8 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.CollectionUtils;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 @Service
@@ -42,6 +45,9 @@ public class SysUserServiceImpl extends ServiceImpl<SysUserMapper, SysUser> impl
     @Autowired
     private PermissionCacheService permissionCacheService; // 注入权限缓存服务
 
+    @Autowired
+    private AuthenticationCacheService authenticationCacheService;
+
     @Autowired
     public SysUserServiceImpl(@Lazy PasswordEncoder passwordEncoder) {
         this.passwordEncoder = passwordEncoder;
@@ -95,8 +101,13 @@ public class SysUserServiceImpl extends ServiceImpl<SysUserMapper, SysUser> impl
             user.setPassword(null);
         }
 
-        // 先更新用户基本信息
+        // 先更新用户基本信息（记下旧用户名，用户名或启用状态变化后清除认证缓存）
+        SysUser before = this.getById(user.getId());
         boolean result = this.updateById(user);
+        if (result && before != null) {
+            authenticationCacheService.evict(AuthenticationCacheService.REALM_ADMIN,
+                    Arrays.asList(before.getUsername(), user.getUsername()));
+        }
 
         // 【核心修改】在更新角色之前，增加权限校验
         if (result) {
@@ -140,7 +151,12 @@ public class SysUserServiceImpl extends ServiceImpl<SysUserMapper, SysUser> impl
             return false;
         }
         user.setIsDeleted(1);
-        return this.updateById(user);
+        boolean result = this.updateById(user);
+        if (result) {
+            authenticationCacheService.evict(AuthenticationCacheService.REALM_ADMIN,
+                    Collections.singletonList(user.getUsername()));
+        }
+        return result;
     }
 
     @Override
@@ -0,0 +1,146 @@
+package com.ice.exebackend.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 按延迟自适应的并发上限（梯度算法 + 过载时乘性减小）
+ *
+ * - 长期延迟：响应延迟的指数滑动平均，代表服务正常时的水平
+ * - 每个样本：梯度 = 容忍倍数 × 长期延迟 / 本次延迟，截断到 [0.5, 1]；
+ *   新上限 = 当前上限 × 梯度 + √当前上限（排队余量），再与当前上限做平滑
+ *   延迟正常时梯度为 1，上限缓慢增长；延迟升高时按比例收缩
+ * - 超时、5xx、429 等过载信号：上限直接乘以 0.9
+ * - 实际并发不到上限一半时不再增长，避免空闲期把上限抬得过高
+ * 占用与释放只做 CAS，不加锁；{@link #acquire} 拿不到时短暂等待后重试。
+ */
+public class AdaptiveConcurrencyLimit {
+
+    private static final double SMOOTHING = 0.2;
+    private static final double RTT_DECAY = 0.01;
+    private static final double BACKOFF_RATIO = 0.9;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicReference<Estimate> estimate;
+    private final Object waitLock = new Object();
+    private final AtomicInteger waiters = new AtomicInteger();
+
+    /**
+     * 上限与长期延迟一起更新，保证两者一致
+     */
+    private static final class Estimate {
+        final double limit;
+        final double longRtt;
+
+        Estimate(double limit, double longRtt) {
+            this.limit = limit;
+            this.longRtt = longRtt;
+        }
+    }
+
+    /**
+     * @param minLimit     并发下限
+     * @param maxLimit     并发上限，也是初始值
+     * @param tolerance    可容忍的延迟倍数（≥ 1）
+     */
+    public AdaptiveConcurrencyLimit(int minLimit, int maxLimit, double tolerance) {
+        this.maxLimit = Math.max(1, maxLimit);
+        this.minLimit = Math.max(1, Math.min(minLimit, this.maxLimit));
+        this.tolerance = Math.max(1.0, tolerance);
+        this.estimate = new AtomicReference<>(new Estimate(this.maxLimit, 0));
+    }
+
+    /**
+     * 不等待地占用一个并发
+     */
+    public boolean tryAcquire() {
+        int limit = getLimit();
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) return false;
+            if (inFlight.compareAndSet(current, current + 1)) return true;
+        }
+    }
+
+    /**
+     * 最多等待 timeout 占用一个并发
+     */
+    public boolean acquire(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!tryAcquire()) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) return false;
+            waiters.incrementAndGet();
+            try {
+                synchronized (waitLock) {
+                    // 上限变大不会触发通知，最多等 50ms 再重试
+                    TimeUnit.NANOSECONDS.timedWait(waitLock, Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(50)));
+                }
+            } finally {
+                waiters.decrementAndGet();
+            }
+        }
+        return true;
+    }
+
+    public void release() {
+        inFlight.decrementAndGet();
+        if (waiters.get() > 0) {
+            synchronized (waitLock) {
+                waitLock.notify();
+            }
+        }
+    }
+
+    /**
+     * 记录一次调用的结果
+     *
+     * @param rttMillis  响应延迟
+     * @param overloaded 是否为过载信号（超时、5xx、429）
+     */
+    public void onSample(long rttMillis, boolean overloaded) {
+        int busy = inFlight.get();
+        while (true) {
+            Estimate current = estimate.get();
+            Estimate next = next(current, Math.max(1, rttMillis), overloaded, busy);
+            if (estimate.compareAndSet(current, next)) return;
+        }
+    }
+
+    private Estimate next(Estimate current, double rtt, boolean overloaded, int busy) {
+        if (overloaded) {
+            return new Estimate(clamp(current.limit * BACKOFF_RATIO), current.longRtt);
+        }
+        double longRtt = current.longRtt == 0 ? rtt : current.longRtt * (1 - RTT_DECAY) + rtt * RTT_DECAY;
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * longRtt / rtt));
+        double target = current.limit * gradient + Math.sqrt(current.limit);
+        if (busy < current.limit / 2) {
+            target = Math.min(target, current.limit);
+        }
+        double limit = current.limit * (1 - SMOOTHING) + target * SMOOTHING;
+        return new Estimate(clamp(limit), longRtt);
+    }
+
+    private double clamp(double limit) {
+        return Math.max(minLimit, Math.min(maxLimit, limit));
+    }
+
+    /**
+     * 当前并发上限
+     */
+    public int getLimit() {
+        return (int) estimate.get().limit;
+    }
+
+    /**
+     * 当前占用的并发数
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+}
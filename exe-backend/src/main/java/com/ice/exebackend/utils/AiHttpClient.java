@@ -2,27 +2,41 @@ package com.ice.exebackend.utils;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.ice.exebackend.config.AiConfig;
+import com.ice.exebackend.service.AiCircuitBreaker;
+import com.ice.exebackend.service.AiRateLimiter;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.io.BufferedReader;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
 /**
  * AI HTTP 客户端工具类
  * 统一管理 AI 请求的发送和重试逻辑
+ *
+ * 全部基于 {@link HttpClient#sendAsync}：等待 AI 响应期间不占用线程，连接由共享的 HttpClient 复用。
+ * 响应解析和流式数据块回调在 ai-http 线程池（ai.executor.http-threads）上执行；
+ * 重试的退避等待通过延迟调度实现，不阻塞线程。
+ *
+ * 每次 HTTP 尝试的结果计入该提供商的断路器（{@link AiCircuitBreaker}），延迟上报给全局并发限制（{@link AiRateLimiter}）。
+ * 请求的提供商已熔断或重试后仍失败（5xx、429、超时）时，按 priority 切换到下一个配置了服务端 api-key 的提供商；
+ * 4xx 视为请求本身的问题，不切换。流式请求只在收到第一个数据块之前切换。
  */
 @Component
 public class AiHttpClient {
@@ -35,16 +49,37 @@ public class AiHttpClient {
     @Autowired
     private ObjectMapper objectMapper;
 
-    private final HttpClient httpClient;
+    @Autowired
+    private AiCircuitBreaker circuitBreaker;
 
-    public AiHttpClient() {
-        this.httpClient = HttpClient.newBuilder()
+    @Autowired
+    private AiRateLimiter rateLimiter;
+
+    private ExecutorService executor;
+    private HttpClient httpClient;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger seq = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(Math.max(1, aiConfig.getExecutor().getHttpThreads()), r -> {
+            Thread t = new Thread(r, "ai-http-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        httpClient = HttpClient.newBuilder()
                 .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofSeconds(aiConfig.getTimeout().getConnect()))
+                .executor(executor)
                 .build();
     }
 
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
     /**
-     * 发送 AI 请求（带重试）
+     * 发送 AI 请求（带重试），阻塞等待结果
      *
      * @param apiKey       API Key
      * @param providerKey  提供商标识
@@ -55,86 +90,189 @@ public class AiHttpClient {
      */
     public String sendRequest(String apiKey, String providerKey, List<Map<String, String>> messages,
                               Double temperature, int timeoutSec) throws Exception {
-
-        // 获取提供商配置
-        AiConfig.ProviderConfig providerConfig = aiConfig.getProviderConfig(providerKey);
-        if (providerConfig == null || !providerConfig.isEnabled()) {
-            throw new RuntimeException("AI 提供商未配置或已禁用: " + providerKey);
+        try {
+            return sendRequestAsync(apiKey, providerKey, messages, temperature, timeoutSec).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
         }
+    }
 
-        // 构建请求体
-        Map<String, Object> requestBody = Map.of(
-                "model", providerConfig.getModel(),
-                "messages", messages,
-                "temperature", temperature != null ? temperature : providerConfig.getTemperature(),
-                "stream", false
-        );
+    /**
+     * 发送 AI 请求（带重试），立即返回
+     *
+     * @return 以 AI 响应内容完成的 Future；最后一次尝试失败时以该异常结束
+     */
+    public CompletableFuture<String> sendRequestAsync(String apiKey, String providerKey,
+                                                      List<Map<String, String>> messages,
+                                                      Double temperature, int timeoutSec) {
+        try {
+            return tryRoute(routes(apiKey, providerKey), 0, messages, temperature, timeoutSec, null);
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
 
-        String jsonBody = objectMapper.writeValueAsString(requestBody);
+    /**
+     * 从第 index 个候选提供商开始调用，跳过已熔断的；失败后切换到下一个
+     */
+    private CompletableFuture<String> tryRoute(List<Route> routes, int index, List<Map<String, String>> messages,
+                                               Double temperature, int timeoutSec, Throwable lastError) {
+        while (index < routes.size() && !circuitBreaker.allowRequest(routes.get(index).provider)) {
+            log.warn("AI提供商 [{}] 已熔断，跳过", routes.get(index).provider);
+            index++;
+        }
+        if (index >= routes.size()) {
+            return CompletableFuture.failedFuture(lastError != null ? lastError
+                    : new RuntimeException("AI 服务暂不可用（提供商已熔断）: " + routes.get(0).provider));
+        }
+        Route route = routes.get(index);
+        int next = index + 1;
+        try {
+            // 构建请求体
+            Map<String, Object> requestBody = Map.of(
+                    "model", route.config.getModel(),
+                    "messages", messages,
+                    "temperature", temperature != null ? temperature : route.config.getTemperature(),
+                    "stream", false
+            );
+
+            HttpRequest request = buildRequest(route.apiKey, route.config.getUrl(),
+                    objectMapper.writeValueAsString(requestBody), timeoutSec);
+            int maxAttempts = aiConfig.getRetry().isEnabled() ? aiConfig.getRetry().getMaxAttempts() : 1;
+            return attempt(request, route.provider, 1, maxAttempts)
+                    .exceptionallyCompose(ex -> {
+                        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                        if (cause instanceof NonRetryableException || next >= routes.size()) {
+                            return CompletableFuture.failedFuture(cause);
+                        }
+                        log.warn("AI提供商 [{}] 调用失败，切换到下一个提供商", route.provider);
+                        return tryRoute(routes, next, messages, temperature, timeoutSec, cause);
+                    });
+        } catch (Exception e) {
+            circuitBreaker.recordIgnored(route.provider);
+            return CompletableFuture.failedFuture(e);
+        }
+    }
 
-        // 执行请求（带重试）
-        return executeWithRetry(apiKey, providerConfig.getUrl(), jsonBody, timeoutSec, providerKey);
+    /**
+     * 执行一次请求，失败且还有重试次数时延迟后再次尝试
+     */
+    private CompletableFuture<String> attempt(HttpRequest request, String providerKey, int attempt, int maxAttempts) {
+        log.info("AI请求 [{}] 第 {}/{} 次尝试", providerKey, attempt, maxAttempts);
+        long start = System.nanoTime();
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                .whenComplete((response, ex) -> recordOutcome(providerKey, start, response != null ? response.statusCode() : -1, true))
+                .thenApply(response -> {
+                    // 检查响应状态码
+                    if (response.statusCode() == 200) {
+                        log.info("AI请求成功 [{}]", providerKey);
+                        try {
+                            return extractContent(response.body());
+                        } catch (Exception e) {
+                            throw new CompletionException(e);
+                        }
+                    } else if (isOverloaded(response.statusCode())) {
+                        // 服务器错误或限流，可以重试
+                        throw new CompletionException(new RuntimeException(
+                                "AI 请求失败 (" + providerKey + "): " + response.statusCode() + " - " + response.body()));
+                    }
+                    // 客户端错误（Key 无效、参数错误等），重试没有意义
+                    throw new CompletionException(new NonRetryableException(
+                            "AI 请求失败 (" + providerKey + "): " + response.statusCode() + " - " + response.body()));
+                })
+                .exceptionallyCompose(ex -> {
+                    Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                    log.error("AI请求异常 [{}] 第 {}/{} 次尝试: {}", providerKey, attempt, maxAttempts, cause.getMessage());
+                    if (attempt >= maxAttempts || cause instanceof NonRetryableException) {
+                        return CompletableFuture.failedFuture(cause);
+                    }
+                    long waitTime = (long) (aiConfig.getRetry().getBackoff()
+                            * Math.pow(aiConfig.getRetry().getMultiplier(), attempt - 1));
+                    log.info("等待 {} ms 后重试", waitTime);
+                    Executor delayed = CompletableFuture.delayedExecutor(waitTime, TimeUnit.MILLISECONDS, executor);
+                    return CompletableFuture.supplyAsync(() -> null, delayed)
+                            .thenCompose(ignored -> attempt(request, providerKey, attempt + 1, maxAttempts));
+                });
     }
 
     /**
-     * 执行请求并处理重试
+     * 候选提供商：请求的提供商（使用调用方的 Key）在前，其余已启用且配置了服务端 Key 的按 priority 排在后面
      */
-    private String executeWithRetry(String apiKey, String url, String jsonBody, int timeoutSec,
-                                     String providerKey) throws Exception {
-        int maxAttempts = aiConfig.getRetry().isEnabled() ? aiConfig.getRetry().getMaxAttempts() : 1;
-        long backoff = aiConfig.getRetry().getBackoff();
-        double multiplier = aiConfig.getRetry().getMultiplier();
+    private List<Route> routes(String apiKey, String providerKey) {
+        String requested = providerKey != null && aiConfig.getProviders().containsKey(providerKey.toLowerCase())
+                ? providerKey.toLowerCase() : aiConfig.getDefaultProvider();
+        AiConfig.ProviderConfig requestedConfig = aiConfig.getProviders().get(requested);
+        if (requestedConfig == null || !requestedConfig.isEnabled()) {
+            throw new RuntimeException("AI 提供商未配置或已禁用: " + providerKey);
+        }
 
-        Exception lastException = null;
+        List<Route> routes = new ArrayList<>();
+        routes.add(new Route(requested, apiKey, requestedConfig));
+        aiConfig.getProviders().entrySet().stream()
+                .filter(e -> !e.getKey().equals(requested) && e.getValue().isEnabled()
+                        && e.getValue().getApiKey() != null && !e.getValue().getApiKey().isBlank())
+                .sorted(Comparator.comparingInt(e -> e.getValue().getPriority()))
+                .forEach(e -> routes.add(new Route(e.getKey(), e.getValue().getApiKey(), e.getValue())));
+        return routes;
+    }
 
-        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
-            try {
-                log.info("AI请求 [{}] 第 {}/{} 次尝试", providerKey, attempt, maxAttempts);
-
-                // 构建 HTTP 请求
-                HttpRequest request = HttpRequest.newBuilder()
-                        .uri(URI.create(url))
-                        .header("Content-Type", "application/json")
-                        .header("Authorization", "Bearer " + apiKey)
-                        .timeout(Duration.ofSeconds(timeoutSec))
-                        .POST(HttpRequest.BodyPublishers.ofString(jsonBody))
-                        .build();
-
-                // 发送请求
-                HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-
-                // 检查响应状态码
-                if (response.statusCode() == 200) {
-                    log.info("AI请求成功 [{}]", providerKey);
-                    return extractContent(response.body());
-                } else if (response.statusCode() >= 500 && attempt < maxAttempts) {
-                    // 服务器错误，可以重试
-                    log.warn("AI请求失败 [{}] 状态码: {}, 将重试", providerKey, response.statusCode());
-                    lastException = new RuntimeException("HTTP " + response.statusCode() + ": " + response.body());
-                } else {
-                    // 客户端错误或最后一次尝试，不再重试
-                    throw new RuntimeException("AI 请求失败 (" + providerKey + "): " + response.statusCode() + " - " + response.body());
-                }
+    /**
+     * 候选提供商
+     */
+    private static class Route {
+        final String provider;
+        final String apiKey;
+        final AiConfig.ProviderConfig config;
+
+        Route(String provider, String apiKey, AiConfig.ProviderConfig config) {
+            this.provider = provider;
+            this.apiKey = apiKey;
+            this.config = config;
+        }
+    }
 
-            } catch (Exception e) {
-                lastException = e;
-                log.error("AI请求异常 [{}] 第 {}/{} 次尝试: {}", providerKey, attempt, maxAttempts, e.getMessage());
+    /**
+     * 记录一次尝试的结果：200 计成功，5xx、429、网络错误和超时（status = -1）计失败，其余 4xx 不计（归还半开试探名额）
+     *
+     * @param sampleLatency 是否把延迟上报给全局并发限制（流式请求的时长取决于输出长度，不上报）
+     */
+    private void recordOutcome(String providerKey, long startNanos, int status, boolean sampleLatency) {
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        if (status == 200) {
+            circuitBreaker.recordSuccess(providerKey);
+            if (sampleLatency) rateLimiter.recordLatency(millis, false);
+        } else if (status == -1 || isOverloaded(status)) {
+            circuitBreaker.recordFailure(providerKey);
+            if (sampleLatency) rateLimiter.recordLatency(millis, true);
+        } else {
+            circuitBreaker.recordIgnored(providerKey);
+        }
+    }
 
-                // 最后一次尝试，直接抛出异常
-                if (attempt >= maxAttempts) {
-                    throw e;
-                }
-            }
+    private static boolean isOverloaded(int status) {
+        return status >= 500 || status == 429;
+    }
 
-            // 等待后重试
-            if (attempt < maxAttempts) {
-                long waitTime = (long) (backoff * Math.pow(multiplier, attempt - 1));
-                log.info("等待 {} ms 后重试", waitTime);
-                Thread.sleep(waitTime);
-            }
-        }
+    private HttpRequest buildRequest(String apiKey, String url, String jsonBody, int timeoutSec) {
+        return HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .header("Content-Type", "application/json")
+                .header("Authorization", "Bearer " + apiKey)
+                .timeout(Duration.ofSeconds(timeoutSec))
+                .POST(HttpRequest.BodyPublishers.ofString(jsonBody))
+                .build();
+    }
 
-        throw lastException != null ? lastException : new RuntimeException("AI 请求失败");
+    /**
+     * 不应重试的失败（4xx），通常与调用方自己的 Key 或参数有关
+     */
+    public static class NonRetryableException extends RuntimeException {
+        NonRetryableException(String message) {
+            super(message);
+        }
     }
 
     /**
@@ -202,116 +340,199 @@ public class AiHttpClient {
     }
 
     /**
-     * 发送流式 AI 请求（SSE）
+     * 发送流式 AI 请求（SSE），立即返回
+     * 数据块在 ai-http 线程上逐行解析并回调，整个流式过程不独占线程。
      *
      * @param apiKey       API Key
      * @param providerKey  提供商标识
      * @param messages     消息列表
      * @param temperature  温度参数
-     * @param timeoutSec   超时时间（秒）
+     * @param timeoutSec   超时时间（秒，等待响应头）
      * @param onChunk      接收到数据块时的回调函数
      * @param onComplete   完成时的回调函数
      * @param onError      错误时的回调函数
+     * @return 在 onComplete 或 onError 执行完后完成的 Future（调用方据此释放并发许可等资源）
      */
-    public void sendStreamRequest(String apiKey, String providerKey, List<Map<String, String>> messages,
-                                   Double temperature, int timeoutSec,
-                                   Consumer<String> onChunk,
-                                   Runnable onComplete,
-                                   Consumer<Exception> onError) {
+    public CompletableFuture<Void> sendStreamRequest(String apiKey, String providerKey, List<Map<String, String>> messages,
+                                                     Double temperature, int timeoutSec,
+                                                     Consumer<String> onChunk,
+                                                     Runnable onComplete,
+                                                     Consumer<Exception> onError) {
+        List<Route> routes;
         try {
-            // 获取提供商配置
-            AiConfig.ProviderConfig providerConfig = aiConfig.getProviderConfig(providerKey);
-            if (providerConfig == null || !providerConfig.isEnabled()) {
-                throw new RuntimeException("AI 提供商未配置或已禁用: " + providerKey);
-            }
+            routes = routes(apiKey, providerKey);
+        } catch (Exception e) {
+            new SseLineSubscriber(providerKey, onChunk, onComplete, onError).fail(e);
+            return CompletableFuture.completedFuture(null);
+        }
+        return streamRoute(routes, 0, messages, temperature, timeoutSec, onChunk, onComplete, onError, null);
+    }
 
+    /**
+     * 从第 index 个候选提供商开始发送流式请求；收到数据块之前失败时切换到下一个
+     */
+    private CompletableFuture<Void> streamRoute(List<Route> routes, int index, List<Map<String, String>> messages,
+                                                Double temperature, int timeoutSec,
+                                                Consumer<String> onChunk, Runnable onComplete,
+                                                Consumer<Exception> onError, Exception lastError) {
+        while (index < routes.size() && !circuitBreaker.allowRequest(routes.get(index).provider)) {
+            log.warn("AI提供商 [{}] 已熔断，跳过", routes.get(index).provider);
+            index++;
+        }
+        if (index >= routes.size()) {
+            new SseLineSubscriber(routes.get(0).provider, onChunk, onComplete, onError).fail(lastError != null ? lastError
+                    : new RuntimeException("AI 服务暂不可用（提供商已熔断）: " + routes.get(0).provider));
+            return CompletableFuture.completedFuture(null);
+        }
+        Route route = routes.get(index);
+        int next = index + 1;
+        SseLineSubscriber subscriber = new SseLineSubscriber(route.provider, onChunk, onComplete, onError);
+        try {
             // 构建请求体（启用流式）
             Map<String, Object> requestBody = new java.util.HashMap<>();
-            requestBody.put("model", providerConfig.getModel());
+            requestBody.put("model", route.config.getModel());
             requestBody.put("messages", messages);
-            requestBody.put("temperature", temperature != null ? temperature : providerConfig.getTemperature());
+            requestBody.put("temperature", temperature != null ? temperature : route.config.getTemperature());
             requestBody.put("stream", true);  // 启用流式传输
             requestBody.put("max_tokens", 16384);  // 增加到16K，reasoner模式支持最大64K
 
-            String jsonBody = objectMapper.writeValueAsString(requestBody);
+            HttpRequest request = buildRequest(route.apiKey, route.config.getUrl(),
+                    objectMapper.writeValueAsString(requestBody), timeoutSec);
 
-            // 构建 HTTP 请求
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(providerConfig.getUrl()))
-                    .header("Content-Type", "application/json")
-                    .header("Authorization", "Bearer " + apiKey)
-                    .timeout(Duration.ofSeconds(timeoutSec))
-                    .POST(HttpRequest.BodyPublishers.ofString(jsonBody))
-                    .build();
+            log.info("开始流式AI请求 [{}]", route.provider);
 
-            log.info("开始流式AI请求 [{}]", providerKey);
+            // 200 时按行交给 SSE 解析，否则读取完整错误信息
+            HttpResponse.BodyHandler<String> handler = info -> info.statusCode() == 200
+                    ? HttpResponse.BodySubscribers.fromLineSubscriber(subscriber, s -> "", StandardCharsets.UTF_8, "\n")
+                    : HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8);
 
-            // 发送请求并处理流式响应
-            HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            long start = System.nanoTime();
+            return httpClient.sendAsync(request, handler)
+                    .handle((response, ex) -> {
+                        int status = ex != null ? -1 : response.statusCode();
+                        recordOutcome(route.provider, start, status, false);
+                        if (status == 200) {
+                            subscriber.finish();
+                            return CompletableFuture.<Void>completedFuture(null);
+                        }
+                        Exception error;
+                        if (ex != null) {
+                            Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                            error = cause instanceof Exception ? (Exception) cause : new RuntimeException(cause);
+                        } else if (isOverloaded(status)) {
+                            error = new RuntimeException("AI 请求失败: " + status + " - " + response.body());
+                        } else {
+                            // 客户端错误（Key 无效、参数错误等）
+                            error = new NonRetryableException("AI 请求失败: " + status + " - " + response.body());
+                        }
+                        if ((status == -1 || isOverloaded(status)) && !subscriber.hasReceived() && next < routes.size()) {
+                            log.warn("流式AI请求 [{}] 失败，切换到下一个提供商: {}", route.provider, error.getMessage());
+                            return streamRoute(routes, next, messages, temperature, timeoutSec,
+                                    onChunk, onComplete, onError, error);
+                        }
+                        subscriber.fail(error);
+                        return CompletableFuture.<Void>completedFuture(null);
+                    })
+                    .thenCompose(f -> f);
+        } catch (Exception e) {
+            circuitBreaker.recordIgnored(route.provider);
+            subscriber.fail(e);
+            return CompletableFuture.completedFuture(null);
+        }
+    }
 
-            // 检查状态码
-            if (response.statusCode() != 200) {
-                String errorBody = new String(response.body().readAllBytes(), StandardCharsets.UTF_8);
-                throw new RuntimeException("AI 请求失败: " + response.statusCode() + " - " + errorBody);
-            }
+    /**
+     * SSE 行解析：data: {...} 中取 choices[0].delta.content；onComplete / onError 只会触发其中一个，且只触发一次
+     */
+    private class SseLineSubscriber implements java.util.concurrent.Flow.Subscriber<String> {
+        private final String providerKey;
+        private final Consumer<String> onChunk;
+        private final Runnable onComplete;
+        private final Consumer<Exception> onError;
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private volatile boolean received;
+
+        SseLineSubscriber(String providerKey, Consumer<String> onChunk, Runnable onComplete, Consumer<Exception> onError) {
+            this.providerKey = providerKey;
+            this.onChunk = onChunk;
+            this.onComplete = onComplete;
+            this.onError = onError;
+        }
 
-            // 读取流式数据
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(response.body(), StandardCharsets.UTF_8), 65536)) {  // 增大缓冲区到64KB
-
-                String line;
-                boolean hasReceivedDone = false;
-                while ((line = reader.readLine()) != null) {
-                    // SSE 格式: data: {...}
-                    if (line.startsWith("data: ")) {
-                        String data = line.substring(6).trim();
-
-                        // 结束标记
-                        if ("[DONE]".equals(data)) {
-                            log.info("流式响应完成 [{}]", providerKey);
-                            hasReceivedDone = true;
-                            if (onComplete != null) {
-                                onComplete.run();
-                            }
-                            break;
-                        }
+        @Override
+        public void onSubscribe(java.util.concurrent.Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
 
-                        // 解析 JSON 数据
-                        try {
-                            Map<String, Object> chunk = objectMapper.readValue(data, Map.class);
-                            List<Map<String, Object>> choices = (List<Map<String, Object>>) chunk.get("choices");
-
-                            if (choices != null && !choices.isEmpty()) {
-                                Map<String, Object> delta = (Map<String, Object>) choices.get(0).get("delta");
-                                if (delta != null) {
-                                    String content = (String) delta.get("content");
-                                    if (content != null && !content.isEmpty()) {
-                                        // 发送内容块
-                                        if (onChunk != null) {
-                                            onChunk.accept(content);
-                                        }
-                                    }
-                                }
-                            }
-                        } catch (Exception e) {
-                            log.warn("解析流式数据块失败: {}", data.substring(0, Math.min(100, data.length())), e);
+        @Override
+        public void onNext(String line) {
+            // SSE 格式: data: {...}
+            if (finished.get() || !line.startsWith("data: ")) return;
+            String data = line.substring(6).trim();
+
+            // 结束标记
+            if ("[DONE]".equals(data)) {
+                log.info("流式响应完成 [{}]", providerKey);
+                complete();
+                return;
+            }
+
+            // 解析 JSON 数据
+            try {
+                Map<String, Object> chunk = objectMapper.readValue(data, Map.class);
+                List<Map<String, Object>> choices = (List<Map<String, Object>>) chunk.get("choices");
+
+                if (choices != null && !choices.isEmpty()) {
+                    Map<String, Object> delta = (Map<String, Object>) choices.get(0).get("delta");
+                    if (delta != null) {
+                        String content = (String) delta.get("content");
+                        if (content != null && !content.isEmpty() && onChunk != null) {
+                            // 发送内容块
+                            received = true;
+                            onChunk.accept(content);
                         }
                     }
                 }
+            } catch (Exception e) {
+                log.warn("解析流式数据块失败: {}", data.substring(0, Math.min(100, data.length())), e);
+            }
+        }
 
-                // 如果流结束但没有收到[DONE]标记，也调用onComplete
-                if (!hasReceivedDone) {
-                    log.warn("⚠️ 流结束但未收到[DONE]标记，可能数据不完整");
-                    if (onComplete != null) {
-                        onComplete.run();
-                    }
-                }
+        @Override
+        public void onError(Throwable throwable) {
+            // 由 sendAsync 返回的 Future 统一处理
+        }
+
+        @Override
+        public void onComplete() {
+            // 由 sendAsync 返回的 Future 统一处理
+        }
+
+        /** 是否已向调用方推送过数据块（之后失败不能再切换提供商） */
+        boolean hasReceived() {
+            return received;
+        }
+
+        /** 响应体读完：未收到 [DONE] 也按完成处理 */
+        void finish() {
+            if (!finished.get()) {
+                log.warn("⚠️ 流结束但未收到[DONE]标记，可能数据不完整");
             }
+            complete();
+        }
 
-        } catch (Exception e) {
-            log.error("流式AI请求异常 [{}]: {}", providerKey, e.getMessage(), e);
-            if (onError != null) {
-                onError.accept(e);
+        void complete() {
+            if (finished.compareAndSet(false, true) && onComplete != null) {
+                onComplete.run();
+            }
+        }
+
+        void fail(Exception e) {
+            if (finished.compareAndSet(false, true)) {
+                log.error("流式AI请求异常 [{}]: {}", providerKey, e.getMessage(), e);
+                if (onError != null) {
+                    onError.accept(e);
+                }
             }
         }
     }
@@ -0,0 +1,256 @@
+package com.ice.exebackend.utils;
+
+import com.ice.exebackend.entity.BizQuestion;
+import org.springframework.util.StringUtils;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * 预编译的试卷标准答案（客观题判分用）
+ *
+ * 按试卷题目顺序存储每道题的题型、分值和规范化后的标准答案：
+ * - 多选题：选项字母编码为位掩码（A=bit0 … Z=bit25），判分时逐字符解析学生答案再比较掩码；
+ *   答案中含非单个字母的选项、空选项或重复选项时退回「拆分-排序-拼接」比较，结果与原判分一致
+ * - 判断题：T / F（兼容 true/false、正确/错误、对/错）
+ * - 其他客观题：去首尾空白，忽略大小写比较
+ * - 主观题：只标记为 {@link #SUBJECTIVE}，由调用方决定是否交给 AI 批改
+ * 判分过程不创建对象（题目 id 预先装箱，答案比较按区间进行），同一张试卷的答卷可以并发判分。
+ */
+public class CompiledAnswerKey {
+
+    /** 判分结果：未作答 */
+    public static final byte UNANSWERED = 0;
+    /** 判分结果：正确 */
+    public static final byte CORRECT = 1;
+    /** 判分结果：错误 */
+    public static final byte WRONG = 2;
+    /** 判分结果：主观题，待批改 */
+    public static final byte SUBJECTIVE = 3;
+
+    private static final byte KIND_TEXT = 0;
+    private static final byte KIND_MULTI = 1;
+    private static final byte KIND_JUDGMENT = 2;
+    private static final byte KIND_SUBJECTIVE = 3;
+    /** 题目没有标准答案：作答即判错 */
+    private static final byte KIND_NO_ANSWER = 4;
+
+    private static final int NOT_A_MASK = -1;
+
+    private final Long[] questionIds;
+    private final int[] scores;
+    private final byte[] kinds;
+    private final int[] masks;
+    private final String[] canonical;
+    private final int totalScore;
+
+    /**
+     * @param questionIds 试卷题目 id（按试卷顺序）
+     * @param scores      对应分值
+     * @param questions   题目（含标准答案）；缺失的题目跳过，不计入总分
+     */
+    public CompiledAnswerKey(List<Long> questionIds, List<Integer> scores, Map<Long, BizQuestion> questions) {
+        int n = 0;
+        for (Long id : questionIds) {
+            if (questions.containsKey(id)) n++;
+        }
+        this.questionIds = new Long[n];
+        this.scores = new int[n];
+        this.kinds = new byte[n];
+        this.masks = new int[n];
+        this.canonical = new String[n];
+
+        int total = 0;
+        int slot = 0;
+        for (int i = 0; i < questionIds.size(); i++) {
+            BizQuestion q = questions.get(questionIds.get(i));
+            if (q == null) continue;
+            this.questionIds[slot] = questionIds.get(i);
+            this.scores[slot] = scores.get(i) != null ? scores.get(i) : 0;
+            total += this.scores[slot];
+            String answer = q.getAnswer();
+            int type = q.getQuestionType() != null ? q.getQuestionType() : 0;
+            if (answer == null) {
+                kinds[slot] = KIND_NO_ANSWER;
+            } else if (type == 5) {
+                kinds[slot] = KIND_SUBJECTIVE;
+            } else if (type == 2) {
+                kinds[slot] = KIND_MULTI;
+                masks[slot] = optionMask(answer);
+                canonical[slot] = sortString(answer);
+            } else if (type == 4) {
+                kinds[slot] = KIND_JUDGMENT;
+                canonical[slot] = normalizeJudgmentAnswer(answer);
+            } else {
+                kinds[slot] = KIND_TEXT;
+                canonical[slot] = answer.trim();
+            }
+            slot++;
+        }
+        this.totalScore = total;
+    }
+
+    /** 参与判分的题目数 */
+    public int size() {
+        return questionIds.length;
+    }
+
+    public Long questionId(int slot) {
+        return questionIds[slot];
+    }
+
+    public int score(int slot) {
+        return scores[slot];
+    }
+
+    public int totalScore() {
+        return totalScore;
+    }
+
+    /**
+     * 判分
+     *
+     * @param answers  学生答案（题目 id → 答案）
+     * @param outcomes 输出：每道题的判分结果（长度不小于 {@link #size()}）
+     * @return 客观题得分
+     */
+    public int grade(Map<Long, String> answers, byte[] outcomes) {
+        int earned = 0;
+        for (int i = 0; i < questionIds.length; i++) {
+            String user = answers.get(questionIds[i]);
+            byte outcome;
+            if (user == null) {
+                outcome = UNANSWERED;
+            } else {
+                switch (kinds[i]) {
+                    case KIND_SUBJECTIVE:
+                        outcome = SUBJECTIVE;
+                        break;
+                    case KIND_MULTI:
+                        outcome = matchesMulti(user, i) ? CORRECT : WRONG;
+                        break;
+                    case KIND_JUDGMENT:
+                        outcome = matchesJudgment(user, canonical[i]) ? CORRECT : WRONG;
+                        break;
+                    case KIND_TEXT:
+                        outcome = trimmedEqualsIgnoreCase(user, canonical[i]) ? CORRECT : WRONG;
+                        break;
+                    default:
+                        outcome = WRONG;
+                }
+            }
+            outcomes[i] = outcome;
+            if (outcome == CORRECT) earned += scores[i];
+        }
+        return earned;
+    }
+
+    private boolean matchesMulti(String user, int slot) {
+        int userMask = optionMask(user);
+        if (userMask != NOT_A_MASK && masks[slot] != NOT_A_MASK) {
+            return userMask == masks[slot];
+        }
+        return sortString(user).equalsIgnoreCase(canonical[slot]);
+    }
+
+    /**
+     * 逗号分隔的单字母选项 → 位掩码（忽略大小写与空白）；含其他内容时返回 -1
+     */
+    static int optionMask(String answer) {
+        int mask = 0;
+        int i = 0;
+        int n = answer.length();
+        while (i < n) {
+            while (i < n && answer.charAt(i) <= ' ') i++;
+            if (i == n) break;
+            char c = Character.toUpperCase(answer.charAt(i++));
+            if (c < 'A' || c > 'Z') return NOT_A_MASK;
+            while (i < n && answer.charAt(i) <= ' ') i++;
+            if (i < n) {
+                if (answer.charAt(i) != ',') return NOT_A_MASK;
+                i++;
+                // 逗号后必须还有选项，"A," 按原始字符串比较
+                int j = i;
+                while (j < n && answer.charAt(j) <= ' ') j++;
+                if (j == n) return NOT_A_MASK;
+            }
+            int bit = 1 << (c - 'A');
+            // 重复选项（"A,A"）按原始字符串比较
+            if ((mask & bit) != 0) return NOT_A_MASK;
+            mask |= bit;
+        }
+        return mask;
+    }
+
+    private static boolean matchesJudgment(String user, String canonicalKey) {
+        int from = trimStart(user);
+        int to = trimEnd(user, from);
+        String value;
+        if (regionEquals(user, from, to, "t", true) || regionEquals(user, from, to, "true", true)
+                || regionEquals(user, from, to, "正确", false) || regionEquals(user, from, to, "对", false)) {
+            value = "T";
+        } else if (regionEquals(user, from, to, "f", true) || regionEquals(user, from, to, "false", true)
+                || regionEquals(user, from, to, "错误", false) || regionEquals(user, from, to, "错", false)) {
+            value = "F";
+        } else {
+            return regionEquals(user, from, to, canonicalKey, true);
+        }
+        return value.equalsIgnoreCase(canonicalKey);
+    }
+
+    private static boolean trimmedEqualsIgnoreCase(String user, String trimmedKey) {
+        int from = trimStart(user);
+        return regionEquals(user, from, trimEnd(user, from), trimmedKey, true);
+    }
+
+    private static int trimStart(String s) {
+        int i = 0;
+        while (i < s.length() && s.charAt(i) <= ' ') i++;
+        return i;
+    }
+
+    private static int trimEnd(String s, int from) {
+        int j = s.length();
+        while (j > from && s.charAt(j - 1) <= ' ') j--;
+        return j;
+    }
+
+    private static boolean regionEquals(String s, int from, int to, String target, boolean ignoreCase) {
+        return to - from == target.length() && s.regionMatches(ignoreCase, from, target, 0, target.length());
+    }
+
+    /**
+     * 多选题答案规范化：按逗号拆分、去空格、排序
+     */
+    public static String sortString(String input) {
+        if (!StringUtils.hasText(input)) return "";
+        return Arrays.stream(input.split(","))
+                .map(String::trim)
+                .sorted()
+                .collect(Collectors.joining(","));
+    }
+
+    /**
+     * 标准化判断题答案格式
+     * 支持多种格式：T/F、true/false、正确/错误、对/错
+     * 统一转换为 T 或 F 进行比较
+     */
+    public static String normalizeJudgmentAnswer(String answer) {
+        if (!StringUtils.hasText(answer)) return "";
+
+        String trimmed = answer.trim().toLowerCase();
+
+        // T/F 格式
+        if ("t".equals(trimmed) || "true".equals(trimmed) || "正确".equals(answer.trim()) || "对".equals(answer.trim())) {
+            return "T";
+        }
+
+        if ("f".equals(trimmed) || "false".equals(trimmed) || "错误".equals(answer.trim()) || "错".equals(answer.trim())) {
+            return "F";
+        }
+
+        return trimmed.toUpperCase();
+    }
+}
@@ -2,6 +2,9 @@ package com.ice.exebackend.utils;
 
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.ice.exebackend.context.DataScopeContext;
+import com.ice.exebackend.context.UserDataScope;
+
+import java.util.Set;
 
 /**
  * 数据权限工具类
@@ -12,6 +15,12 @@ public class DataScopeUtils {
     /**
      * 将数据权限过滤条件应用到QueryWrapper
      *
+     * 条件全部参数化，可以直接走索引：
+     * - TEACHER_CLASS / TEACHER_COURSE：teacher_id = 当前用户ID
+     * - TEACHER_STUDENT：id IN (负责班级中的学生)
+     * - TEACHER_EXAM：student_id IN (负责班级中的学生)
+     * 没有可见学生时条件恒为假。
+     *
      * 使用示例:
      * QueryWrapper<BizClass> wrapper = new QueryWrapper<>();
      * DataScopeUtils.applyDataScope(wrapper);
@@ -24,15 +33,39 @@ public class DataScopeUtils {
     public static <T> QueryWrapper<T> applyDataScope(QueryWrapper<T> wrapper) {
         DataScopeContext.DataScopeInfo scopeInfo = DataScopeContext.get();
 
-        // 如果有数据权限信息，且不是管理员，且有SQL过滤条件
-        if (scopeInfo != null && !scopeInfo.isAdmin() && scopeInfo.getSqlCondition() != null) {
-            // 使用apply方法直接添加SQL条件
-            wrapper.apply(scopeInfo.getSqlCondition());
+        // 没有数据权限信息或是管理员时不过滤
+        if (scopeInfo == null || scopeInfo.isAdmin() || scopeInfo.getType() == null) {
+            return wrapper;
         }
 
+        UserDataScope scope = scopeInfo.getScope();
+        String prefix = scopeInfo.getTableAlias().isEmpty() ? "" : scopeInfo.getTableAlias() + ".";
+        switch (scopeInfo.getType()) {
+            case TEACHER_CLASS:
+            case TEACHER_COURSE:
+                wrapper.eq(prefix + "teacher_id", scope.getUserId());
+                break;
+            case TEACHER_STUDENT:
+                inOrNone(wrapper, prefix + "id", scope.getStudentIds());
+                break;
+            case TEACHER_EXAM:
+                inOrNone(wrapper, prefix + "student_id", scope.getStudentIds());
+                break;
+            default:
+                break;
+        }
         return wrapper;
     }
 
+    private static <T> void inOrNone(QueryWrapper<T> wrapper, String column, Set<Long> ids) {
+        if (ids.isEmpty()) {
+            // IN () 不是合法 SQL
+            wrapper.apply("1 = 0");
+        } else {
+            wrapper.in(column, ids);
+        }
+    }
+
     /**
      * 检查当前用户是否为管理员
      *
@@ -54,12 +87,12 @@ public class DataScopeUtils {
     }
 
     /**
-     * 获取SQL过滤条件
+     * 获取当前用户的数据权限范围
      *
-     * @return SQL过滤条件字符串，如果未设置则返回null
+     * @return 权限范围，如果未设置则返回null
      */
-    public static String getSqlCondition() {
+    public static UserDataScope getCurrentScope() {
         DataScopeContext.DataScopeInfo scopeInfo = DataScopeContext.get();
-        return scopeInfo != null ? scopeInfo.getSqlCondition() : null;
+        return scopeInfo != null ? scopeInfo.getScope() : null;
     }
 }
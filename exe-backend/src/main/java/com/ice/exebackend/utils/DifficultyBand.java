@@ -0,0 +1,33 @@
+package com.ice.exebackend.utils;
+
+/**
+ * 试题难度档：易 [0, 0.4)、中 [0.4, 0.7)、难 [0.7, 1]，未设置难度的按「中」
+ * 对战题组按难度档分桶、练习抽题按难度档分层，两处共用这里的划分
+ */
+public final class DifficultyBand {
+
+    public static final int EASY = 0;
+    public static final int MEDIUM = 1;
+    public static final int HARD = 2;
+    /** 难度档数量 */
+    public static final int COUNT = 3;
+
+    private static final String[] NAMES = {"EASY", "MEDIUM", "HARD"};
+
+    private DifficultyBand() {
+    }
+
+    public static int of(Double difficulty) {
+        if (difficulty == null) return MEDIUM;
+        if (difficulty < 0.4) return EASY;
+        if (difficulty < 0.7) return MEDIUM;
+        return HARD;
+    }
+
+    /**
+     * 难度档名称（EASY / MEDIUM / HARD）
+     */
+    public static String name(int band) {
+        return NAMES[band];
+    }
+}
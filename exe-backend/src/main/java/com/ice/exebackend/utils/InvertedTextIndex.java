@@ -0,0 +1,929 @@
+package com.ice.exebackend.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * 嵌入式全文倒排索引（中文按字符二元组切词，BM25 排序）
+ *
+ * - 切词：文本经 {@link TextSimilarity#normalizeName} 规范化后按相邻两个字符切分；
+ *   一个二元组正好是两个 UTF-16 字符，直接拼成一个 int 作为词项，不需要词典
+ * - 结构：新写入的文档先进内存缓冲区，{@link #flush} 时封成不可变段并写入磁盘；
+ *   段内词项有序，倒排表为「文档序号差值 + 词频」的 varint 编码
+ * - 修改 / 删除：旧版本所在段打删除标记，删除的 ID 随下一个段落盘，打开时按段的顺序回放
+ * - 段数超过 maxSegments 时合并为一个基础段（base），基础段之前的段文件全部作废
+ * 读写由读写锁保护；flush（含合并）与全量重建的提交在维护锁上互斥，可以来自不同的后台线程。
+ */
+public class InvertedTextIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(InvertedTextIndex.class);
+
+    private static final int MAGIC = 0x51534547;
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".seg";
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    /** 倒排表中词频超过 255 按 255 计（BM25 对词频早已饱和） */
+    private static final int MAX_TF = 255;
+    /** 单段文档数上限：倒排项打包时序号占 24 位 */
+    private static final int MAX_SEGMENT_DOCS = 1 << 24;
+    /** 全量重建时每攒够这么多文档先封一个内存段，最后再合并，避免一次性展开全部倒排项 */
+    private static final int REBUILD_CHUNK_DOCS = 20000;
+
+    private final Path dir;
+    private final int maxSegments;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object maintenanceLock = new Object();
+
+    // 以下字段由 lock 保护
+    private List<Segment> segments = new ArrayList<>();
+    private Map<Long, Doc> buffer = new HashMap<>();
+    /** 上次 flush 之后从已封存段中删除的文档，随下一个段落盘 */
+    private Set<Long> pendingDeletes = new HashSet<>();
+    /** 合并期间发生的删除，合并完成替换段列表时补到新段上 */
+    private List<Long> mergeDeletes;
+    private long nextNumber = 1;
+    private int liveDocs;
+    private long liveLength;
+
+    /**
+     * 一条检索结果
+     */
+    public static class Hit {
+        private final long id;
+        private final double score;
+
+        Hit(long id, double score) {
+            this.id = id;
+            this.score = score;
+        }
+
+        public long getId() { return id; }
+        public double getScore() { return score; }
+    }
+
+    /**
+     * 缓冲区中的文档：有序词项与对应词频
+     */
+    private static final class Doc {
+        final int[] terms;
+        final int[] tfs;
+        final int length;
+
+        Doc(int[] terms, int[] tfs, int length) {
+            this.terms = terms;
+            this.tfs = tfs;
+            this.length = length;
+        }
+
+        int tf(int term) {
+            int i = Arrays.binarySearch(terms, term);
+            return i >= 0 ? tfs[i] : 0;
+        }
+    }
+
+    /**
+     * 不可变段；只有删除标记可变（由 lock 保护）
+     */
+    private static final class Segment {
+        final long number;
+        final boolean base;
+        /** 本段封存前删除的、位于更早段中的文档，只用于落盘与回放 */
+        final long[] deletes;
+        final long[] ids;
+        final int[] lengths;
+        final int[] terms;
+        final int[] docFreqs;
+        final int[] offsets;
+        final byte[] postings;
+        final BitSet deleted = new BitSet();
+
+        Segment(long number, boolean base, long[] deletes, long[] ids, int[] lengths,
+                int[] terms, int[] docFreqs, int[] offsets, byte[] postings) {
+            this.number = number;
+            this.base = base;
+            this.deletes = deletes;
+            this.ids = ids;
+            this.lengths = lengths;
+            this.terms = terms;
+            this.docFreqs = docFreqs;
+            this.offsets = offsets;
+            this.postings = postings;
+        }
+
+        int ordinal(long id) {
+            return Arrays.binarySearch(ids, id);
+        }
+
+        int termIndex(int term) {
+            return Arrays.binarySearch(terms, term);
+        }
+    }
+
+    /**
+     * 倒排表解码游标
+     */
+    private static final class PostingCursor {
+        final byte[] data;
+        final int end;
+        int pos;
+        int ordinal;
+        int tf;
+
+        PostingCursor(Segment segment, int termIndex) {
+            this.data = segment.postings;
+            this.pos = segment.offsets[termIndex];
+            this.end = segment.offsets[termIndex + 1];
+        }
+
+        boolean next() {
+            if (pos >= end) return false;
+            ordinal += readVarint();
+            tf = readVarint();
+            return true;
+        }
+
+        private int readVarint() {
+            int value = 0;
+            int shift = 0;
+            while (true) {
+                byte b = data[pos++];
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) return value;
+                shift += 7;
+            }
+        }
+    }
+
+    private InvertedTextIndex(Path dir, int maxSegments) {
+        this.dir = dir;
+        this.maxSegments = Math.max(1, maxSegments);
+    }
+
+    /**
+     * 打开（不存在则创建）索引目录并加载全部段。
+     * 段文件损坏时清空目录，从空索引开始，由调用方全量重建。
+     */
+    public static InvertedTextIndex open(Path dir, int maxSegments) throws IOException {
+        Files.createDirectories(dir);
+        // 写了一半的临时文件（进程在写段时退出）
+        try (Stream<Path> temps = Files.list(dir)) {
+            for (Path temp : temps.filter(f -> f.getFileName().toString().endsWith(SUFFIX + ".tmp")).toList()) {
+                Files.deleteIfExists(temp);
+            }
+        }
+        InvertedTextIndex index = new InvertedTextIndex(dir, maxSegments);
+        List<Path> files = index.listSegmentFiles();
+        try {
+            index.load(files);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("全文索引段文件损坏，清空后重建: {}", dir, e);
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+            index.segments = new ArrayList<>();
+            index.liveDocs = 0;
+            index.liveLength = 0;
+            index.nextNumber = 1;
+        }
+        return index;
+    }
+
+    // ==================== 写入 ====================
+
+    /**
+     * 写入或替换一个文档；多个字段分别切词（字段之间不产生跨界的二元组），可重复传入同一字段提高其权重
+     */
+    public void put(long id, String... fields) {
+        Doc doc = tokenize(fields);
+        lock.writeLock().lock();
+        try {
+            removeLocked(id);
+            if (doc.length > 0) {
+                buffer.put(id, doc);
+                liveDocs++;
+                liveLength += doc.length;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(long id) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void removeLocked(long id) {
+        Doc old = buffer.remove(id);
+        if (old != null) {
+            liveDocs--;
+            liveLength -= old.length;
+        }
+        for (Segment segment : segments) {
+            int ordinal = segment.ordinal(id);
+            if (ordinal >= 0 && !segment.deleted.get(ordinal)) {
+                segment.deleted.set(ordinal);
+                liveDocs--;
+                liveLength -= segment.lengths[ordinal];
+                pendingDeletes.add(id);
+                if (mergeDeletes != null) mergeDeletes.add(id);
+            }
+        }
+    }
+
+    /**
+     * 缓冲区中尚未落盘的文档数
+     */
+    public int bufferedDocs() {
+        lock.readLock().lock();
+        try {
+            return buffer.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 当前有效文档数
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return liveDocs;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 索引中出现过的最大文档ID（含已删除），空索引为 0
+     */
+    public long maxId() {
+        lock.readLock().lock();
+        try {
+            long max = 0;
+            for (Segment segment : segments) {
+                if (segment.ids.length > 0) max = Math.max(max, segment.ids[segment.ids.length - 1]);
+            }
+            for (Long id : buffer.keySet()) max = Math.max(max, id);
+            return max;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ==================== 检索 ====================
+
+    /**
+     * 按 BM25 排序检索：各查询串分别切词后取并集，命中任一词项的文档都参与打分
+     *
+     * @param queries 查询串（如 NL 搜索提取出的多个关键词）
+     * @param limit   最多返回条数
+     * @return 按得分从高到低排列的结果
+     */
+    public List<Hit> search(Collection<String> queries, int limit) {
+        int[] terms = queryTerms(queries);
+        if (terms.length == 0 || limit <= 0) return Collections.emptyList();
+
+        lock.readLock().lock();
+        try {
+            if (liveDocs <= 0) return Collections.emptyList();
+            double avgLength = Math.max(1.0, (double) liveLength / liveDocs);
+            double[] idf = new double[terms.length];
+            for (int t = 0; t < terms.length; t++) {
+                // 文档频率含已删除但尚未合并掉的文档，与 Lucene 一致，对排序影响很小
+                long df = 0;
+                for (Segment segment : segments) {
+                    int ti = segment.termIndex(terms[t]);
+                    if (ti >= 0) df += segment.docFreqs[ti];
+                }
+                for (Doc doc : buffer.values()) {
+                    if (doc.tf(terms[t]) > 0) df++;
+                }
+                idf[t] = Math.log(1 + (liveDocs - df + 0.5) / (df + 0.5));
+            }
+
+            PriorityQueue<Hit> top = new PriorityQueue<>(limit + 1, Comparator.comparingDouble(Hit::getScore));
+            for (Segment segment : segments) {
+                double[] scores = null;
+                for (int t = 0; t < terms.length; t++) {
+                    int ti = segment.termIndex(terms[t]);
+                    if (ti < 0) continue;
+                    if (scores == null) scores = new double[segment.ids.length];
+                    PostingCursor cursor = new PostingCursor(segment, ti);
+                    while (cursor.next()) {
+                        if (segment.deleted.get(cursor.ordinal)) continue;
+                        scores[cursor.ordinal] += bm25(idf[t], cursor.tf, segment.lengths[cursor.ordinal], avgLength);
+                    }
+                }
+                if (scores == null) continue;
+                for (int ordinal = 0; ordinal < scores.length; ordinal++) {
+                    if (scores[ordinal] > 0) offer(top, new Hit(segment.ids[ordinal], scores[ordinal]), limit);
+                }
+            }
+            for (Map.Entry<Long, Doc> entry : buffer.entrySet()) {
+                Doc doc = entry.getValue();
+                double score = 0;
+                for (int t = 0; t < terms.length; t++) {
+                    int tf = doc.tf(terms[t]);
+                    if (tf > 0) score += bm25(idf[t], Math.min(tf, MAX_TF), doc.length, avgLength);
+                }
+                if (score > 0) offer(top, new Hit(entry.getKey(), score), limit);
+            }
+
+            List<Hit> hits = new ArrayList<>(top);
+            hits.sort(Comparator.comparingDouble(Hit::getScore).reversed());
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 找出包含查询串全部二元组的文档（子串匹配的超集，调用方需再做精确校验）
+     *
+     * @param maxHits 命中数超过该值时放弃（条件没有区分度，不如直接扫表）
+     * @return 按 ID 从大到小排列的文档ID；查询串规范化后不足两个字符或命中过多时返回 null
+     */
+    public List<Long> matchAll(String query, int maxHits) {
+        if (TextSimilarity.normalizeName(query).length() < 2) return null;
+        int[] terms = tokenize(query).terms;
+
+        lock.readLock().lock();
+        try {
+            List<Long> ids = new ArrayList<>();
+            for (Segment segment : segments) {
+                int[] ordinals = null;
+                for (int term : terms) {
+                    int ti = segment.termIndex(term);
+                    if (ti < 0) {
+                        ordinals = null;
+                        break;
+                    }
+                    int[] current = decodeOrdinals(segment, ti);
+                    ordinals = ordinals == null ? current : intersect(ordinals, current);
+                    if (ordinals.length == 0) break;
+                }
+                if (ordinals == null) continue;
+                for (int ordinal : ordinals) {
+                    if (!segment.deleted.get(ordinal)) ids.add(segment.ids[ordinal]);
+                }
+                if (ids.size() > maxHits) return null;
+            }
+            for (Map.Entry<Long, Doc> entry : buffer.entrySet()) {
+                boolean all = true;
+                for (int term : terms) {
+                    if (entry.getValue().tf(term) == 0) {
+                        all = false;
+                        break;
+                    }
+                }
+                if (all) ids.add(entry.getKey());
+            }
+            if (ids.size() > maxHits) return null;
+            ids.sort(Comparator.reverseOrder());
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static double bm25(double idf, int tf, int length, double avgLength) {
+        return idf * tf * (K1 + 1) / (tf + K1 * (1 - B + B * length / avgLength));
+    }
+
+    private static void offer(PriorityQueue<Hit> top, Hit hit, int limit) {
+        if (top.size() < limit) {
+            top.offer(hit);
+        } else if (hit.score > top.peek().score) {
+            top.poll();
+            top.offer(hit);
+        }
+    }
+
+    private static int[] decodeOrdinals(Segment segment, int termIndex) {
+        int[] ordinals = new int[segment.docFreqs[termIndex]];
+        PostingCursor cursor = new PostingCursor(segment, termIndex);
+        int n = 0;
+        while (cursor.next()) ordinals[n++] = cursor.ordinal;
+        return ordinals;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) i++;
+            else if (a[i] > b[j]) j++;
+            else {
+                result[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    // ==================== 切词 ====================
+
+    private static Doc tokenize(String... fields) {
+        int total = 0;
+        List<String> normalized = new ArrayList<>(fields.length);
+        for (String field : fields) {
+            String s = TextSimilarity.normalizeName(field);
+            if (s.isEmpty()) continue;
+            normalized.add(s);
+            total += Math.max(1, s.length() - 1);
+        }
+        int[] codes = new int[total];
+        int n = 0;
+        for (String s : normalized) {
+            if (s.length() == 1) {
+                // 单字文本取其本身（高 16 位为 0，不会与二元组冲突）
+                codes[n++] = s.charAt(0);
+                continue;
+            }
+            for (int i = 0; i + 1 < s.length(); i++) {
+                codes[n++] = (s.charAt(i) << 16) | s.charAt(i + 1);
+            }
+        }
+        Arrays.sort(codes);
+        int[] terms = new int[codes.length];
+        int[] tfs = new int[codes.length];
+        int distinct = 0;
+        for (int i = 0; i < codes.length; i++) {
+            if (distinct > 0 && terms[distinct - 1] == codes[i]) {
+                tfs[distinct - 1]++;
+            } else {
+                terms[distinct] = codes[i];
+                tfs[distinct++] = 1;
+            }
+        }
+        return new Doc(Arrays.copyOf(terms, distinct), Arrays.copyOf(tfs, distinct), codes.length);
+    }
+
+    private static int[] queryTerms(Collection<String> queries) {
+        TreeSet<Integer> terms = new TreeSet<>();
+        for (String query : queries) {
+            for (int term : tokenize(query).terms) terms.add(term);
+        }
+        return terms.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    // ==================== flush / 合并 / 重建 ====================
+
+    /**
+     * 把缓冲区封成新段写入磁盘；段数超过上限时合并
+     */
+    public void flush() throws IOException {
+        synchronized (maintenanceLock) {
+            Segment segment;
+            lock.writeLock().lock();
+            try {
+                if (buffer.isEmpty() && pendingDeletes.isEmpty()) return;
+                long[] deletes = pendingDeletes.stream().mapToLong(Long::longValue).sorted().toArray();
+                segment = seal(nextNumber++, false, buffer, deletes);
+                segments.add(segment);
+                buffer = new HashMap<>();
+                pendingDeletes = new HashSet<>();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            write(segment);
+            if (segments.size() > maxSegments) {
+                merge();
+            }
+        }
+    }
+
+    private void merge() throws IOException {
+        List<Segment> parts;
+        List<BitSet> deleted = new ArrayList<>();
+        long number;
+        lock.writeLock().lock();
+        try {
+            parts = new ArrayList<>(segments);
+            for (Segment part : parts) deleted.add((BitSet) part.deleted.clone());
+            number = nextNumber++;
+            mergeDeletes = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        Segment merged;
+        try {
+            long start = System.currentTimeMillis();
+            merged = merge(number, parts, deleted);
+            write(merged);
+            logger.info("全文索引合并 {} 个段: {} 篇文档, 耗时 {}ms",
+                    parts.size(), merged.ids.length, System.currentTimeMillis() - start);
+        } catch (IOException | RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                mergeDeletes = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+
+        lock.writeLock().lock();
+        try {
+            // 合并期间被删除的文档在旧段上已扣过计数，这里只补删除标记
+            for (Long id : mergeDeletes) {
+                int ordinal = merged.ordinal(id);
+                if (ordinal >= 0) merged.deleted.set(ordinal);
+            }
+            mergeDeletes = null;
+            List<Segment> next = new ArrayList<>();
+            next.add(merged);
+            for (Segment segment : segments) {
+                if (!parts.contains(segment)) next.add(segment);
+            }
+            segments = next;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        deleteFiles(parts);
+    }
+
+    /**
+     * 开始一次全量重建：新索引在 {@link Rebuild#commit} 时整体替换当前内容。
+     * 重建期间对当前索引的修改会被覆盖，调用方需在提交后补刷。
+     */
+    public Rebuild rebuild() {
+        return new Rebuild();
+    }
+
+    /**
+     * 全量重建
+     */
+    public class Rebuild {
+        private final List<Segment> parts = new ArrayList<>();
+        private Map<Long, Doc> chunk = new HashMap<>();
+
+        private Rebuild() {
+        }
+
+        public void put(long id, String... fields) {
+            Doc doc = tokenize(fields);
+            if (doc.length == 0) return;
+            chunk.put(id, doc);
+            if (chunk.size() >= REBUILD_CHUNK_DOCS) {
+                parts.add(seal(0, false, chunk, new long[0]));
+                chunk = new HashMap<>();
+            }
+        }
+
+        public void commit() throws IOException {
+            synchronized (maintenanceLock) {
+                if (!chunk.isEmpty() || parts.isEmpty()) {
+                    parts.add(seal(0, false, chunk, new long[0]));
+                }
+                long number;
+                lock.writeLock().lock();
+                try {
+                    number = nextNumber++;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                List<BitSet> deleted = new ArrayList<>();
+                for (int i = 0; i < parts.size(); i++) deleted.add(new BitSet());
+                Segment base = merge(number, parts, deleted);
+                write(base);
+
+                List<Segment> old;
+                lock.writeLock().lock();
+                try {
+                    old = segments;
+                    segments = new ArrayList<>(List.of(base));
+                    buffer = new HashMap<>();
+                    pendingDeletes = new HashSet<>();
+                    liveDocs = base.ids.length;
+                    long length = 0;
+                    for (int len : base.lengths) length += len;
+                    liveLength = length;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                deleteFiles(old);
+            }
+        }
+    }
+
+    /**
+     * 把一批文档封成段：倒排项打包为 long（高 32 位词项、中间 24 位文档序号、低 8 位词频）后排序，
+     * 同一词项的倒排项因此按文档序号有序
+     */
+    private static Segment seal(long number, boolean base, Map<Long, Doc> docs, long[] deletes) {
+        if (docs.size() > MAX_SEGMENT_DOCS) {
+            throw new IllegalStateException("单段文档数超过上限: " + docs.size());
+        }
+        long[] ids = docs.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+        int[] lengths = new int[ids.length];
+        int total = 0;
+        for (Doc doc : docs.values()) total += doc.terms.length;
+
+        long[] packed = new long[total];
+        int n = 0;
+        for (int ordinal = 0; ordinal < ids.length; ordinal++) {
+            Doc doc = docs.get(ids[ordinal]);
+            lengths[ordinal] = doc.length;
+            for (int i = 0; i < doc.terms.length; i++) {
+                packed[n++] = pack(doc.terms[i], ordinal, doc.tfs[i]);
+            }
+        }
+        Arrays.sort(packed);
+
+        PostingWriter writer = new PostingWriter();
+        int i = 0;
+        while (i < packed.length) {
+            int term = (int) (packed[i] >> 32);
+            int j = i;
+            while (j < packed.length && (int) (packed[j] >> 32) == term) j++;
+            writer.add(term, packed, i, j);
+            i = j;
+        }
+        return writer.toSegment(number, base, deletes, ids, lengths);
+    }
+
+    /**
+     * 合并多个段的有效文档为一个基础段：逐个词项收集各段的倒排项并按新序号重新编码，
+     * 任一时刻只展开一个词项的倒排表
+     */
+    private static Segment merge(long number, List<Segment> parts, List<BitSet> deleted) {
+        int live = 0;
+        for (int p = 0; p < parts.size(); p++) {
+            live += parts.get(p).ids.length - deleted.get(p).cardinality();
+        }
+        if (live > MAX_SEGMENT_DOCS) {
+            throw new IllegalStateException("单段文档数超过上限: " + live);
+        }
+        long[] ids = new long[live];
+        int n = 0;
+        for (int p = 0; p < parts.size(); p++) {
+            Segment part = parts.get(p);
+            for (int ordinal = 0; ordinal < part.ids.length; ordinal++) {
+                if (!deleted.get(p).get(ordinal)) ids[n++] = part.ids[ordinal];
+            }
+        }
+        Arrays.sort(ids);
+        int[] lengths = new int[live];
+        int[][] remap = new int[parts.size()][];
+        for (int p = 0; p < parts.size(); p++) {
+            Segment part = parts.get(p);
+            remap[p] = new int[part.ids.length];
+            for (int ordinal = 0; ordinal < part.ids.length; ordinal++) {
+                if (deleted.get(p).get(ordinal)) {
+                    remap[p][ordinal] = -1;
+                } else {
+                    int target = Arrays.binarySearch(ids, part.ids[ordinal]);
+                    remap[p][ordinal] = target;
+                    lengths[target] = part.lengths[ordinal];
+                }
+            }
+        }
+
+        int[] terms = parts.stream()
+                .flatMapToInt(part -> Arrays.stream(part.terms))
+                .sorted()
+                .distinct()
+                .toArray();
+        int[] cursors = new int[parts.size()];
+        long[] packed = new long[64];
+        PostingWriter writer = new PostingWriter();
+        for (int term : terms) {
+            int count = 0;
+            int contributors = 0;
+            for (int p = 0; p < parts.size(); p++) {
+                Segment part = parts.get(p);
+                // 各段词项有序，游标只前进不回退
+                while (cursors[p] < part.terms.length && part.terms[cursors[p]] < term) cursors[p]++;
+                if (cursors[p] >= part.terms.length || part.terms[cursors[p]] != term) continue;
+                contributors++;
+                PostingCursor cursor = new PostingCursor(part, cursors[p]);
+                while (cursor.next()) {
+                    int target = remap[p][cursor.ordinal];
+                    if (target < 0) continue;
+                    if (count == packed.length) packed = Arrays.copyOf(packed, count * 2);
+                    packed[count++] = pack(term, target, cursor.tf);
+                }
+            }
+            if (count == 0) continue;
+            // 重建时各段按 ID 区间切分，拼起来已经有序
+            if (contributors > 1 && !isSorted(packed, count)) Arrays.sort(packed, 0, count);
+            writer.add(term, packed, 0, count);
+        }
+        return writer.toSegment(number, true, new long[0], ids, lengths);
+    }
+
+    private static boolean isSorted(long[] values, int count) {
+        for (int i = 1; i < count; i++) {
+            if (values[i - 1] > values[i]) return false;
+        }
+        return true;
+    }
+
+    private static long pack(int term, int ordinal, int tf) {
+        return ((long) term << 32) | ((long) ordinal << 8) | Math.min(tf, MAX_TF);
+    }
+
+    /**
+     * 按词项顺序追加倒排表并编码
+     */
+    private static final class PostingWriter {
+        private int[] terms = new int[1024];
+        private int[] docFreqs = new int[1024];
+        private int[] offsets = new int[1025];
+        private int termCount;
+        private byte[] postings = new byte[1 << 16];
+        private int size;
+
+        /**
+         * @param packed [from, to) 为同一词项、按文档序号有序的倒排项
+         */
+        void add(int term, long[] packed, int from, int to) {
+            if (termCount == terms.length) {
+                terms = Arrays.copyOf(terms, termCount * 2);
+                docFreqs = Arrays.copyOf(docFreqs, termCount * 2);
+                offsets = Arrays.copyOf(offsets, termCount * 2 + 1);
+            }
+            terms[termCount] = term;
+            docFreqs[termCount] = to - from;
+            offsets[termCount] = size;
+            int previous = 0;
+            for (int i = from; i < to; i++) {
+                int ordinal = (int) ((packed[i] >>> 8) & (MAX_SEGMENT_DOCS - 1));
+                writeVarint(ordinal - previous);
+                writeVarint((int) (packed[i] & 0xFF));
+                previous = ordinal;
+            }
+            termCount++;
+        }
+
+        Segment toSegment(long number, boolean base, long[] deletes, long[] ids, int[] lengths) {
+            offsets[termCount] = size;
+            return new Segment(number, base, deletes, ids, lengths,
+                    Arrays.copyOf(terms, termCount), Arrays.copyOf(docFreqs, termCount),
+                    Arrays.copyOf(offsets, termCount + 1), Arrays.copyOf(postings, size));
+        }
+
+        private void writeVarint(int value) {
+            if (size + 5 > postings.length) {
+                postings = Arrays.copyOf(postings, postings.length * 2);
+            }
+            while ((value & ~0x7F) != 0) {
+                postings[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            postings[size++] = (byte) value;
+        }
+    }
+
+    // ==================== 段文件 ====================
+
+    private List<Path> listSegmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(f -> f.getFileName().toString().endsWith(SUFFIX))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private static Path fileOf(Path dir, long number) {
+        return dir.resolve(String.format("%016d%s", number, SUFFIX));
+    }
+
+    private void load(List<Path> files) throws IOException {
+        List<Segment> loaded = new ArrayList<>();
+        for (Path file : files) {
+            loaded.add(read(file));
+        }
+        int baseIndex = 0;
+        for (int i = 0; i < loaded.size(); i++) {
+            if (loaded.get(i).base) baseIndex = i;
+        }
+        // 基础段之前的段是合并 / 重建后没来得及删掉的旧文件
+        for (int i = 0; i < baseIndex; i++) {
+            Files.deleteIfExists(fileOf(dir, loaded.get(i).number));
+        }
+        List<Segment> active = new ArrayList<>();
+        for (Segment segment : loaded.subList(baseIndex, loaded.size())) {
+            for (long id : segment.deletes) {
+                for (Segment earlier : active) {
+                    int ordinal = earlier.ordinal(id);
+                    if (ordinal >= 0) earlier.deleted.set(ordinal);
+                }
+            }
+            active.add(segment);
+        }
+        int docs = 0;
+        long length = 0;
+        for (Segment segment : active) {
+            for (int ordinal = 0; ordinal < segment.ids.length; ordinal++) {
+                if (segment.deleted.get(ordinal)) continue;
+                docs++;
+                length += segment.lengths[ordinal];
+            }
+        }
+        segments = active;
+        liveDocs = docs;
+        liveLength = length;
+        nextNumber = loaded.isEmpty() ? 1 : loaded.get(loaded.size() - 1).number + 1;
+        if (!active.isEmpty()) {
+            logger.info("全文索引已加载: {}, {} 个段, {} 篇文档", dir, active.size(), docs);
+        }
+    }
+
+    private void write(Segment segment) throws IOException {
+        Path target = fileOf(dir, segment.number);
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(temp.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(segment.number);
+            out.writeBoolean(segment.base);
+            writeLongs(out, segment.deletes);
+            writeLongs(out, segment.ids);
+            writeInts(out, segment.lengths);
+            writeInts(out, segment.terms);
+            writeInts(out, segment.docFreqs);
+            writeInts(out, segment.offsets);
+            out.writeInt(segment.postings.length);
+            out.write(segment.postings);
+            out.flush();
+            fos.getFD().sync();
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static Segment read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("不是有效的索引段文件: " + file);
+            }
+            long number = in.readLong();
+            boolean base = in.readBoolean();
+            long[] deletes = readLongs(in);
+            long[] ids = readLongs(in);
+            int[] lengths = readInts(in);
+            int[] terms = readInts(in);
+            int[] docFreqs = readInts(in);
+            int[] offsets = readInts(in);
+            byte[] postings = new byte[in.readInt()];
+            in.readFully(postings);
+            if (lengths.length != ids.length || docFreqs.length != terms.length
+                    || offsets.length != terms.length + 1 || offsets[terms.length] != postings.length) {
+                throw new IOException("索引段文件不完整: " + file);
+            }
+            return new Segment(number, base, deletes, ids, lengths, terms, docFreqs, offsets, postings);
+        }
+    }
+
+    private void deleteFiles(List<Segment> obsolete) {
+        for (Segment segment : obsolete) {
+            try {
+                Files.deleteIfExists(fileOf(dir, segment.number));
+            } catch (IOException e) {
+                // 下次打开时按基础段清理
+                logger.warn("删除旧索引段失败: {}", fileOf(dir, segment.number), e);
+            }
+        }
+    }
+
+    private static void writeLongs(DataOutputStream out, long[] values) throws IOException {
+        out.writeInt(values.length);
+        for (long value : values) out.writeLong(value);
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int value : values) out.writeInt(value);
+    }
+
+    private static long[] readLongs(DataInputStream in) throws IOException {
+        long[] values = new long[in.readInt()];
+        for (int i = 0; i < values.length; i++) values[i] = in.readLong();
+        return values;
+    }
+
+    private static int[] readInts(DataInputStream in) throws IOException {
+        int[] values = new int[in.readInt()];
+        for (int i = 0; i < values.length; i++) values[i] = in.readInt();
+        return values;
+    }
+}
@@ -0,0 +1,668 @@
+package com.ice.exebackend.utils;
+
+import com.ice.exebackend.dto.PaperConstraintModel;
+import com.ice.exebackend.entity.BizQuestion;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * 岛屿模型并行遗传组卷引擎
+ *
+ * 按 {@link PaperConstraintModel} 组卷，适应度 = 1 - 难度偏差 × 0.6 - 知识点未覆盖比例 × 0.4
+ * （没有知识点要求时与 {@link GeneticPaperUtil} 的适应度定义相同）。与原实现相比：
+ * - 个体是 int[] 基因（候选题数组下标），按题型分段，去重只在段内进行，不再用 HashSet / List<BizQuestion>
+ * - 每个个体缓存「难度 × 分值」之和与各知识点的覆盖计数，变异时增量更新，精英直接复制适应度，不重复计算
+ * - 知识点未覆盖时优先做「修补变异」：换入一道覆盖缺失知识点的题
+ * - 多个岛屿各自持有 SplittableRandom 和双缓冲种群，在 ForkJoin 公共池中并行进化，每隔若干代环形迁移最优个体
+ * - 种群规模、代数、时间预算均可配置，达到目标适应度或时间预算用尽即停止
+ *
+ * 实例只服务于一次组卷请求，不可复用。
+ */
+public class IslandGeneticPaperEngine {
+
+    private static final double DIFF_WEIGHT = 0.60;         // 与 GeneticPaperUtil 保持一致
+    private static final double KP_WEIGHT = 0.40;
+    private static final double DEFAULT_DIFFICULTY = 0.5;
+    private static final int MUTATION_CANDIDATES = 3;      // 变异时从几个随机候选中挑最优的
+    private static final int MAX_PICK_ATTEMPTS = 16;
+    private static final int[] NO_KPS = new int[0];
+
+    /**
+     * 引擎参数
+     */
+    public static class Config {
+        private int islands = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+        private int populationPerIsland = 32;
+        private int maxGenerations = 300;
+        private long timeBudgetMs = 200;
+        private int migrationInterval = 10;
+        private int eliteCount = 2;
+        private double mutationRate = 0.3;
+        private double targetFitness = 0.999;
+        private long seed = 0; // 0 表示不固定种子
+
+        public int getIslands() { return islands; }
+        public void setIslands(int islands) { this.islands = Math.max(1, islands); }
+        public int getPopulationPerIsland() { return populationPerIsland; }
+        public void setPopulationPerIsland(int populationPerIsland) { this.populationPerIsland = Math.max(4, populationPerIsland); }
+        public int getMaxGenerations() { return maxGenerations; }
+        public void setMaxGenerations(int maxGenerations) { this.maxGenerations = Math.max(1, maxGenerations); }
+        public long getTimeBudgetMs() { return timeBudgetMs; }
+        public void setTimeBudgetMs(long timeBudgetMs) { this.timeBudgetMs = timeBudgetMs; }
+        public int getMigrationInterval() { return migrationInterval; }
+        public void setMigrationInterval(int migrationInterval) { this.migrationInterval = Math.max(1, migrationInterval); }
+        public int getEliteCount() { return eliteCount; }
+        public void setEliteCount(int eliteCount) { this.eliteCount = Math.max(0, eliteCount); }
+        public double getMutationRate() { return mutationRate; }
+        public void setMutationRate(double mutationRate) { this.mutationRate = mutationRate; }
+        public double getTargetFitness() { return targetFitness; }
+        public void setTargetFitness(double targetFitness) { this.targetFitness = targetFitness; }
+        public long getSeed() { return seed; }
+        public void setSeed(long seed) { this.seed = seed; }
+    }
+
+    /**
+     * 组卷结果：questions 与 scores 一一对应（每题分值）
+     */
+    public static class Result {
+        private final List<BizQuestion> questions;
+        private final int[] scores;
+        private final double fitness;
+        private final double difficulty;
+        private final int coveredKnowledgePoints;
+        private final int requiredKnowledgePoints;
+        private final int generations;
+
+        Result(List<BizQuestion> questions, int[] scores, double fitness, double difficulty,
+               int coveredKnowledgePoints, int requiredKnowledgePoints, int generations) {
+            this.questions = questions;
+            this.scores = scores;
+            this.fitness = fitness;
+            this.difficulty = difficulty;
+            this.coveredKnowledgePoints = coveredKnowledgePoints;
+            this.requiredKnowledgePoints = requiredKnowledgePoints;
+            this.generations = generations;
+        }
+
+        public List<BizQuestion> getQuestions() { return questions; }
+        public int[] getScores() { return scores; }
+        public double getFitness() { return fitness; }
+        public double getDifficulty() { return difficulty; }
+        public int getCoveredKnowledgePoints() { return coveredKnowledgePoints; }
+        public int getRequiredKnowledgePoints() { return requiredKnowledgePoints; }
+        public int getGenerations() { return generations; }
+        public int getTotalScore() {
+            int total = 0;
+            for (int s : scores) total += s;
+            return total;
+        }
+    }
+
+    private final Config config;
+    private final double targetDifficulty;
+
+    // 扁平化的候选题，同一题型的候选题连续存放
+    private final BizQuestion[] candidates;
+    private final double[] difficulty;
+    private final int[] candidateSegment;
+    // 候选题覆盖的「必需知识点」下标
+    private final int[][] candidateKps;
+
+    // 基因按题型分段：段 s 占据基因位 [segSlotLo[s], segSlotHi[s])，取值范围 [segCandLo[s], segCandHi[s])
+    private final int[] segSlotLo;
+    private final int[] segSlotHi;
+    private final int[] segCandLo;
+    private final int[] segCandHi;
+    private final int[] slotSegment;
+    private final int[] slotScore;
+    private final int genomeLength;
+    private final double totalScore;
+
+    // 知识点约束：kpMin[k] 为第 k 个必需知识点的最少题数，kpCandidates[k] 为覆盖它的候选题
+    private final int kpCount;
+    private final int[] kpMin;
+    private final int[][] kpCandidates;
+
+    /**
+     * 仅按题量和难度组卷（分值使用默认值，无知识点约束）
+     */
+    public IslandGeneticPaperEngine(Map<Integer, List<BizQuestion>> candidatePool,
+                                    Map<Integer, Integer> typeCountMap,
+                                    double targetDifficulty,
+                                    Config config) {
+        this(candidatePool, simpleModel(typeCountMap, targetDifficulty), Collections.emptyMap(), config);
+    }
+
+    /**
+     * @param candidatePool           题型 -> 候选题（调用方已排除 excludedQuestionIds）
+     * @param model                   约束模型
+     * @param questionKnowledgePoints 题目ID -> 知识点ID（只需包含候选题）
+     */
+    public IslandGeneticPaperEngine(Map<Integer, List<BizQuestion>> candidatePool,
+                                    PaperConstraintModel model,
+                                    Map<Long, ? extends Collection<Long>> questionKnowledgePoints,
+                                    Config config) {
+        this.config = config != null ? config : new Config();
+        this.targetDifficulty = model.getTargetDifficulty();
+
+        // 1. 题型分段（按题型排序，保证同样的输入得到同样的基因布局）
+        List<BizQuestion> flat = new ArrayList<>();
+        List<int[]> segments = new ArrayList<>();
+        List<Integer> segmentTypes = new ArrayList<>();
+        int slots = 0;
+        for (Map.Entry<Integer, Integer> entry : new TreeMap<>(model.getTypeCounts()).entrySet()) {
+            int count = entry.getValue() == null ? 0 : entry.getValue();
+            List<BizQuestion> list = candidatePool.get(entry.getKey());
+            // 与 GeneticPaperUtil 一致：候选不足的题型跳过
+            if (count <= 0 || list == null || list.size() < count) continue;
+            segments.add(new int[]{slots, slots + count, flat.size(), flat.size() + list.size()});
+            segmentTypes.add(entry.getKey());
+            flat.addAll(list);
+            slots += count;
+        }
+
+        this.candidates = flat.toArray(new BizQuestion[0]);
+        this.genomeLength = slots;
+        this.segSlotLo = new int[segments.size()];
+        this.segSlotHi = new int[segments.size()];
+        this.segCandLo = new int[segments.size()];
+        this.segCandHi = new int[segments.size()];
+        this.slotSegment = new int[slots];
+        this.candidateSegment = new int[candidates.length];
+        for (int s = 0; s < segments.size(); s++) {
+            int[] seg = segments.get(s);
+            segSlotLo[s] = seg[0];
+            segSlotHi[s] = seg[1];
+            segCandLo[s] = seg[2];
+            segCandHi[s] = seg[3];
+            Arrays.fill(slotSegment, seg[0], seg[1], s);
+            Arrays.fill(candidateSegment, seg[2], seg[3], s);
+        }
+
+        // 2. 分值分配（满足目标总分）
+        this.slotScore = allocateSlotScores(model, segmentTypes);
+        double total = 0;
+        for (int score : slotScore) total += score;
+        this.totalScore = total;
+
+        this.difficulty = new double[candidates.length];
+        for (int i = 0; i < candidates.length; i++) {
+            difficulty[i] = difficultyOf(candidates[i]);
+        }
+
+        // 3. 知识点约束：只保留必需知识点，映射为连续下标
+        Map<Long, Integer> kpIndex = new HashMap<>();
+        List<Integer> mins = new ArrayList<>();
+        for (Map.Entry<Long, Integer> entry : model.getKnowledgePointMinCounts().entrySet()) {
+            if (entry.getKey() == null || entry.getValue() == null || entry.getValue() <= 0) continue;
+            kpIndex.put(entry.getKey(), mins.size());
+            mins.add(entry.getValue());
+        }
+        this.kpCount = mins.size();
+        this.kpMin = new int[kpCount];
+        for (int k = 0; k < kpCount; k++) kpMin[k] = mins.get(k);
+
+        this.candidateKps = new int[candidates.length][];
+        int[] kpCandidateCounts = new int[kpCount];
+        for (int i = 0; i < candidates.length; i++) {
+            Collection<Long> kps = kpCount == 0 ? null : questionKnowledgePoints.get(candidates[i].getId());
+            if (kps == null || kps.isEmpty()) {
+                candidateKps[i] = NO_KPS;
+                continue;
+            }
+            int[] idx = new int[kps.size()];
+            int n = 0;
+            for (Long kp : kps) {
+                Integer k = kpIndex.get(kp);
+                if (k != null) {
+                    idx[n++] = k;
+                    kpCandidateCounts[k]++;
+                }
+            }
+            candidateKps[i] = n == 0 ? NO_KPS : Arrays.copyOf(idx, n);
+        }
+        this.kpCandidates = new int[kpCount][];
+        for (int k = 0; k < kpCount; k++) kpCandidates[k] = new int[kpCandidateCounts[k]];
+        int[] fill = new int[kpCount];
+        for (int i = 0; i < candidates.length; i++) {
+            for (int k : candidateKps[i]) kpCandidates[k][fill[k]++] = i;
+        }
+    }
+
+    /**
+     * 运行进化，返回最优试卷
+     */
+    public Result evolve() {
+        if (genomeLength == 0) {
+            return new Result(new ArrayList<>(), new int[0], 0, 0, 0, kpCount, 0);
+        }
+        long deadline = System.currentTimeMillis() + config.getTimeBudgetMs();
+
+        Island[] islands = new Island[config.getIslands()];
+        for (int i = 0; i < islands.length; i++) {
+            SplittableRandom random = config.getSeed() != 0
+                    ? new SplittableRandom(config.getSeed() + i)
+                    : new SplittableRandom();
+            islands[i] = new Island(random);
+        }
+
+        int generations = 0;
+        while (generations < config.getMaxGenerations()) {
+            int steps = Math.min(config.getMigrationInterval(), config.getMaxGenerations() - generations);
+            runEpoch(islands, steps, deadline);
+            generations += steps;
+
+            if (bestFitness(islands) >= config.getTargetFitness() || System.currentTimeMillis() >= deadline) {
+                break;
+            }
+            migrate(islands);
+        }
+
+        Island best = islands[0];
+        for (Island island : islands) {
+            if (island.bestFitness() > best.bestFitness()) best = island;
+        }
+        int[] genome = best.bestGenome();
+        List<BizQuestion> questions = new ArrayList<>(genome.length);
+        for (int gene : genome) {
+            questions.add(candidates[gene]);
+        }
+        return new Result(questions, slotScore.clone(), best.bestFitness(), totalScore == 0 ? 0 : best.bestSum() / totalScore,
+                best.bestCovered(), kpCount, generations);
+    }
+
+    /**
+     * 试卷难度适应度（默认分值，与 GeneticPaperUtil.calculateFitness 相同的定义），供对比评估使用
+     */
+    public static double paperFitness(List<BizQuestion> questions, double targetDifficulty) {
+        double weighted = 0;
+        double score = 0;
+        for (BizQuestion q : questions) {
+            int s = PaperConstraintModel.defaultScore(q.getQuestionType());
+            score += s;
+            weighted += difficultyOf(q) * s;
+        }
+        double d = score == 0 ? 0 : weighted / score;
+        return 1.0 - Math.abs(d - targetDifficulty) * DIFF_WEIGHT;
+    }
+
+    private static PaperConstraintModel simpleModel(Map<Integer, Integer> typeCountMap, double targetDifficulty) {
+        PaperConstraintModel model = new PaperConstraintModel();
+        model.setTypeCounts(typeCountMap);
+        model.setTargetDifficulty(targetDifficulty);
+        return model;
+    }
+
+    /**
+     * 每个基因位的分值：先按题型分值；指定了目标总分时按比例缩放（每题至少 1 分），
+     * 舍入误差从高分题开始逐题 ±1 补齐，保证总分精确等于目标
+     */
+    private int[] allocateSlotScores(PaperConstraintModel model, List<Integer> segmentTypes) {
+        int[] scores = new int[genomeLength];
+        int base = 0;
+        for (int s = 0; s < segmentTypes.size(); s++) {
+            int score = model.scoreOf(segmentTypes.get(s));
+            Arrays.fill(scores, segSlotLo[s], segSlotHi[s], score);
+            base += score * (segSlotHi[s] - segSlotLo[s]);
+        }
+        Integer target = model.getTargetTotalScore();
+        if (target == null || target <= 0 || base == 0 || target == base || target < genomeLength) {
+            return scores;
+        }
+
+        double ratio = (double) target / base;
+        int sum = 0;
+        for (int i = 0; i < genomeLength; i++) {
+            scores[i] = Math.max(1, (int) Math.floor(scores[i] * ratio));
+            sum += scores[i];
+        }
+        Integer[] byScoreDesc = new Integer[genomeLength];
+        for (int i = 0; i < genomeLength; i++) byScoreDesc[i] = i;
+        Arrays.sort(byScoreDesc, (a, b) -> Integer.compare(scores[b], scores[a]));
+
+        int remainder = target - sum;
+        for (int i = 0; remainder != 0; i = (i + 1) % genomeLength) {
+            int slot = byScoreDesc[i];
+            if (remainder > 0) {
+                scores[slot]++;
+                remainder--;
+            } else if (scores[slot] > 1) {
+                scores[slot]--;
+                remainder++;
+            }
+        }
+        return scores;
+    }
+
+    private void runEpoch(Island[] islands, int steps, long deadline) {
+        if (islands.length == 1) {
+            islands[0].run(steps, deadline);
+            return;
+        }
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(islands.length);
+        for (Island island : islands) {
+            tasks.add(ForkJoinTask.adapt(() -> island.run(steps, deadline)));
+        }
+        ForkJoinTask.invokeAll(tasks);
+    }
+
+    /**
+     * 环形迁移：每个岛屿的最优个体替换下一个岛屿的最差个体
+     */
+    void migrate(Island[] islands) {
+        if (islands.length < 2) return;
+        int[][] emigrants = new int[islands.length][];
+        for (int i = 0; i < islands.length; i++) {
+            emigrants[i] = islands[i].bestGenome().clone();
+        }
+        for (int i = 0; i < islands.length; i++) {
+            islands[(i + 1) % islands.length].replaceWorst(emigrants[i]);
+        }
+    }
+
+    private static double bestFitness(Island[] islands) {
+        double best = Double.NEGATIVE_INFINITY;
+        for (Island island : islands) {
+            best = Math.max(best, island.bestFitness());
+        }
+        return best;
+    }
+
+    private double fitnessOf(double weightedSum, int covered) {
+        double d = totalScore == 0 ? 0 : weightedSum / totalScore;
+        double fitness = 1.0 - Math.abs(d - targetDifficulty) * DIFF_WEIGHT;
+        if (kpCount > 0) {
+            fitness -= (double) (kpCount - covered) / kpCount * KP_WEIGHT;
+        }
+        return fitness;
+    }
+
+    /**
+     * 单个岛屿：双缓冲种群，进化过程中不分配新对象
+     */
+    final class Island {
+        private final SplittableRandom random;
+        private int[][] genomes;
+        private int[][] nextGenomes;
+        private double[] sums;
+        private double[] nextSums;
+        private int[][] kpCounts;
+        private int[][] nextKpCounts;
+        private int[] covered;
+        private int[] nextCovered;
+        private double[] fitness;
+        private double[] nextFitness;
+        private final int[] order;
+        private int best;
+
+        Island(SplittableRandom random) {
+            this.random = random;
+            int size = config.getPopulationPerIsland();
+            genomes = new int[size][genomeLength];
+            nextGenomes = new int[size][genomeLength];
+            sums = new double[size];
+            nextSums = new double[size];
+            kpCounts = new int[size][kpCount];
+            nextKpCounts = new int[size][kpCount];
+            covered = new int[size];
+            nextCovered = new int[size];
+            fitness = new double[size];
+            nextFitness = new double[size];
+            order = new int[size];
+
+            for (int i = 0; i < size; i++) {
+                int[] genome = genomes[i];
+                for (int s = 0; s < segSlotLo.length; s++) {
+                    for (int slot = segSlotLo[s]; slot < segSlotHi[s]; slot++) {
+                        genome[slot] = pickUnused(genome, s, slot);
+                    }
+                }
+                evaluate(i, genomes, sums, kpCounts, covered, fitness);
+            }
+            rank();
+        }
+
+        void run(int steps, long deadline) {
+            for (int g = 0; g < steps; g++) {
+                if (fitness[best] >= config.getTargetFitness() || System.currentTimeMillis() >= deadline) {
+                    return;
+                }
+                step();
+            }
+        }
+
+        double bestFitness() {
+            return fitness[best];
+        }
+
+        double bestSum() {
+            return sums[best];
+        }
+
+        int bestCovered() {
+            return covered[best];
+        }
+
+        int[] bestGenome() {
+            return genomes[best];
+        }
+
+        void replaceWorst(int[] genome) {
+            int worst = order[order.length - 1];
+            System.arraycopy(genome, 0, genomes[worst], 0, genomeLength);
+            evaluate(worst, genomes, sums, kpCounts, covered, fitness);
+            rank();
+        }
+
+        private void step() {
+            int size = genomes.length;
+            int elite = Math.min(config.getEliteCount(), size);
+
+            // 精英直接复制，连同缓存的难度和、知识点计数与适应度
+            for (int i = 0; i < elite; i++) {
+                int src = order[i];
+                System.arraycopy(genomes[src], 0, nextGenomes[i], 0, genomeLength);
+                System.arraycopy(kpCounts[src], 0, nextKpCounts[i], 0, kpCount);
+                nextSums[i] = sums[src];
+                nextCovered[i] = covered[src];
+                nextFitness[i] = fitness[src];
+            }
+
+            for (int i = elite; i < size; i++) {
+                crossover(genomes[tournament()], genomes[tournament()], nextGenomes[i]);
+                evaluate(i, nextGenomes, nextSums, nextKpCounts, nextCovered, nextFitness);
+                if (random.nextDouble() < config.getMutationRate()) {
+                    mutate(i);
+                }
+            }
+
+            int[][] g = genomes; genomes = nextGenomes; nextGenomes = g;
+            double[] s = sums; sums = nextSums; nextSums = s;
+            int[][] k = kpCounts; kpCounts = nextKpCounts; nextKpCounts = k;
+            int[] c = covered; covered = nextCovered; nextCovered = c;
+            double[] f = fitness; fitness = nextFitness; nextFitness = f;
+            rank();
+        }
+
+        /**
+         * 全量计算个体 i 的难度和、知识点计数与适应度（只用于新生成的个体）
+         */
+        private void evaluate(int i, int[][] genomeArr, double[] sumArr, int[][] kpArr, int[] coveredArr, double[] fitnessArr) {
+            int[] genome = genomeArr[i];
+            int[] counts = kpArr[i];
+            Arrays.fill(counts, 0);
+            double sum = 0;
+            for (int slot = 0; slot < genomeLength; slot++) {
+                int gene = genome[slot];
+                sum += difficulty[gene] * slotScore[slot];
+                for (int k : candidateKps[gene]) counts[k]++;
+            }
+            int cov = 0;
+            for (int k = 0; k < kpCount; k++) {
+                if (counts[k] >= kpMin[k]) cov++;
+            }
+            sumArr[i] = sum;
+            coveredArr[i] = cov;
+            fitnessArr[i] = fitnessOf(sum, cov);
+        }
+
+        /**
+         * 段内均匀交叉：逐位随机取父本基因，与已选基因冲突时取另一父本，仍冲突则随机补一道未用的题
+         */
+        private void crossover(int[] p1, int[] p2, int[] child) {
+            for (int s = 0; s < segSlotLo.length; s++) {
+                for (int slot = segSlotLo[s]; slot < segSlotHi[s]; slot++) {
+                    int first = random.nextBoolean() ? p1[slot] : p2[slot];
+                    int second = first == p1[slot] ? p2[slot] : p1[slot];
+                    if (!usedInSegment(child, s, slot, first)) {
+                        child[slot] = first;
+                    } else if (!usedInSegment(child, s, slot, second)) {
+                        child[slot] = second;
+                    } else {
+                        child[slot] = pickUnused(child, s, slot);
+                    }
+                }
+            }
+        }
+
+        /**
+         * 变异（作用于 next 缓冲区中的个体 i，增量更新）：
+         * 有未覆盖的知识点时先尝试修补——换入一道覆盖它的题，不变差才接受；
+         * 否则随机选一个基因位，在几道随机候选中挑适应度最高的一道替换
+         */
+        private void mutate(int i) {
+            int[] genome = nextGenomes[i];
+            if (nextCovered[i] < kpCount && random.nextBoolean() && repair(i)) {
+                return;
+            }
+
+            int slot = random.nextInt(genomeLength);
+            int s = slotSegment[slot];
+            int old = genome[slot];
+            int bestGene = old;
+            double bestFitness = Double.NEGATIVE_INFINITY;
+            for (int attempt = 0; attempt < MUTATION_CANDIDATES; attempt++) {
+                int candidate = segCandLo[s] + random.nextInt(segCandHi[s] - segCandLo[s]);
+                if (candidate == old || usedInSegment(genome, s, segSlotHi[s], candidate)) continue;
+                double f = fitnessAfterSwap(i, slot, candidate);
+                if (f > bestFitness) {
+                    bestGene = candidate;
+                    bestFitness = f;
+                }
+            }
+            if (bestGene != old) {
+                applySwap(i, slot, bestGene);
+            }
+        }
+
+        private boolean repair(int i) {
+            int[] counts = nextKpCounts[i];
+            // 从一个随机位置开始找未覆盖的知识点
+            int startK = random.nextInt(kpCount);
+            for (int n = 0; n < kpCount; n++) {
+                int k = (startK + n) % kpCount;
+                if (counts[k] >= kpMin[k] || kpCandidates[k].length == 0) continue;
+
+                int candidate = kpCandidates[k][random.nextInt(kpCandidates[k].length)];
+                int s = candidateSegment[candidate];
+                int[] genome = nextGenomes[i];
+                if (usedInSegment(genome, s, segSlotHi[s], candidate)) return false;
+                int slot = segSlotLo[s] + random.nextInt(segSlotHi[s] - segSlotLo[s]);
+                if (fitnessAfterSwap(i, slot, candidate) >= nextFitness[i]) {
+                    applySwap(i, slot, candidate);
+                    return true;
+                }
+                return false;
+            }
+            return false;
+        }
+
+        private double fitnessAfterSwap(int i, int slot, int candidate) {
+            int old = nextGenomes[i][slot];
+            double sum = nextSums[i] + (difficulty[candidate] - difficulty[old]) * slotScore[slot];
+            return fitnessOf(sum, nextCovered[i] + coverageDelta(nextKpCounts[i], old, candidate));
+        }
+
+        private void applySwap(int i, int slot, int candidate) {
+            int old = nextGenomes[i][slot];
+            int[] counts = nextKpCounts[i];
+            int cov = nextCovered[i] + coverageDelta(counts, old, candidate);
+            for (int k : candidateKps[old]) counts[k]--;
+            for (int k : candidateKps[candidate]) counts[k]++;
+            nextGenomes[i][slot] = candidate;
+            nextSums[i] += (difficulty[candidate] - difficulty[old]) * slotScore[slot];
+            nextCovered[i] = cov;
+            nextFitness[i] = fitnessOf(nextSums[i], cov);
+        }
+
+        /**
+         * 用 candidate 替换 old 后覆盖的知识点数量变化（临时修改计数后还原）
+         */
+        private int coverageDelta(int[] counts, int old, int candidate) {
+            if (kpCount == 0) return 0;
+            int delta = 0;
+            for (int k : candidateKps[old]) {
+                if (counts[k]-- == kpMin[k]) delta--;
+            }
+            for (int k : candidateKps[candidate]) {
+                if (++counts[k] == kpMin[k]) delta++;
+            }
+            for (int k : candidateKps[candidate]) counts[k]--;
+            for (int k : candidateKps[old]) counts[k]++;
+            return delta;
+        }
+
+        private int tournament() {
+            int a = random.nextInt(genomes.length);
+            int b = random.nextInt(genomes.length);
+            return fitness[a] >= fitness[b] ? a : b;
+        }
+
+        /**
+         * 按适应度降序排列下标（种群规模小，插入排序即可）
+         */
+        private void rank() {
+            for (int i = 0; i < order.length; i++) {
+                int idx = i;
+                int j = i - 1;
+                while (j >= 0 && fitness[order[j]] < fitness[idx]) {
+                    order[j + 1] = order[j];
+                    j--;
+                }
+                order[j + 1] = idx;
+            }
+            best = order[0];
+        }
+
+        /**
+         * 随机挑一道本段中尚未使用（基因位 [segSlotLo, upTo) 之内）的候选题
+         */
+        private int pickUnused(int[] genome, int s, int upTo) {
+            int lo = segCandLo[s];
+            int range = segCandHi[s] - lo;
+            for (int attempt = 0; attempt < MAX_PICK_ATTEMPTS; attempt++) {
+                int candidate = lo + random.nextInt(range);
+                if (!usedInSegment(genome, s, upTo, candidate)) return candidate;
+            }
+            // 候选很紧张时顺序扫描，候选数 >= 段长度，必定能找到
+            int start = random.nextInt(range);
+            for (int k = 0; k < range; k++) {
+                int candidate = lo + (start + k) % range;
+                if (!usedInSegment(genome, s, upTo, candidate)) return candidate;
+            }
+            throw new IllegalStateException("候选题不足");
+        }
+    }
+
+    private boolean usedInSegment(int[] genome, int s, int upTo, int candidate) {
+        for (int slot = segSlotLo[s]; slot < upTo; slot++) {
+            if (genome[slot] == candidate) return true;
+        }
+        return false;
+    }
+
+    private static double difficultyOf(BizQuestion q) {
+        return q.getDifficulty() == null ? DEFAULT_DIFFICULTY : q.getDifficulty();
+    }
+}
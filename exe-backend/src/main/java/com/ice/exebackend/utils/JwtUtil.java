@@ -2,6 +2,7 @@ package com.ice.exebackend.utils;
 
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.MalformedJwtException;
 import io.jsonwebtoken.security.Keys;
@@ -31,11 +32,15 @@ public class JwtUtil {
 
     private SecretKey secretKey;
 
+    // 解析器不可变、线程安全，只构建一次
+    private JwtParser parser;
+
     @PostConstruct
     public void init() {
         // 在Bean初始化后，将Base64编码的字符串密钥解码成一个安全的SecretKey对象
         byte[] keyBytes = Base64.getDecoder().decode(this.secret);
         this.secretKey = Keys.hmacShaKeyFor(keyBytes);
+        this.parser = Jwts.parserBuilder().setSigningKey(secretKey).build();
     }
 
     public String getUsernameFromToken(String token) {
@@ -51,14 +56,13 @@ public class JwtUtil {
         return claimsResolver.apply(claims);
     }
 
-    private Claims getAllClaimsFromToken(String token) {
-        // 使用新的、更安全的 parserBuilder
-        return Jwts.parserBuilder().setSigningKey(secretKey).build().parseClaimsJws(token).getBody();
-    }
-
-    private Boolean isTokenExpired(String token) {
-        final Date expirationDate = getExpirationDateFromToken(token);
-        return expirationDate.before(new Date());
+    /**
+     * 校验签名和有效期并返回全部声明（只解析一次）
+     *
+     * @throws io.jsonwebtoken.JwtException Token 无效或已过期
+     */
+    public Claims getAllClaimsFromToken(String token) {
+        return parser.parseClaimsJws(token).getBody();
     }
 
     public String generateToken(UserDetails userDetails) {
@@ -111,8 +115,9 @@ public class JwtUtil {
                 return false;
             }
 
-            // 2. 获取用户名并验证
-            final String username = getUsernameFromToken(token);
+            // 2. 解析一次，取出用户名和过期时间
+            final Claims claims = getAllClaimsFromToken(token);
+            final String username = claims.getSubject();
 
             if (username == null || username.trim().isEmpty()) {
                 logger.debug("Token中的用户名为空");
@@ -120,7 +125,7 @@ public class JwtUtil {
             }
 
             // 3. 验证用户名匹配和Token未过期
-            return username.equals(userDetails.getUsername()) && !isTokenExpired(token);
+            return username.equals(userDetails.getUsername()) && claims.getExpiration().after(new Date());
 
         } catch (ExpiredJwtException e) {
             logger.debug("JWT已过期: {}", e.getMessage());
@@ -0,0 +1,112 @@
+package com.ice.exebackend.utils;
+
+import java.util.*;
+
+/**
+ * 知识点合并（大文本分块提取后去重）
+ *
+ * - 名称规范化：全角转半角（NFKC）、忽略大小写、去掉空白和标点，规范化后相同的直接合并（哈希查找）
+ * - 相似聚类：规范化名称的字符二元组 Dice 系数达到阈值即视为同一知识点，
+ *   借助二元组倒排索引只与有公共二元组的已有知识点比较
+ * - 合并时保留最先出现的名称，描述取较长的一个
+ * 非线程安全，并发添加时由调用方加锁。
+ */
+public class KnowledgePointMerger {
+
+    private final double similarityThreshold;
+
+    /** 合并后的知识点（按首次出现顺序） */
+    private final List<Map<String, String>> merged = new ArrayList<>();
+    /** 与 merged 一一对应的名称二元组 */
+    private final List<Set<String>> mergedBigrams = new ArrayList<>();
+    /** 规范化名称 → merged 下标 */
+    private final Map<String, Integer> byName = new HashMap<>();
+    /** 二元组 → 包含它的 merged 下标 */
+    private final Map<String, List<Integer>> bigramIndex = new HashMap<>();
+
+    /**
+     * @param similarityThreshold 名称相似度阈值（0~1），大于 1 时只按规范化名称精确合并
+     */
+    public KnowledgePointMerger(double similarityThreshold) {
+        this.similarityThreshold = similarityThreshold;
+    }
+
+    public void addAll(List<Map<String, String>> points) {
+        if (points == null) return;
+        for (Map<String, String> point : points) {
+            add(point);
+        }
+    }
+
+    /**
+     * 添加一个知识点（含 name、description），名称为空的忽略
+     */
+    public void add(Map<String, String> point) {
+        String name = point.get("name");
+        if (name == null || name.isBlank()) return;
+        String key = TextSimilarity.normalizeName(name);
+        if (key.isEmpty()) return;
+
+        Integer target = byName.get(key);
+        Set<String> bigrams = TextSimilarity.bigrams(key);
+        if (target == null) {
+            target = findSimilar(bigrams);
+        }
+        if (target != null) {
+            byName.putIfAbsent(key, target);
+            mergeDescription(merged.get(target), point.get("description"));
+            return;
+        }
+
+        int slot = merged.size();
+        merged.add(new LinkedHashMap<>(point));
+        mergedBigrams.add(bigrams);
+        byName.put(key, slot);
+        for (String gram : bigrams) {
+            bigramIndex.computeIfAbsent(gram, k -> new ArrayList<>()).add(slot);
+        }
+    }
+
+    /**
+     * 合并结果（按首次出现顺序）
+     */
+    public List<Map<String, String>> result() {
+        return new ArrayList<>(merged);
+    }
+
+    public int size() {
+        return merged.size();
+    }
+
+    private Integer findSimilar(Set<String> bigrams) {
+        if (similarityThreshold > 1) return null;
+        // 统计每个候选与新名称的公共二元组数
+        Map<Integer, Integer> shared = new HashMap<>();
+        for (String gram : bigrams) {
+            List<Integer> slots = bigramIndex.get(gram);
+            if (slots == null) continue;
+            for (Integer slot : slots) {
+                shared.merge(slot, 1, Integer::sum);
+            }
+        }
+        Integer best = null;
+        double bestScore = similarityThreshold;
+        for (Map.Entry<Integer, Integer> e : shared.entrySet()) {
+            int other = mergedBigrams.get(e.getKey()).size();
+            double score = TextSimilarity.dice(e.getValue(), bigrams.size(), other);
+            if (score > bestScore || (score == bestScore && (best == null || e.getKey() < best))) {
+                best = e.getKey();
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    private static void mergeDescription(Map<String, String> target, String description) {
+        if (description == null) return;
+        String current = target.get("description");
+        if (current == null || description.trim().length() > current.trim().length()) {
+            target.put("description", description);
+        }
+    }
+}
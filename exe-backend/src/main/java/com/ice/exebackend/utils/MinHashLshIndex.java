@@ -0,0 +1,321 @@
+package com.ice.exebackend.utils;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntConsumer;
+
+/**
+ * 近似重复文本索引（MinHash 签名 + LSH 分段）
+ *
+ * - 特征：文本经 {@link TextSimilarity#normalizeText} 规范化后的字符二元组集合
+ * - 签名：bands × rows 个哈希函数分别取特征哈希的最小值，两段文本签名相同位置的比例即 Jaccard 相似度的估计
+ * - 分段：签名切成 bands 段，任一段完全相同的两段文本成为候选；
+ *   命中概率 1 - (1 - J^rows)^bands，在 (1/bands)^(1/rows) 附近陡升，相似度低的文本几乎不会进入候选
+ * 候选再按签名估计值过滤；精确的相似度（如编辑距离）由调用方在这一小批候选上计算。
+ *
+ * 每个分段一张开放寻址表（段哈希 → 槽位），不装箱，单个文档的内存约为签名 4·bands·rows 字节加上每段 24 字节。
+ */
+public class MinHashLshIndex {
+
+    private static final long SEED = 0x5DEECE66DL;
+
+    private final int bands;
+    private final int rows;
+    private final long[] multipliers;
+    private final long[] increments;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // 以下字段由 lock 保护；槽位删除后放入空闲列表复用
+    private long[] ids = new long[16];
+    private int[][] signatures = new int[16][];
+    private int slotCount;
+    private final Deque<Integer> freeSlots = new ArrayDeque<>();
+    private final Map<Long, Integer> slotOf = new HashMap<>();
+    private final BandTable table = new BandTable();
+
+    /**
+     * 一对候选
+     */
+    public static class Pair {
+        private final long first;
+        private final long second;
+        private final double estimate;
+
+        Pair(long first, long second, double estimate) {
+            this.first = first;
+            this.second = second;
+            this.estimate = estimate;
+        }
+
+        public long getFirst() { return first; }
+        public long getSecond() { return second; }
+        /** 签名估计的 Jaccard 相似度 */
+        public double getEstimate() { return estimate; }
+    }
+
+    public MinHashLshIndex(int bands, int rows) {
+        this.bands = Math.max(1, bands);
+        this.rows = Math.max(1, rows);
+        int hashes = this.bands * this.rows;
+        this.multipliers = new long[hashes];
+        this.increments = new long[hashes];
+        // 固定种子，签名在重启前后一致
+        SplittableRandom random = new SplittableRandom(SEED);
+        for (int i = 0; i < hashes; i++) {
+            multipliers[i] = random.nextLong() | 1;
+            increments[i] = random.nextLong();
+        }
+    }
+
+    /**
+     * 计算文本的 MinHash 签名；规范化后为空的文本返回 null
+     */
+    public int[] signature(String text) {
+        String normalized = TextSimilarity.normalizeText(text);
+        if (normalized.isEmpty()) return null;
+        int[] signature = new int[multipliers.length];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        if (normalized.length() == 1) {
+            update(signature, normalized.charAt(0));
+            return signature;
+        }
+        for (int i = 0; i + 1 < normalized.length(); i++) {
+            update(signature, (normalized.charAt(i) << 16) | normalized.charAt(i + 1));
+        }
+        return signature;
+    }
+
+    private void update(int[] signature, int shingle) {
+        long base = mix(shingle);
+        for (int i = 0; i < signature.length; i++) {
+            int h = (int) ((multipliers[i] * base + increments[i]) >>> 33);
+            if (h < signature[i]) signature[i] = h;
+        }
+    }
+
+    // ==================== 写入 ====================
+
+    /**
+     * 写入或替换一个文档
+     */
+    public void put(long id, String text) {
+        int[] signature = signature(text);
+        lock.writeLock().lock();
+        try {
+            removeLocked(id);
+            if (signature == null) return;
+            int slot;
+            if (!freeSlots.isEmpty()) {
+                slot = freeSlots.pop();
+            } else {
+                if (slotCount == ids.length) {
+                    ids = Arrays.copyOf(ids, slotCount * 2);
+                    signatures = Arrays.copyOf(signatures, slotCount * 2);
+                }
+                slot = slotCount++;
+            }
+            ids[slot] = id;
+            signatures[slot] = signature;
+            slotOf.put(id, slot);
+            for (int band = 0; band < bands; band++) {
+                table.add(bandKey(signature, band), slot);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(long id) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void removeLocked(long id) {
+        Integer slot = slotOf.remove(id);
+        if (slot == null) return;
+        int[] signature = signatures[slot];
+        for (int band = 0; band < bands; band++) {
+            table.remove(bandKey(signature, band), slot);
+        }
+        signatures[slot] = null;
+        freeSlots.push(slot);
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return slotOf.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ==================== 查询 ====================
+
+    /**
+     * 与 text 近似重复的候选文档
+     *
+     * @param minEstimate 签名估计的 Jaccard 相似度下限
+     * @param excludeId   排除的文档（如正在编辑的题目本身），可为空
+     * @return 按估计相似度从高到低排列的文档ID
+     */
+    public List<Long> candidates(String text, double minEstimate, Long excludeId) {
+        int[] signature = signature(text);
+        if (signature == null) return Collections.emptyList();
+        lock.readLock().lock();
+        try {
+            Set<Integer> slots = new HashSet<>();
+            for (int band = 0; band < bands; band++) {
+                table.forEach(bandKey(signature, band), signature, band, slots::add);
+            }
+            Map<Long, Double> estimates = new HashMap<>();
+            for (int slot : slots) {
+                if (excludeId != null && ids[slot] == excludeId) continue;
+                double estimate = estimate(signature, signatures[slot]);
+                if (estimate >= minEstimate) estimates.put(ids[slot], estimate);
+            }
+            List<Long> result = new ArrayList<>(estimates.keySet());
+            result.sort(Comparator.comparing(estimates::get, Comparator.reverseOrder()));
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 索引内所有近似重复的候选对（每对只出现一次，first &lt; second）
+     *
+     * @param minEstimate 签名估计的 Jaccard 相似度下限
+     */
+    public List<Pair> candidatePairs(double minEstimate) {
+        lock.readLock().lock();
+        try {
+            List<Pair> pairs = new ArrayList<>();
+            // seen[t] == s + 1 表示 (s, t) 已经比较过
+            int[] seen = new int[slotCount];
+            for (int s = 0; s < slotCount; s++) {
+                int[] signature = signatures[s];
+                if (signature == null) continue;
+                int self = s;
+                for (int band = 0; band < bands; band++) {
+                    table.forEach(bandKey(signature, band), signature, band, t -> {
+                        if (ids[t] <= ids[self] || seen[t] == self + 1) return;
+                        seen[t] = self + 1;
+                        double estimate = estimate(signature, signatures[t]);
+                        if (estimate >= minEstimate) pairs.add(new Pair(ids[self], ids[t], estimate));
+                    });
+                }
+            }
+            return pairs;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static double estimate(int[] a, int[] b) {
+        int same = 0;
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] == b[i]) same++;
+        }
+        return (double) same / a.length;
+    }
+
+    private long bandKey(int[] signature, int band) {
+        long h = band;
+        for (int r = band * rows; r < (band + 1) * rows; r++) {
+            h = h * 0x9E3779B97F4A7C15L + signature[r];
+        }
+        long key = mix(h);
+        return key == 0 ? 1 : key;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * 段哈希 → 槽位的开放寻址多值表（线性探测，key 为 0 表示空位，删除只把值置为 -1）
+     */
+    private final class BandTable {
+        private long[] keys = new long[1024];
+        private int[] values = new int[1024];
+        private int used;
+        private int live;
+
+        void add(long key, int slot) {
+            if ((used + 1) * 2 > keys.length) {
+                // 墓碑多时原地整理，否则扩容
+                resize(live * 4 > keys.length ? keys.length * 2 : keys.length);
+            }
+            int mask = keys.length - 1;
+            int i = (int) key & mask;
+            while (keys[i] != 0) {
+                if (values[i] < 0 && keys[i] == key) {
+                    // 复用同键的墓碑
+                    values[i] = slot;
+                    live++;
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values[i] = slot;
+            used++;
+            live++;
+        }
+
+        void remove(long key, int slot) {
+            int mask = keys.length - 1;
+            int i = (int) key & mask;
+            while (keys[i] != 0) {
+                if (keys[i] == key && values[i] == slot) {
+                    values[i] = -1;
+                    live--;
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+        }
+
+        /**
+         * 遍历同一段完全相同的槽位（段哈希相同后再比对签名，排除哈希碰撞）
+         */
+        void forEach(long key, int[] signature, int band, IntConsumer consumer) {
+            int mask = keys.length - 1;
+            int i = (int) key & mask;
+            while (keys[i] != 0) {
+                int slot = values[i];
+                if (keys[i] == key && slot >= 0 && sameBand(signature, signatures[slot], band)) {
+                    consumer.accept(slot);
+                }
+                i = (i + 1) & mask;
+            }
+        }
+
+        private boolean sameBand(int[] a, int[] b, int band) {
+            for (int r = band * rows; r < (band + 1) * rows; r++) {
+                if (a[r] != b[r]) return false;
+            }
+            return true;
+        }
+
+        private void resize(int capacity) {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new long[capacity];
+            values = new int[capacity];
+            used = 0;
+            live = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0 && oldValues[i] >= 0) add(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+}
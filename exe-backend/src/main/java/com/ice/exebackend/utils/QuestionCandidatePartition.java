@@ -0,0 +1,193 @@
+package com.ice.exebackend.utils;
+
+import com.ice.exebackend.entity.BizQuestion;
+
+import java.util.*;
+
+/**
+ * 智能组卷候选分区（某科目 / 年级 / 题型下的全部试题）
+ *
+ * 按列存储组卷需要的元数据：ids / difficulties / knowledgePoints，同一下标对应同一道题。
+ * - upsert / remove：O(1)，删除时把末尾元素换到空位
+ * - sample：均匀随机抽取候选题，可排除指定题目，并优先保留覆盖指定知识点的题目
+ * 线程安全：所有操作在分区对象上同步
+ */
+public class QuestionCandidatePartition {
+
+    private static final long[] NO_KNOWLEDGE_POINTS = new long[0];
+
+    private final Long subjectId;
+    private final String grade;
+    private final Integer questionType;
+
+    private long[] ids;
+    private double[] difficulties;
+    private long[][] knowledgePoints;
+    private int size;
+    // questionId -> 下标
+    private final Map<Long, Integer> positions;
+
+    public QuestionCandidatePartition(Long subjectId, String grade, Integer questionType) {
+        this(subjectId, grade, questionType, 16);
+    }
+
+    public QuestionCandidatePartition(Long subjectId, String grade, Integer questionType, int initialCapacity) {
+        int capacity = Math.max(4, initialCapacity);
+        this.subjectId = subjectId;
+        this.grade = grade;
+        this.questionType = questionType;
+        this.ids = new long[capacity];
+        this.difficulties = new double[capacity];
+        this.knowledgePoints = new long[capacity][];
+        this.positions = new HashMap<>(capacity * 2);
+    }
+
+    /**
+     * 一次抽样结果
+     */
+    public static class Sample {
+        private final List<BizQuestion> questions;
+        private final Map<Long, List<Long>> knowledgePoints;
+        private final int available;
+
+        Sample(List<BizQuestion> questions, Map<Long, List<Long>> knowledgePoints, int available) {
+            this.questions = questions;
+            this.knowledgePoints = knowledgePoints;
+            this.available = available;
+        }
+
+        /** 抽中的候选题（只含 id / subjectId / grade / questionType / difficulty） */
+        public List<BizQuestion> getQuestions() {
+            return questions;
+        }
+
+        /** 抽中题目的知识点：题目ID -> 知识点ID */
+        public Map<Long, List<Long>> getKnowledgePoints() {
+            return knowledgePoints;
+        }
+
+        /** 排除之后分区内可用的题目总数 */
+        public int getAvailable() {
+            return available;
+        }
+    }
+
+    public synchronized void upsert(long id, Double difficulty, long[] kps) {
+        Integer pos = positions.get(id);
+        if (pos == null) {
+            if (size == ids.length) {
+                grow();
+            }
+            pos = size++;
+            ids[pos] = id;
+            positions.put(id, pos);
+        }
+        difficulties[pos] = difficulty != null ? difficulty : 0.5;
+        knowledgePoints[pos] = kps != null ? kps : NO_KNOWLEDGE_POINTS;
+    }
+
+    public synchronized boolean remove(long id) {
+        Integer pos = positions.remove(id);
+        if (pos == null) return false;
+        int last = --size;
+        if (pos != last) {
+            ids[pos] = ids[last];
+            difficulties[pos] = difficulties[last];
+            knowledgePoints[pos] = knowledgePoints[last];
+            positions.put(ids[pos], pos);
+        }
+        knowledgePoints[last] = null;
+        return true;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * 抽取候选题
+     *
+     * @param limit              最多抽取的数量
+     * @param excluded           排除的题目ID，可为空
+     * @param requiredKnowledge  需要覆盖的知识点，覆盖这些知识点的题目优先入选，可为空
+     * @param random             随机源
+     * @return 抽样结果；可用题目不超过 limit 时返回全部可用题目
+     */
+    public synchronized Sample sample(int limit, Set<Long> excluded, Set<Long> requiredKnowledge, Random random) {
+        boolean hasExcluded = excluded != null && !excluded.isEmpty();
+        boolean hasRequired = requiredKnowledge != null && !requiredKnowledge.isEmpty();
+
+        int[] slots = new int[size];
+        int available = 0;
+        int priority = 0;
+        // 一次扫描：过滤排除项，覆盖目标知识点的题目排到前面
+        for (int i = 0; i < size; i++) {
+            if (hasExcluded && excluded.contains(ids[i])) continue;
+            if (hasRequired && coversAny(knowledgePoints[i], requiredKnowledge)) {
+                slots[available] = slots[priority];
+                slots[priority++] = i;
+            } else {
+                slots[available] = i;
+            }
+            available++;
+        }
+
+        int n = Math.min(Math.max(limit, 0), available);
+        if (n < available) {
+            // 先在优先题目中、再在其余题目中做部分 Fisher-Yates，两段各自均匀
+            int fromPriority = Math.min(priority, n);
+            shuffleHead(slots, 0, priority, fromPriority, random);
+            if (fromPriority < n) {
+                shuffleHead(slots, priority, available, n - fromPriority, random);
+            }
+        }
+
+        List<BizQuestion> questions = new ArrayList<>(n);
+        Map<Long, List<Long>> kpMap = new HashMap<>(n * 2);
+        for (int k = 0; k < n; k++) {
+            int i = slots[k];
+            BizQuestion q = new BizQuestion();
+            q.setId(ids[i]);
+            q.setSubjectId(subjectId);
+            q.setGrade(grade);
+            q.setQuestionType(questionType);
+            q.setDifficulty(difficulties[i]);
+            questions.add(q);
+
+            long[] kps = knowledgePoints[i];
+            if (kps.length > 0) {
+                List<Long> list = new ArrayList<>(kps.length);
+                for (long kp : kps) list.add(kp);
+                kpMap.put(ids[i], list);
+            }
+        }
+        return new Sample(questions, kpMap, available);
+    }
+
+    /**
+     * 把 [from, to) 中随机的 count 个元素换到 [from, from + count)
+     */
+    private static void shuffleHead(int[] slots, int from, int to, int count, Random random) {
+        int range = to - from;
+        for (int k = 0; k < count; k++) {
+            int j = from + k + random.nextInt(range - k);
+            int tmp = slots[from + k];
+            slots[from + k] = slots[j];
+            slots[j] = tmp;
+        }
+    }
+
+    private static boolean coversAny(long[] kps, Set<Long> required) {
+        for (long kp : kps) {
+            if (required.contains(kp)) return true;
+        }
+        return false;
+    }
+
+    private void grow() {
+        int capacity = ids.length + (ids.length >> 1);
+        ids = Arrays.copyOf(ids, capacity);
+        difficulties = Arrays.copyOf(difficulties, capacity);
+        knowledgePoints = Arrays.copyOf(knowledgePoints, capacity);
+    }
+}
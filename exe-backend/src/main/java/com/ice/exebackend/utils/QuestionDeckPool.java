@@ -0,0 +1,424 @@
+package com.ice.exebackend.utils;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.LongPredicate;
+
+/**
+ * 题目ID池（紧凑的 long[] 存储，按难度档分段）
+ *
+ * ids 中的题目按难度档（{@link DifficultyBand}）首尾相接地排列：[易 | 中 | 难]，段内无序；
+ * 不区分难度的调用方（对战题组）只用 {@link #add}，全部题目落在同一段。
+ * - add / put / remove：O(1)，删除时把段内末尾元素换到空位，其后各段的末尾元素依次前移一格补齐
+ * - deal / sample / sampleStratified：不放回抽取，稀疏 Fisher-Yates（只记录被交换过的位置），
+ *   耗时与抽取数量加上被跳过的题目数成正比，与池大小无关
+ * ID 到下标的索引是开放寻址（线性探测）的 int[] 散列表，槽位存「下标 + 1」，0 表示空槽，
+ * 键直接从 ids 中读取，不装箱；删除用后移法补位，不留墓碑
+ * 线程安全：所有操作在池对象上同步
+ */
+public class QuestionDeckPool {
+
+    private long[] ids;
+    private int size;
+    // 各难度档的题目数量
+    private final int[] bandSizes = new int[DifficultyBand.COUNT];
+    // 散列表：槽位 -> 在 ids 中的下标 + 1，长度为 2 的幂，装载因子不超过 1/2
+    private int[] table;
+    private int mask;
+
+    public QuestionDeckPool() {
+        this(16);
+    }
+
+    public QuestionDeckPool(int initialCapacity) {
+        int capacity = Math.max(4, initialCapacity);
+        this.ids = new long[capacity];
+        this.table = new int[tableSizeFor(capacity)];
+        this.mask = table.length - 1;
+    }
+
+    /**
+     * 加入题目（不区分难度，归入「中」档）
+     *
+     * @return 已在池中时返回 false
+     */
+    public synchronized boolean add(long id) {
+        if (slotOf(id) >= 0) return false;
+        insert(id, DifficultyBand.MEDIUM);
+        return true;
+    }
+
+    /**
+     * 加入题目或更新其难度档
+     */
+    public synchronized void put(long id, int band) {
+        int slot = slotOf(id);
+        if (slot >= 0) {
+            if (bandAt(table[slot] - 1) == band) return;
+            delete(slot);
+        }
+        insert(id, band);
+    }
+
+    public synchronized boolean remove(long id) {
+        int slot = slotOf(id);
+        if (slot < 0) return false;
+        delete(slot);
+        return true;
+    }
+
+    public synchronized boolean contains(long id) {
+        return slotOf(id) >= 0;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized int size(int band) {
+        return bandSizes[band];
+    }
+
+    /**
+     * 不放回随机抽取
+     *
+     * @param count 需要的题目数量
+     * @return 抽中的题目ID；池中不足 count 个时返回全部（已打乱）
+     */
+    public synchronized long[] deal(int count, Random random) {
+        int n = Math.min(Math.max(0, count), size);
+        long[] result = new long[n];
+        Cursor cursor = new Cursor(0, size);
+        for (int i = 0; i < n; i++) {
+            result[i] = ids[cursor.next(random)];
+        }
+        return result;
+    }
+
+    /**
+     * 均匀抽样
+     *
+     * @param count    需要的题目数量
+     * @param excluded 排除的题目，可为空
+     * @param seen     学生最近做过的题目，可为空；只在未做过的题目不够时才会选入
+     * @return 按抽取顺序排列的题目ID
+     */
+    public synchronized long[] sample(int count, LongPredicate excluded, LongPredicate seen, Random random) {
+        return draw(count, null, excluded, seen, random);
+    }
+
+    /**
+     * 按难度档分层抽样：先按权重给易 / 中 / 难三档分配名额，各档内均匀抽取，某档不足时由其余档补齐
+     *
+     * @param weights 易 / 中 / 难 三档的权重；为空时按各档题量分配，抽出的难度分布与题库一致
+     */
+    public synchronized long[] sampleStratified(int count, double[] weights, LongPredicate excluded,
+                                                LongPredicate seen, Random random) {
+        double[] w = new double[DifficultyBand.COUNT];
+        for (int b = 0; b < w.length; b++) {
+            w[b] = bandSizes[b] == 0 ? 0 : (weights == null ? bandSizes[b] : Math.max(0, weights[b]));
+        }
+        return draw(count, allocate(count, w), excluded, seen, random);
+    }
+
+    // ==================== 抽样 ====================
+
+    private long[] draw(int count, int[] quotas, LongPredicate excluded, LongPredicate seen, Random random) {
+        int n = Math.min(Math.max(0, count), size);
+        Hand hand = new Hand(n, seen != null);
+        if (n == 0) return hand.picked;
+
+        Cursor[] cursors;
+        if (quotas == null) {
+            cursors = new Cursor[]{new Cursor(0, size)};
+            quotas = new int[]{n};
+        } else {
+            cursors = new Cursor[DifficultyBand.COUNT];
+            int start = 0;
+            for (int b = 0; b < cursors.length; b++) {
+                cursors[b] = new Cursor(start, start + bandSizes[b]);
+                start += bandSizes[b];
+            }
+        }
+
+        for (int c = 0; c < cursors.length; c++) {
+            int quota = quotas[c];
+            while (quota > 0 && cursors[c].remaining() > 0) {
+                if (take(cursors[c], random, hand, excluded, seen)) {
+                    quota--;
+                }
+            }
+        }
+        // 名额没用完的档由剩余题目补齐：按剩余量加权选档，等价于在剩余题目中均匀抽取
+        while (hand.filled < n) {
+            int remaining = 0;
+            for (Cursor cursor : cursors) remaining += cursor.remaining();
+            if (remaining == 0) break;
+            int r = random.nextInt(remaining);
+            Cursor cursor = cursors[0];
+            for (Cursor candidate : cursors) {
+                if (r < candidate.remaining()) {
+                    cursor = candidate;
+                    break;
+                }
+                r -= candidate.remaining();
+            }
+            take(cursor, random, hand, excluded, seen);
+        }
+        for (int i = 0; i < hand.skippedCount && hand.filled < n; i++) {
+            hand.picked[hand.filled++] = hand.skipped[i];
+        }
+        return hand.filled == n ? hand.picked : Arrays.copyOf(hand.picked, hand.filled);
+    }
+
+    /**
+     * 抽出一个位置，未被排除且未做过时加入结果
+     */
+    private boolean take(Cursor cursor, Random random, Hand hand, LongPredicate excluded, LongPredicate seen) {
+        long id = ids[cursor.next(random)];
+        if (excluded != null && excluded.test(id)) return false;
+        if (seen != null && seen.test(id)) {
+            // 做过的题先放一边，未做过的不够时再用；最多用到 picked.length 个
+            if (hand.skippedCount < hand.skipped.length) {
+                hand.skipped[hand.skippedCount++] = id;
+            }
+            return false;
+        }
+        hand.picked[hand.filled++] = id;
+        return true;
+    }
+
+    /**
+     * 最大余数法把 count 个名额按权重分给各档
+     */
+    private static int[] allocate(int count, double[] weights) {
+        int[] quotas = new int[weights.length];
+        double total = 0;
+        for (double w : weights) total += w;
+        if (total <= 0 || count <= 0) return quotas;
+
+        double[] remainders = new double[weights.length];
+        int assigned = 0;
+        for (int b = 0; b < weights.length; b++) {
+            double exact = count * weights[b] / total;
+            quotas[b] = (int) exact;
+            remainders[b] = exact - quotas[b];
+            assigned += quotas[b];
+        }
+        while (assigned < count) {
+            int best = 0;
+            for (int b = 1; b < weights.length; b++) {
+                if (remainders[b] > remainders[best]) best = b;
+            }
+            quotas[best]++;
+            remainders[best] = -1;
+            assigned++;
+        }
+        return quotas;
+    }
+
+    /**
+     * 一次抽取的结果：picked 为选中的题目，skipped 为抽到但最近做过的题目
+     */
+    private static final class Hand {
+        final long[] picked;
+        final long[] skipped;
+        int filled;
+        int skippedCount;
+
+        Hand(int n, boolean withSeen) {
+            this.picked = new long[n];
+            this.skipped = withSeen ? new long[n] : null;
+        }
+    }
+
+    /**
+     * [from, end) 上的稀疏 Fisher-Yates：[from, next) 是已抽出的位置，
+     * 交换只记在开放寻址的 int[] 表里（键为位置 + 1，0 表示空），不改动池本身
+     */
+    private static final class Cursor {
+        private final int end;
+        private int next;
+        private int[] keys = new int[16];
+        private int[] values = new int[16];
+        private int used;
+
+        Cursor(int from, int end) {
+            this.next = from;
+            this.end = end;
+        }
+
+        int remaining() {
+            return end - next;
+        }
+
+        /** 抽出一个位置（ids 的下标） */
+        int next(Random random) {
+            int j = next + random.nextInt(end - next);
+            int picked = get(j);
+            if (j != next) {
+                set(j, get(next));
+            }
+            next++;
+            return picked;
+        }
+
+        private int get(int position) {
+            int m = keys.length - 1;
+            for (int slot = hash(position) & m; keys[slot] != 0; slot = (slot + 1) & m) {
+                if (keys[slot] == position + 1) return values[slot];
+            }
+            return position;
+        }
+
+        private void set(int position, int value) {
+            if ((used + 1) * 2 > keys.length) {
+                int[] oldKeys = keys;
+                int[] oldValues = values;
+                keys = new int[oldKeys.length << 1];
+                values = new int[oldKeys.length << 1];
+                used = 0;
+                for (int i = 0; i < oldKeys.length; i++) {
+                    if (oldKeys[i] != 0) set(oldKeys[i] - 1, oldValues[i]);
+                }
+            }
+            int m = keys.length - 1;
+            int slot = hash(position) & m;
+            while (keys[slot] != 0 && keys[slot] != position + 1) {
+                slot = (slot + 1) & m;
+            }
+            if (keys[slot] == 0) {
+                keys[slot] = position + 1;
+                used++;
+            }
+            values[slot] = value;
+        }
+
+        private static int hash(int position) {
+            int h = position * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+
+    // ==================== 分段存储 ====================
+
+    /**
+     * 把 id 放到 band 段的末尾：从最后一段往前，把每段的第一个元素挪到该段末尾，空出位置
+     */
+    private void insert(long id, int band) {
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, ids.length + (ids.length >> 1));
+        }
+        if ((size + 1) * 2 > table.length) {
+            rehash(table.length << 1);
+        }
+        int hole = size;
+        for (int b = DifficultyBand.COUNT - 1; b > band; b--) {
+            int first = hole - bandSizes[b];
+            if (first != hole) move(first, hole);
+            hole = first;
+        }
+        ids[hole] = id;
+        table[freeSlot(id)] = hole + 1;
+        bandSizes[band]++;
+        size++;
+    }
+
+    /**
+     * 删除槽位 slot 对应的题目：段内末尾元素补到空位，其后每段的末尾元素前移到上一段空出的位置
+     */
+    private void delete(int slot) {
+        int pos = table[slot] - 1;
+        int band = bandAt(pos);
+        deleteSlot(slot);
+
+        int last = start(band) + bandSizes[band] - 1;
+        if (pos != last) move(last, pos);
+        int hole = last;
+        for (int b = band + 1; b < DifficultyBand.COUNT; b++) {
+            // b 段此时占据 [hole + 1, hole + bandSizes[b]]
+            if (bandSizes[b] > 0) {
+                move(hole + bandSizes[b], hole);
+                hole += bandSizes[b];
+            }
+        }
+        bandSizes[band]--;
+        size--;
+    }
+
+    private void move(int from, int to) {
+        long id = ids[from];
+        table[slotOf(id)] = to + 1;
+        ids[to] = id;
+    }
+
+    private int start(int band) {
+        int start = 0;
+        for (int b = 0; b < band; b++) start += bandSizes[b];
+        return start;
+    }
+
+    private int bandAt(int pos) {
+        int end = 0;
+        for (int b = 0; b < DifficultyBand.COUNT; b++) {
+            end += bandSizes[b];
+            if (pos < end) return b;
+        }
+        throw new IllegalStateException("下标越界: " + pos);
+    }
+
+    // ==================== 散列表 ====================
+
+    private static int tableSizeFor(int capacity) {
+        return Integer.highestOneBit(Math.max(4, capacity) * 2 - 1) << 1;
+    }
+
+    private int home(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     * id 所在的槽位，不在池中时返回 -1
+     */
+    private int slotOf(long id) {
+        for (int slot = home(id); table[slot] != 0; slot = (slot + 1) & mask) {
+            if (ids[table[slot] - 1] == id) return slot;
+        }
+        return -1;
+    }
+
+    private int freeSlot(long id) {
+        int slot = home(id);
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * 后移法删除：把探测链上后续、且起始槽位不在 (hole, next] 之间的条目前移补洞
+     */
+    private void deleteSlot(int hole) {
+        int next = hole;
+        while (true) {
+            next = (next + 1) & mask;
+            if (table[next] == 0) break;
+            int home = home(ids[table[next] - 1]);
+            boolean between = hole <= next ? hole < home && home <= next : hole < home || home <= next;
+            if (!between) {
+                table[hole] = table[next];
+                hole = next;
+            }
+        }
+        table[hole] = 0;
+    }
+
+    private void rehash(int tableSize) {
+        table = new int[tableSize];
+        mask = tableSize - 1;
+        for (int i = 0; i < size; i++) {
+            table[freeSlot(ids[i])] = i + 1;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.ice.exebackend.utils;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * 某个学生最近做过的题目（固定长度的环形窗口，超出后最早的题目自动移出）
+ *
+ * 抽题时需要快速判断「是否做过」（见 {@link QuestionDeckPool#sampleStratified}）：窗口变化后的第一次查询
+ * 把窗口复制成有序数组，之后二分查找，代价与窗口长度成正比，与题池无关。
+ * 线程安全：所有操作在对象上同步
+ */
+public class RecentlySeenQuestions {
+
+    private final long[] window;
+    private int next;
+    private int count;
+
+    // 窗口的有序副本，窗口变化后置空
+    private long[] sorted;
+
+    public RecentlySeenQuestions(int capacity) {
+        this.window = new long[Math.max(1, capacity)];
+    }
+
+    public synchronized void record(Collection<Long> questionIds) {
+        if (questionIds == null || questionIds.isEmpty()) return;
+        for (Long id : questionIds) {
+            if (id == null) continue;
+            window[next] = id;
+            next = (next + 1) % window.length;
+            if (count < window.length) count++;
+        }
+        sorted = null;
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    public synchronized boolean contains(long questionId) {
+        if (sorted == null) {
+            sorted = Arrays.copyOf(window, count);
+            Arrays.sort(sorted);
+        }
+        return Arrays.binarySearch(sorted, questionId) >= 0;
+    }
+}
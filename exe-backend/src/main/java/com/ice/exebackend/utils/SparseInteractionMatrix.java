@@ -0,0 +1,291 @@
+package com.ice.exebackend.utils;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * 学生 × 题目交互矩阵（不可变的 CSR + CSC 双存储）
+ *
+ * - 行：学生（行号由调用方分配，只增不减）；列：题目（同样只增不减）
+ * - 值：答对 +1，答错 -1
+ * - CSR（rowPtr / colIdx / values）用于取某个学生做过的题，行内按列号升序；
+ *   CSC（colPtr / rowIdx / colValues）用于从题目反查做过它的学生，计算相似度时只访问有共同题目的学生
+ *
+ * 增量更新通过 {@link #merge} 生成新矩阵：未变更的行整段复制，只有变更行重新排序合并。
+ */
+public class SparseInteractionMatrix {
+
+    private final int rows;
+    private final int cols;
+
+    private final int[] rowPtr;
+    private final int[] colIdx;
+    private final float[] values;
+
+    private final int[] colPtr;
+    private final int[] rowIdx;
+    private final float[] colValues;
+
+    private final float[] rowNorms;
+
+    private SparseInteractionMatrix(int rows, int cols, int[] rowPtr, int[] colIdx, float[] values) {
+        this.rows = rows;
+        this.cols = cols;
+        this.rowPtr = rowPtr;
+        this.colIdx = colIdx;
+        this.values = values;
+
+        // 转置得到 CSC
+        int nnz = rowPtr[rows];
+        this.colPtr = new int[cols + 1];
+        for (int i = 0; i < nnz; i++) {
+            colPtr[colIdx[i] + 1]++;
+        }
+        for (int c = 0; c < cols; c++) {
+            colPtr[c + 1] += colPtr[c];
+        }
+        this.rowIdx = new int[nnz];
+        this.colValues = new float[nnz];
+        int[] cursor = Arrays.copyOf(colPtr, cols);
+        for (int r = 0; r < rows; r++) {
+            for (int i = rowPtr[r]; i < rowPtr[r + 1]; i++) {
+                int pos = cursor[colIdx[i]]++;
+                rowIdx[pos] = r;
+                colValues[pos] = values[i];
+            }
+        }
+
+        this.rowNorms = new float[rows];
+        for (int r = 0; r < rows; r++) {
+            double sum = 0;
+            for (int i = rowPtr[r]; i < rowPtr[r + 1]; i++) {
+                sum += values[i] * values[i];
+            }
+            rowNorms[r] = (float) Math.sqrt(sum);
+        }
+    }
+
+    public static SparseInteractionMatrix empty() {
+        return new SparseInteractionMatrix(0, 0, new int[1], new int[0], new float[0]);
+    }
+
+    /**
+     * 在旧矩阵基础上合并变更
+     *
+     * @param base    旧矩阵
+     * @param rows    新的行数（>= 旧行数）
+     * @param cols    新的列数（>= 旧列数）
+     * @param changes 行号 -> (列号 -> 新值)，同一单元格以新值为准
+     */
+    public static SparseInteractionMatrix merge(SparseInteractionMatrix base, int rows, int cols,
+                                                Map<Integer, Map<Integer, Float>> changes) {
+        int extra = 0;
+        for (Map<Integer, Float> row : changes.values()) {
+            extra += row.size();
+        }
+        int baseNnz = base.rowPtr[base.rows];
+        int[] newRowPtr = new int[rows + 1];
+        int[] newColIdx = new int[baseNnz + extra];
+        float[] newValues = new float[baseNnz + extra];
+
+        int nnz = 0;
+        for (int r = 0; r < rows; r++) {
+            newRowPtr[r] = nnz;
+            int from = r < base.rows ? base.rowPtr[r] : 0;
+            int to = r < base.rows ? base.rowPtr[r + 1] : 0;
+            Map<Integer, Float> rowChanges = changes.get(r);
+
+            if (rowChanges == null || rowChanges.isEmpty()) {
+                int len = to - from;
+                System.arraycopy(base.colIdx, from, newColIdx, nnz, len);
+                System.arraycopy(base.values, from, newValues, nnz, len);
+                nnz += len;
+                continue;
+            }
+
+            // 有序归并：旧行（已按列排序）+ 排序后的变更
+            int[] changedCols = new int[rowChanges.size()];
+            int n = 0;
+            for (Integer c : rowChanges.keySet()) changedCols[n++] = c;
+            Arrays.sort(changedCols);
+
+            int i = from;
+            int j = 0;
+            while (i < to || j < changedCols.length) {
+                if (j >= changedCols.length || (i < to && base.colIdx[i] < changedCols[j])) {
+                    newColIdx[nnz] = base.colIdx[i];
+                    newValues[nnz++] = base.values[i++];
+                } else {
+                    int c = changedCols[j++];
+                    if (i < to && base.colIdx[i] == c) i++;
+                    newColIdx[nnz] = c;
+                    newValues[nnz++] = rowChanges.get(c);
+                }
+            }
+        }
+        newRowPtr[rows] = nnz;
+        if (nnz < newColIdx.length) {
+            newColIdx = Arrays.copyOf(newColIdx, nnz);
+            newValues = Arrays.copyOf(newValues, nnz);
+        }
+        return new SparseInteractionMatrix(rows, cols, newRowPtr, newColIdx, newValues);
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public int cols() {
+        return cols;
+    }
+
+    public int nnz() {
+        return rowPtr[rows];
+    }
+
+    public int rowStart(int row) {
+        return row < rows ? rowPtr[row] : 0;
+    }
+
+    public int rowEnd(int row) {
+        return row < rows ? rowPtr[row + 1] : 0;
+    }
+
+    public int colAt(int index) {
+        return colIdx[index];
+    }
+
+    public float valueAt(int index) {
+        return values[index];
+    }
+
+    public boolean contains(int row, int col) {
+        return row < rows && Arrays.binarySearch(colIdx, rowPtr[row], rowPtr[row + 1], col) >= 0;
+    }
+
+    /**
+     * 两个学生的余弦相似度（有序归并求交集，O(两行长度之和)）
+     */
+    public float cosine(int a, int b) {
+        if (a >= rows || b >= rows || rowNorms[a] == 0 || rowNorms[b] == 0) return 0;
+        int i = rowPtr[a], iEnd = rowPtr[a + 1];
+        int j = rowPtr[b], jEnd = rowPtr[b + 1];
+        float dot = 0;
+        while (i < iEnd && j < jEnd) {
+            int ci = colIdx[i];
+            int cj = colIdx[j];
+            if (ci == cj) {
+                dot += values[i++] * values[j++];
+            } else if (ci < cj) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return dot / (rowNorms[a] * rowNorms[b]);
+    }
+
+    /**
+     * 相似度计算的工作区，每个线程一份，避免每次分配 O(rows) 的数组
+     */
+    public static class Scratch {
+        private float[] dots = new float[0];
+        private int[] touched = new int[0];
+
+        void ensure(int rows) {
+            if (dots.length < rows) {
+                dots = new float[rows];
+                touched = new int[rows];
+            }
+        }
+    }
+
+    /**
+     * 余弦相似度最高的 k 个学生
+     *
+     * @param row           目标学生行号
+     * @param k             邻居数量
+     * @param minSimilarity 相似度阈值
+     * @param maxColumnScan 做过人数超过该值的题目不参与累加（区分度低，且会让计算退化为 O(学生数)）
+     * @param outRows       输出：邻居行号，长度 >= k
+     * @param outSims       输出：相似度，长度 >= k
+     * @return 实际邻居数量，结果按相似度降序
+     */
+    public int topNeighbors(int row, int k, float minSimilarity, int maxColumnScan,
+                            Scratch scratch, int[] outRows, float[] outSims) {
+        if (row >= rows || rowNorms[row] == 0) return 0;
+        scratch.ensure(rows);
+        float[] dots = scratch.dots;
+        int[] touched = scratch.touched;
+        int touchedCount = 0;
+
+        for (int i = rowPtr[row]; i < rowPtr[row + 1]; i++) {
+            int c = colIdx[i];
+            if (colPtr[c + 1] - colPtr[c] > maxColumnScan) continue;
+            float v = values[i];
+            for (int p = colPtr[c]; p < colPtr[c + 1]; p++) {
+                int other = rowIdx[p];
+                if (other == row) continue;
+                if (dots[other] == 0) touched[touchedCount++] = other;
+                dots[other] += v * colValues[p];
+                // 正负抵消恰好为 0 时补一个极小值，避免重复登记
+                if (dots[other] == 0) dots[other] = Float.MIN_VALUE;
+            }
+        }
+
+        // 小顶堆维护 Top K
+        int size = 0;
+        float norm = rowNorms[row];
+        for (int t = 0; t < touchedCount; t++) {
+            int other = touched[t];
+            float sim = dots[other] / (norm * rowNorms[other]);
+            dots[other] = 0;
+            if (sim < minSimilarity) continue;
+            if (size < k) {
+                outRows[size] = other;
+                outSims[size] = sim;
+                siftUp(outRows, outSims, size++);
+            } else if (sim > outSims[0]) {
+                outRows[0] = other;
+                outSims[0] = sim;
+                siftDown(outRows, outSims, 0, size);
+            }
+        }
+
+        // 堆排序为降序
+        for (int end = size - 1; end > 0; end--) {
+            swap(outRows, outSims, 0, end);
+            siftDown(outRows, outSims, 0, end);
+        }
+        return size;
+    }
+
+    private static void siftUp(int[] r, float[] s, int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (s[parent] <= s[i]) break;
+            swap(r, s, parent, i);
+            i = parent;
+        }
+    }
+
+    private static void siftDown(int[] r, float[] s, int i, int size) {
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= size) break;
+            int smallest = left + 1 < size && s[left + 1] < s[left] ? left + 1 : left;
+            if (s[i] <= s[smallest]) break;
+            swap(r, s, i, smallest);
+            i = smallest;
+        }
+    }
+
+    private static void swap(int[] r, float[] s, int a, int b) {
+        int tr = r[a];
+        r[a] = r[b];
+        r[b] = tr;
+        float ts = s[a];
+        s[a] = s[b];
+        s[b] = ts;
+    }
+}
@@ -0,0 +1,646 @@
+package com.ice.exebackend.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.IntPredicate;
+
+/**
+ * 学生相似度近似最近邻索引（低秩嵌入 + HNSW 图，持久化为内存映射文件）
+ *
+ * 1. 嵌入：对交互矩阵 A 做随机化 SVD（高斯随机矩阵经 (AᵀA) 幂迭代两轮再正交化），
+ *    得到每道题的 dims 维投影向量；学生嵌入 = 答题向量（题目 -> ±1）× 投影后归一化。
+ *    学生之间答题重合度通常很低（真实近邻的余弦只有 0.1~0.3），与数据无关的随机投影噪声会淹没信号，
+ *    低秩投影保留的是「做同一批题、对错相近」的主方向，召回率高得多。
+ *    投影按题目ID存储，增量合并后的新学生也能直接嵌入后查询；索引之后的新题目不参与嵌入
+ * 2. 索引：在嵌入空间上构建 HNSW 多层近邻图（上层每点 m 个邻居，第 0 层 2m 个）
+ * 3. 查询：逐层贪心下降，再在第 0 层做宽度为 ef 的最佳优先搜索，返回嵌入点积最高的学生，
+ *    由调用方用精确余弦重排
+ *
+ * 文件布局（小端）：
+ *   header: magic, version, n, dims, m, m0, entryPoint, maxLevel, questions, 保留 (int) | seed, buildTime (long)
+ *   long[questions] 题目ID | float[questions * dims] 题目投影
+ *   | long[n] 学生ID | float[n * dims] 嵌入 | int[n] 层数 | int[n * (m0 + 1)] 第 0 层（数量 + 邻居）
+ *   | int[n] 上层数据偏移（无上层为 -1） | int[] 上层数据（每层 m + 1 个）
+ * 构建在堆内完成后整体写入临时文件再原子替换；查询只读映射，不占用堆内存。
+ */
+public class StudentAnnIndex {
+
+    private static final int MAGIC = 0x484E5731; // "HNW1"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 10 * 4 + 2 * 8;
+    private static final int POWER_ITERATIONS = 2;
+
+    private final int n;
+    private final int dims;
+    private final int m;
+    private final int m0;
+    private final int entryPoint;
+    private final int maxLevel;
+    private final long buildTime;
+
+    private final FloatBuffer projections;
+    private final Map<Long, Integer> questionSlots;
+    private final LongBuffer userIds;
+    private final FloatBuffer embeddings;
+    private final IntBuffer level0;
+    private final IntBuffer upperOffsets;
+    private final IntBuffer upper;
+
+    private StudentAnnIndex(ByteBuffer buffer) {
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IllegalStateException("索引文件格式不匹配");
+        }
+        this.n = buffer.getInt(8);
+        this.dims = buffer.getInt(12);
+        this.m = buffer.getInt(16);
+        this.m0 = buffer.getInt(20);
+        this.entryPoint = buffer.getInt(24);
+        this.maxLevel = buffer.getInt(28);
+        int questions = buffer.getInt(32);
+        this.buildTime = buffer.getLong(48);
+
+        int offset = HEADER_BYTES;
+        LongBuffer questionIds = view(buffer, offset, questions * 8).asLongBuffer();
+        offset += questions * 8;
+        this.questionSlots = new HashMap<>(questions * 2);
+        for (int i = 0; i < questions; i++) {
+            questionSlots.put(questionIds.get(i), i);
+        }
+        this.projections = view(buffer, offset, questions * dims * 4).asFloatBuffer();
+        offset += questions * dims * 4;
+        this.userIds = view(buffer, offset, n * 8).asLongBuffer();
+        offset += n * 8;
+        this.embeddings = view(buffer, offset, n * dims * 4).asFloatBuffer();
+        offset += n * dims * 4;
+        offset += n * 4; // 层数只在构建时使用
+        this.level0 = view(buffer, offset, n * (m0 + 1) * 4).asIntBuffer();
+        offset += n * (m0 + 1) * 4;
+        this.upperOffsets = view(buffer, offset, n * 4).asIntBuffer();
+        offset += n * 4;
+        this.upper = view(buffer, offset, buffer.capacity() - offset).asIntBuffer();
+    }
+
+    /**
+     * 映射已有的索引文件
+     */
+    public static StudentAnnIndex open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            return new StudentAnnIndex(buffer);
+        }
+    }
+
+    /**
+     * 从交互矩阵构建索引，写入文件后映射返回
+     *
+     * @param users          行号 -> 学生ID
+     * @param colQuestions   列号 -> 题目ID
+     * @param m              上层每个点的邻居数（第 0 层为 2m）
+     * @param efConstruction 构建时的搜索宽度
+     */
+    public static StudentAnnIndex build(SparseInteractionMatrix matrix, long[] users, long[] colQuestions,
+                                        int dims, int m, int efConstruction, long seed, Path file) throws IOException {
+        float[] projection = project(matrix, dims, seed);
+        Builder builder = new Builder(matrix.rows(), dims, m, efConstruction, seed);
+        float[] embedding = new float[dims];
+        for (int row = 0; row < matrix.rows(); row++) {
+            Arrays.fill(embedding, 0f);
+            for (int i = matrix.rowStart(row); i < matrix.rowEnd(row); i++) {
+                float v = matrix.valueAt(i);
+                int base = matrix.colAt(i) * dims;
+                for (int d = 0; d < dims; d++) embedding[d] += v * projection[base + d];
+            }
+            normalize(embedding);
+            builder.insert(row, embedding);
+        }
+        builder.write(users, Arrays.copyOf(colQuestions, matrix.cols()), projection, file);
+        return open(file);
+    }
+
+    public int size() {
+        return n;
+    }
+
+    public long buildTime() {
+        return buildTime;
+    }
+
+    /**
+     * 用本索引的投影参数嵌入某个学生
+     */
+    public float[] embed(SparseInteractionMatrix matrix, int row, long[] colQuestions) {
+        float[] out = new float[dims];
+        for (int i = matrix.rowStart(row); i < matrix.rowEnd(row); i++) {
+            Integer slot = questionSlots.get(colQuestions[matrix.colAt(i)]);
+            if (slot == null) continue;
+            float v = matrix.valueAt(i);
+            int base = slot * dims;
+            for (int d = 0; d < dims; d++) out[d] += v * projections.get(base + d);
+        }
+        normalize(out);
+        return out;
+    }
+
+    /**
+     * 近似最近邻查询
+     *
+     * @param query 嵌入向量（{@link #embed} 的结果）
+     * @param limit 返回数量
+     * @param ef    第 0 层搜索宽度（>= limit），越大召回率越高、耗时越长
+     * @return 按嵌入相似度降序的学生ID
+     */
+    public long[] search(float[] query, int limit, int ef) {
+        if (n == 0) return new long[0];
+        MappedGraph graph = new MappedGraph();
+        int ep = entryPoint;
+        for (int level = maxLevel; level > 0; level--) {
+            ep = greedy(graph, query, ep, level);
+        }
+        BitSet visited = new BitSet(n);
+        Heap found = searchLayer(graph, query, new int[]{ep}, Math.max(ef, limit), 0, node -> {
+            if (visited.get(node)) return false;
+            visited.set(node);
+            return true;
+        });
+        int k = Math.min(limit, found.size);
+        int[] rows = found.sortedDescending();
+        long[] result = new long[k];
+        for (int i = 0; i < k; i++) {
+            result[i] = userIds.get(rows[i]);
+        }
+        return result;
+    }
+
+    // ==================== 图搜索（构建与查询共用） ====================
+
+    private interface Graph {
+        int degree(int node, int level);
+
+        int neighbor(int node, int level, int i);
+
+        float similarity(float[] query, int node);
+    }
+
+    private class MappedGraph implements Graph {
+        @Override
+        public int degree(int node, int level) {
+            if (level == 0) return level0.get(node * (m0 + 1));
+            return upper.get(upperOffsets.get(node) + (level - 1) * (m + 1));
+        }
+
+        @Override
+        public int neighbor(int node, int level, int i) {
+            if (level == 0) return level0.get(node * (m0 + 1) + 1 + i);
+            return upper.get(upperOffsets.get(node) + (level - 1) * (m + 1) + 1 + i);
+        }
+
+        @Override
+        public float similarity(float[] query, int node) {
+            int base = node * dims;
+            float sum = 0;
+            for (int d = 0; d < dims; d++) {
+                sum += query[d] * embeddings.get(base + d);
+            }
+            return sum;
+        }
+    }
+
+    private static int greedy(Graph graph, float[] query, int ep, int level) {
+        float best = graph.similarity(query, ep);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            int current = ep;
+            int degree = graph.degree(current, level);
+            for (int i = 0; i < degree; i++) {
+                int candidate = graph.neighbor(current, level, i);
+                float sim = graph.similarity(query, candidate);
+                if (sim > best) {
+                    best = sim;
+                    ep = candidate;
+                    improved = true;
+                }
+            }
+        }
+        return ep;
+    }
+
+    /**
+     * 在某一层做最佳优先搜索，返回相似度最高的 ef 个点（小顶堆）
+     *
+     * @param firstVisit 登记访问，首次访问返回 true
+     */
+    private static Heap searchLayer(Graph graph, float[] query, int[] entries, int ef, int level, IntPredicate firstVisit) {
+        Heap candidates = new Heap(ef * 2, false); // 大顶堆：待扩展
+        Heap found = new Heap(ef + 1, true);       // 小顶堆：当前最好的 ef 个
+        for (int ep : entries) {
+            if (!firstVisit.test(ep)) continue;
+            float sim = graph.similarity(query, ep);
+            candidates.push(ep, sim);
+            found.push(ep, sim);
+        }
+        while (found.size > ef) found.pop();
+
+        while (candidates.size > 0) {
+            float sim = candidates.topScore();
+            int node = candidates.pop();
+            if (found.size >= ef && sim < found.topScore()) break;
+
+            int degree = graph.degree(node, level);
+            for (int i = 0; i < degree; i++) {
+                int next = graph.neighbor(node, level, i);
+                if (!firstVisit.test(next)) continue;
+                float nextSim = graph.similarity(query, next);
+                if (found.size < ef || nextSim > found.topScore()) {
+                    candidates.push(next, nextSim);
+                    found.push(next, nextSim);
+                    if (found.size > ef) found.pop();
+                }
+            }
+        }
+        return found;
+    }
+
+    // ==================== 构建 ====================
+
+    private static class Builder implements Graph {
+        private final int dims;
+        private final int m;
+        private final int m0;
+        private final int efConstruction;
+        private final long seed;
+        private final double levelFactor;
+        private final Random random;
+
+        private final float[] vectors;
+        private final int[] levels;
+        private final int[] level0;     // 每个点 (m0 + 1) 个：数量 + 邻居
+        private final int[][] upper;    // 上层：每层 (m + 1) 个
+        private final int[] visitMarks; // 构建是单线程的，用轮次标记代替每次新建 BitSet
+        private int visitEpoch;
+        private int count;
+        private int entryPoint = -1;
+        private int maxLevel = -1;
+
+        Builder(int capacity, int dims, int m, int efConstruction, long seed) {
+            this.dims = dims;
+            this.m = m;
+            this.m0 = m * 2;
+            this.efConstruction = efConstruction;
+            this.seed = seed;
+            this.levelFactor = 1 / Math.log(m);
+            this.random = new Random(seed);
+            this.vectors = new float[capacity * dims];
+            this.levels = new int[capacity];
+            this.level0 = new int[capacity * (m0 + 1)];
+            this.upper = new int[capacity][];
+            this.visitMarks = new int[capacity];
+        }
+
+        private boolean firstVisit(int node) {
+            if (visitMarks[node] == visitEpoch) return false;
+            visitMarks[node] = visitEpoch;
+            return true;
+        }
+
+        void insert(int node, float[] embedding) {
+            System.arraycopy(embedding, 0, vectors, node * dims, dims);
+            int level = (int) (-Math.log(1 - random.nextDouble()) * levelFactor);
+            levels[node] = level;
+            if (level > 0) upper[node] = new int[level * (m + 1)];
+            count++;
+
+            if (entryPoint < 0) {
+                entryPoint = node;
+                maxLevel = level;
+                return;
+            }
+            float[] query = embedding;
+            int ep = entryPoint;
+            for (int lc = maxLevel; lc > level; lc--) {
+                ep = greedy(this, query, ep, lc);
+            }
+            int[] entries = {ep};
+            for (int lc = Math.min(level, maxLevel); lc >= 0; lc--) {
+                visitEpoch++;
+                Heap found = searchLayer(this, query, entries, efConstruction, lc, this::firstVisit);
+                int[] candidates = found.sortedDescending();
+                int maxDegree = lc == 0 ? m0 : m;
+                int[] selected = selectNeighbors(query, candidates, maxDegree);
+                setNeighbors(node, lc, selected, selected.length);
+                for (int neighbor : selected) {
+                    connect(neighbor, node, lc, maxDegree);
+                }
+                entries = candidates;
+            }
+            if (level > maxLevel) {
+                maxLevel = level;
+                entryPoint = node;
+            }
+        }
+
+        /**
+         * 启发式选邻居：候选比已选中的任何点都更接近 base 时才入选，保证邻居分散在不同方向；
+         * 不足 maxDegree 时用被跳过的候选补齐
+         */
+        private int[] selectNeighbors(float[] base, int[] candidatesDesc, int maxDegree) {
+            int[] selected = new int[Math.min(maxDegree, candidatesDesc.length)];
+            int size = 0;
+            boolean[] taken = new boolean[candidatesDesc.length];
+            for (int c = 0; c < candidatesDesc.length && size < selected.length; c++) {
+                int candidate = candidatesDesc[c];
+                float simToBase = similarity(base, candidate);
+                boolean keep = true;
+                for (int s = 0; s < size; s++) {
+                    if (nodeSimilarity(candidate, selected[s]) > simToBase) {
+                        keep = false;
+                        break;
+                    }
+                }
+                if (keep) {
+                    selected[size++] = candidate;
+                    taken[c] = true;
+                }
+            }
+            for (int c = 0; c < candidatesDesc.length && size < selected.length; c++) {
+                if (!taken[c]) selected[size++] = candidatesDesc[c];
+            }
+            return selected;
+        }
+
+        private void connect(int node, int newNeighbor, int level, int maxDegree) {
+            int degree = degree(node, level);
+            if (degree < maxDegree) {
+                setNeighbor(node, level, degree, newNeighbor);
+                setDegree(node, level, degree + 1);
+                return;
+            }
+            // 已满：新点比最远的邻居更近时替换之（不重跑启发式，构建开销低一个数量级，召回率差异很小）
+            float newSim = nodeSimilarity(node, newNeighbor);
+            int worst = -1;
+            float worstSim = newSim;
+            for (int i = 0; i < degree; i++) {
+                float sim = nodeSimilarity(node, neighbor(node, level, i));
+                if (sim < worstSim) {
+                    worstSim = sim;
+                    worst = i;
+                }
+            }
+            if (worst >= 0) {
+                setNeighbor(node, level, worst, newNeighbor);
+            }
+        }
+
+        private float nodeSimilarity(int a, int b) {
+            int ia = a * dims;
+            int ib = b * dims;
+            float sum = 0;
+            for (int d = 0; d < dims; d++) sum += vectors[ia + d] * vectors[ib + d];
+            return sum;
+        }
+
+        @Override
+        public float similarity(float[] query, int node) {
+            int base = node * dims;
+            float sum = 0;
+            for (int d = 0; d < dims; d++) sum += query[d] * vectors[base + d];
+            return sum;
+        }
+
+        @Override
+        public int degree(int node, int level) {
+            return level == 0 ? level0[node * (m0 + 1)] : upper[node][(level - 1) * (m + 1)];
+        }
+
+        @Override
+        public int neighbor(int node, int level, int i) {
+            return level == 0 ? level0[node * (m0 + 1) + 1 + i] : upper[node][(level - 1) * (m + 1) + 1 + i];
+        }
+
+        private void setDegree(int node, int level, int degree) {
+            if (level == 0) level0[node * (m0 + 1)] = degree;
+            else upper[node][(level - 1) * (m + 1)] = degree;
+        }
+
+        private void setNeighbor(int node, int level, int i, int neighbor) {
+            if (level == 0) level0[node * (m0 + 1) + 1 + i] = neighbor;
+            else upper[node][(level - 1) * (m + 1) + 1 + i] = neighbor;
+        }
+
+        private void setNeighbors(int node, int level, int[] neighbors, int size) {
+            for (int i = 0; i < size; i++) setNeighbor(node, level, i, neighbors[i]);
+            setDegree(node, level, size);
+        }
+
+        void write(long[] users, long[] questionIds, float[] projection, Path file) throws IOException {
+            int upperInts = 0;
+            for (int i = 0; i < count; i++) {
+                if (upper[i] != null) upperInts += upper[i].length;
+            }
+            int questions = questionIds.length;
+            long size = HEADER_BYTES + questions * 8L + (long) questions * dims * 4 + count * 8L + (long) count * dims * 4 + count * 4L
+                    + (long) count * (m0 + 1) * 4 + count * 4L + upperInts * 4L;
+            if (size > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("索引文件超过 2GB，请减小 dims");
+            }
+
+            Path dir = file.toAbsolutePath().getParent();
+            if (dir != null) Files.createDirectories(dir);
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                buffer.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, count).putInt(12, dims)
+                        .putInt(16, m).putInt(20, m0).putInt(24, Math.max(entryPoint, 0)).putInt(28, Math.max(maxLevel, 0))
+                        .putInt(32, questions).putLong(40, seed).putLong(48, System.currentTimeMillis());
+                int offset = HEADER_BYTES;
+                view(buffer, offset, questions * 8).asLongBuffer().put(questionIds);
+                offset += questions * 8;
+                view(buffer, offset, questions * dims * 4).asFloatBuffer().put(projection);
+                offset += questions * dims * 4;
+                view(buffer, offset, count * 8).asLongBuffer().put(users, 0, count);
+                offset += count * 8;
+                view(buffer, offset, count * dims * 4).asFloatBuffer().put(vectors, 0, count * dims);
+                offset += count * dims * 4;
+                view(buffer, offset, count * 4).asIntBuffer().put(levels, 0, count);
+                offset += count * 4;
+                view(buffer, offset, count * (m0 + 1) * 4).asIntBuffer().put(level0, 0, count * (m0 + 1));
+                offset += count * (m0 + 1) * 4;
+
+                IntBuffer offsets = view(buffer, offset, count * 4).asIntBuffer();
+                offset += count * 4;
+                IntBuffer upperOut = view(buffer, offset, upperInts * 4).asIntBuffer();
+                int position = 0;
+                for (int i = 0; i < count; i++) {
+                    if (upper[i] == null) {
+                        offsets.put(i, -1);
+                    } else {
+                        offsets.put(i, position);
+                        upperOut.put(position, upper[i]);
+                        position += upper[i].length;
+                    }
+                }
+                buffer.force();
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    /**
+     * 定长的 (点, 分数) 二叉堆；minHeap = true 为小顶堆
+     */
+    private static class Heap {
+        private int[] nodes;
+        private float[] scores;
+        private final boolean minHeap;
+        int size;
+
+        Heap(int capacity, boolean minHeap) {
+            this.nodes = new int[Math.max(capacity, 4)];
+            this.scores = new float[Math.max(capacity, 4)];
+            this.minHeap = minHeap;
+        }
+
+        void push(int node, float score) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+                scores = Arrays.copyOf(scores, size * 2);
+            }
+            int i = size++;
+            nodes[i] = node;
+            scores[i] = score;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!before(i, parent)) break;
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        float topScore() {
+            return scores[0];
+        }
+
+        int pop() {
+            int top = nodes[0];
+            size--;
+            nodes[0] = nodes[size];
+            scores[0] = scores[size];
+            int i = 0;
+            while (true) {
+                int left = 2 * i + 1;
+                if (left >= size) break;
+                int child = left + 1 < size && before(left + 1, left) ? left + 1 : left;
+                if (!before(child, i)) break;
+                swap(i, child);
+                i = child;
+            }
+            return top;
+        }
+
+        /**
+         * 按分数降序取出全部点（会清空堆，仅用于小顶堆）
+         */
+        int[] sortedDescending() {
+            int[] result = new int[size];
+            for (int i = size - 1; i >= 0; i--) {
+                result[i] = pop();
+            }
+            return result;
+        }
+
+        private boolean before(int a, int b) {
+            return minHeap ? scores[a] < scores[b] : scores[a] > scores[b];
+        }
+
+        private void swap(int a, int b) {
+            int tn = nodes[a];
+            nodes[a] = nodes[b];
+            nodes[b] = tn;
+            float ts = scores[a];
+            scores[a] = scores[b];
+            scores[b] = ts;
+        }
+    }
+
+    // ==================== 嵌入 ====================
+
+    /**
+     * 随机化 SVD 求题目投影（cols × dims，按行存储）：P ← 正交化(Aᵀ A P)，初值为高斯随机矩阵
+     */
+    private static float[] project(SparseInteractionMatrix matrix, int dims, long seed) {
+        int cols = matrix.cols();
+        Random random = new Random(seed);
+        float[] projection = new float[cols * dims];
+        for (int i = 0; i < projection.length; i++) projection[i] = (float) random.nextGaussian();
+
+        float[] student = new float[dims];
+        for (int iteration = 0; iteration < POWER_ITERATIONS; iteration++) {
+            float[] next = new float[cols * dims];
+            for (int row = 0; row < matrix.rows(); row++) {
+                // student = A[row] · P，再把 A[row]ᵀ · student 累加到 next
+                Arrays.fill(student, 0f);
+                for (int i = matrix.rowStart(row); i < matrix.rowEnd(row); i++) {
+                    float v = matrix.valueAt(i);
+                    int base = matrix.colAt(i) * dims;
+                    for (int d = 0; d < dims; d++) student[d] += v * projection[base + d];
+                }
+                for (int i = matrix.rowStart(row); i < matrix.rowEnd(row); i++) {
+                    float v = matrix.valueAt(i);
+                    int base = matrix.colAt(i) * dims;
+                    for (int d = 0; d < dims; d++) next[base + d] += v * student[d];
+                }
+            }
+            orthonormalizeColumns(next, cols, dims);
+            projection = next;
+        }
+        return projection;
+    }
+
+    /**
+     * 修正 Gram-Schmidt：把 rows × dims 矩阵的各列正交归一化（秩不足时多余的列置零）
+     */
+    private static void orthonormalizeColumns(float[] a, int rows, int dims) {
+        for (int j = 0; j < dims; j++) {
+            for (int k = 0; k < j; k++) {
+                double dot = 0;
+                for (int r = 0; r < rows; r++) dot += a[r * dims + j] * a[r * dims + k];
+                for (int r = 0; r < rows; r++) a[r * dims + j] -= (float) (dot * a[r * dims + k]);
+            }
+            double norm = 0;
+            for (int r = 0; r < rows; r++) norm += a[r * dims + j] * a[r * dims + j];
+            float inv = norm > 1e-12 ? (float) (1 / Math.sqrt(norm)) : 0f;
+            for (int r = 0; r < rows; r++) a[r * dims + j] *= inv;
+        }
+    }
+
+    private static void normalize(float[] v) {
+        float norm = 0;
+        for (float x : v) norm += x * x;
+        if (norm > 0) {
+            float inv = (float) (1 / Math.sqrt(norm));
+            for (int d = 0; d < v.length; d++) v[d] *= inv;
+        }
+    }
+
+    private static ByteBuffer view(ByteBuffer buffer, int offset, int length) {
+        return buffer.slice(offset, length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
@@ -0,0 +1,261 @@
+package com.ice.exebackend.utils;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * 本地追加写日志（交卷排队用）
+ *
+ * 每行一条 JSON，格式与 Redis Stream 的 XADD / XACK 对应，迁移到 Redis Stream 时条目可原样导入：
+ * <pre>
+ * {"id":"1718000000000-0","type":"add","fields":{"studentId":"1",...}}
+ * {"id":"1718000000000-0","type":"ack"}
+ * </pre>
+ * - id 为「毫秒时间戳-序号」，单调递增
+ * - 写入由单个后台线程成组提交：攒一批后写入并 fsync 一次，{@link #append} 返回的 Future 在落盘后完成
+ * - 打开时回放文件，未 ack 的条目通过 {@link #pending()} 返回；末尾写了一半的行（进程在写入中途退出）被截掉
+ * - 所有条目都已 ack 且文件超过 compactBytes 时清空文件
+ */
+public class SubmissionJournal implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SubmissionJournal.class);
+
+    private static final int MAX_BATCH = 512;
+    private static final Write STOP = new Write(null, false, new byte[0], null);
+
+    /**
+     * 一条未 ack 的日志条目
+     */
+    public static class Entry {
+        private final String id;
+        private final Map<String, String> fields;
+
+        Entry(String id, Map<String, String> fields) {
+            this.id = id;
+            this.fields = fields;
+        }
+
+        public String getId() { return id; }
+        public Map<String, String> getFields() { return fields; }
+    }
+
+    private static class Write {
+        final String id;
+        final boolean ack;
+        final byte[] line;
+        final CompletableFuture<String> future;
+
+        Write(String id, boolean ack, byte[] line, CompletableFuture<String> future) {
+            this.id = id;
+            this.ack = ack;
+            this.line = line;
+            this.future = future;
+        }
+    }
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final FileChannel channel;
+    private final long compactBytes;
+    private final List<Entry> recovered;
+    private final BlockingQueue<Write> queue = new LinkedBlockingQueue<>();
+    /** 尚未 ack 的 id，只在写线程中访问 */
+    private final Set<String> unacked = new HashSet<>();
+    private final Thread writer;
+    private volatile boolean closed;
+
+    private long lastMillis;
+    private long sequence;
+
+    public SubmissionJournal(Path file, long compactBytes) throws IOException {
+        this.compactBytes = compactBytes;
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        this.recovered = replay(file);
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        recovered.forEach(e -> unacked.add(e.getId()));
+        this.writer = new Thread(this::writeLoop, "exam-journal-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * 打开日志时尚未 ack 的条目（按写入顺序）
+     */
+    public List<Entry> pending() {
+        return recovered;
+    }
+
+    /**
+     * 追加一条记录，返回的 Future 在记录 fsync 后以条目 id 完成
+     */
+    public CompletableFuture<String> append(Map<String, String> fields) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        synchronized (this) {
+            if (closed) {
+                future.completeExceptionally(new IOException("journal closed"));
+                return future;
+            }
+            String id = nextId();
+            Map<String, Object> line = new LinkedHashMap<>();
+            line.put("id", id);
+            line.put("type", "add");
+            line.put("fields", fields);
+            queue.add(new Write(id, false, toLine(line), future));
+        }
+        return future;
+    }
+
+    /**
+     * 标记条目已处理（随下一批写入，不单独等待落盘）
+     */
+    public void ack(String id) {
+        synchronized (this) {
+            if (closed) return;
+            Map<String, Object> line = new LinkedHashMap<>();
+            line.put("id", id);
+            line.put("type", "ack");
+            queue.add(new Write(id, true, toLine(line), null));
+        }
+    }
+
+    /**
+     * 停止写线程：已排队的写入仍会落盘，之后的 append 立即失败
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            queue.add(STOP);
+        }
+        try {
+            writer.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+
+    private String nextId() {
+        long now = System.currentTimeMillis();
+        if (now > lastMillis) {
+            lastMillis = now;
+            sequence = 0;
+        } else {
+            sequence++;
+        }
+        return lastMillis + "-" + sequence;
+    }
+
+    private byte[] toLine(Map<String, Object> line) {
+        try {
+            return (objectMapper.writeValueAsString(line) + "\n").getBytes(StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void writeLoop() {
+        // 不能用 interrupt 停止写线程：FileChannel 在阻塞写时被中断会直接关闭通道
+        List<Write> batch = new ArrayList<>(MAX_BATCH);
+        boolean stop = false;
+        while (!stop) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                continue;
+            }
+            queue.drainTo(batch, MAX_BATCH - 1);
+            stop = batch.remove(STOP);
+            try {
+                int size = 0;
+                for (Write w : batch) size += w.line.length;
+                ByteBuffer buffer = ByteBuffer.allocate(size);
+                for (Write w : batch) buffer.put(w.line);
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+                for (Write w : batch) {
+                    if (w.ack) {
+                        unacked.remove(w.id);
+                    } else {
+                        unacked.add(w.id);
+                        w.future.complete(w.id);
+                    }
+                }
+                if (unacked.isEmpty() && channel.size() > compactBytes) {
+                    // 全部处理完后清空：APPEND 模式下后续写入从文件头开始
+                    channel.truncate(0);
+                }
+            } catch (IOException e) {
+                logger.error("交卷日志写入失败", e);
+                for (Write w : batch) {
+                    if (w.future != null) w.future.completeExceptionally(e);
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    private List<Entry> replay(Path file) throws IOException {
+        if (!Files.exists(file)) return new ArrayList<>();
+        byte[] content = Files.readAllBytes(file);
+        int end = content.length;
+        while (end > 0 && content[end - 1] != '\n') end--;
+        if (end < content.length) {
+            logger.warn("交卷日志末尾有未写完的记录，已截断 {} 字节", content.length - end);
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                ch.truncate(end);
+                ch.force(false);
+            }
+        }
+
+        Map<String, Map<String, String>> adds = new LinkedHashMap<>();
+        String text = new String(content, 0, end, StandardCharsets.UTF_8);
+        for (String line : text.split("\n")) {
+            if (line.isBlank()) continue;
+            Map<String, Object> record = objectMapper.readValue(line, new TypeReference<Map<String, Object>>() {});
+            String id = (String) record.get("id");
+            if ("ack".equals(record.get("type"))) {
+                adds.remove(id);
+            } else {
+                adds.put(id, objectMapper.convertValue(record.get("fields"), new TypeReference<Map<String, String>>() {}));
+            }
+            trackId(id);
+        }
+        List<Entry> entries = new ArrayList<>(adds.size());
+        adds.forEach((id, fields) -> entries.add(new Entry(id, fields)));
+        return entries;
+    }
+
+    /** 回放时推进 id 生成器，保证重启后的新 id 大于已有 id */
+    private void trackId(String id) {
+        int dash = id.indexOf('-');
+        long millis = Long.parseLong(id.substring(0, dash));
+        long seq = Long.parseLong(id.substring(dash + 1));
+        if (millis > lastMillis || (millis == lastMillis && seq > sequence)) {
+            lastMillis = millis;
+            sequence = seq;
+        }
+    }
+}
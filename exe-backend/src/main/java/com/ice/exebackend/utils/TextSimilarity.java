@@ -0,0 +1,80 @@
+package com.ice.exebackend.utils;
+
+import java.text.Normalizer;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * 文本规范化与相似度（字符二元组 Dice 系数）
+ * 中文没有天然分词，按相邻两个字符切分即可覆盖大部分措辞差异，且不依赖分词库。
+ */
+public final class TextSimilarity {
+
+    private TextSimilarity() {
+    }
+
+    /**
+     * 名称规范化：NFKC（全角转半角）、小写、只保留字母和数字（含汉字）
+     */
+    public static String normalizeName(String text) {
+        if (text == null) return "";
+        String s = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (Character.isLetterOrDigit(c)) sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 作答文本规范化：NFKC、小写、去掉所有空白；标点保留（"x>1" 与 "x<1" 含义不同）
+     */
+    public static String normalizeText(String text) {
+        if (text == null) return "";
+        String s = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (!Character.isWhitespace(c) && !Character.isSpaceChar(c)) sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 字符二元组；单字文本取其本身，空文本为空集
+     */
+    public static Set<String> bigrams(String normalized) {
+        Set<String> grams = new HashSet<>();
+        if (normalized.length() == 1) {
+            grams.add(normalized);
+            return grams;
+        }
+        for (int i = 0; i + 1 < normalized.length(); i++) {
+            grams.add(normalized.substring(i, i + 2));
+        }
+        return grams;
+    }
+
+    /**
+     * Dice 系数：2|A∩B| / (|A| + |B|)
+     */
+    public static double dice(Set<String> a, Set<String> b) {
+        if (a.isEmpty() && b.isEmpty()) return 1.0;
+        Set<String> small = a.size() <= b.size() ? a : b;
+        Set<String> large = small == a ? b : a;
+        int shared = 0;
+        for (String gram : small) {
+            if (large.contains(gram)) shared++;
+        }
+        return dice(shared, a.size(), b.size());
+    }
+
+    /**
+     * 已知公共二元组数时的 Dice 系数
+     */
+    public static double dice(int shared, int sizeA, int sizeB) {
+        return 2.0 * shared / (sizeA + sizeB);
+    }
+}
@@ -1,10 +1,12 @@
 package com.ice.exebackend.aspect;
 
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.ice.exebackend.annotation.DataScope;
 import com.ice.exebackend.annotation.DataScopeType;
 import com.ice.exebackend.context.DataScopeContext;
-import com.ice.exebackend.entity.SysUser;
-import com.ice.exebackend.service.SysUserService;
+import com.ice.exebackend.context.UserDataScope;
+import com.ice.exebackend.service.DataScopeService;
+import com.ice.exebackend.utils.DataScopeUtils;
 import org.aspectj.lang.JoinPoint;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -15,16 +17,16 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.security.core.Authentication;
-import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
 
-import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
-import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 
 /**
@@ -36,7 +38,7 @@ import static org.mockito.Mockito.*;
 class DataScopeAspectTest {
 
     @Mock
-    private SysUserService sysUserService;
+    private DataScopeService dataScopeService;
 
     @Mock
     private JoinPoint joinPoint;
@@ -68,53 +70,31 @@ class DataScopeAspectTest {
     @DisplayName("管理员应该不受数据权限限制")
     void shouldNotApplyDataScopeForAdmin() {
         // Given
-        when(authentication.getName()).thenReturn("admin");
-
-        SysUser adminUser = createUser(1L, "admin");
-        when(sysUserService.lambdaQuery()).thenReturn(mock(com.baomidou.mybatisplus.core.conditions.query.LambdaQueryChainWrapper.class));
-        when(sysUserService.lambdaQuery().eq(any(), any()).one()).thenReturn(adminUser);
-
-        Collection<? extends GrantedAuthority> authorities = List.of(
-                new SimpleGrantedAuthority("ROLE_ADMIN")
-        );
-        when(authentication.getAuthorities()).thenReturn((Collection<GrantedAuthority>) authorities);
-
-        DataScope dataScope = mockDataScope(DataScopeType.TEACHER_CLASS, "");
+        givenUser("admin", "ROLE_ADMIN", UserDataScope.admin(1L));
 
         // When
-        dataScopeAspect.doBefore(joinPoint, dataScope);
+        dataScopeAspect.doBefore(joinPoint, mockDataScope(DataScopeType.TEACHER_CLASS, ""));
 
         // Then
         DataScopeContext.DataScopeInfo info = DataScopeContext.get();
         assertNotNull(info);
         assertTrue(info.isAdmin());
-        assertNull(info.getSqlCondition()); // 管理员不应有SQL过滤条件
+        assertTrue(applied().isEmptyOfWhere()); // 管理员不应有过滤条件
+        verify(dataScopeService).resolve("admin", true);
     }
 
     @Test
     @DisplayName("超级管理员应该不受数据权限限制")
     void shouldNotApplyDataScopeForSuperAdmin() {
         // Given
-        when(authentication.getName()).thenReturn("superadmin");
-
-        SysUser superAdmin = createUser(1L, "superadmin");
-        when(sysUserService.lambdaQuery()).thenReturn(mock(com.baomidou.mybatisplus.core.conditions.query.LambdaQueryChainWrapper.class));
-        when(sysUserService.lambdaQuery().eq(any(), any()).one()).thenReturn(superAdmin);
-
-        Collection<? extends GrantedAuthority> authorities = List.of(
-                new SimpleGrantedAuthority("ROLE_SUPER_ADMIN")
-        );
-        when(authentication.getAuthorities()).thenReturn((Collection<GrantedAuthority>) authorities);
-
-        DataScope dataScope = mockDataScope(DataScopeType.TEACHER_CLASS, "");
+        givenUser("superadmin", "ROLE_SUPER_ADMIN", UserDataScope.admin(1L));
 
         // When
-        dataScopeAspect.doBefore(joinPoint, dataScope);
+        dataScopeAspect.doBefore(joinPoint, mockDataScope(DataScopeType.TEACHER_STUDENT, ""));
 
         // Then
-        DataScopeContext.DataScopeInfo info = DataScopeContext.get();
-        assertTrue(info.isAdmin());
-        assertNull(info.getSqlCondition());
+        assertTrue(DataScopeContext.get().isAdmin());
+        assertTrue(applied().isEmptyOfWhere());
     }
 
     // ==================== 教师权限测试 ====================
@@ -123,143 +103,92 @@ class DataScopeAspectTest {
     @DisplayName("教师应该只能查看自己的班级")
     void shouldApplyTeacherClassDataScope() {
         // Given
-        Long teacherId = 100L;
-        when(authentication.getName()).thenReturn("teacher001");
-
-        SysUser teacher = createUser(teacherId, "teacher001");
-        when(sysUserService.lambdaQuery()).thenReturn(mock(com.baomidou.mybatisplus.core.conditions.query.LambdaQueryChainWrapper.class));
-        when(sysUserService.lambdaQuery().eq(any(), any()).one()).thenReturn(teacher);
-
-        Collection<? extends GrantedAuthority> authorities = List.of(
-                new SimpleGrantedAuthority("ROLE_TEACHER")
-        );
-        when(authentication.getAuthorities()).thenReturn((Collection<GrantedAuthority>) authorities);
-
-        DataScope dataScope = mockDataScope(DataScopeType.TEACHER_CLASS, "");
+        givenUser("teacher001", "ROLE_TEACHER", teacherScope());
 
         // When
-        dataScopeAspect.doBefore(joinPoint, dataScope);
+        dataScopeAspect.doBefore(joinPoint, mockDataScope(DataScopeType.TEACHER_CLASS, ""));
 
         // Then
         DataScopeContext.DataScopeInfo info = DataScopeContext.get();
         assertNotNull(info);
         assertFalse(info.isAdmin());
-        assertEquals("teacher_id = 100", info.getSqlCondition());
+        QueryWrapper<Object> wrapper = applied();
+        assertTrue(wrapper.getSqlSegment().contains("teacher_id ="));
+        assertTrue(wrapper.getParamNameValuePairs().containsValue(100L));
     }
 
     @Test
     @DisplayName("教师应该只能查看自己班级的学生")
     void shouldApplyTeacherStudentDataScope() {
         // Given
-        Long teacherId = 100L;
-        when(authentication.getName()).thenReturn("teacher001");
-
-        SysUser teacher = createUser(teacherId, "teacher001");
-        when(sysUserService.lambdaQuery()).thenReturn(mock(com.baomidou.mybatisplus.core.conditions.query.LambdaQueryChainWrapper.class));
-        when(sysUserService.lambdaQuery().eq(any(), any()).one()).thenReturn(teacher);
-
-        Collection<? extends GrantedAuthority> authorities = List.of(
-                new SimpleGrantedAuthority("ROLE_TEACHER")
-        );
-        when(authentication.getAuthorities()).thenReturn((Collection<GrantedAuthority>) authorities);
-
-        DataScope dataScope = mockDataScope(DataScopeType.TEACHER_STUDENT, "");
+        givenUser("teacher001", "ROLE_TEACHER", teacherScope());
 
         // When
-        dataScopeAspect.doBefore(joinPoint, dataScope);
+        dataScopeAspect.doBefore(joinPoint, mockDataScope(DataScopeType.TEACHER_STUDENT, ""));
 
         // Then
-        DataScopeContext.DataScopeInfo info = DataScopeContext.get();
-        assertNotNull(info);
-        String expectedSql = "id IN (" +
-                "SELECT cs.student_id FROM biz_class_student cs " +
-                "INNER JOIN biz_class c ON cs.class_id = c.id " +
-                "WHERE c.teacher_id = 100)";
-        assertEquals(expectedSql, info.getSqlCondition());
+        QueryWrapper<Object> wrapper = applied();
+        assertTrue(wrapper.getSqlSegment().contains("id IN"));
+        assertFalse(wrapper.getSqlSegment().contains("SELECT"), "不再使用子查询字符串");
+        assertTrue(wrapper.getParamNameValuePairs().values().containsAll(List.of(7L, 8L)));
     }
 
     @Test
     @DisplayName("教师应该只能查看自己班级学生的考试成绩")
     void shouldApplyTeacherExamDataScope() {
         // Given
-        Long teacherId = 100L;
-        when(authentication.getName()).thenReturn("teacher001");
+        givenUser("teacher001", "ROLE_TEACHER", teacherScope());
 
-        SysUser teacher = createUser(teacherId, "teacher001");
-        when(sysUserService.lambdaQuery()).thenReturn(mock(com.baomidou.mybatisplus.core.conditions.query.LambdaQueryChainWrapper.class));
-        when(sysUserService.lambdaQuery().eq(any(), any()).one()).thenReturn(teacher);
+        // When
+        dataScopeAspect.doBefore(joinPoint, mockDataScope(DataScopeType.TEACHER_EXAM, ""));
 
-        Collection<? extends GrantedAuthority> authorities = List.of(
-                new SimpleGrantedAuthority("ROLE_TEACHER")
-        );
-        when(authentication.getAuthorities()).thenReturn((Collection<GrantedAuthority>) authorities);
+        // Then
+        QueryWrapper<Object> wrapper = applied();
+        assertTrue(wrapper.getSqlSegment().contains("student_id IN"));
+        assertTrue(wrapper.getParamNameValuePairs().values().containsAll(List.of(7L, 8L)));
+    }
 
-        DataScope dataScope = mockDataScope(DataScopeType.TEACHER_EXAM, "");
+    @Test
+    @DisplayName("没有学生的教师查不到任何学生")
+    void shouldMatchNothingWhenTeacherHasNoStudents() {
+        // Given
+        givenUser("teacher002", "ROLE_TEACHER", UserDataScope.teacher(200L, Set.of(), Set.of()));
 
         // When
-        dataScopeAspect.doBefore(joinPoint, dataScope);
+        dataScopeAspect.doBefore(joinPoint, mockDataScope(DataScopeType.TEACHER_STUDENT, ""));
 
         // Then
-        DataScopeContext.DataScopeInfo info = DataScopeContext.get();
-        String expectedSql = "student_id IN (" +
-                "SELECT cs.student_id FROM biz_class_student cs " +
-                "INNER JOIN biz_class c ON cs.class_id = c.id " +
-                "WHERE c.teacher_id = 100)";
-        assertEquals(expectedSql, info.getSqlCondition());
+        assertTrue(applied().getSqlSegment().contains("1 = 0"));
     }
 
     @Test
     @DisplayName("教师应该只能查看自己创建的课程")
     void shouldApplyTeacherCourseDataScope() {
         // Given
-        Long teacherId = 100L;
-        when(authentication.getName()).thenReturn("teacher001");
-
-        SysUser teacher = createUser(teacherId, "teacher001");
-        when(sysUserService.lambdaQuery()).thenReturn(mock(com.baomidou.mybatisplus.core.conditions.query.LambdaQueryChainWrapper.class));
-        when(sysUserService.lambdaQuery().eq(any(), any()).one()).thenReturn(teacher);
-
-        Collection<? extends GrantedAuthority> authorities = List.of(
-                new SimpleGrantedAuthority("ROLE_TEACHER")
-        );
-        when(authentication.getAuthorities()).thenReturn((Collection<GrantedAuthority>) authorities);
-
-        DataScope dataScope = mockDataScope(DataScopeType.TEACHER_COURSE, "");
+        givenUser("teacher001", "ROLE_TEACHER", teacherScope());
 
         // When
-        dataScopeAspect.doBefore(joinPoint, dataScope);
+        dataScopeAspect.doBefore(joinPoint, mockDataScope(DataScopeType.TEACHER_COURSE, ""));
 
         // Then
-        DataScopeContext.DataScopeInfo info = DataScopeContext.get();
-        assertEquals("teacher_id = 100", info.getSqlCondition());
+        QueryWrapper<Object> wrapper = applied();
+        assertTrue(wrapper.getSqlSegment().contains("teacher_id ="));
+        assertTrue(wrapper.getParamNameValuePairs().containsValue(100L));
     }
 
     // ==================== 表别名测试 ====================
 
     @Test
-    @DisplayName("应该正确添加表别名到SQL条件")
-    void shouldApplyTableAliasToSqlCondition() {
+    @DisplayName("应该正确添加表别名到查询条件")
+    void shouldApplyTableAliasToCondition() {
         // Given
-        Long teacherId = 100L;
-        when(authentication.getName()).thenReturn("teacher001");
-
-        SysUser teacher = createUser(teacherId, "teacher001");
-        when(sysUserService.lambdaQuery()).thenReturn(mock(com.baomidou.mybatisplus.core.conditions.query.LambdaQueryChainWrapper.class));
-        when(sysUserService.lambdaQuery().eq(any(), any()).one()).thenReturn(teacher);
-
-        Collection<? extends GrantedAuthority> authorities = List.of(
-                new SimpleGrantedAuthority("ROLE_TEACHER")
-        );
-        when(authentication.getAuthorities()).thenReturn((Collection<GrantedAuthority>) authorities);
-
-        DataScope dataScope = mockDataScope(DataScopeType.TEACHER_CLASS, "c");
+        givenUser("teacher001", "ROLE_TEACHER", teacherScope());
 
         // When
-        dataScopeAspect.doBefore(joinPoint, dataScope);
+        dataScopeAspect.doBefore(joinPoint, mockDataScope(DataScopeType.TEACHER_CLASS, "c"));
 
         // Then
-        DataScopeContext.DataScopeInfo info = DataScopeContext.get();
-        assertEquals("c.teacher_id = 100", info.getSqlCondition());
+        assertTrue(applied().getSqlSegment().contains("c.teacher_id ="));
     }
 
     // ==================== 特殊情况测试 ====================
@@ -270,77 +199,46 @@ class DataScopeAspectTest {
         // Given
         when(securityContext.getAuthentication()).thenReturn(null);
 
-        DataScope dataScope = mockDataScope(DataScopeType.TEACHER_CLASS, "");
-
         // When
-        dataScopeAspect.doBefore(joinPoint, dataScope);
+        dataScopeAspect.doBefore(joinPoint, mockDataScope(DataScopeType.TEACHER_CLASS, ""));
 
         // Then
-        DataScopeContext.DataScopeInfo info = DataScopeContext.get();
-        assertNull(info); // 无认证信息时不设置数据权限
+        assertNull(DataScopeContext.get()); // 无认证信息时不设置数据权限
+        verifyNoInteractions(dataScopeService);
     }
 
     @Test
     @DisplayName("应该处理用户不存在的情况")
     void shouldHandleUserNotFoundCase() {
         // Given
-        when(authentication.getName()).thenReturn("nonexistent");
-        when(sysUserService.lambdaQuery()).thenReturn(mock(com.baomidou.mybatisplus.core.conditions.query.LambdaQueryChainWrapper.class));
-        when(sysUserService.lambdaQuery().eq(any(), any()).one()).thenReturn(null);
-
-        DataScope dataScope = mockDataScope(DataScopeType.TEACHER_CLASS, "");
+        givenUser("nonexistent", "ROLE_TEACHER", null);
 
         // When
-        dataScopeAspect.doBefore(joinPoint, dataScope);
+        dataScopeAspect.doBefore(joinPoint, mockDataScope(DataScopeType.TEACHER_CLASS, ""));
 
         // Then
-        DataScopeContext.DataScopeInfo info = DataScopeContext.get();
-        assertNull(info);
+        assertNull(DataScopeContext.get());
     }
 
     @Test
     @DisplayName("应该处理ALL类型数据权限")
     void shouldHandleAllDataScopeType() {
         // Given
-        Long teacherId = 100L;
-        when(authentication.getName()).thenReturn("teacher001");
-
-        SysUser teacher = createUser(teacherId, "teacher001");
-        when(sysUserService.lambdaQuery()).thenReturn(mock(com.baomidou.mybatisplus.core.conditions.query.LambdaQueryChainWrapper.class));
-        when(sysUserService.lambdaQuery().eq(any(), any()).one()).thenReturn(teacher);
-
-        Collection<? extends GrantedAuthority> authorities = List.of(
-                new SimpleGrantedAuthority("ROLE_TEACHER")
-        );
-        when(authentication.getAuthorities()).thenReturn((Collection<GrantedAuthority>) authorities);
-
-        DataScope dataScope = mockDataScope(DataScopeType.ALL, "");
+        givenUser("teacher001", "ROLE_TEACHER", teacherScope());
 
         // When
-        dataScopeAspect.doBefore(joinPoint, dataScope);
+        dataScopeAspect.doBefore(joinPoint, mockDataScope(DataScopeType.ALL, ""));
 
         // Then
-        DataScopeContext.DataScopeInfo info = DataScopeContext.get();
-        assertNotNull(info);
-        assertEquals("", info.getSqlCondition()); // ALL类型不添加过滤条件
+        assertNotNull(DataScopeContext.get());
+        assertTrue(applied().isEmptyOfWhere()); // ALL类型不添加过滤条件
     }
 
     @Test
     @DisplayName("方法执行后应该清除ThreadLocal")
     void shouldClearThreadLocalAfterMethodExecution() {
         // Given
-        Long teacherId = 100L;
-        when(authentication.getName()).thenReturn("teacher001");
-
-        SysUser teacher = createUser(teacherId, "teacher001");
-        when(sysUserService.lambdaQuery()).thenReturn(mock(com.baomidou.mybatisplus.core.conditions.query.LambdaQueryChainWrapper.class));
-        when(sysUserService.lambdaQuery().eq(any(), any()).one()).thenReturn(teacher);
-
-        Collection<? extends GrantedAuthority> authorities = List.of(
-                new SimpleGrantedAuthority("ROLE_TEACHER")
-        );
-        when(authentication.getAuthorities()).thenReturn((Collection<GrantedAuthority>) authorities);
-
+        givenUser("teacher001", "ROLE_TEACHER", teacherScope());
         DataScope dataScope = mockDataScope(DataScopeType.TEACHER_CLASS, "");
 
         // When
@@ -351,33 +249,23 @@ class DataScopeAspectTest {
 
         // Then
         assertNull(DataScopeContext.get()); // After执行后清除
+        assertTrue(applied().isEmptyOfWhere());
     }
 
     @Test
     @DisplayName("应该正确设置用户ID到数据权限信息")
     void shouldSetUserIdToDataScopeInfo() {
         // Given
-        Long teacherId = 999L;
-        when(authentication.getName()).thenReturn("teacher999");
-
-        SysUser teacher = createUser(teacherId, "teacher999");
-        when(sysUserService.lambdaQuery()).thenReturn(mock(com.baomidou.mybatisplus.core.conditions.query.LambdaQueryChainWrapper.class));
-        when(sysUserService.lambdaQuery().eq(any(), any()).one()).thenReturn(teacher);
-
-        Collection<? extends GrantedAuthority> authorities = List.of(
-                new SimpleGrantedAuthority("ROLE_TEACHER")
-        );
-        when(authentication.getAuthorities()).thenReturn((Collection<GrantedAuthority>) authorities);
-
-        DataScope dataScope = mockDataScope(DataScopeType.TEACHER_CLASS, "");
+        givenUser("teacher999", "ROLE_TEACHER", UserDataScope.teacher(999L, Set.of(), Set.of()));
 
         // When
-        dataScopeAspect.doBefore(joinPoint, dataScope);
+        dataScopeAspect.doBefore(joinPoint, mockDataScope(DataScopeType.TEACHER_CLASS, ""));
 
         // Then
         DataScopeContext.DataScopeInfo info = DataScopeContext.get();
         assertNotNull(info);
         assertEquals(999L, info.getUserId());
+        assertEquals(DataScopeType.TEACHER_CLASS, info.getType());
     }
 
     @Test
@@ -385,27 +273,31 @@ class DataScopeAspectTest {
     void shouldHandleExceptionGracefully() {
         // Given
         when(authentication.getName()).thenReturn("test");
-        when(sysUserService.lambdaQuery()).thenThrow(new RuntimeException("数据库异常"));
-
-        DataScope dataScope = mockDataScope(DataScopeType.TEACHER_CLASS, "");
+        doReturn(List.of()).when(authentication).getAuthorities();
+        when(dataScopeService.resolve(anyString(), anyBoolean())).thenThrow(new RuntimeException("数据库异常"));
 
         // When & Then - 不应抛出异常
-        assertDoesNotThrow(() -> {
-            dataScopeAspect.doBefore(joinPoint, dataScope);
-        });
+        assertDoesNotThrow(() -> dataScopeAspect.doBefore(joinPoint, mockDataScope(DataScopeType.TEACHER_CLASS, "")));
 
         // 异常情况下不应设置数据权限
-        DataScopeContext.DataScopeInfo info = DataScopeContext.get();
-        assertNull(info);
+        assertNull(DataScopeContext.get());
     }
 
     // ==================== 辅助方法 ====================
 
-    private SysUser createUser(Long id, String username) {
-        SysUser user = new SysUser();
-        user.setId(id);
-        user.setUsername(username);
-        return user;
+    private void givenUser(String username, String role, UserDataScope scope) {
+        when(authentication.getName()).thenReturn(username);
+        doReturn(List.of(new SimpleGrantedAuthority(role))).when(authentication).getAuthorities();
+        boolean admin = "ROLE_ADMIN".equals(role) || "ROLE_SUPER_ADMIN".equals(role);
+        when(dataScopeService.resolve(username, admin)).thenReturn(scope);
+    }
+
+    private UserDataScope teacherScope() {
+        return UserDataScope.teacher(100L, Set.of(1L, 2L), Set.of(7L, 8L));
+    }
+
+    private QueryWrapper<Object> applied() {
+        return DataScopeUtils.applyDataScope(new QueryWrapper<>());
     }
 
     private DataScope mockDataScope(DataScopeType type, String tableAlias) {
@@ -0,0 +1,131 @@
+package com.ice.exebackend.service;
+
+import com.ice.exebackend.config.AiConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 按提供商熔断的断路器测试
+ */
+@DisplayName("AI断路器测试")
+class AiCircuitBreakerTest {
+
+    private AiConfig aiConfig;
+    private AiCircuitBreaker circuitBreaker;
+
+    @BeforeEach
+    void setUp() {
+        aiConfig = new AiConfig();
+        aiConfig.getProviders().put("deepseek", new AiConfig.ProviderConfig());
+        aiConfig.getProviders().put("qwen", new AiConfig.ProviderConfig());
+        AiConfig.CircuitBreakerConfig config = aiConfig.getCircuitBreaker();
+        config.setMinimumCalls(4);
+        config.setFailureRateThreshold(0.5);
+        config.setHalfOpenMaxAttempts(2);
+        config.setHalfOpenSuccessThreshold(2);
+
+        circuitBreaker = new AiCircuitBreaker();
+        ReflectionTestUtils.setField(circuitBreaker, "aiConfig", aiConfig);
+    }
+
+    @Test
+    @DisplayName("失败率达到阈值时只熔断对应的提供商")
+    void shouldTripOnlyFailingProvider() {
+        circuitBreaker.recordSuccess("deepseek");
+        circuitBreaker.recordFailure("deepseek");
+        circuitBreaker.recordFailure("deepseek");
+        assertEquals("CLOSED", circuitBreaker.getState("deepseek"), "调用次数不足时不熔断");
+
+        circuitBreaker.recordFailure("deepseek");
+        assertEquals("OPEN", circuitBreaker.getState("deepseek"));
+        assertFalse(circuitBreaker.allowRequest("deepseek"));
+
+        assertTrue(circuitBreaker.allowRequest("qwen"));
+        assertTrue(circuitBreaker.allowRequest(), "还有可用的提供商时不降级");
+
+        circuitBreaker.open("qwen");
+        assertFalse(circuitBreaker.allowRequest(), "全部熔断时降级");
+    }
+
+    @Test
+    @DisplayName("失败率低于阈值时保持关闭")
+    void shouldStayClosedBelowThreshold() {
+        for (int i = 0; i < 10; i++) {
+            circuitBreaker.recordSuccess("qwen");
+            circuitBreaker.recordSuccess("qwen");
+            circuitBreaker.recordFailure("qwen");
+        }
+        assertEquals("CLOSED", circuitBreaker.getState("qwen"));
+        assertEquals(10, circuitBreaker.getStats().get(0).getFailureCount());
+    }
+
+    @Test
+    @DisplayName("熔断到期后半开试探，成功足够次数恢复，失败则重新熔断")
+    void shouldRecoverThroughHalfOpen() {
+        aiConfig.getCircuitBreaker().setOpenSeconds(0);
+        circuitBreaker.open("deepseek");
+
+        assertTrue(circuitBreaker.allowRequest("deepseek"));
+        assertEquals("HALF_OPEN", circuitBreaker.getState("deepseek"));
+        assertTrue(circuitBreaker.allowRequest("deepseek"));
+        assertFalse(circuitBreaker.allowRequest("deepseek"), "试探名额用完后拒绝");
+
+        circuitBreaker.recordFailure("deepseek");
+        assertEquals("OPEN", circuitBreaker.getState("deepseek"));
+
+        assertTrue(circuitBreaker.allowRequest("deepseek"));
+        circuitBreaker.recordSuccess("deepseek");
+        circuitBreaker.recordSuccess("deepseek");
+        assertEquals("CLOSED", circuitBreaker.getState("deepseek"));
+    }
+
+    @Test
+    @DisplayName("没有结论的试探归还名额")
+    void shouldReleaseProbeOnIgnoredOutcome() {
+        aiConfig.getCircuitBreaker().setOpenSeconds(0);
+        circuitBreaker.open("deepseek");
+        assertTrue(circuitBreaker.allowRequest("deepseek"));
+        assertTrue(circuitBreaker.allowRequest("deepseek"));
+        aiConfig.getCircuitBreaker().setOpenSeconds(60);
+        assertFalse(circuitBreaker.allowRequest("deepseek"));
+
+        // 两次试探都返回 4xx
+        circuitBreaker.recordIgnored("deepseek");
+        circuitBreaker.recordIgnored("deepseek");
+        assertEquals("HALF_OPEN", circuitBreaker.getState("deepseek"));
+        assertTrue(circuitBreaker.allowRequest("deepseek"));
+        assertTrue(circuitBreaker.allowRequest("deepseek"));
+        assertFalse(circuitBreaker.allowRequest("deepseek"), "名额再次用完");
+
+        circuitBreaker.recordSuccess("deepseek");
+        circuitBreaker.recordSuccess("deepseek");
+        assertEquals("CLOSED", circuitBreaker.getState("deepseek"));
+        circuitBreaker.recordIgnored("deepseek");
+        assertTrue(circuitBreaker.allowRequest("deepseek"));
+    }
+
+    @Test
+    @DisplayName("半开状态长时间没有结论时重新熔断并重新计时")
+    void shouldReopenStalledHalfOpen() {
+        aiConfig.getCircuitBreaker().setOpenSeconds(0);
+        circuitBreaker.open("deepseek");
+        assertTrue(circuitBreaker.allowRequest("deepseek"));
+        assertTrue(circuitBreaker.allowRequest("deepseek"));
+
+        // 试探结果丢失，未到 open-seconds 前保持半开并拒绝
+        aiConfig.getCircuitBreaker().setOpenSeconds(60);
+        assertFalse(circuitBreaker.allowRequest("deepseek"));
+        assertEquals("HALF_OPEN", circuitBreaker.getState("deepseek"));
+
+        // 超过 open-seconds 后重新打开，再次到期时给一轮新的试探名额
+        aiConfig.getCircuitBreaker().setOpenSeconds(0);
+        assertFalse(circuitBreaker.allowRequest("deepseek"));
+        assertEquals("OPEN", circuitBreaker.getState("deepseek"));
+        assertTrue(circuitBreaker.allowRequest("deepseek"));
+        assertEquals("HALF_OPEN", circuitBreaker.getState("deepseek"));
+    }
+}
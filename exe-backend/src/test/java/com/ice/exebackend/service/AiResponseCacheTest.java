@@ -0,0 +1,109 @@
+package com.ice.exebackend.service;
+
+import com.ice.exebackend.config.AiConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * AI 响应缓存测试（不接 Redis，只测本机部分）
+ */
+@DisplayName("AI响应缓存测试")
+class AiResponseCacheTest {
+
+    private AiConfig.CacheConfig cacheConfig;
+    private AiResponseCache cache;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        AiConfig aiConfig = new AiConfig();
+        cacheConfig = aiConfig.getCache();
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new AiResponseCache();
+        ReflectionTestUtils.setField(cache, "aiConfig", aiConfig);
+        ReflectionTestUtils.setField(cache, "meterRegistry", meterRegistry);
+        cache.init();
+    }
+
+    @Test
+    @DisplayName("空白和全角半角不同的作答命中同一条缓存")
+    void shouldHitAfterNormalization() {
+        String scope = AiResponseCache.scope(1L, "1+1=?", "2");
+        cache.put("analyze", scope, "x = 3", "分析A", 3000);
+
+        assertEquals("分析A", cache.get("analyze", scope, " x=3 "));
+        assertEquals("分析A", cache.get("analyze", scope, "Ｘ　＝　３"));
+        assertNull(cache.get("analyze", scope, "x=4"));
+        assertNull(cache.get("grading", scope, "x=3"), "不同功能的响应互不复用");
+        assertNull(cache.get("analyze", AiResponseCache.scope(2L, "1+1=?", "2"), "x=3"), "不同题目互不复用");
+        assertEquals(2.0, meterRegistry.counter("ai.response.cache", "operation", "analyze", "result", "exact").count());
+    }
+
+    @Test
+    @DisplayName("较长作答按相似度复用，短作答只做精确匹配")
+    void shouldMatchSimilarLongAnswersOnly() {
+        String scope = AiResponseCache.scope("请简述Java中的多态性", "同一行为具有多个不同表现形式", 10);
+        String answer = "多态就是一个对象可以有多种形态，通过方法重写和接口实现来体现，运行时根据实际类型调用方法";
+        cache.put("analyze", scope, answer, "分析多态", 4000);
+
+        String nearDuplicate = "多态就是一个对象可以有多种形态,通过方法重写和接口实现来体现,运行时根据实际类型调用方法。";
+        assertEquals("分析多态", cache.get("analyze", scope, nearDuplicate));
+        assertNull(cache.get("analyze", scope, "封装是把数据和操作数据的方法绑定在一起，对外隐藏实现细节，只暴露必要接口"));
+
+        cache.put("analyze", scope, "x>1", "分析大于", 3000);
+        assertNull(cache.get("analyze", scope, "x<1"));
+    }
+
+    @Test
+    @DisplayName("主观题批改只做精确匹配，相似作答不共享分数")
+    void shouldNotReuseGradingForSimilarAnswers() {
+        String scope = AiResponseCache.scope("请简述Java中的多态性", "同一行为具有多个不同表现形式", 10);
+        String answer = "多态就是一个对象可以有多种形态，通过方法重写和接口实现来体现，运行时根据实际类型调用方法";
+        cache.put("grading", scope, answer, "{\"score\":8}", 4000);
+
+        String negated = "多态不是一个对象可以有多种形态，通过方法重写和接口实现来体现，运行时根据实际类型调用方法";
+        assertNull(cache.get("grading", scope, negated));
+        assertNull(cache.get("grading_stream", scope, answer), "流式批改与普通批改互不复用");
+        assertEquals("{\"score\":8}", cache.get("grading", scope, " " + answer + " "), "规范化后相同的作答仍然命中");
+        assertEquals(1.0, meterRegistry.counter("ai.response.cache", "operation", "grading", "result", "miss").count());
+    }
+
+    @Test
+    @DisplayName("超出容量时淘汰命中少、生成便宜的条目")
+    void shouldEvictByCostAwareFrequency() {
+        cacheConfig.setMaxLocalEntries(2);
+        String scope = AiResponseCache.scope(1L);
+
+        cache.put("analyze", scope, "A", "热门分析", 5000);
+        cache.put("analyze", scope, "B", "冷门分析", 5000);
+        cache.get("analyze", scope, "A");
+        cache.get("analyze", scope, "A");
+        cache.put("analyze", scope, "C", "新分析", 5000);
+
+        assertEquals(2, cache.size());
+        assertEquals("热门分析", cache.get("analyze", scope, "A"));
+        assertNull(cache.get("analyze", scope, "B"));
+        assertEquals("新分析", cache.get("analyze", scope, "C"));
+    }
+
+    @Test
+    @DisplayName("同一题目的条目数受限，关闭缓存时不读不写")
+    void shouldLimitEntriesPerQuestionAndRespectSwitch() {
+        cacheConfig.setMaxEntriesPerQuestion(3);
+        String scope = AiResponseCache.scope(1L);
+        for (int i = 0; i < 10; i++) {
+            cache.put("analyze", scope, "答案" + i, "分析" + i, 1000);
+        }
+        assertEquals(3, cache.size());
+
+        cacheConfig.setEnabled(false);
+        assertNull(cache.get("analyze", scope, "答案9"));
+        cache.put("analyze", AiResponseCache.scope(2L), "答案", "分析", 1000);
+        assertEquals(3, cache.size());
+    }
+}
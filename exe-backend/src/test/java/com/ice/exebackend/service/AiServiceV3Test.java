@@ -6,6 +6,7 @@ import com.ice.exebackend.dto.AiAnalysisReq;
 import com.ice.exebackend.dto.AiGeneratedQuestionDTO;
 import com.ice.exebackend.dto.AiGradingResult;
 import com.ice.exebackend.utils.AiHttpClient;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -19,6 +20,9 @@ import org.springframework.test.util.ReflectionTestUtils;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -91,6 +95,19 @@ class AiServiceV3Test {
 
         // 默认断路器关闭
         when(circuitBreaker.allowRequest()).thenReturn(true);
+
+        // 响应缓存使用真实实现，底层仍是上面 mock 的 Redis
+        AiResponseCache responseCache = new AiResponseCache();
+        ReflectionTestUtils.setField(responseCache, "aiConfig", aiConfig);
+        ReflectionTestUtils.setField(responseCache, "redisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(responseCache, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(aiServiceV3, "responseCache", responseCache);
+
+        // 请求合并使用真实实现，不接 Redis（只在本机合并）
+        AiSingleFlight singleFlight = new AiSingleFlight();
+        ReflectionTestUtils.setField(singleFlight, "aiConfig", new AiConfig());
+        ReflectionTestUtils.setField(singleFlight, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(aiServiceV3, "singleFlight", singleFlight);
     }
 
     // ==================== 主观题批改测试 ====================
@@ -245,7 +262,8 @@ class AiServiceV3Test {
 
         // 验证缓存保存
         verify(valueOperations).set(anyString(), eq(aiResponse), eq(1800L), any());
-        verify(circuitBreaker).recordSuccess();
+        // 断路器由 AiHttpClient 按提供商记录，服务层不重复记录
+        verify(circuitBreaker, never()).recordSuccess(anyString());
     }
 
     @Test
@@ -344,7 +362,7 @@ class AiServiceV3Test {
 
         // Then
         assertEquals(fallbackResult, result);
-        verify(circuitBreaker).recordFailure();
+        verify(circuitBreaker, never()).recordFailure(anyString());
         verify(basicAnalyzer).analyzeWrongQuestion(req);
     }
 
@@ -472,7 +490,7 @@ class AiServiceV3Test {
         assertEquals("面向对象", result.get(0).get("name"));
         assertEquals("跨平台", result.get(1).get("name"));
 
-        verify(circuitBreaker).recordSuccess();
+        verify(circuitBreaker, never()).recordSuccess(anyString());
     }
 
     @Test
@@ -508,7 +526,7 @@ class AiServiceV3Test {
 
         // Then
         assertEquals(fallbackPoints, result);
-        verify(circuitBreaker).recordFailure();
+        verify(circuitBreaker, never()).recordFailure(anyString());
         verify(basicAnalyzer).extractKnowledgePoints(text, count);
     }
 
@@ -523,7 +541,7 @@ class AiServiceV3Test {
         for (int i = 0; i < 1000; i++) {
             largeText.append("这是一段关于Java编程的文本内容。");
         }
-        String text = largeText.toString(); // 约20000字符
+        String text = largeText.toString(); // 18000字符
         int count = 5;
         Long userId = 1L;
 
@@ -533,10 +551,14 @@ class AiServiceV3Test {
         // Mock断路器允许
         when(circuitBreaker.allowRequest()).thenReturn(true);
 
-        // Mock分块AI响应
+        // 分块配置与额外并发许可
+        when(aiConfig.getExtract()).thenReturn(new AiConfig.ExtractConfig());
+        when(rateLimiter.tryAcquireGlobalConcurrent(anyInt())).thenReturn(2);
+
+        // Mock分块AI响应（分块请求并行发出，走异步接口）
         String chunkResponse = "[{\"name\":\"Java编程\",\"description\":\"基础知识\"}]";
-        when(aiHttpClient.sendRequest(eq(apiKey), eq(provider), anyList(), eq(0.5), anyInt()))
-                .thenReturn(chunkResponse);
+        when(aiHttpClient.sendRequestAsync(eq(apiKey), eq(provider), anyList(), eq(0.5), anyInt()))
+                .thenReturn(java.util.concurrent.CompletableFuture.completedFuture(chunkResponse));
         when(aiHttpClient.extractJson(chunkResponse)).thenReturn(chunkResponse);
 
         List<Map<String, String>> mockPoints = List.of(
@@ -554,8 +576,69 @@ class AiServiceV3Test {
         assertNotNull(result);
         assertFalse(result.isEmpty());
 
-        // 验证调用了多次（分块处理）
-        verify(aiHttpClient, atLeastOnce()).sendRequest(eq(apiKey), eq(provider), anyList(), eq(0.5), anyInt());
+        // 验证每块各调用一次（18000字符分为4块），各块相同的知识点合并为一个
+        verify(aiHttpClient, times(4)).sendRequestAsync(eq(apiKey), eq(provider), anyList(), eq(0.5), anyInt());
+        assertEquals(1, result.size());
+        // 2 个额外许可 + 调用方自身的 1 个许可全部归还
+        verify(rateLimiter, times(3)).releaseGlobalConcurrent();
+    }
+
+    @Test
+    @DisplayName("大文本流式提取不占用准备线程：每完成一块接力提交下一块，全部完成后推送结果并归还许可")
+    void shouldStreamChunkedKnowledgePointsWithoutBlocking() throws Exception {
+        // Given
+        when(aiConfig.getExecutor()).thenReturn(new AiConfig.ExecutorConfig());
+        aiServiceV3.initStreamExecutor();
+        try {
+            String text = "这是一段关于Java编程的文本内容。".repeat(1000); // 18000字符，分为4块
+            when(aiConfig.getExtract()).thenReturn(new AiConfig.ExtractConfig());
+            when(rateLimiter.tryAcquireGlobalConcurrent(anyInt())).thenReturn(1);
+
+            // 分块请求挂起，由测试逐个完成
+            List<CompletableFuture<String>> responses = new CopyOnWriteArrayList<>();
+            when(aiHttpClient.sendRequestAsync(eq("test-key"), eq("deepseek"), anyList(), eq(0.5), anyInt()))
+                    .thenAnswer(invocation -> {
+                        CompletableFuture<String> response = new CompletableFuture<>();
+                        responses.add(response);
+                        return response;
+                    });
+            String chunkResponse = "[{\"name\":\"Java编程\",\"description\":\"基础知识\"}]";
+            when(aiHttpClient.extractJson(chunkResponse)).thenReturn(chunkResponse);
+            when(objectMapper.readValue(eq(chunkResponse), any(com.fasterxml.jackson.core.type.TypeReference.class)))
+                    .thenReturn(List.of(Map.of("name", "Java编程", "description", "基础知识")));
+            when(objectMapper.writeValueAsString(any())).thenReturn("[]");
+
+            // When
+            aiServiceV3.generateKnowledgePointsFromTextStream("test-key", "deepseek", text, 5, 1L);
+
+            // Then: 准备线程发出 2 块（自身许可 + 1 个额外许可）后即返回，不等待结果
+            ThreadPoolExecutor streamExecutor =
+                    (ThreadPoolExecutor) ReflectionTestUtils.getField(aiServiceV3, "streamExecutor");
+            long deadline = System.currentTimeMillis() + 5000;
+            while ((responses.size() < 2 || streamExecutor.getActiveCount() > 0)
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(2, responses.size());
+            assertEquals(0, streamExecutor.getActiveCount());
+            verify(rateLimiter, never()).releaseGlobalConcurrent();
+
+            // 每完成一块提交下一块
+            responses.get(0).complete(chunkResponse);
+            assertEquals(3, responses.size());
+            responses.get(1).complete(chunkResponse);
+            responses.get(2).complete(chunkResponse);
+            assertEquals(4, responses.size());
+            verify(rateLimiter, never()).releaseGlobalConcurrent();
+
+            // 最后一块完成后，额外许可与调用方自身的许可全部归还
+            responses.get(3).complete(chunkResponse);
+            verify(rateLimiter, times(2)).releaseGlobalConcurrent();
+            verify(callLogService).logAsync(eq(1L), eq("TEACHER"), eq("extract"), eq("deepseek"), eq(true),
+                    anyLong(), eq(false), eq(0), isNull(), anyString());
+        } finally {
+            aiServiceV3.shutdownStreamExecutor();
+        }
     }
 
     // ==================== 限流测试 ====================
@@ -0,0 +1,150 @@
+package com.ice.exebackend.service;
+
+import com.ice.exebackend.config.AiConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 相同 AI 请求合并测试（不接 Redis，只测本机合并）
+ */
+@DisplayName("AI请求合并测试")
+class AiSingleFlightTest {
+
+    private AiSingleFlight singleFlight;
+    private ExecutorService pool;
+
+    @BeforeEach
+    void setUp() {
+        singleFlight = new AiSingleFlight();
+        ReflectionTestUtils.setField(singleFlight, "aiConfig", new AiConfig());
+        ReflectionTestUtils.setField(singleFlight, "meterRegistry", new SimpleMeterRegistry());
+        singleFlight.init();
+        pool = Executors.newFixedThreadPool(10);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    @DisplayName("同一键的并发调用只执行一次，其余请求共享结果")
+    void shouldCoalesceConcurrentCalls() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<AiSingleFlight.Result<String>>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                return singleFlight.execute("analyze:q1", () -> null, () -> {
+                    calls.incrementAndGet();
+                    Thread.sleep(300);
+                    return "分析结果";
+                });
+            }));
+        }
+        start.countDown();
+
+        int shared = 0;
+        for (Future<AiSingleFlight.Result<String>> future : futures) {
+            AiSingleFlight.Result<String> result = future.get(5, TimeUnit.SECONDS);
+            assertEquals("分析结果", result.getValue());
+            if (result.isShared()) shared++;
+        }
+        assertEquals(1, calls.get());
+        assertEquals(9, shared);
+    }
+
+    @Test
+    @DisplayName("发起者失败时，等待的请求各自调用")
+    void shouldCallOwnLoaderWhenLeaderFails() throws Exception {
+        CountDownLatch leaderStarted = new CountDownLatch(1);
+        Future<?> leader = pool.submit(() -> singleFlight.execute("grading:q1", () -> null, () -> {
+            leaderStarted.countDown();
+            Thread.sleep(200);
+            throw new RuntimeException("您的请求过于频繁");
+        }));
+        leaderStarted.await();
+
+        AiSingleFlight.Result<String> result = singleFlight.execute("grading:q1", () -> null, () -> "自己的结果");
+        assertEquals("自己的结果", result.getValue());
+        assertFalse(result.isShared());
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS));
+        assertEquals("您的请求过于频繁", e.getCause().getMessage());
+    }
+
+    @Test
+    @DisplayName("流式调用共享数据块，后加入的订阅者先回放已生成部分")
+    void shouldFanOutStreamChunks() {
+        AiSingleFlight.SharedStream stream = singleFlight.joinStream("analyze:q2");
+        assertTrue(stream.claimLeader());
+        List<String> first = new ArrayList<>();
+        stream.subscribe(first::add, () -> first.add("done"), e -> first.add("error"));
+        stream.publish("【知识点回顾】");
+        stream.publish("勾股定理");
+
+        AiSingleFlight.SharedStream joined = singleFlight.joinStream("analyze:q2");
+        assertSame(stream, joined);
+        assertFalse(joined.claimLeader());
+        List<String> second = new ArrayList<>();
+        joined.subscribe(second::add, () -> second.add("done"), e -> second.add("error"));
+
+        stream.publish("……");
+        stream.complete();
+
+        assertEquals(List.of("【知识点回顾】", "勾股定理", "……", "done"), first);
+        assertEquals(first, second);
+        assertNotSame(stream, singleFlight.joinStream("analyze:q2"), "结束后的新请求重新发起调用");
+    }
+
+    @Test
+    @DisplayName("流式调用失败时所有订阅者都收到错误")
+    void shouldPropagateStreamFailure() {
+        AiSingleFlight.SharedStream stream = singleFlight.joinStream("grading_stream:q3");
+        List<String> events = new ArrayList<>();
+        stream.subscribe(events::add, () -> events.add("done"), e -> events.add("error:" + e.getMessage()));
+        stream.fail(new RuntimeException("系统繁忙"));
+        stream.subscribe(events::add, () -> events.add("done"), e -> events.add("error:" + e.getMessage()));
+
+        assertEquals(List.of("error:系统繁忙", "error:系统繁忙"), events);
+    }
+
+    @Test
+    @DisplayName("发起者自身准入失败时，订阅者可以识别并重新发起调用")
+    void shouldLetSubscribersRetryWhenLeaderRejected() {
+        AiSingleFlight.SharedStream stream = singleFlight.joinStream("analyze:q4");
+        assertTrue(stream.claimLeader());
+        List<String> events = new ArrayList<>();
+        stream.subscribe(events::add, () -> events.add("done"), e -> events.add("leader:" + e.getMessage()));
+
+        AiSingleFlight.SharedStream joined = singleFlight.joinStream("analyze:q4");
+        assertFalse(joined.claimLeader());
+        List<AiSingleFlight.SharedStream> retried = new ArrayList<>();
+        joined.subscribe(events::add, () -> events.add("done"), e -> {
+            if (e instanceof AiSingleFlight.LeaderRejectedException) {
+                retried.add(singleFlight.joinStream("analyze:q4"));
+            } else {
+                events.add("error");
+            }
+        });
+
+        stream.fail(new AiSingleFlight.LeaderRejectedException("您的请求过于频繁"));
+
+        assertEquals(List.of("leader:您的请求过于频繁"), events);
+        assertEquals(1, retried.size());
+        assertNotSame(stream, retried.get(0));
+        assertTrue(retried.get(0).claimLeader(), "订阅者按自己的配额成为新的发起者");
+    }
+}
@@ -0,0 +1,144 @@
+package com.ice.exebackend.service;
+
+import com.ice.exebackend.mapper.SysUserMapper;
+import com.ice.exebackend.utils.JwtUtil;
+import io.jsonwebtoken.Claims;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 请求认证缓存测试：Token 过期、登录主体 TTL、失效
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("认证缓存服务测试")
+class AuthenticationCacheServiceTest {
+
+    @Mock
+    private JwtUtil jwtUtil;
+
+    @Mock
+    private SysUserMapper sysUserMapper;
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @InjectMocks
+    private AuthenticationCacheService cacheService;
+
+    private final AtomicInteger loads = new AtomicInteger();
+    private final Function<String, UserDetails> loader = username -> {
+        loads.incrementAndGet();
+        return User.withUsername(username).password("x").roles("STUDENT").build();
+    };
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(cacheService, "tokenSize", 100);
+        ReflectionTestUtils.setField(cacheService, "principalSize", 100);
+        ReflectionTestUtils.setField(cacheService, "principalTtlSeconds", 600L);
+        cacheService.init();
+    }
+
+    @Test
+    @DisplayName("Token 过期前只验签一次，过期后不再返回")
+    void shouldCacheTokenUntilExpiry() throws Exception {
+        stubToken("t1", "S001", 150);
+
+        assertEquals("S001", cacheService.verify("t1").getUsername());
+        assertEquals("S001", cacheService.verify("t1").getUsername());
+        verify(jwtUtil, times(1)).getAllClaimsFromToken("t1");
+
+        Thread.sleep(200);
+        assertNull(cacheService.verify("t1"), "缓存的 Token 到期后失效");
+    }
+
+    @Test
+    @DisplayName("已过期或没有用户名的 Token 不缓存")
+    void shouldRejectExpiredToken() {
+        stubToken("t2", "S001", -1000);
+        assertNull(cacheService.verify("t2"));
+        assertNull(cacheService.verify("t2"));
+        verify(jwtUtil, times(2)).getAllClaimsFromToken("t2");
+
+        stubToken("t3", " ", 60_000);
+        assertNull(cacheService.verify("t3"));
+    }
+
+    @Test
+    @DisplayName("登录主体在 TTL 内复用，超过 TTL 重新加载")
+    void shouldReloadPrincipalAfterTtl() {
+        cacheService.principal(AuthenticationCacheService.REALM_STUDENT, "S001", loader);
+        cacheService.principal(AuthenticationCacheService.REALM_STUDENT, "S001", loader);
+        assertEquals(1, loads.get());
+
+        // 同一用户名在不同端是不同的主体
+        cacheService.principal(AuthenticationCacheService.REALM_ADMIN, "S001", loader);
+        assertEquals(2, loads.get());
+
+        ReflectionTestUtils.setField(cacheService, "principalTtlSeconds", 0L);
+        cacheService.principal(AuthenticationCacheService.REALM_STUDENT, "S001", loader);
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    @DisplayName("失效后清除主体和该用户的 Token，并通知其他节点")
+    void shouldEvictPrincipalAndTokens() {
+        stubToken("t4", "S001", 60_000);
+        cacheService.verify("t4");
+        cacheService.principal(AuthenticationCacheService.REALM_STUDENT, "S001", loader);
+        cacheService.principal(AuthenticationCacheService.REALM_STUDENT, "S002", loader);
+
+        cacheService.evictStudents(List.of("S001"));
+
+        verify(redisTemplate).convertAndSend(AuthenticationCacheService.CHANNEL, "student:S001");
+        cacheService.principal(AuthenticationCacheService.REALM_STUDENT, "S001", loader);
+        cacheService.principal(AuthenticationCacheService.REALM_STUDENT, "S002", loader);
+        assertEquals(3, loads.get(), "只重新加载被失效的学生");
+        cacheService.verify("t4");
+        verify(jwtUtil, times(2)).getAllClaimsFromToken("t4");
+    }
+
+    @Test
+    @DisplayName("事务中的失效在提交后执行")
+    void shouldEvictAfterCommit() {
+        cacheService.principal(AuthenticationCacheService.REALM_STUDENT, "S001", loader);
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            cacheService.evictStudents(List.of("S001"));
+            cacheService.principal(AuthenticationCacheService.REALM_STUDENT, "S001", loader);
+            assertEquals(1, loads.get(), "提交前仍使用缓存");
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        cacheService.principal(AuthenticationCacheService.REALM_STUDENT, "S001", loader);
+        assertEquals(2, loads.get());
+    }
+
+    private void stubToken(String token, String subject, long expiresInMillis) {
+        Claims claims = mock(Claims.class);
+        when(claims.getSubject()).thenReturn(subject);
+        lenient().when(claims.getExpiration()).thenReturn(new Date(System.currentTimeMillis() + expiresInMillis));
+        when(jwtUtil.getAllClaimsFromToken(token)).thenReturn(claims);
+    }
+}
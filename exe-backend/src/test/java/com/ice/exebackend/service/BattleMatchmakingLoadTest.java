@@ -0,0 +1,122 @@
+package com.ice.exebackend.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 对战匹配引擎压测
+ * 需要本地 Redis，默认跳过：mvn test -Dtest=BattleMatchmakingLoadTest -Dbattle.loadtest=true
+ * 可选参数：-Dbattle.loadtest.redis.host / -Dbattle.loadtest.redis.port / -Dbattle.loadtest.players
+ */
+@EnabledIfSystemProperty(named = "battle.loadtest", matches = "true")
+@DisplayName("对战匹配引擎压测")
+class BattleMatchmakingLoadTest {
+
+    private LettuceConnectionFactory connectionFactory;
+    private StringRedisTemplate redisTemplate;
+    private BattleMatchmakingEngine engine;
+
+    @BeforeEach
+    void setUp() {
+        RedisStandaloneConfiguration config = new RedisStandaloneConfiguration(
+                System.getProperty("battle.loadtest.redis.host", "localhost"),
+                Integer.getInteger("battle.loadtest.redis.port", 6379));
+        config.setDatabase(15);
+        connectionFactory = new LettuceConnectionFactory(config);
+        connectionFactory.afterPropertiesSet();
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+
+        for (String tier : BattleGameManager.ORDERED_TIERS) {
+            redisTemplate.delete(BattleMatchmakingEngine.queueKey(tier));
+        }
+
+        engine = new BattleMatchmakingEngine();
+        ReflectionTestUtils.setField(engine, "redisTemplate", redisTemplate);
+        engine.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        engine.shutdown();
+        connectionFactory.destroy();
+    }
+
+    @Test
+    @DisplayName("5000 名学生并发排队的匹配耗时 p50/p99")
+    void shouldReportTimeToMatchPercentiles() throws Exception {
+        int players = Integer.getInteger("battle.loadtest.players", 5000);
+        Map<String, Long> joinTimes = new ConcurrentHashMap<>();
+        Queue<Long> matchLatencies = new ConcurrentLinkedQueue<>();
+        Queue<Long> botLatencies = new ConcurrentLinkedQueue<>();
+        CountDownLatch done = new CountDownLatch(players);
+
+        engine.setListener(new BattleMatchmakingEngine.MatchListener() {
+            @Override
+            public void onMatched(String user1Id, String user2Id) {
+                long now = System.nanoTime();
+                for (String id : Arrays.asList(user1Id, user2Id)) {
+                    Long joined = joinTimes.get(id);
+                    if (joined != null) {
+                        matchLatencies.add(now - joined);
+                        done.countDown();
+                    }
+                }
+            }
+
+            @Override
+            public void onMatchTimeout(String userId) {
+                Long joined = joinTimes.get(userId);
+                if (joined != null) {
+                    botLatencies.add(System.nanoTime() - joined);
+                    done.countDown();
+                }
+            }
+        });
+
+        // 积分按正态分布，集中在中间段位，模拟真实的段位分布
+        Random random = new Random(42);
+        ExecutorService clients = Executors.newFixedThreadPool(64);
+        for (int i = 0; i < players; i++) {
+            String userId = "loadtest-" + i;
+            int points = (int) Math.max(0, 450 + random.nextGaussian() * 250);
+            String tier = BattleGameManager.calculateTier(points);
+            clients.execute(() -> {
+                joinTimes.put(userId, System.nanoTime());
+                engine.enqueue(userId, tier);
+            });
+        }
+        clients.shutdown();
+
+        assertTrue(done.await(BattleMatchmakingEngine.BOT_FALLBACK_MS + 30000, TimeUnit.MILLISECONDS),
+                "所有玩家应在超时前完成匹配或回退人机");
+
+        List<Long> sorted = new ArrayList<>(matchLatencies);
+        Collections.sort(sorted);
+        System.out.printf("[matchmaking] players=%d matched=%d bot=%d p50=%.1fms p99=%.1fms max=%.1fms%n",
+                players, sorted.size(), botLatencies.size(),
+                percentile(sorted, 0.50), percentile(sorted, 0.99),
+                sorted.isEmpty() ? 0.0 : sorted.get(sorted.size() - 1) / 1_000_000.0);
+
+        assertEquals(players, matchLatencies.size() + botLatencies.size());
+        assertFalse(sorted.isEmpty());
+        assertEquals(0, engine.getLocalWaitingCount());
+    }
+
+    private static double percentile(List<Long> sortedNanos, double p) {
+        if (sortedNanos.isEmpty()) return 0.0;
+        int index = (int) Math.ceil(p * sortedNanos.size()) - 1;
+        return sortedNanos.get(Math.max(0, index)) / 1_000_000.0;
+    }
+}
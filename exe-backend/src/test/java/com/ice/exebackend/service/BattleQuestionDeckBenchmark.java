@@ -0,0 +1,121 @@
+package com.ice.exebackend.service;
+
+import com.ice.exebackend.utils.QuestionDeckPool;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.sql.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对战发题基准：内存题池发题 + 主键取题 vs 原来的 ORDER BY RAND() LIMIT 5
+ *
+ * 使用 H2（MySQL 模式）内存库模拟 biz_question，两条路径取回相同的列。
+ * H2 的排序开销远小于线上 MySQL 的 filesort，实际差距只会更大。
+ *
+ * 运行：mvn test-compile exec:java -Dexec.classpathScope=test
+ *      -Dexec.mainClass=com.ice.exebackend.service.BattleQuestionDeckBenchmark
+ * （类名不以 Test 结尾，不会被 surefire 执行）
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BattleQuestionDeckBenchmark {
+
+    private static final int DECK_SIZE = 5;
+
+    @Param({"10000", "50000"})
+    public int questionCount;
+
+    private Connection connection;
+    private QuestionDeckPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection(
+                "jdbc:h2:mem:deck" + questionCount + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        try (Statement st = connection.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS biz_question");
+            st.execute("CREATE TABLE biz_question (id BIGINT PRIMARY KEY, subject_id BIGINT, grade VARCHAR(20), "
+                    + "question_type INT, content VARCHAR(500), options VARCHAR(500), answer VARCHAR(50), difficulty DOUBLE)");
+            st.execute("CREATE INDEX idx_question_type ON biz_question(question_type)");
+        }
+
+        pool = new QuestionDeckPool(questionCount);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        try (PreparedStatement ps = connection.prepareStatement(
+                "INSERT INTO biz_question VALUES (?, ?, ?, ?, ?, ?, ?, ?)")) {
+            for (int i = 1; i <= questionCount; i++) {
+                int type = i % 5 + 1;
+                ps.setLong(1, i);
+                ps.setLong(2, i % 8);
+                ps.setString(3, "高" + (i % 3 + 1));
+                ps.setInt(4, type);
+                ps.setString(5, "题干内容 " + i + " ".repeat(100));
+                ps.setString(6, "[\"A. 选项\",\"B. 选项\",\"C. 选项\",\"D. 选项\"]");
+                ps.setString(7, "A");
+                ps.setDouble(8, random.nextDouble());
+                ps.addBatch();
+                if (type == 1) pool.add(i);
+                if (i % 1000 == 0) ps.executeBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Benchmark
+    public void orderByRand(Blackhole bh) throws SQLException {
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT id, content, options, answer, difficulty FROM biz_question "
+                     + "WHERE question_type = 1 ORDER BY RAND() LIMIT " + DECK_SIZE)) {
+            consume(rs, bh);
+        }
+    }
+
+    @Benchmark
+    public void deckDealWithPkLookup(Blackhole bh) throws SQLException {
+        long[] ids = pool.deal(DECK_SIZE, ThreadLocalRandom.current());
+        try (PreparedStatement ps = connection.prepareStatement(
+                "SELECT id, content, options, answer, difficulty FROM biz_question WHERE id IN (?, ?, ?, ?, ?)")) {
+            for (int i = 0; i < ids.length; i++) {
+                ps.setLong(i + 1, ids[i]);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                consume(rs, bh);
+            }
+        }
+    }
+
+    @Benchmark
+    public long[] deckDealOnly() {
+        return pool.deal(DECK_SIZE, ThreadLocalRandom.current());
+    }
+
+    private static void consume(ResultSet rs, Blackhole bh) throws SQLException {
+        while (rs.next()) {
+            bh.consume(rs.getLong(1));
+            bh.consume(rs.getString(2));
+            bh.consume(rs.getString(3));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(BattleQuestionDeckBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,252 @@
+package com.ice.exebackend.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ice.exebackend.dto.BattleRoomData;
+import com.ice.exebackend.dto.BattleRoomData.BattleQuestion;
+import com.ice.exebackend.entity.BizBattleRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 对战房间状态机测试
+ * Redis 用内存 Map 模拟（Hash / String / CAS 脚本），定时轮由测试手动触发
+ */
+@DisplayName("对战房间状态机测试")
+class BattleRoomStateMachineTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final Map<String, Map<Object, Object>> hashes = new HashMap<>();
+    private final Map<String, String> values = new HashMap<>();
+    private final List<String> published = new ArrayList<>();
+    private final List<String> scheduled = new ArrayList<>();
+    private int casConflicts;
+
+    private BattleTimerWheel timerWheel;
+    private BattleResultWriter resultWriter;
+    private BattleRoomStateMachine stateMachine;
+    private Consumer<String> timerHandler;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+        HashOperations<String, Object, Object> hashOps = mock(HashOperations.class);
+        ValueOperations<String, String> valueOps = mock(ValueOperations.class);
+        when(redisTemplate.<Object, Object>opsForHash()).thenReturn(hashOps);
+        when(redisTemplate.opsForValue()).thenReturn(valueOps);
+
+        doAnswer(inv -> {
+            hashes.computeIfAbsent(inv.getArgument(0), k -> new HashMap<>()).putAll(inv.getArgument(1));
+            return null;
+        }).when(hashOps).putAll(anyString(), anyMap());
+        when(hashOps.entries(anyString())).thenAnswer(inv -> new HashMap<>(hashes.getOrDefault(inv.getArgument(0), Map.of())));
+        doAnswer(inv -> values.put(inv.getArgument(0), inv.getArgument(1)))
+                .when(valueOps).set(anyString(), anyString(), anyLong(), any(TimeUnit.class));
+        when(valueOps.get(anyString())).thenAnswer(inv -> values.get(inv.getArgument(0)));
+        when(redisTemplate.delete(anyString())).thenAnswer(inv -> {
+            String key = inv.getArgument(0);
+            return hashes.remove(key) != null | values.remove(key) != null;
+        });
+        when(redisTemplate.hasKey(anyString())).thenAnswer(inv -> values.containsKey(inv.getArgument(0)));
+        when(redisTemplate.convertAndSend(anyString(), any())).thenAnswer(inv -> {
+            published.add(inv.getArgument(1));
+            return 1L;
+        });
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(Object[].class))).thenAnswer(inv -> {
+            Object[] args = inv.getArguments();
+            Map<Object, Object> room = hashes.get(((List<String>) args[1]).get(0));
+            if (room == null || !room.get("version").equals(args[2])) return 0L;
+            if (casConflicts > 0) {
+                // 模拟另一个节点抢先写入
+                casConflicts--;
+                room.put("version", String.valueOf(Long.parseLong((String) room.get("version")) + 1));
+                return 0L;
+            }
+            for (int i = 4; i < args.length; i += 2) {
+                room.put(args[i], args[i + 1]);
+            }
+            room.put("version", String.valueOf(Long.parseLong((String) room.get("version")) + 1));
+            return 1L;
+        });
+
+        timerWheel = mock(BattleTimerWheel.class);
+        doAnswer(inv -> scheduled.add(inv.getArgument(0))).when(timerWheel).schedule(anyString(), anyLong());
+        doAnswer(inv -> scheduled.remove(inv.getArgument(0))).when(timerWheel).cancel(anyString());
+        resultWriter = mock(BattleResultWriter.class);
+
+        stateMachine = new BattleRoomStateMachine();
+        ReflectionTestUtils.setField(stateMachine, "redisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(stateMachine, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(stateMachine, "timerWheel", timerWheel);
+        ReflectionTestUtils.setField(stateMachine, "identityCache", mock(StudentIdentityCache.class));
+        ReflectionTestUtils.setField(stateMachine, "resultWriter", resultWriter);
+        stateMachine.init();
+
+        ArgumentCaptor<Consumer<String>> handler = ArgumentCaptor.forClass(Consumer.class);
+        verify(timerWheel).setHandler(handler.capture());
+        timerHandler = handler.getValue();
+    }
+
+    @Test
+    @DisplayName("完整对局：开局、作答结算、超时结算、结束后落库并清理房间")
+    void shouldPlayFullGame() throws Exception {
+        BattleRoomData created = stateMachine.createRoom("1", "2", false, List.of(question("A"), question("B")));
+        String roomId = created.getRoomId();
+        assertEquals(List.of("START:" + roomId + ":0"), scheduled);
+
+        fire("START:" + roomId + ":0");
+        assertEquals(BattleRoomData.PHASE_ANSWERING, field(roomId, "phase"));
+        assertEquals(List.of("1:QUESTION", "2:QUESTION"), drainMessages());
+        assertTrue(scheduled.contains("TIMEOUT:" + roomId + ":0"));
+
+        // 双方作答后立即结算，取消超时任务
+        stateMachine.submitAnswer("1", "a");
+        stateMachine.submitAnswer("2", "C");
+        assertEquals(BattleRoomData.PHASE_RESULT, field(roomId, "phase"));
+        assertTrue(Integer.parseInt(field(roomId, "p1Score")) >= 10);
+        assertEquals("0", field(roomId, "p2Score"));
+        assertEquals("1", field(roomId, "p1Combo"));
+        assertFalse(scheduled.contains("TIMEOUT:" + roomId + ":0"));
+        assertEquals(List.of("1:ROUND_RESULT", "2:ROUND_RESULT"), drainMessages());
+
+        // 重复投递的超时任务不改变状态
+        String version = field(roomId, "version");
+        fire("TIMEOUT:" + roomId + ":0");
+        assertEquals(version, field(roomId, "version"));
+        assertTrue(drainMessages().isEmpty());
+
+        fire("NEXT:" + roomId + ":0");
+        assertEquals("1", field(roomId, "round"));
+        assertEquals("", field(roomId, "p1Answer"), "新回合清空上轮作答");
+        assertEquals(List.of("1:QUESTION", "2:QUESTION"), drainMessages());
+
+        // 第二题无人作答，超时结算
+        fire("TIMEOUT:" + roomId + ":1");
+        assertEquals("0", field(roomId, "p1Combo"));
+        drainMessages();
+
+        fire("NEXT:" + roomId + ":1");
+        assertEquals(List.of("1:GAME_OVER", "2:GAME_OVER"), drainMessages());
+        assertFalse(hashes.containsKey("battle:room:" + roomId), "结束后删除房间");
+        assertNull(values.get("player:room:1"));
+        assertNull(values.get("player:room:2"));
+
+        ArgumentCaptor<BizBattleRecord> records = ArgumentCaptor.forClass(BizBattleRecord.class);
+        verify(resultWriter, times(2)).submit(records.capture());
+        assertEquals("WIN", records.getAllValues().get(0).getResult());
+        assertEquals(20, records.getAllValues().get(0).getScoreChange());
+        assertEquals("LOSE", records.getAllValues().get(1).getResult());
+    }
+
+    @Test
+    @DisplayName("CAS 版本冲突时重新读取后重试")
+    void shouldRetryOnCasConflict() {
+        String roomId = stateMachine.createRoom("1", "2", false, List.of(question("A"))).getRoomId();
+        fire("START:" + roomId + ":0");
+
+        casConflicts = 2;
+        stateMachine.submitAnswer("1", "A");
+
+        assertEquals("A", field(roomId, "p1Answer"));
+        assertEquals(0, casConflicts);
+    }
+
+    @Test
+    @DisplayName("同一玩家重复作答只记录第一次")
+    void shouldIgnoreSecondAnswer() {
+        String roomId = stateMachine.createRoom("1", "2", false, List.of(question("A"))).getRoomId();
+        fire("START:" + roomId + ":0");
+
+        stateMachine.submitAnswer("1", "B");
+        stateMachine.submitAnswer("1", "A");
+
+        assertEquals("B", field(roomId, "p1Answer"));
+        assertEquals(BattleRoomData.PHASE_ANSWERING, field(roomId, "phase"));
+    }
+
+    @Test
+    @DisplayName("道具次数用完后不能再使用")
+    void shouldConsumeItemsOnce() throws Exception {
+        String roomId = stateMachine.createRoom("1", "2", false, List.of(question("A"))).getRoomId();
+        fire("START:" + roomId + ":0");
+        drainMessages();
+
+        stateMachine.useItem("1", "FOG");
+        stateMachine.useItem("1", "FOG");
+
+        assertEquals("0", field(roomId, "p1Item:FOG"));
+        assertEquals(List.of("2:ITEM_EFFECT", "1:ITEM_USED_SUCCESS"), drainMessages());
+    }
+
+    @Test
+    @DisplayName("断线超过宽限期判负离场，宽限期内重连则继续对局")
+    void shouldAbandonOnlyWhenNotReconnected() throws Exception {
+        String roomId = stateMachine.createRoom("1", "2", false, List.of(question("A"))).getRoomId();
+        fire("START:" + roomId + ":0");
+        drainMessages();
+
+        stateMachine.playerConnected("2", "s1");
+        stateMachine.playerDisconnected("2", "s1");
+        assertTrue(scheduled.contains("ABANDON:" + roomId + ":2"));
+        assertEquals(roomId, stateMachine.playerConnected("2", "s2"));
+        fire("ABANDON:" + roomId + ":2");
+        assertEquals(BattleRoomData.PHASE_ANSWERING, field(roomId, "phase"), "已重连");
+
+        stateMachine.playerDisconnected("2", "s2");
+        fire("ABANDON:" + roomId + ":2");
+        assertEquals(List.of("1:OPPONENT_LEFT"), drainMessages());
+        assertFalse(hashes.containsKey("battle:room:" + roomId));
+    }
+
+    // ==================== 辅助方法 ====================
+
+    private void fire(String task) {
+        scheduled.remove(task);
+        timerHandler.accept(task);
+    }
+
+    private String field(String roomId, String name) {
+        Object value = hashes.get("battle:room:" + roomId).get(name);
+        return value != null ? String.valueOf(value) : null;
+    }
+
+    /**
+     * 已发布的消息，格式为 "目标用户:消息类型"
+     */
+    private List<String> drainMessages() throws Exception {
+        List<String> result = new ArrayList<>();
+        for (String json : published) {
+            JsonNode node = objectMapper.readTree(json);
+            result.add(node.get("targetUserId").asText() + ":" + node.get("payload").get("type").asText());
+        }
+        published.clear();
+        return result;
+    }
+
+    private static BattleQuestion question(String answer) {
+        BattleQuestion q = new BattleQuestion();
+        q.setId(1L);
+        q.setContent("1 + 1 = ?");
+        q.setOptions("[\"1\",\"2\",\"3\",\"4\"]");
+        q.setAnswer(answer);
+        q.setDifficulty(0.5);
+        return q;
+    }
+}
@@ -0,0 +1,75 @@
+package com.ice.exebackend.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 对战分布式定时轮测试（Redis 用 mock 代替）
+ */
+@DisplayName("对战定时轮测试")
+class BattleTimerWheelTest {
+
+    private ZSetOperations<String, String> zSetOperations;
+    private BattleTimerWheel timerWheel;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+        zSetOperations = mock(ZSetOperations.class);
+        when(redisTemplate.opsForZSet()).thenReturn(zSetOperations);
+
+        timerWheel = new BattleTimerWheel();
+        ReflectionTestUtils.setField(timerWheel, "redisTemplate", redisTemplate);
+    }
+
+    @Test
+    @DisplayName("任务执行成功后从 inflight 中 ack")
+    void shouldAckTaskAfterSuccess() {
+        String task = "TIMEOUT:room-1:0";
+        timerWheel.run(t -> { }, task);
+
+        verify(zSetOperations).remove(BattleTimerWheel.inflightKey(BattleTimerWheel.shardOf(task)), task);
+    }
+
+    @Test
+    @DisplayName("任务执行失败时保留在 inflight 中，租约到期后重新投递")
+    void shouldKeepFailedTaskInflight() {
+        String task = "NEXT:room-1:2";
+        assertDoesNotThrow(() -> timerWheel.run(t -> {
+            throw new IllegalStateException("Redis 超时");
+        }, task));
+
+        verify(zSetOperations, never()).remove(anyString(), any(Object[].class));
+    }
+
+    @Test
+    @DisplayName("安排和取消落在同一分片，不同任务分散到多个分片")
+    void shouldShardTasksByIdentity() {
+        String task = "START:room-1:0";
+        String dueKey = BattleTimerWheel.dueKey(BattleTimerWheel.shardOf(task));
+        timerWheel.schedule(task, 1000);
+        timerWheel.cancel(task);
+
+        verify(zSetOperations).add(eq(dueKey), eq(task), anyDouble());
+        verify(zSetOperations).remove(dueKey, task);
+        assertTrue(dueKey.contains("{wheel:"), "每个分片使用独立的 hash tag");
+
+        Set<Integer> shards = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            shards.add(BattleTimerWheel.shardOf("TIMEOUT:room-" + i + ":0"));
+        }
+        assertEquals(BattleTimerWheel.SHARDS, shards.size());
+    }
+}
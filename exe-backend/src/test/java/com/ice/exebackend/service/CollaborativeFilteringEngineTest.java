@@ -0,0 +1,131 @@
+package com.ice.exebackend.service;
+
+import com.ice.exebackend.entity.BizQuestion;
+import com.ice.exebackend.mapper.BizQuestionMapper;
+import com.ice.exebackend.utils.SparseInteractionMatrix;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * 协同过滤引擎增量合并测试（不启动后台线程，直接调用 mergePending）
+ */
+@DisplayName("协同过滤引擎测试")
+class CollaborativeFilteringEngineTest {
+
+    private static final int QUESTIONS = 50;
+
+    private BizQuestionMapper questionMapper;
+    private CollaborativeFilteringEngine engine;
+
+    @BeforeEach
+    void setUp() {
+        List<BizQuestion> questions = new ArrayList<>();
+        for (long id = 1; id <= QUESTIONS; id++) {
+            BizQuestion q = new BizQuestion();
+            q.setId(id);
+            q.setSubjectId(id % 2 == 0 ? 2L : 1L);
+            q.setDifficulty(0.5);
+            questions.add(q);
+        }
+        questionMapper = mock(BizQuestionMapper.class);
+        when(questionMapper.selectList(any())).thenReturn(questions);
+
+        engine = new CollaborativeFilteringEngine();
+        ReflectionTestUtils.setField(engine, "questionMapper", questionMapper);
+        ReflectionTestUtils.setField(engine, "neighbors", 5);
+        ReflectionTestUtils.setField(engine, "minSimilarity", 0.1f);
+        ReflectionTestUtils.setField(engine, "maxColumnScan", 5000);
+        ReflectionTestUtils.setField(engine, "annEnabled", false);
+    }
+
+    @Test
+    @DisplayName("合并后按相似学生推荐未做过的题目")
+    void shouldRecommendFromNeighborsAfterMerge() {
+        engine.recordAnswers(1L, Map.of(1L, true, 2L, true));
+        engine.recordAnswers(2L, Map.of(1L, true, 2L, true, 3L, true, 4L, false));
+        engine.mergePending();
+
+        List<CollaborativeFilteringEngine.ScoredQuestion> all = engine.recommend(1L, null, 10);
+        assertEquals(List.of(3L, 4L), all.stream().map(CollaborativeFilteringEngine.ScoredQuestion::getQuestionId).toList(),
+                "邻居答对的题排在前面");
+        assertTrue(all.get(0).isCorrect());
+
+        List<CollaborativeFilteringEngine.ScoredQuestion> subject2 = engine.recommend(1L, 2L, 10);
+        assertEquals(1, subject2.size());
+        assertEquals(4L, subject2.get(0).getQuestionId());
+    }
+
+    @Test
+    @DisplayName("合并失败的答题结果放回队列，下次合并以较新结果为准")
+    void shouldRequeueBatchWhenMergeFails() {
+        engine.recordAnswers(1L, Map.of(1L, true, 2L, true));
+        engine.recordAnswers(2L, Map.of(1L, true, 2L, true, 3L, false));
+        when(questionMapper.selectList(any())).thenThrow(new RuntimeException("数据库异常"));
+        engine.mergePending();
+        assertEquals(0, matrix().nnz());
+
+        reset(questionMapper);
+        when(questionMapper.selectList(any())).thenReturn(List.of(question(1), question(2), question(3)));
+        engine.recordAnswers(2L, Map.of(3L, true));
+        engine.mergePending();
+
+        assertEquals(5, matrix().nnz(), "失败批次中的答题没有丢失");
+        List<CollaborativeFilteringEngine.ScoredQuestion> result = engine.recommend(1L, null, 10);
+        assertEquals(1, result.size());
+        assertTrue(result.get(0).isCorrect(), "重试前登记的新结果覆盖旧结果");
+    }
+
+    @Test
+    @DisplayName("合并与登记并发进行时不丢失答题结果")
+    void shouldNotLoseAnswersRecordedDuringMerge() throws Exception {
+        int writers = 4;
+        int perWriter = 500;
+        ExecutorService pool = Executors.newFixedThreadPool(writers);
+        CountDownLatch done = new CountDownLatch(writers);
+        for (int w = 0; w < writers; w++) {
+            long base = w * 10_000L;
+            pool.execute(() -> {
+                for (int i = 0; i < perWriter; i++) {
+                    // 同一学生多次登记不同题目，合并时最容易丢写
+                    engine.recordAnswers(base + i % 50, Map.of((long) (i / 50) + 1, true));
+                }
+                done.countDown();
+            });
+        }
+        while (!done.await(1, TimeUnit.MILLISECONDS)) {
+            engine.mergePending();
+        }
+        pool.shutdown();
+        engine.mergePending();
+
+        // 每个写线程 50 名学生，每人 10 道不同的题
+        assertEquals(writers * perWriter, matrix().nnz());
+    }
+
+    private SparseInteractionMatrix matrix() {
+        Object model = ReflectionTestUtils.getField(engine, "model");
+        return (SparseInteractionMatrix) ReflectionTestUtils.getField(model, "matrix");
+    }
+
+    private static BizQuestion question(long id) {
+        BizQuestion q = new BizQuestion();
+        q.setId(id);
+        q.setSubjectId(1L);
+        q.setDifficulty(0.5);
+        return q;
+    }
+}
@@ -0,0 +1,193 @@
+package com.ice.exebackend.service;
+
+import com.ice.exebackend.context.UserDataScope;
+import com.ice.exebackend.entity.BizClass;
+import com.ice.exebackend.entity.BizClassStudent;
+import com.ice.exebackend.entity.SysUser;
+import com.ice.exebackend.event.ClassMembershipChangedEvent;
+import com.ice.exebackend.mapper.BizClassMapper;
+import com.ice.exebackend.mapper.BizClassStudentMapper;
+import com.ice.exebackend.mapper.SysUserMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.listener.Topic;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.event.TransactionalEventListenerFactory;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 数据权限范围缓存测试：TTL、管理员标记变化、班级成员变更后失效、跨节点失效通知
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("数据权限缓存服务测试")
+class DataScopeServiceTest {
+
+    @Mock
+    private SysUserMapper sysUserMapper;
+
+    @Mock
+    private BizClassMapper classMapper;
+
+    @Mock
+    private BizClassStudentMapper classStudentMapper;
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @Mock
+    private RedisMessageListenerContainer listenerContainer;
+
+    @InjectMocks
+    private DataScopeService dataScopeService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(dataScopeService, "cacheSize", 100);
+        ReflectionTestUtils.setField(dataScopeService, "ttlSeconds", 600L);
+        dataScopeService.init();
+    }
+
+    @Test
+    @DisplayName("TTL 内复用，超过 TTL 重新解析")
+    void shouldReloadAfterTtl() {
+        stubTeacher(user(5L));
+
+        UserDataScope scope = dataScopeService.resolve("teacher", false);
+        assertSame(scope, dataScopeService.resolve("teacher", false));
+        assertEquals(Set.of(50L), scope.getClassIds());
+        assertEquals(Set.of(500L), scope.getStudentIds());
+        verify(sysUserMapper, times(1)).selectOne(any());
+
+        ReflectionTestUtils.setField(dataScopeService, "ttlSeconds", 0L);
+        assertNotSame(scope, dataScopeService.resolve("teacher", false));
+        verify(sysUserMapper, times(2)).selectOne(any());
+    }
+
+    @Test
+    @DisplayName("管理员标记与缓存不一致时重新解析")
+    void shouldReloadWhenAdminFlagChanges() {
+        stubTeacher(user(5L));
+
+        assertFalse(dataScopeService.resolve("teacher", false).isAdmin());
+        UserDataScope admin = dataScopeService.resolve("teacher", true);
+        assertTrue(admin.isAdmin());
+        assertEquals(5L, admin.getUserId());
+        assertSame(admin, dataScopeService.resolve("teacher", true));
+        verify(sysUserMapper, times(2)).selectOne(any());
+        // 管理员不需要查负责的班级
+        verify(classMapper, times(1)).selectList(any());
+
+        assertFalse(dataScopeService.resolve("teacher", false).isAdmin());
+        verify(sysUserMapper, times(3)).selectOne(any());
+    }
+
+    @Test
+    @DisplayName("班级成员变更事件在事务提交后清除相关教师的缓存并通知其他节点")
+    void shouldEvictOnClassMembershipChangedAfterCommit() {
+        stubTeacher(user(5L), user(6L), user(5L));
+
+        // 由 Spring 按 @TransactionalEventListener 注册监听，事件随事务提交才处理
+        try (AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext()) {
+            context.registerBean(SysUserMapper.class, () -> sysUserMapper);
+            context.registerBean(BizClassMapper.class, () -> classMapper);
+            context.registerBean(BizClassStudentMapper.class, () -> classStudentMapper);
+            context.registerBean(StringRedisTemplate.class, () -> redisTemplate);
+            context.registerBean(TransactionalEventListenerFactory.class);
+            context.registerBean(DataScopeService.class);
+            context.refresh();
+            DataScopeService service = context.getBean(DataScopeService.class);
+
+            UserDataScope evicted = service.resolve("teacher", false);
+            UserDataScope other = service.resolve("other", false);
+
+            TransactionSynchronizationManager.initSynchronization();
+            TransactionSynchronizationManager.setActualTransactionActive(true);
+            try {
+                context.publishEvent(new ClassMembershipChangedEvent(this, List.of(5L)));
+                assertSame(evicted, service.resolve("teacher", false), "提交前仍使用缓存");
+                verify(redisTemplate, never()).convertAndSend(anyString(), anyString());
+
+                List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+                synchronizations.forEach(TransactionSynchronization::afterCommit);
+                synchronizations.forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+            } finally {
+                TransactionSynchronizationManager.clear();
+            }
+
+            verify(redisTemplate).convertAndSend(DataScopeService.CHANNEL, "5");
+            assertNotSame(evicted, service.resolve("teacher", false));
+            assertSame(other, service.resolve("other", false), "只清除受影响的教师");
+            verify(sysUserMapper, times(3)).selectOne(any());
+        }
+    }
+
+    @Test
+    @DisplayName("收到其他节点的失效通知后清除对应用户，无法识别的消息忽略")
+    void shouldEvictOnRedisMessage() {
+        stubTeacher(user(5L), user(6L), user(5L));
+
+        ArgumentCaptor<MessageListener> listener = ArgumentCaptor.forClass(MessageListener.class);
+        ArgumentCaptor<Topic> topic = ArgumentCaptor.forClass(Topic.class);
+        verify(listenerContainer).addMessageListener(listener.capture(), topic.capture());
+        assertEquals(DataScopeService.CHANNEL, ((ChannelTopic) topic.getValue()).getTopic());
+
+        UserDataScope evicted = dataScopeService.resolve("teacher", false);
+        UserDataScope other = dataScopeService.resolve("other", false);
+
+        listener.getValue().onMessage(message("not-a-number"), null);
+        assertSame(evicted, dataScopeService.resolve("teacher", false));
+
+        listener.getValue().onMessage(message("5"), null);
+        assertNotSame(evicted, dataScopeService.resolve("teacher", false));
+        assertSame(other, dataScopeService.resolve("other", false));
+        verify(sysUserMapper, times(3)).selectOne(any());
+        // 收到通知只清本机，不再转发
+        verify(redisTemplate, never()).convertAndSend(anyString(), anyString());
+    }
+
+    /**
+     * 依次查到的用户；每位教师都负责班级 50，班里有学生 500
+     */
+    private void stubTeacher(SysUser first, SysUser... more) {
+        when(sysUserMapper.selectOne(any())).thenReturn(first, more);
+        BizClass bizClass = new BizClass();
+        bizClass.setId(50L);
+        when(classMapper.selectList(any())).thenReturn(List.of(bizClass));
+        BizClassStudent relation = new BizClassStudent();
+        relation.setStudentId(500L);
+        when(classStudentMapper.selectList(any())).thenReturn(List.of(relation));
+    }
+
+    private static SysUser user(Long id) {
+        SysUser user = new SysUser();
+        user.setId(id);
+        return user;
+    }
+
+    private static Message message(String body) {
+        Message message = mock(Message.class);
+        when(message.getBody()).thenReturn(body.getBytes(StandardCharsets.UTF_8));
+        return message;
+    }
+}
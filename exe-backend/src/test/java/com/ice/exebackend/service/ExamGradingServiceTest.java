@@ -0,0 +1,160 @@
+package com.ice.exebackend.service;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.metadata.TableInfoHelper;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ice.exebackend.entity.BizExamResult;
+import com.ice.exebackend.entity.BizWrongRecord;
+import com.ice.exebackend.handler.NotificationWebSocketHandler;
+import com.ice.exebackend.mapper.BizExamResultMapper;
+import org.apache.ibatis.builder.MapperBuilderAssistant;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 考试主观题 AI 批改写回与超时恢复测试（不启动线程池，直接调用 complete / recoverStale）
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("考试AI批改流水线测试")
+class ExamGradingServiceTest {
+
+    @Mock
+    private BizExamResultService examResultService;
+
+    @Mock
+    private BizWrongRecordService wrongRecordService;
+
+    @Mock
+    private BizAchievementService achievementService;
+
+    @Mock
+    private CollaborativeFilteringEngine cfEngine;
+
+    @Mock
+    private NotificationWebSocketHandler notificationHandler;
+
+    @InjectMocks
+    private ExamGradingService gradingService;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final ExamGradingService.SubjectiveItem essay =
+            new ExamGradingService.SubjectiveItem(11L, "简述光合作用", "参考答案", "学生作答", 10);
+    private final ExamGradingService.SubjectiveItem proof =
+            new ExamGradingService.SubjectiveItem(12L, "证明勾股定理", "参考答案", "学生作答", 20);
+    private final ExamGradingService.GradingJob job = new ExamGradingService.GradingJob(
+            100L, 7L, "S001", "期中模拟", "key", "deepseek", List.of(essay, proof));
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(gradingService, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(gradingService, "staleMinutes", 30L);
+    }
+
+    @Test
+    @DisplayName("写回合并批改详情、累加分数、改为待批改并登记错题")
+    @SuppressWarnings("unchecked")
+    void shouldWriteBackGradedResult() throws Exception {
+        when(examResultService.getById(100L)).thenReturn(aiGrading());
+        when(examResultService.updateById(any(BizExamResult.class))).thenReturn(true);
+
+        boolean done = gradingService.complete(job, List.of(
+                new ExamGradingService.Graded(essay, 8, "要点齐全"),
+                new ExamGradingService.Graded(proof, 5, "证明不完整")));
+
+        assertTrue(done);
+        ArgumentCaptor<BizExamResult> saved = ArgumentCaptor.forClass(BizExamResult.class);
+        verify(examResultService).updateById(saved.capture());
+        assertEquals(50 + 13, saved.getValue().getScore());
+        assertEquals(50 + 13, saved.getValue().getOriginalScore());
+        assertEquals(1, saved.getValue().getStatus());
+        Map<?, ?> details = objectMapper.readValue(saved.getValue().getResultDetails(), Map.class);
+        assertEquals(3, details.size(), "保留客观题详情");
+        assertEquals(8, ((Map<?, ?>) details.get("11")).get("score"));
+
+        ArgumentCaptor<List<BizWrongRecord>> wrong = ArgumentCaptor.forClass(List.class);
+        verify(wrongRecordService).addUnmasteredBatch(wrong.capture());
+        assertEquals(1, wrong.getValue().size());
+        assertEquals(12L, wrong.getValue().get(0).getQuestionId());
+        verify(cfEngine).recordAnswers(7L, Map.of(11L, true, 12L, false));
+        verify(notificationHandler).sendToUser(eq("S001"), contains("EXAM_GRADED"));
+        verifyNoInteractions(achievementService);
+    }
+
+    @Test
+    @DisplayName("乐观锁冲突时重读后重试")
+    void shouldRetryOnVersionConflict() {
+        when(examResultService.getById(100L)).thenReturn(aiGrading(), aiGrading());
+        when(examResultService.updateById(any(BizExamResult.class))).thenReturn(false, true);
+
+        assertTrue(gradingService.complete(job, List.of(new ExamGradingService.Graded(essay, 10, "满分"))));
+
+        verify(examResultService, times(2)).getById(100L);
+        verify(wrongRecordService).addUnmasteredBatch(List.of());
+    }
+
+    @Test
+    @DisplayName("冲突重试用尽或数据库异常时返回失败，不登记错题、不通知")
+    void shouldReportFailureWhenWriteBackFails() {
+        when(examResultService.getById(100L)).thenAnswer(inv -> aiGrading());
+        when(examResultService.updateById(any(BizExamResult.class))).thenReturn(false);
+        assertFalse(gradingService.complete(job, List.of(new ExamGradingService.Graded(essay, 10, "满分"))));
+        verify(examResultService, times(3)).updateById(any(BizExamResult.class));
+
+        reset(examResultService);
+        when(examResultService.getById(100L)).thenThrow(new RuntimeException("连接池耗尽"));
+        assertFalse(gradingService.complete(job, List.of(new ExamGradingService.Graded(essay, 10, "满分"))));
+
+        verifyNoInteractions(wrongRecordService, cfEngine, notificationHandler);
+    }
+
+    @Test
+    @DisplayName("成绩记录已删除时不再重试")
+    void shouldStopWhenResultDeleted() {
+        when(examResultService.getById(100L)).thenReturn(null);
+
+        assertTrue(gradingService.complete(job, List.of(new ExamGradingService.Graded(essay, 10, "满分"))));
+        verify(examResultService, never()).updateById(any(BizExamResult.class));
+    }
+
+    @Test
+    @DisplayName("超时的「AI 批改中」成绩改回待批改")
+    void shouldRecoverStaleResults() {
+        // Lambda 条件构造器按实体元数据解析列名
+        TableInfoHelper.initTableInfo(new MapperBuilderAssistant(new MybatisConfiguration(), ""), BizExamResult.class);
+        BizExamResultMapper mapper = mock(BizExamResultMapper.class);
+        when(examResultService.getBaseMapper()).thenReturn(mapper);
+        when(mapper.update(isNull(), any())).thenReturn(2);
+
+        assertEquals(2, gradingService.recoverStale());
+
+        when(mapper.update(isNull(), any())).thenThrow(new RuntimeException("数据库异常"));
+        assertEquals(0, gradingService.recoverStale(), "恢复失败不影响下次执行");
+    }
+
+    private static BizExamResult aiGrading() {
+        BizExamResult result = new BizExamResult();
+        result.setId(100L);
+        result.setStudentId(7L);
+        result.setScore(50);
+        result.setOriginalScore(50);
+        result.setTotalScore(100);
+        result.setStatus(ExamGradingService.STATUS_AI_GRADING);
+        result.setResultDetails("{\"1\":{\"score\":5,\"feedback\":\"正确\"}}");
+        return result;
+    }
+}
@@ -0,0 +1,189 @@
+package com.ice.exebackend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.ice.exebackend.dto.PracticeSubmissionDTO;
+import com.ice.exebackend.entity.BizStudent;
+import com.ice.exebackend.handler.NotificationWebSocketHandler;
+import com.ice.exebackend.utils.SubmissionJournal;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 集中交卷排队压测
+ * 默认跳过：mvn test -Dtest=ExamSubmissionLoadTest -Dexam.loadtest=true
+ * 可选参数：-Dexam.loadtest.students（默认 2000）/ -Dexam.loadtest.grading-ms（模拟单份判分耗时，默认 5）
+ *
+ * 判分与落库用桩代替，只测排队本身：所有学生同一时刻交卷的回执延迟 p50/p99，
+ * 以及处理到一半进程退出后，重启回放能否让每份答卷恰好处理一次。
+ */
+@EnabledIfSystemProperty(named = "exam.loadtest", matches = "true")
+@DisplayName("集中交卷排队压测")
+class ExamSubmissionLoadTest {
+
+    @TempDir
+    Path journalDir;
+
+    private final ObjectMapper objectMapper = JsonMapper.builder().findAndAddModules().build();
+    private final Map<String, String> redisStore = new ConcurrentHashMap<>();
+    private final Map<Long, AtomicInteger> processed = new ConcurrentHashMap<>();
+
+    /**
+     * 判分桩：记录每个学生被处理的次数；gate 用完后阻塞，模拟进程退出时还没处理到的答卷
+     */
+    private class StubSubmissionService extends ExamSubmissionService {
+        private final Semaphore gate;
+        private final long gradingMs;
+
+        StubSubmissionService(Semaphore gate, long gradingMs) {
+            this.gate = gate;
+            this.gradingMs = gradingMs;
+        }
+
+        @Override
+        public Map<String, Object> submit(BizStudent student, PracticeSubmissionDTO submission, Long paperId,
+                                          String aiKey, String aiProvider) {
+            try {
+                gate.acquire();
+                Thread.sleep(gradingMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted", e);
+            }
+            processed.computeIfAbsent(student.getId(), k -> new AtomicInteger()).incrementAndGet();
+            return Map.of("score", submission.getAnswers().size(), "totalScore", 100);
+        }
+    }
+
+    @Test
+    @DisplayName("2000 名学生同时交卷的回执延迟 p50/p99，中途退出后回放恰好处理一次")
+    void shouldAcceptSurgeAndReplayExactlyOnce() throws Exception {
+        int students = Integer.getInteger("exam.loadtest.students", 2000);
+        long gradingMs = Long.getLong("exam.loadtest.grading-ms", 5);
+        int processedBeforeCrash = students / 4;
+
+        Semaphore gate = new Semaphore(processedBeforeCrash);
+        ExamSubmissionQueue queue = newQueue(new StubSubmissionService(gate, gradingMs));
+
+        CountDownLatch start = new CountDownLatch(1);
+        Queue<Long> latencies = new ConcurrentLinkedQueue<>();
+        Map<Long, String> receipts = new ConcurrentHashMap<>();
+        ExecutorService clients = Executors.newFixedThreadPool(students);
+        List<Future<?>> futures = new ArrayList<>(students);
+        for (int i = 0; i < students; i++) {
+            long studentId = i + 1;
+            futures.add(clients.submit(() -> {
+                BizStudent student = new BizStudent();
+                student.setId(studentId);
+                student.setStudentNo("S" + studentId);
+                PracticeSubmissionDTO submission = new PracticeSubmissionDTO();
+                Map<Long, String> answers = new HashMap<>();
+                for (long q = 1; q <= 50; q++) answers.put(q, "A");
+                submission.setAnswers(answers);
+                start.await();
+                long begin = System.nanoTime();
+                receipts.put(studentId, queue.enqueue(student, submission, 1L, null, null));
+                latencies.add(System.nanoTime() - begin);
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> f : futures) f.get(60, TimeUnit.SECONDS);
+        clients.shutdown();
+
+        List<Long> sorted = new ArrayList<>(latencies);
+        Collections.sort(sorted);
+        System.out.printf("[exam-submit] students=%d receipt p50=%.1fms p99=%.1fms max=%.1fms%n",
+                students, percentile(sorted, 0.50), percentile(sorted, 0.99),
+                sorted.get(sorted.size() - 1) / 1_000_000.0);
+        assertEquals(students, new HashSet<>(receipts.values()).size(), "回执 id 应唯一");
+
+        // 放行的答卷处理完后模拟进程退出，其余答卷只在日志里
+        waitUntil(() -> countProcessed() >= processedBeforeCrash, 60);
+        crash(queue);
+        assertEquals(processedBeforeCrash, countProcessed());
+
+        // 重启：回放未 ack 的答卷
+        ExamSubmissionQueue restarted = newQueue(new StubSubmissionService(new Semaphore(Integer.MAX_VALUE), gradingMs));
+        waitUntil(() -> receipts.values().stream().allMatch(id -> isDone(restarted, id)), 120);
+        restarted.shutdown();
+
+        assertEquals(students, processed.size());
+        processed.forEach((studentId, count) ->
+                assertEquals(1, count.get(), "学生 " + studentId + " 的答卷应恰好处理一次"));
+        try (SubmissionJournal journal = new SubmissionJournal(journalDir.resolve("submissions.log"), Long.MAX_VALUE)) {
+            assertTrue(journal.pending().isEmpty(), "全部处理后日志中不应有未 ack 的条目");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private ExamSubmissionQueue newQueue(ExamSubmissionService submissionService) throws Exception {
+        ValueOperations<String, String> ops = mock(ValueOperations.class);
+        doAnswer(inv -> redisStore.put(inv.getArgument(0), inv.getArgument(1)))
+                .when(ops).set(anyString(), anyString(), anyLong(), any(TimeUnit.class));
+        when(ops.get(anyString())).thenAnswer(inv -> redisStore.get((String) inv.getArgument(0)));
+        StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+        when(redisTemplate.opsForValue()).thenReturn(ops);
+
+        ExamSubmissionQueue queue = new ExamSubmissionQueue();
+        ReflectionTestUtils.setField(queue, "examSubmissionService", submissionService);
+        ReflectionTestUtils.setField(queue, "redisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(queue, "notificationHandler", mock(NotificationWebSocketHandler.class));
+        ReflectionTestUtils.setField(queue, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(queue, "mode", "always");
+        ReflectionTestUtils.setField(queue, "syncThreshold", 32);
+        ReflectionTestUtils.setField(queue, "workers", 8);
+        ReflectionTestUtils.setField(queue, "maxPending", 5000);
+        ReflectionTestUtils.setField(queue, "journalDir", journalDir.toString());
+        ReflectionTestUtils.setField(queue, "journalCompactBytes", Long.MAX_VALUE);
+        ReflectionTestUtils.setField(queue, "receiptTtlHours", 24L);
+        queue.init();
+        return queue;
+    }
+
+    /**
+     * 停掉工作线程并关闭日志，不等待排队中的答卷
+     */
+    private void crash(ExamSubmissionQueue queue) throws Exception {
+        ExecutorService executor = (ExecutorService) ReflectionTestUtils.getField(queue, "executor");
+        queue.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    private boolean isDone(ExamSubmissionQueue queue, String receiptId) {
+        Map<String, Object> receipt = queue.getReceipt(receiptId);
+        return receipt != null && ExamSubmissionQueue.STATUS_DONE.equals(receipt.get("status"));
+    }
+
+    private int countProcessed() {
+        return processed.values().stream().mapToInt(AtomicInteger::get).sum();
+    }
+
+    private static void waitUntil(java.util.function.BooleanSupplier condition, int timeoutSeconds) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutSeconds * 1000L;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "等待超时");
+            Thread.sleep(50);
+        }
+    }
+
+    private static double percentile(List<Long> sortedNanos, double p) {
+        if (sortedNanos.isEmpty()) return 0.0;
+        int index = (int) Math.ceil(p * sortedNanos.size()) - 1;
+        return sortedNanos.get(Math.max(0, index)) / 1_000_000.0;
+    }
+}
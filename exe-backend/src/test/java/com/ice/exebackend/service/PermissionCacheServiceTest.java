@@ -32,6 +32,9 @@ class PermissionCacheServiceTest {
     @Mock
     private ValueOperations<String, Object> valueOperations;
 
+    @Mock
+    private AuthenticationCacheService authenticationCacheService;
+
     @InjectMocks
     private PermissionCacheService permissionCacheService;
 
@@ -104,6 +107,7 @@ class PermissionCacheServiceTest {
 
         // Then
         verify(redisTemplate).delete("auth:user:1:permissions");
+        verify(authenticationCacheService).evictUsers(List.of(userId));
     }
 
     @Test
@@ -120,6 +124,7 @@ class PermissionCacheServiceTest {
         verify(redisTemplate).delete("auth:user:1:permissions");
         verify(redisTemplate).delete("auth:user:2:permissions");
         verify(redisTemplate).delete("auth:user:3:permissions");
+        verify(authenticationCacheService).evictUsers(userIds);
     }
 
     @Test
@@ -0,0 +1,106 @@
+package com.ice.exebackend.service;
+
+import com.ice.exebackend.utils.MinHashLshIndex;
+import com.ice.exebackend.utils.TextSimilarity;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 试题查重测试：按服务实际使用的 LSH 参数检验阈值附近的召回率
+ */
+@DisplayName("试题查重测试")
+class QuestionDuplicateServiceTest {
+
+    private static final int PAIRS = 2000;
+
+    @Test
+    @DisplayName("编辑距离相似度刚过阈值的题目几乎都进入候选")
+    void shouldRecallPairsAtThreshold() {
+        Random random = new Random(42);
+        MinHashLshIndex index = new MinHashLshIndex(QuestionDuplicateService.BANDS, QuestionDuplicateService.ROWS);
+        String[] originals = new String[PAIRS];
+        double totalJaccard = 0;
+        for (int i = 0; i < PAIRS; i++) {
+            // 长文本 + 互不相邻的替换：编辑距离相似度刚过 0.8，而被破坏的二元组最多，Jaccard 接近最差的 0.43
+            int length = 100 + random.nextInt(101);
+            String original = randomText(random, length);
+            String edited = substitute(random, original, (int) Math.ceil(length * (1 - QuestionDuplicateService.SIMILARITY_THRESHOLD)) - 1);
+            assertTrue(QuestionDuplicateService.similarity(original, edited) > QuestionDuplicateService.SIMILARITY_THRESHOLD);
+            totalJaccard += jaccard(original, edited);
+
+            originals[i] = original;
+            index.put(2L * i, original);
+            index.put(2L * i + 1, edited);
+        }
+        assertTrue(totalJaccard / PAIRS < 0.44, "样本应处于阈值对应的最差 Jaccard 附近");
+
+        int recalled = 0;
+        for (int i = 0; i < PAIRS; i++) {
+            if (index.candidates(originals[i], QuestionDuplicateService.MIN_ESTIMATE, 2L * i).contains(2L * i + 1)) {
+                recalled++;
+            }
+        }
+        double recall = (double) recalled / PAIRS;
+        assertTrue(recall >= 0.98, "阈值处的召回率应约为 0.99，实际 " + recall);
+    }
+
+    @Test
+    @DisplayName("无关题目很少进入候选")
+    void shouldRarelyReturnUnrelatedQuestions() {
+        Random random = new Random(7);
+        MinHashLshIndex index = new MinHashLshIndex(QuestionDuplicateService.BANDS, QuestionDuplicateService.ROWS);
+        // 小字母表让无关题目之间也共享少量二元组（Jaccard 约 0.07）
+        for (int i = 0; i < PAIRS; i++) {
+            index.put(i, randomText(random, 60, 20));
+        }
+        int candidates = 0;
+        for (int i = 0; i < 100; i++) {
+            candidates += index.candidates(randomText(random, 60, 20), QuestionDuplicateService.MIN_ESTIMATE, null).size();
+        }
+        assertTrue(candidates / 100.0 < PAIRS * 0.01, "每次查重平均候选数 " + candidates / 100.0);
+    }
+
+    private static String randomText(Random random, int length) {
+        return randomText(random, length, 20000);
+    }
+
+    private static String randomText(Random random, int length, int alphabet) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append((char) (0x4E00 + random.nextInt(alphabet)));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 在互不相邻的位置替换 count 个字
+     */
+    private static String substitute(Random random, String text, int count) {
+        char[] chars = text.toCharArray();
+        Set<Integer> positions = new HashSet<>();
+        while (positions.size() < count) {
+            int p = random.nextInt(chars.length);
+            if (!positions.contains(p) && !positions.contains(p - 1) && !positions.contains(p + 1)) {
+                positions.add(p);
+            }
+        }
+        for (int p : positions) {
+            chars[p] = (char) (0x4E00 + 20000 + random.nextInt(800));
+        }
+        return new String(chars);
+    }
+
+    private static double jaccard(String a, String b) {
+        Set<String> x = TextSimilarity.bigrams(TextSimilarity.normalizeText(a));
+        Set<String> y = TextSimilarity.bigrams(TextSimilarity.normalizeText(b));
+        Set<String> shared = new HashSet<>(x);
+        shared.retainAll(y);
+        return (double) shared.size() / (x.size() + y.size() - shared.size());
+    }
+}
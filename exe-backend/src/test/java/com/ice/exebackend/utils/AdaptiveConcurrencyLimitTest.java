@@ -0,0 +1,69 @@
+package com.ice.exebackend.utils;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 自适应并发上限测试
+ */
+@DisplayName("自适应并发上限测试")
+class AdaptiveConcurrencyLimitTest {
+
+    @Test
+    @DisplayName("延迟升高时收缩，过载信号降到下限")
+    void shouldShrinkOnLatencyAndOverload() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(2, 20, 2.0);
+        for (int i = 0; i < 20; i++) {
+            assertTrue(limit.tryAcquire());
+        }
+        assertFalse(limit.tryAcquire());
+
+        for (int i = 0; i < 50; i++) limit.onSample(1000, false);
+        assertEquals(20, limit.getLimit(), "延迟平稳时保持上限");
+
+        for (int i = 0; i < 15; i++) limit.onSample(8000, false);
+        assertTrue(limit.getLimit() < 12, "延迟升高后收缩: " + limit.getLimit());
+
+        for (int i = 0; i < 30; i++) limit.onSample(100, true);
+        assertEquals(2, limit.getLimit());
+    }
+
+    @Test
+    @DisplayName("繁忙时逐步增长，空闲时不增长")
+    void shouldGrowOnlyWhenBusy() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(2, 20, 2.0);
+        for (int i = 0; i < 30; i++) limit.onSample(100, true);
+        assertEquals(2, limit.getLimit());
+
+        for (int i = 0; i < 200; i++) limit.onSample(1000, false);
+        assertEquals(2, limit.getLimit(), "没有并发占用时不增长");
+
+        limit.tryAcquire();
+        limit.tryAcquire();
+        for (int i = 0; i < 200; i++) limit.onSample(1000, false);
+        assertTrue(limit.getLimit() > 2);
+    }
+
+    @Test
+    @DisplayName("等待占用在释放后立即拿到")
+    void shouldWakeWaiterOnRelease() throws Exception {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(1, 1, 2.0);
+        assertTrue(limit.tryAcquire());
+        assertFalse(limit.acquire(50, TimeUnit.MILLISECONDS));
+
+        Thread releaser = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException ignored) {
+            }
+            limit.release();
+        });
+        releaser.start();
+        assertTrue(limit.acquire(2, TimeUnit.SECONDS));
+        assertEquals(1, limit.getInFlight());
+    }
+}
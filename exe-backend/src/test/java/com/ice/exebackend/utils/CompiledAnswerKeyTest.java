@@ -0,0 +1,109 @@
+package com.ice.exebackend.utils;
+
+import com.ice.exebackend.entity.BizQuestion;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 预编译标准答案测试
+ * 判分结果须与逐题「规范化后字符串比较」的原判分方式一致
+ */
+@DisplayName("预编译标准答案测试")
+class CompiledAnswerKeyTest {
+
+    private static BizQuestion question(long id, int type, String answer) {
+        BizQuestion q = new BizQuestion();
+        q.setId(id);
+        q.setQuestionType(type);
+        q.setAnswer(answer);
+        return q;
+    }
+
+    private static byte gradeOne(int type, String key, String userAnswer) {
+        Map<Long, BizQuestion> questions = Map.of(1L, question(1L, type, key));
+        CompiledAnswerKey compiled = new CompiledAnswerKey(List.of(1L), List.of(5), questions);
+        Map<Long, String> answers = new HashMap<>();
+        answers.put(1L, userAnswer);
+        byte[] outcomes = new byte[compiled.size()];
+        compiled.grade(answers, outcomes);
+        return outcomes[0];
+    }
+
+    /** 原判分逻辑 */
+    private static boolean legacyCorrect(int type, String key, String userAnswer) {
+        if (type == 2) {
+            return CompiledAnswerKey.sortString(userAnswer).equalsIgnoreCase(CompiledAnswerKey.sortString(key));
+        } else if (type == 4) {
+            return CompiledAnswerKey.normalizeJudgmentAnswer(userAnswer)
+                    .equalsIgnoreCase(CompiledAnswerKey.normalizeJudgmentAnswer(key));
+        }
+        return userAnswer.trim().equalsIgnoreCase(key.trim());
+    }
+
+    @Test
+    @DisplayName("多选题掩码判分与原字符串比较一致")
+    void multiSelectShouldMatchLegacy() {
+        String[] keys = {"A,B", "B,A,C", "a", "", "A", "AB,C"};
+        String[] answers = {"A,B", "B,A", " b , a ", "A,B,", ",A,B", "A,,B", "A,A,B", "A B", "", "ab,c", "C,AB", "a,b,c"};
+        for (String key : keys) {
+            for (String answer : answers) {
+                boolean expected = legacyCorrect(2, key, answer);
+                byte outcome = gradeOne(2, key, answer);
+                assertEquals(expected ? CompiledAnswerKey.CORRECT : CompiledAnswerKey.WRONG, outcome,
+                        "key=" + key + ", answer=" + answer);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("判断题各种写法与原规范化比较一致")
+    void judgmentShouldMatchLegacy() {
+        String[] values = {"T", "F", "t", "True", " FALSE ", "正确", "错误", "对", "错", " 对 ", "是", "", "x"};
+        for (String key : values) {
+            for (String answer : values) {
+                boolean expected = legacyCorrect(4, key, answer);
+                byte outcome = gradeOne(4, key, answer);
+                assertEquals(expected ? CompiledAnswerKey.CORRECT : CompiledAnswerKey.WRONG, outcome,
+                        "key=" + key + ", answer=" + answer);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("填空题去首尾空白并忽略大小写")
+    void fillInShouldTrimAndIgnoreCase() {
+        assertEquals(CompiledAnswerKey.CORRECT, gradeOne(3, " Photosynthesis ", "photosynthesis"));
+        assertEquals(CompiledAnswerKey.WRONG, gradeOne(3, "光合作用", "呼吸作用"));
+        assertEquals(CompiledAnswerKey.CORRECT, gradeOne(1, "B", " b"));
+    }
+
+    @Test
+    @DisplayName("未作答、主观题、缺失题目和无标准答案的处理")
+    void shouldHandleSpecialSlots() {
+        Map<Long, BizQuestion> questions = new HashMap<>();
+        questions.put(1L, question(1L, 1, "A"));
+        questions.put(2L, question(2L, 5, "参考答案"));
+        questions.put(4L, question(4L, 1, null));
+        CompiledAnswerKey compiled = new CompiledAnswerKey(
+                List.of(1L, 2L, 3L, 4L), Arrays.asList(2, 10, 3, 4), questions);
+
+        assertEquals(3, compiled.size(), "题库中已不存在的题目不参与判分");
+        assertEquals(16, compiled.totalScore());
+
+        Map<Long, String> answers = new HashMap<>();
+        answers.put(2L, "学生作答");
+        answers.put(4L, "A");
+        byte[] outcomes = new byte[compiled.size()];
+        assertEquals(0, compiled.grade(answers, outcomes));
+        assertArrayEquals(new byte[]{CompiledAnswerKey.UNANSWERED, CompiledAnswerKey.SUBJECTIVE, CompiledAnswerKey.WRONG},
+                outcomes);
+
+        answers.put(1L, "a");
+        assertEquals(2, compiled.grade(answers, outcomes));
+        assertEquals(CompiledAnswerKey.CORRECT, outcomes[0]);
+    }
+}
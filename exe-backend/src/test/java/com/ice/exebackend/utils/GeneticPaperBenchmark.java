@@ -0,0 +1,128 @@
+package com.ice.exebackend.utils;
+
+import com.ice.exebackend.entity.BizQuestion;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 智能组卷基准：原 GeneticPaperUtil vs IslandGeneticPaperEngine
+ *
+ * 主指标为单次组卷耗时；质量（适应度、与目标难度的偏差）在每组参数结束时打印，
+ * 用于对比「同样的时间能组出多好的卷子」。
+ * 目标难度取 0.82，候选题难度集中在 0.3~0.7，需要认真搜索才能逼近。
+ *
+ * 运行：mvn test-compile exec:java -Dexec.classpathScope=test
+ *      -Dexec.mainClass=com.ice.exebackend.utils.GeneticPaperBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GeneticPaperBenchmark {
+
+    private static final double TARGET_DIFFICULTY = 0.82;
+
+    /** 每种题型的候选题数量：小科目 / 大科目 */
+    @Param({"90", "3000"})
+    public int candidatesPerType;
+
+    private Map<Integer, List<BizQuestion>> candidatePool;
+    private Map<Integer, Integer> typeCountMap;
+
+    private double fitnessSum;
+    private int runs;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        typeCountMap = new HashMap<>();
+        typeCountMap.put(1, 20);
+        typeCountMap.put(2, 10);
+        typeCountMap.put(3, 5);
+        typeCountMap.put(4, 10);
+        typeCountMap.put(5, 3);
+
+        Random random = new Random(42);
+        candidatePool = new HashMap<>();
+        long id = 1;
+        for (Integer type : typeCountMap.keySet()) {
+            List<BizQuestion> list = new ArrayList<>(candidatesPerType);
+            for (int i = 0; i < candidatesPerType; i++) {
+                BizQuestion q = new BizQuestion();
+                q.setId(id++);
+                q.setQuestionType(type);
+                // 大部分题目中等难度，少量难题
+                double d = random.nextDouble() < 0.9 ? 0.3 + random.nextDouble() * 0.4 : 0.7 + random.nextDouble() * 0.3;
+                q.setDifficulty(Math.round(d * 100) / 100.0);
+                list.add(q);
+            }
+            candidatePool.put(type, list);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void resetQuality() {
+        fitnessSum = 0;
+        runs = 0;
+    }
+
+    @TearDown(Level.Iteration)
+    public void reportQuality() {
+        if (runs > 0) {
+            double avg = fitnessSum / runs;
+            System.out.printf("%n  [quality] candidates=%d avgFitness=%.5f avg|Δdifficulty|=%.4f runs=%d%n",
+                    candidatesPerType, avg, (1 - avg) / 0.6, runs);
+        }
+    }
+
+    @Benchmark
+    public List<BizQuestion> classic() {
+        List<BizQuestion> paper = GeneticPaperUtil.evolution(candidatePool, typeCountMap, TARGET_DIFFICULTY, 100.0);
+        record(paper);
+        return paper;
+    }
+
+    @Benchmark
+    public List<BizQuestion> islandDefault() {
+        IslandGeneticPaperEngine.Result result =
+                new IslandGeneticPaperEngine(candidatePool, typeCountMap, TARGET_DIFFICULTY, new IslandGeneticPaperEngine.Config()).evolve();
+        record(result.getQuestions());
+        return result.getQuestions();
+    }
+
+    /**
+     * 与原实现相同的计算量（20 个体 × 100 代，单岛屿），只比较实现效率与搜索质量
+     */
+    @Benchmark
+    public List<BizQuestion> islandSameBudgetAsClassic() {
+        IslandGeneticPaperEngine.Config config = new IslandGeneticPaperEngine.Config();
+        config.setIslands(1);
+        config.setPopulationPerIsland(20);
+        config.setMaxGenerations(100);
+        config.setTargetFitness(0.98);
+        config.setTimeBudgetMs(Long.MAX_VALUE / 2);
+        IslandGeneticPaperEngine.Result result =
+                new IslandGeneticPaperEngine(candidatePool, typeCountMap, TARGET_DIFFICULTY, config).evolve();
+        record(result.getQuestions());
+        return result.getQuestions();
+    }
+
+    private synchronized void record(List<BizQuestion> paper) {
+        fitnessSum += IslandGeneticPaperEngine.paperFitness(paper, TARGET_DIFFICULTY);
+        runs++;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(GeneticPaperBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
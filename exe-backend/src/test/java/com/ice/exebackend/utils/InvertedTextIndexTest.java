@@ -0,0 +1,94 @@
+package com.ice.exebackend.utils;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 全文倒排索引测试
+ */
+@DisplayName("全文倒排索引测试")
+class InvertedTextIndexTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    @DisplayName("包含全部二元组的文档作为候选，按 BM25 排序")
+    void shouldMatchAndRank() throws Exception {
+        InvertedTextIndex index = InvertedTextIndex.open(dir, 8);
+        index.put(1, "已知直角三角形两条直角边，利用勾股定理求斜边");
+        index.put(2, "勾股定理的逆定理：判断三角形是否为直角三角形");
+        index.put(3, "一元二次方程的求根公式");
+        index.flush();
+        index.put(4, "勾股定理 勾股定理 勾股数");
+
+        assertEquals(List.of(4L, 2L, 1L), index.matchAll("勾股定理", 100));
+        assertEquals(List.of(3L), index.matchAll("求根公式", 100));
+        assertEquals(List.of(), index.matchAll("函数图像", 100));
+        assertNull(index.matchAll("勾", 100), "单字无法用二元组检索");
+        assertNull(index.matchAll("三角形", 1), "命中过多时放弃");
+
+        List<InvertedTextIndex.Hit> hits = index.search(List.of("勾股定理", "直角"), 10);
+        assertEquals(3, hits.size());
+        assertTrue(hits.get(0).getScore() >= hits.get(1).getScore());
+        assertFalse(hits.stream().anyMatch(h -> h.getId() == 3));
+    }
+
+    @Test
+    @DisplayName("修改和删除落盘后重新打开仍然生效")
+    void shouldReplayUpdatesAndDeletesOnReopen() throws Exception {
+        InvertedTextIndex index = InvertedTextIndex.open(dir, 8);
+        index.put(1, "牛顿第一定律");
+        index.put(2, "牛顿第二定律");
+        index.put(3, "欧姆定律");
+        index.flush();
+        index.put(1, "惯性定律");
+        index.remove(3);
+        index.flush();
+
+        InvertedTextIndex reopened = InvertedTextIndex.open(dir, 8);
+        assertEquals(2, reopened.size());
+        assertEquals(List.of(2L), reopened.matchAll("牛顿", 100));
+        assertEquals(List.of(1L), reopened.matchAll("惯性", 100));
+        assertEquals(List.of(), reopened.matchAll("欧姆", 100));
+        assertEquals(3, reopened.maxId());
+    }
+
+    @Test
+    @DisplayName("段数超限时合并，全量重建后只保留一个基础段")
+    void shouldMergeAndRebuild() throws Exception {
+        InvertedTextIndex index = InvertedTextIndex.open(dir, 2);
+        for (int i = 1; i <= 6; i++) {
+            index.put(i, "第" + i + "题 化学方程式配平");
+            if (i % 2 == 0) index.remove(i - 1);
+            index.flush();
+        }
+        assertEquals(List.of(6L, 4L, 2L), index.matchAll("方程式配平", 100));
+        assertTrue(segmentFiles() <= 2, "合并后旧段文件被删除");
+
+        InvertedTextIndex.Rebuild rebuild = index.rebuild();
+        rebuild.put(10, "氧化还原反应");
+        rebuild.put(11, "化学方程式配平");
+        rebuild.commit();
+        assertEquals(1, segmentFiles());
+        assertEquals(List.of(11L), index.matchAll("方程式配平", 100));
+
+        InvertedTextIndex reopened = InvertedTextIndex.open(dir, 2);
+        assertEquals(2, reopened.size());
+        assertEquals(10L, reopened.search(List.of("氧化还原"), 5).get(0).getId());
+    }
+
+    private long segmentFiles() throws Exception {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(f -> f.toString().endsWith(".seg")).count();
+        }
+    }
+}
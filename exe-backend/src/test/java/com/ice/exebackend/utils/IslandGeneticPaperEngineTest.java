@@ -0,0 +1,155 @@
+package com.ice.exebackend.utils;
+
+import com.ice.exebackend.dto.PaperConstraintModel;
+import com.ice.exebackend.entity.BizQuestion;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 岛屿模型遗传组卷引擎测试（固定种子，关闭时间预算与提前停止，结果可复现）
+ */
+@DisplayName("岛屿遗传组卷引擎测试")
+class IslandGeneticPaperEngineTest {
+
+    private static final long SEED = 20240601L;
+
+    @Test
+    @DisplayName("满足硬约束：各题型题量、目标总分、无重复题目")
+    void shouldSatisfyHardConstraints() {
+        Map<Integer, List<BizQuestion>> pool = pool(Map.of(1, 40, 2, 15, 5, 6));
+        PaperConstraintModel model = new PaperConstraintModel();
+        model.setTypeCounts(Map.of(1, 20, 2, 10, 5, 5));
+        model.setTargetTotalScore(150);
+        model.setTargetDifficulty(0.6);
+
+        for (long seed = SEED; seed < SEED + 5; seed++) {
+            IslandGeneticPaperEngine.Result result =
+                    new IslandGeneticPaperEngine(pool, model, Map.of(), config(seed)).evolve();
+
+            Map<Integer, Long> perType = result.getQuestions().stream()
+                    .collect(Collectors.groupingBy(BizQuestion::getQuestionType, Collectors.counting()));
+            assertEquals(Map.of(1, 20L, 2, 10L, 5, 5L), perType, "seed=" + seed);
+            assertEquals(150, result.getTotalScore(), "seed=" + seed);
+            assertEquals(result.getQuestions().size(), result.getScores().length);
+            assertTrue(Arrays.stream(result.getScores()).allMatch(s -> s >= 1));
+            Set<Long> ids = result.getQuestions().stream().map(BizQuestion::getId).collect(Collectors.toSet());
+            assertEquals(35, ids.size(), "seed=" + seed + " 出现重复题目");
+        }
+    }
+
+    @Test
+    @DisplayName("候选题恰好等于题量时选中全部候选，候选不足的题型跳过")
+    void shouldHandleTightAndInsufficientPools() {
+        Map<Integer, List<BizQuestion>> pool = pool(Map.of(1, 8, 2, 3));
+        IslandGeneticPaperEngine.Result result = new IslandGeneticPaperEngine(
+                pool, Map.of(1, 8, 2, 5), 0.5, config(SEED)).evolve();
+
+        Set<Long> expected = pool.get(1).stream().map(BizQuestion::getId).collect(Collectors.toSet());
+        Set<Long> actual = result.getQuestions().stream().map(BizQuestion::getId).collect(Collectors.toSet());
+        assertEquals(expected, actual);
+        assertEquals(8, result.getQuestions().size());
+    }
+
+    @Test
+    @DisplayName("知识点可覆盖时结果满足覆盖要求")
+    void shouldCoverRequiredKnowledgePoints() {
+        Map<Integer, List<BizQuestion>> pool = pool(Map.of(1, 60));
+        Map<Long, List<Long>> kps = new HashMap<>();
+        // 每个知识点只有 3 道候选题，随机组卷很难同时覆盖
+        for (BizQuestion q : pool.get(1)) {
+            long index = q.getId() - 1;
+            if (index < 15) kps.put(q.getId(), List.of(100L + index / 3));
+        }
+        PaperConstraintModel model = new PaperConstraintModel();
+        model.setTypeCounts(Map.of(1, 10));
+        model.setTargetDifficulty(0.5);
+        model.setKnowledgePointMinCounts(Map.of(100L, 1, 101L, 1, 102L, 2, 103L, 1, 104L, 1));
+
+        IslandGeneticPaperEngine.Result result = new IslandGeneticPaperEngine(pool, model, kps, config(SEED)).evolve();
+
+        assertEquals(5, result.getRequiredKnowledgePoints());
+        assertEquals(5, result.getCoveredKnowledgePoints());
+    }
+
+    @Test
+    @DisplayName("相同种子得到相同试卷")
+    void shouldBeDeterministicForSameSeed() {
+        Map<Integer, List<BizQuestion>> pool = pool(Map.of(1, 50, 2, 20));
+        Map<Integer, Integer> counts = Map.of(1, 15, 2, 5);
+
+        IslandGeneticPaperEngine.Result first = new IslandGeneticPaperEngine(pool, counts, 0.8, config(SEED)).evolve();
+        IslandGeneticPaperEngine.Result second = new IslandGeneticPaperEngine(pool, counts, 0.8, config(SEED)).evolve();
+
+        assertEquals(ids(first), ids(second));
+        assertEquals(first.getFitness(), second.getFitness());
+        assertEquals(first.getGenerations(), second.getGenerations());
+    }
+
+    @Test
+    @DisplayName("迁移后各岛屿保留迁入的最优个体，之后的进化不会丢失")
+    void shouldKeepBestIndividualAcrossMigration() {
+        IslandGeneticPaperEngine engine = new IslandGeneticPaperEngine(
+                pool(Map.of(1, 50, 2, 20)), Map.of(1, 15, 2, 5), 0.8, config(SEED));
+        IslandGeneticPaperEngine.Island a = engine.new Island(new SplittableRandom(SEED));
+        IslandGeneticPaperEngine.Island b = engine.new Island(new SplittableRandom(SEED + 1));
+        a.run(5, Long.MAX_VALUE);
+        b.run(5, Long.MAX_VALUE);
+
+        double bestFitness = Math.max(a.bestFitness(), b.bestFitness());
+
+        engine.migrate(new IslandGeneticPaperEngine.Island[]{a, b});
+
+        for (IslandGeneticPaperEngine.Island island : List.of(a, b)) {
+            assertEquals(bestFitness, island.bestFitness(), 1e-12, "最优个体迁入后成为该岛屿的最优个体");
+            island.run(3, Long.MAX_VALUE);
+            assertTrue(island.bestFitness() >= bestFitness, "精英保留最优个体");
+        }
+    }
+
+    // ==================== 辅助方法 ====================
+
+    /**
+     * 固定种子、只按代数停止（不受机器快慢影响）
+     */
+    private static IslandGeneticPaperEngine.Config config(long seed) {
+        IslandGeneticPaperEngine.Config config = new IslandGeneticPaperEngine.Config();
+        config.setSeed(seed);
+        config.setIslands(3);
+        config.setPopulationPerIsland(16);
+        config.setMaxGenerations(60);
+        config.setMigrationInterval(5);
+        config.setTargetFitness(2.0);
+        config.setTimeBudgetMs(Long.MAX_VALUE / 2);
+        return config;
+    }
+
+    /**
+     * 题型 -> 候选题数量；题目ID从 1 开始连续编号，难度按 ID 确定
+     */
+    private static Map<Integer, List<BizQuestion>> pool(Map<Integer, Integer> sizes) {
+        Map<Integer, List<BizQuestion>> pool = new HashMap<>();
+        long id = 1;
+        for (Map.Entry<Integer, Integer> entry : new TreeMap<>(sizes).entrySet()) {
+            List<BizQuestion> list = new ArrayList<>();
+            for (int i = 0; i < entry.getValue(); i++) {
+                BizQuestion q = new BizQuestion();
+                q.setId(id);
+                q.setQuestionType(entry.getKey());
+                q.setDifficulty((id * 37 % 100) / 100.0);
+                list.add(q);
+                id++;
+            }
+            pool.put(entry.getKey(), list);
+        }
+        return pool;
+    }
+
+    private static List<Long> ids(IslandGeneticPaperEngine.Result result) {
+        return result.getQuestions().stream().map(BizQuestion::getId).toList();
+    }
+}
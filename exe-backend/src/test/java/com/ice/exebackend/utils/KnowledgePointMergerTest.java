@@ -0,0 +1,79 @@
+package com.ice.exebackend.utils;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 知识点合并测试
+ */
+@DisplayName("知识点合并测试")
+class KnowledgePointMergerTest {
+
+    private static Map<String, String> point(String name, String description) {
+        return Map.of("name", name, "description", description);
+    }
+
+    @Test
+    @DisplayName("规范化后名称相同的知识点合并，保留较长描述")
+    void shouldMergeSameNormalizedName() {
+        KnowledgePointMerger merger = new KnowledgePointMerger(0.8);
+        merger.addAll(List.of(
+                point("勾股定理", "直角三角形三边关系"),
+                point(" 勾股定理。", "直角三角形两直角边的平方和等于斜边的平方"),
+                point("Newton's Law", "牛顿定律"),
+                point("ＮＥＷＴＯＮ’Ｓ ＬＡＷ", "")
+        ));
+
+        List<Map<String, String>> result = merger.result();
+        assertEquals(2, result.size());
+        assertEquals("勾股定理", result.get(0).get("name"));
+        assertEquals("直角三角形两直角边的平方和等于斜边的平方", result.get(0).get("description"));
+        assertEquals("Newton's Law", result.get(1).get("name"));
+        assertEquals("牛顿定律", result.get(1).get("description"));
+    }
+
+    @Test
+    @DisplayName("名称相似度达到阈值的知识点归为一类，不同知识点保持独立")
+    void shouldClusterSimilarNames() {
+        KnowledgePointMerger merger = new KnowledgePointMerger(0.8);
+        merger.addAll(List.of(
+                point("一元二次方程的解法", "配方法、公式法、因式分解法"),
+                point("一元二次方程解法", "求根公式"),
+                point("光合作用", "植物利用光能合成有机物"),
+                point("呼吸作用", "分解有机物释放能量")
+        ));
+
+        List<Map<String, String>> result = merger.result();
+        assertEquals(3, result.size());
+        assertEquals("一元二次方程的解法", result.get(0).get("name"));
+        assertEquals("光合作用", result.get(1).get("name"));
+        assertEquals("呼吸作用", result.get(2).get("name"));
+    }
+
+    @Test
+    @DisplayName("阈值大于 1 时只做精确合并，空名称被忽略")
+    void shouldOnlyMergeExactlyWhenSimilarityDisabled() {
+        KnowledgePointMerger merger = new KnowledgePointMerger(1.1);
+        merger.addAll(List.of(
+                point("一元二次方程的解法", "a"),
+                point("一元二次方程解法", "b"),
+                point("  ", "c"),
+                point("一元二次方程的解法", "d")
+        ));
+        assertEquals(2, merger.size());
+    }
+
+    @Test
+    @DisplayName("名称规范化与二元组拆分")
+    void shouldBuildBigrams() {
+        assertEquals(Set.of("勾股", "股定", "定理"), TextSimilarity.bigrams("勾股定理"));
+        assertEquals(Set.of("力"), TextSimilarity.bigrams("力"));
+        assertEquals("newtonslaw", TextSimilarity.normalizeName("Newton's  Law!"));
+    }
+}
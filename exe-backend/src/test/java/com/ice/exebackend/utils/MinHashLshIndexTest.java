@@ -0,0 +1,65 @@
+package com.ice.exebackend.utils;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * MinHash + LSH 近似重复索引测试
+ */
+@DisplayName("MinHash近似重复索引测试")
+class MinHashLshIndexTest {
+
+    private static final String ORIGINAL = "已知直角三角形的两条直角边分别为3和4，求斜边的长度，并说明所用的定理。";
+
+    @Test
+    @DisplayName("改动少量字词的题目进入候选，无关题目不进入")
+    void shouldFindNearDuplicates() {
+        MinHashLshIndex index = new MinHashLshIndex(16, 3);
+        index.put(1, ORIGINAL);
+        index.put(2, "已知直角三角形的两条直角边分别为6和8，求斜边的长度，并说明所用的定理。");
+        index.put(3, "解一元二次方程 x² - 5x + 6 = 0，并写出求根公式。");
+        index.put(4, "下列哪个选项是光合作用的产物？");
+
+        List<Long> candidates = index.candidates(ORIGINAL, 0.3, 1L);
+        assertEquals(List.of(2L), candidates);
+        assertEquals(List.of(1L), index.candidates(ORIGINAL, 0.99, null), "相同文本的签名估计为 1");
+    }
+
+    @Test
+    @DisplayName("修改和删除后候选随之变化")
+    void shouldFollowUpdatesAndRemovals() {
+        MinHashLshIndex index = new MinHashLshIndex(16, 3);
+        index.put(1, ORIGINAL);
+        index.put(2, ORIGINAL);
+        assertEquals(List.of(2L), index.candidates(ORIGINAL, 0.3, 1L));
+
+        index.put(2, "下列哪个选项是光合作用的产物？");
+        assertTrue(index.candidates(ORIGINAL, 0.3, 1L).isEmpty());
+
+        index.put(3, ORIGINAL);
+        index.remove(1);
+        assertEquals(List.of(3L), index.candidates(ORIGINAL, 0.3, null));
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    @DisplayName("批量找出所有候选对，每对只出现一次")
+    void shouldListCandidatePairs() {
+        MinHashLshIndex index = new MinHashLshIndex(16, 3);
+        for (int i = 0; i < 200; i++) {
+            index.put(i, "第" + i + "题：计算 " + i + " 乘以 " + (i * 7 % 13) + " 的结果，并判断其奇偶性与是否为质数");
+        }
+        index.put(1000, ORIGINAL);
+        index.put(1001, ORIGINAL.replace("3和4", "5和12"));
+
+        List<MinHashLshIndex.Pair> pairs = index.candidatePairs(0.5);
+        assertTrue(pairs.stream().anyMatch(p -> p.getFirst() == 1000 && p.getSecond() == 1001));
+        assertTrue(pairs.stream().allMatch(p -> p.getFirst() < p.getSecond()));
+        assertEquals(pairs.size(), pairs.stream().map(p -> p.getFirst() + ":" + p.getSecond()).distinct().count());
+        assertFalse(pairs.stream().anyMatch(p -> p.getFirst() >= 1000 ^ p.getSecond() >= 1000), "不同类型的题目不成对");
+    }
+}
@@ -0,0 +1,161 @@
+package com.ice.exebackend.utils;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 对战题目ID池测试
+ */
+@DisplayName("对战题目ID池测试")
+class QuestionDeckPoolTest {
+
+    @Test
+    @DisplayName("随机增删、换档后与 HashMap 结果一致（含扩容、探测链上的删除和分段移动）")
+    void shouldMatchReferenceMapAfterRandomOperations() {
+        QuestionDeckPool pool = new QuestionDeckPool(4);
+        Map<Long, Integer> expected = new HashMap<>();
+        Random random = new Random(2024);
+        for (int op = 0; op < 20_000; op++) {
+            // ID 取值范围小、步长大，保证大量冲突和反复增删
+            long id = random.nextInt(600) * 1024L;
+            int action = random.nextInt(3);
+            if (action == 0) {
+                assertEquals(expected.remove(id) != null, pool.remove(id), "remove " + id);
+            } else if (action == 1) {
+                int band = random.nextInt(DifficultyBand.COUNT);
+                pool.put(id, band);
+                expected.put(id, band);
+            } else {
+                assertEquals(expected.putIfAbsent(id, DifficultyBand.MEDIUM) == null, pool.add(id), "add " + id);
+            }
+            assertEquals(expected.size(), pool.size());
+        }
+        for (long id = 0; id < 600 * 1024L; id += 1024) {
+            assertEquals(expected.containsKey(id), pool.contains(id), "contains " + id);
+        }
+        Set<Long> dealt = new HashSet<>();
+        for (long id : pool.deal(Integer.MAX_VALUE, random)) {
+            dealt.add(id);
+        }
+        assertEquals(expected.keySet(), dealt);
+
+        // 每一档只抽该档：权重只给一档时抽出的全是该档题目
+        for (int band = 0; band < DifficultyBand.COUNT; band++) {
+            double[] weights = new double[DifficultyBand.COUNT];
+            weights[band] = 1;
+            int bandSize = (int) expected.values().stream().filter(Integer.valueOf(band)::equals).count();
+            assertEquals(bandSize, pool.size(band));
+            for (long id : pool.sampleStratified(bandSize, weights, null, null, random)) {
+                assertEquals(band, (int) expected.get(id), "id " + id);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("不放回抽取，池中不足时返回全部")
+    void shouldDealWithoutReplacement() {
+        QuestionDeckPool pool = new QuestionDeckPool();
+        for (long id = 1; id <= 100; id++) {
+            pool.add(id);
+        }
+        Random random = new Random(42);
+        for (int round = 0; round < 50; round++) {
+            long[] hand = pool.deal(10, random);
+            assertEquals(10, hand.length);
+            assertEquals(10, Arrays.stream(hand).distinct().count(), "同一次抽取不重复");
+        }
+        assertEquals(80, Arrays.stream(pool.deal(80, random)).distinct().count(), "池较小时走部分洗牌");
+
+        pool.remove(50);
+        assertEquals(99, pool.deal(200, random).length);
+        assertTrue(Arrays.stream(pool.deal(200, random)).noneMatch(id -> id == 50));
+        assertEquals(0, new QuestionDeckPool().deal(5, random).length);
+    }
+
+    @Test
+    @DisplayName("均匀抽样排除指定题目，题量不足时返回全部")
+    void shouldSampleExcludingGivenIds() {
+        QuestionDeckPool pool = new QuestionDeckPool();
+        for (long id = 1; id <= 100; id++) {
+            pool.put(id, DifficultyBand.of((id % 10) / 10.0));
+        }
+        Set<Long> excluded = Set.of(1L, 2L, 3L);
+        Random random = new Random(42);
+        for (int round = 0; round < 50; round++) {
+            long[] sample = pool.sample(20, excluded::contains, null, random);
+            assertEquals(20, sample.length);
+            assertEquals(20, Arrays.stream(sample).distinct().count(), "同一次抽取不重复");
+            assertTrue(Arrays.stream(sample).noneMatch(id -> id <= 3));
+        }
+        assertEquals(97, pool.sample(200, excluded::contains, null, random).length);
+    }
+
+    @Test
+    @DisplayName("分层抽样按权重分配各难度档的名额，某档不足时由其余档补齐")
+    void shouldStratifyByDifficulty() {
+        QuestionDeckPool pool = new QuestionDeckPool();
+        Map<Long, Integer> bands = new HashMap<>();
+        for (long id = 1; id <= 300; id++) {
+            double difficulty = id <= 200 ? 0.2 : (id <= 290 ? 0.5 : 0.9);
+            pool.put(id, DifficultyBand.of(difficulty));
+            bands.put(id, DifficultyBand.of(difficulty));
+        }
+        Random random = new Random(7);
+
+        int[] proportional = countBands(pool.sampleStratified(30, null, null, null, random), bands);
+        assertArrayEquals(new int[]{20, 9, 1}, proportional, "默认按各档题量分配");
+
+        int[] balanced = countBands(pool.sampleStratified(30, new double[]{1, 1, 1}, null, null, random), bands);
+        assertArrayEquals(new int[]{10, 10, 10}, balanced, "难题正好 10 道");
+
+        int[] shortOfHard = countBands(pool.sampleStratified(60, new double[]{1, 1, 1}, null, null, random), bands);
+        assertEquals(10, shortOfHard[DifficultyBand.HARD]);
+        assertEquals(60, shortOfHard[0] + shortOfHard[1] + shortOfHard[2]);
+
+        // 难度变化后换档，题量不变
+        pool.put(1, DifficultyBand.HARD);
+        assertEquals(300, pool.size());
+        assertEquals(11, pool.size(DifficultyBand.HARD));
+        assertEquals(199, pool.size(DifficultyBand.EASY));
+    }
+
+    @Test
+    @DisplayName("优先跳过最近做过的题，未做过的不够时才重复")
+    void shouldSkipRecentlySeen() {
+        QuestionDeckPool pool = new QuestionDeckPool();
+        for (long id = 1; id <= 30; id++) {
+            pool.put(id, DifficultyBand.MEDIUM);
+        }
+        RecentlySeenQuestions seen = new RecentlySeenQuestions(20);
+        Random random = new Random(1);
+
+        List<Long> first = boxed(pool.sampleStratified(10, null, null, seen::contains, random));
+        seen.record(first);
+        List<Long> second = boxed(pool.sampleStratified(10, null, null, seen::contains, random));
+        assertTrue(Collections.disjoint(first, second));
+        seen.record(second);
+        List<Long> third = boxed(pool.sampleStratified(10, null, null, seen::contains, random));
+        assertTrue(Collections.disjoint(first, third) && Collections.disjoint(second, third));
+        seen.record(third);
+
+        // 窗口只有 20：第一批已移出窗口，其余 20 道都做过
+        assertEquals(20, seen.size());
+        assertEquals(new HashSet<>(first), new HashSet<>(boxed(pool.sample(10, null, seen::contains, random))));
+        assertEquals(15, new HashSet<>(boxed(pool.sample(15, null, seen::contains, random))).size());
+    }
+
+    private static List<Long> boxed(long[] ids) {
+        return Arrays.stream(ids).boxed().toList();
+    }
+
+    private static int[] countBands(long[] sample, Map<Long, Integer> bands) {
+        assertEquals(sample.length, Arrays.stream(sample).distinct().count());
+        int[] counts = new int[DifficultyBand.COUNT];
+        for (long id : sample) counts[bands.get(id)]++;
+        return counts;
+    }
+}
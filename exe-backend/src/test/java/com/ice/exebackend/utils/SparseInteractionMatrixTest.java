@@ -0,0 +1,99 @@
+package com.ice.exebackend.utils;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 学生 × 题目交互矩阵测试
+ */
+@DisplayName("稀疏交互矩阵测试")
+class SparseInteractionMatrixTest {
+
+    @Test
+    @DisplayName("增量合并保留未变更行，同一单元格以新值为准")
+    void shouldMergeChangesIntoBase() {
+        SparseInteractionMatrix base = SparseInteractionMatrix.merge(SparseInteractionMatrix.empty(), 2, 4, Map.of(
+                0, Map.of(0, 1f, 2, -1f),
+                1, Map.of(1, 1f)));
+
+        Map<Integer, Map<Integer, Float>> changes = new HashMap<>();
+        changes.put(0, Map.of(2, 1f, 3, 1f));
+        changes.put(2, Map.of(0, -1f));
+        SparseInteractionMatrix merged = SparseInteractionMatrix.merge(base, 3, 4, changes);
+
+        assertEquals(3, merged.rows());
+        assertEquals(4, merged.cols());
+        assertEquals(5, merged.nnz());
+        assertArrayEquals(new int[]{0, 2, 3}, columns(merged, 0), "行内按列号升序");
+        assertEquals(1f, merged.valueAt(merged.rowStart(0) + 1), "答错改为答对");
+        assertArrayEquals(new int[]{1}, columns(merged, 1));
+        assertArrayEquals(new int[]{0}, columns(merged, 2));
+        assertTrue(merged.contains(2, 0));
+        assertFalse(merged.contains(2, 1));
+
+        // 旧矩阵不受影响
+        assertEquals(3, base.nnz());
+        assertEquals(-1f, base.valueAt(base.rowStart(0) + 1));
+    }
+
+    @Test
+    @DisplayName("余弦相似度考虑答对答错的方向")
+    void shouldComputeSignedCosine() {
+        SparseInteractionMatrix m = SparseInteractionMatrix.merge(SparseInteractionMatrix.empty(), 3, 3, Map.of(
+                0, Map.of(0, 1f, 1, 1f),
+                1, Map.of(0, 1f, 1, 1f, 2, 1f),
+                2, Map.of(0, -1f, 1, -1f)));
+
+        assertEquals(2 / Math.sqrt(6), m.cosine(0, 1), 1e-6);
+        assertEquals(-1f, m.cosine(0, 2), 1e-6);
+        assertEquals(0f, m.cosine(0, 5), "越界行相似度为 0");
+    }
+
+    @Test
+    @DisplayName("Top-K 邻居按相似度降序，过滤低于阈值和做题过多的列")
+    void shouldFindTopNeighbors() {
+        Map<Integer, Map<Integer, Float>> rows = new HashMap<>();
+        rows.put(0, Map.of(0, 1f, 1, 1f, 2, 1f));
+        rows.put(1, Map.of(0, 1f, 1, 1f, 2, 1f));   // 完全相同
+        rows.put(2, Map.of(0, 1f, 1, 1f, 3, 1f));   // 两题相同
+        rows.put(3, Map.of(0, 1f, 4, 1f, 5, 1f));   // 一题相同
+        rows.put(4, Map.of(0, -1f, 1, -1f, 2, -1f)); // 完全相反
+        SparseInteractionMatrix m = SparseInteractionMatrix.merge(SparseInteractionMatrix.empty(), 5, 6, rows);
+
+        int[] outRows = new int[2];
+        float[] outSims = new float[2];
+        SparseInteractionMatrix.Scratch scratch = new SparseInteractionMatrix.Scratch();
+        int n = m.topNeighbors(0, 2, 0.1f, 100, scratch, outRows, outSims);
+
+        assertEquals(2, n);
+        assertArrayEquals(new int[]{1, 2}, outRows);
+        assertEquals(1f, outSims[0], 1e-6);
+        assertEquals(2f / 3, outSims[1], 1e-6);
+
+        // 复用同一工作区再算一次结果不变
+        int[] again = new int[2];
+        assertEquals(2, m.topNeighbors(0, 2, 0.1f, 100, scratch, again, new float[2]));
+        assertArrayEquals(outRows, again);
+
+        // 每列最多 4 人做过：第 0 列（5 人）不参与累加，行 3 不再出现
+        int[] all = new int[5];
+        float[] allSims = new float[5];
+        int limited = m.topNeighbors(0, 5, 0.1f, 4, scratch, all, allSims);
+        assertEquals(2, limited);
+        assertArrayEquals(new int[]{1, 2}, Arrays.copyOf(all, limited));
+    }
+
+    private static int[] columns(SparseInteractionMatrix m, int row) {
+        int[] cols = new int[m.rowEnd(row) - m.rowStart(row)];
+        for (int i = m.rowStart(row); i < m.rowEnd(row); i++) {
+            cols[i - m.rowStart(row)] = m.colAt(i);
+        }
+        return cols;
+    }
+}
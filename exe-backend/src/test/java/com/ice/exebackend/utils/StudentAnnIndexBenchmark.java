@@ -0,0 +1,162 @@
+package com.ice.exebackend.utils;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 学生相似度基准：倒排精确扫描（SparseInteractionMatrix.topNeighbors）vs HNSW 召回 + 精确重排
+ *
+ * 主指标为单个学生求 Top 20 邻居的耗时；召回率（近似结果中相似度不低于精确第 20 名的比例）
+ * 在每组参数结束时打印，用于确定 recommendation.ann.min-students 与 ef-search。
+ * 数据按兴趣分组生成：每组学生集中做一批题，答对率因题而异。
+ *
+ * 运行：mvn test-compile exec:java -Dexec.classpathScope=test
+ *      -Dexec.mainClass=com.ice.exebackend.utils.StudentAnnIndexBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+@State(Scope.Benchmark)
+public class StudentAnnIndexBenchmark {
+
+    private static final int K = 20;
+    private static final float MIN_SIMILARITY = 0.1f;
+    private static final int QUESTIONS = 5000;
+    private static final int GROUPS = 50;
+    private static final int ANSWERS_PER_STUDENT = 40;
+
+    @Param({"20000", "100000"})
+    public int students;
+
+    @Param({"200", "400"})
+    public int ef;
+
+    private SparseInteractionMatrix matrix;
+    private long[] colQuestions;
+    private Map<Long, Integer> userRows;
+    private StudentAnnIndex index;
+    private Path indexFile;
+    private SparseInteractionMatrix.Scratch scratch;
+    private int[] queries;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        int[][] groupPools = new int[GROUPS][300];
+        for (int[] pool : groupPools) {
+            for (int i = 0; i < pool.length; i++) pool[i] = random.nextInt(QUESTIONS);
+        }
+        double[] correctRate = new double[QUESTIONS];
+        for (int q = 0; q < QUESTIONS; q++) correctRate[q] = random.nextBoolean() ? 0.9 : 0.2;
+
+        Map<Integer, Map<Integer, Float>> changes = new HashMap<>();
+        long[] users = new long[students];
+        userRows = new HashMap<>(students * 2);
+        for (int row = 0; row < students; row++) {
+            int[] pool = groupPools[random.nextInt(GROUPS)];
+            Map<Integer, Float> answers = new HashMap<>();
+            while (answers.size() < ANSWERS_PER_STUDENT) {
+                int q = random.nextDouble() < 0.8 ? pool[random.nextInt(pool.length)] : random.nextInt(QUESTIONS);
+                answers.put(q, random.nextDouble() < correctRate[q] ? 1f : -1f);
+            }
+            changes.put(row, answers);
+            users[row] = 100_000L + row;
+            userRows.put(users[row], row);
+        }
+        matrix = SparseInteractionMatrix.merge(SparseInteractionMatrix.empty(), students, QUESTIONS, changes);
+        colQuestions = new long[QUESTIONS];
+        for (int q = 0; q < QUESTIONS; q++) colQuestions[q] = 1_000_000L + q;
+
+        indexFile = Files.createTempFile("student-ann", ".idx");
+        long start = System.currentTimeMillis();
+        index = StudentAnnIndex.build(matrix, users, colQuestions, 64, 16, 128, 42L, indexFile);
+        System.out.printf("%n  [build] students=%d %dms%n", students, System.currentTimeMillis() - start);
+
+        scratch = new SparseInteractionMatrix.Scratch();
+        queries = new int[1024];
+        for (int i = 0; i < queries.length; i++) queries[i] = random.nextInt(students);
+        reportRecall();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        index = null;
+        Files.deleteIfExists(indexFile);
+    }
+
+    private void reportRecall() {
+        int[] exactRows = new int[K];
+        float[] exactSims = new float[K];
+        int[] annRows = new int[K];
+        float[] annSims = new float[K];
+        long hits = 0;
+        long expected = 0;
+        for (int t = 0; t < 200; t++) {
+            int row = queries[t];
+            int exact = matrix.topNeighbors(row, K, MIN_SIMILARITY, Integer.MAX_VALUE, scratch, exactRows, exactSims);
+            if (exact == 0) continue;
+            int approx = annQuery(row, annRows, annSims);
+            float kth = exactSims[exact - 1];
+            for (int i = 0; i < approx; i++) {
+                if (annSims[i] >= kth) hits++;
+            }
+            expected += exact;
+        }
+        System.out.printf("  [recall] students=%d ef=%d recall@%d=%.3f%n",
+                students, ef, K, expected == 0 ? 1.0 : Math.min(1.0, (double) hits / expected));
+    }
+
+    @Benchmark
+    public int exactScan() {
+        int row = queries[cursor++ & (queries.length - 1)];
+        return matrix.topNeighbors(row, K, MIN_SIMILARITY, Integer.MAX_VALUE, scratch, new int[K], new float[K]);
+    }
+
+    @Benchmark
+    public int annQuery() {
+        int row = queries[cursor++ & (queries.length - 1)];
+        return annQuery(row, new int[K], new float[K]);
+    }
+
+    /**
+     * 与 CollaborativeFilteringEngine 相同：召回 ef 个候选，按精确余弦取 Top K（降序）
+     */
+    private int annQuery(int row, int[] outRows, float[] outSims) {
+        long[] candidates = index.search(index.embed(matrix, row, colQuestions), ef, ef);
+        int size = 0;
+        for (long userId : candidates) {
+            int other = userRows.get(userId);
+            if (other == row) continue;
+            float sim = matrix.cosine(row, other);
+            if (sim < MIN_SIMILARITY || (size == K && sim <= outSims[K - 1])) continue;
+            int i = size < K ? size++ : K - 1;
+            while (i > 0 && outSims[i - 1] < sim) {
+                outRows[i] = outRows[i - 1];
+                outSims[i] = outSims[i - 1];
+                i--;
+            }
+            outRows[i] = other;
+            outSims[i] = sim;
+        }
+        return size;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(StudentAnnIndexBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
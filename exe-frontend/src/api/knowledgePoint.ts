@@ -160,7 +160,8 @@ export function generateKnowledgePointsFromTextStream(
     data: { text: string; count: number },
     onChunk: (text: string) => void,
     onComplete: (points: any[]) => void,
-    onError: (error: Error) => void
+    onError: (error: Error) => void,
+    onPartial?: (points: any[]) => void
 ): void {
     const apiKey = localStorage.getItem('student_ai_key') || '';
     const provider = localStorage.getItem('student_ai_provider') || 'DEEPSEEK';
@@ -213,6 +214,13 @@ export function generateKnowledgePointsFromTextStream(
                             console.error('解析结果失败:', e, dataContent);
                             onError(new Error('解析结果失败'));
                         }
+                    } else if (currentEvent === 'partial') {
+                        // 大文本分块提取：已完成部分的合并结果
+                        try {
+                            onPartial?.(JSON.parse(dataContent));
+                        } catch (e) {
+                            console.error('解析阶段结果失败:', e);
+                        }
                     } else if (currentEvent === 'message' || !currentEvent) {
                         // 流式数据块
                         onChunk(dataContent);
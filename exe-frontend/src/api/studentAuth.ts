@@ -111,6 +111,15 @@ export function submitExamPaper(
         data: { answers, violationCount } // 放入 body
     });
 }
+/**
+ * 查询排队交卷的处理结果（集中交卷时提交接口只返回回执）
+ */
+export function fetchExamSubmitReceipt(receiptId: string): Promise<ApiResult<any>> {
+    return request({
+        url: `/api/v1/student/exam/submit/${receiptId}`,
+        method: 'get'
+    });
+}
 /**
  * 获取学生可练习的科目列表
  */
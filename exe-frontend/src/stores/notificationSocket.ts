@@ -113,6 +113,18 @@ export const useNotificationSocketStore = defineStore('notificationSocket', {
             else if (data.type === 'ONLINE_COUNT') {
                 this.onlineStudentCount = data.count;
             }
+            // 交卷后主观题 AI 批改完成
+            else if (data.type === 'EXAM_GRADED') {
+                const achievements = (data.newAchievements || []).map((a: any) => a.name).filter(Boolean);
+                ElNotification({
+                    title: '试卷批改完成',
+                    message: `《${data.paperName || '试卷'}》主观题已批改，得分 ${data.score} / ${data.totalScore}` +
+                        (achievements.length ? `，解锁成就：${achievements.join('、')}` : ''),
+                    type: 'success',
+                    duration: 8000,
+                    position: 'top-right',
+                });
+            }
             // 处理成绩更新、评语更新通知
             else if (data.type === 'SCORE_UPDATE' || data.type === 'COMMENT_UPDATE') {
                 ElNotification({